@@ -66,4 +66,17 @@ public interface AsyncPolicy {
      * should block when the queue is full
      */
     boolean isBlockWhenFull();
+
+    /**
+     * Used to keep the messages that cannot be dispatched, i.e. while
+     * the broker is unreachable, on local disk until they can be.
+     *
+     * When <code>null</code> the messages are only queued in memory.
+     *
+     * @return the {@link SpillPolicy}, or {@code null} if the messages
+     * should not be spilled to disk
+     */
+    default SpillPolicy getSpillPolicy() {
+        return null;
+    }
 }
@@ -0,0 +1,85 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.core.ipc.sink.api;
+
+/**
+ * Defines how messages that cannot be dispatched are spilled to
+ * local disk, and later replayed in order.
+ *
+ * @see AsyncPolicy#getSpillPolicy()
+ */
+public interface SpillPolicy {
+
+    /**
+     * What to do when the spilled messages reach {@link #getMaxBytes()}.
+     */
+    enum EvictionPolicy {
+        /**
+         * Discard the oldest spilled messages to make room for new ones.
+         */
+        DROP_OLDEST,
+        /**
+         * Keep the spilled messages and discard new ones.
+         */
+        DROP_NEWEST
+    }
+
+    /**
+     * Directory in which the segments of the spill log are stored.
+     *
+     * @return path to the directory
+     */
+    String getDirectory();
+
+    /**
+     * Maximum number of bytes of messages that can be spilled.
+     *
+     * @return limit in bytes
+     */
+    long getMaxBytes();
+
+    /**
+     * Size of the memory-mapped files the spill log is made of.
+     *
+     * @return segment size in bytes
+     */
+    default int getSegmentBytes() {
+        return 16 * 1024 * 1024;
+    }
+
+    /**
+     * Used to choose which messages are lost when the spill log is full.
+     *
+     * @return the eviction policy
+     */
+    default EvictionPolicy getEvictionPolicy() {
+        return EvictionPolicy.DROP_OLDEST;
+    }
+}
@@ -28,14 +28,20 @@
 
 package org.opennms.core.ipc.sink.common;
 
+import java.io.IOException;
 import java.util.Objects;
 
 import org.opennms.core.ipc.sink.aggregation.AggregatingSinkMessageProducer;
 import org.opennms.core.ipc.sink.api.AsyncDispatcher;
+import org.opennms.core.ipc.sink.api.AsyncPolicy;
 import org.opennms.core.ipc.sink.api.Message;
 import org.opennms.core.ipc.sink.api.MessageDispatcherFactory;
 import org.opennms.core.ipc.sink.api.SinkModule;
+import org.opennms.core.ipc.sink.api.SpillPolicy;
+import org.opennms.core.ipc.sink.api.SpillPolicy.EvictionPolicy;
 import org.opennms.core.ipc.sink.api.SyncDispatcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer.Context;
@@ -56,14 +62,51 @@ public abstract class AbstractMessageDispatcherFactory<W> implements MessageDisp
 
     public abstract <S extends Message, T extends Message> void dispatch(SinkModule<S, T> module, W metadata, T message);
 
+    /**
+     * Dispatches a message for a module that spills the messages that fail to be
+     * dispatched to disk.
+     *
+     * Implementations that log and drop the messages they fail to deliver should
+     * override this method and throw a {@link RuntimeException} instead, so that
+     * the message is spilled.
+     */
+    public <S extends Message, T extends Message> void dispatchOrFail(SinkModule<S, T> module, W metadata, T message) {
+        dispatch(module, metadata, message);
+    }
+
+    /**
+     * When set, modules whose {@link AsyncPolicy} does not define a {@link SpillPolicy}
+     * spill the messages that fail to be dispatched to a sub-directory of this one.
+     */
+    public static final String SPILL_DIRECTORY_SYS_PROP = "org.opennms.core.ipc.sink.spill.directory";
+    public static final String SPILL_MAX_BYTES_SYS_PROP = "org.opennms.core.ipc.sink.spill.maxBytes";
+    public static final String SPILL_SEGMENT_BYTES_SYS_PROP = "org.opennms.core.ipc.sink.spill.segmentBytes";
+    public static final String SPILL_EVICTION_POLICY_SYS_PROP = "org.opennms.core.ipc.sink.spill.evictionPolicy";
+
+    private static final Logger LOG = LoggerFactory.getLogger(AbstractMessageDispatcherFactory.class);
+
     private final MetricRegistry metrics = new MetricRegistry();
 
     /**
-     * Invokes dispatch within a timer context.
+     * Invokes dispatch within a timer context, spilling the message
+     * to disk if it fails and the module is setup to do so.
      */
     private <S extends Message, T extends Message> void timedDispatch(DispatcherState<W, S,T> state, T message) {
+        final SpillingDispatcher<S,T> spillingDispatcher = state.getSpillingDispatcher();
+        if (spillingDispatcher != null) {
+            spillingDispatcher.dispatch(message);
+        } else {
+            timedDispatchNow(state, message, false);
+        }
+    }
+
+    private <S extends Message, T extends Message> void timedDispatchNow(DispatcherState<W, S,T> state, T message, boolean spilling) {
         try (Context ctx = state.getDispatchTimer().time()) {
-            dispatch(state.getModule(), state.getMetaData(), message);
+            if (spilling) {
+                dispatchOrFail(state.getModule(), state.getMetaData(), message);
+            } else {
+                dispatch(state.getModule(), state.getMetaData(), message);
+            }
         }
     }
 
@@ -93,10 +136,54 @@ public abstract class AbstractMessageDispatcherFactory<W> implements MessageDisp
         Objects.requireNonNull(module, "module cannot be null");
         Objects.requireNonNull(module.getAsyncPolicy(), "module must have an AsyncPolicy");
         final DispatcherState<W,S,T> state = new DispatcherState<>(this, module);
+        final SpillPolicy spillPolicy = getSpillPolicy(module.getAsyncPolicy());
+        if (spillPolicy != null) {
+            try {
+                state.setSpillingDispatcher(new SpillingDispatcher<>(module, spillPolicy,
+                        message -> timedDispatchNow(state, message, true), getMetrics()));
+            } catch (IOException e) {
+                LOG.error("Failed to open the spill log for module {} in {}, messages will not be spilled.",
+                        module.getId(), spillPolicy.getDirectory(), e);
+            }
+        }
         final SyncDispatcher<S> syncDispatcher = createSyncDispatcher(state);
         return new AsyncDispatcherImpl<>(state, module.getAsyncPolicy(), syncDispatcher);
     }
 
+    private static SpillPolicy getSpillPolicy(AsyncPolicy asyncPolicy) {
+        if (asyncPolicy.getSpillPolicy() != null) {
+            return asyncPolicy.getSpillPolicy();
+        }
+        final String directory = System.getProperty(SPILL_DIRECTORY_SYS_PROP);
+        if (directory == null || directory.trim().isEmpty()) {
+            return null;
+        }
+        final long maxBytes = Long.getLong(SPILL_MAX_BYTES_SYS_PROP, 1024L * 1024L * 1024L);
+        final int segmentBytes = Integer.getInteger(SPILL_SEGMENT_BYTES_SYS_PROP, 16 * 1024 * 1024);
+        final EvictionPolicy evictionPolicy = EvictionPolicy.valueOf(System.getProperty(SPILL_EVICTION_POLICY_SYS_PROP, EvictionPolicy.DROP_OLDEST.name()));
+        return new SpillPolicy() {
+            @Override
+            public String getDirectory() {
+                return directory;
+            }
+
+            @Override
+            public long getMaxBytes() {
+                return maxBytes;
+            }
+
+            @Override
+            public int getSegmentBytes() {
+                return segmentBytes;
+            }
+
+            @Override
+            public EvictionPolicy getEvictionPolicy() {
+                return evictionPolicy;
+            }
+        };
+    }
+
     protected <S extends Message, T extends Message> SyncDispatcher<S> createSyncDispatcher(DispatcherState<W,S,T> state) {
         final SinkModule<S,T> module = state.getModule();
         if (module.getAggregationPolicy() != null) {
@@ -57,6 +57,8 @@ public class DispatcherState<W, S extends Message, T extends Message> implements
 
     private final Timer dispatchTimer;
 
+    private SpillingDispatcher<S, T> spillingDispatcher;
+
     public DispatcherState(AbstractMessageDispatcherFactory<W> dispatcherFactory, SinkModule<S, T> module) {
         this.module = module;
         metadata = dispatcherFactory.getModuleMetadata(module);
@@ -100,8 +102,19 @@ public class DispatcherState<W, S extends Message, T extends Message> implements
         return dispatchTimer;
     }
 
+    public SpillingDispatcher<S, T> getSpillingDispatcher() {
+        return spillingDispatcher;
+    }
+
+    public void setSpillingDispatcher(SpillingDispatcher<S, T> spillingDispatcher) {
+        this.spillingDispatcher = spillingDispatcher;
+    }
+
     @Override
     public void close() throws Exception {
+        if (spillingDispatcher != null) {
+            spillingDispatcher.close();
+        }
         final String prefix = MetricRegistry.name(module.getId());
         metrics.removeMatching(new MetricFilter() {
             @Override
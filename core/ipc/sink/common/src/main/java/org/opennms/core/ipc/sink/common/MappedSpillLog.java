@@ -0,0 +1,380 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.core.ipc.sink.common;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
+
+import org.opennms.core.ipc.sink.api.SpillPolicy.EvictionPolicy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A FIFO log of byte arrays stored in a sequence of memory-mapped segment files.
+ *
+ * Every record is stored as its length, the time at which it was appended and
+ * its payload. The length is written last, so that a record whose length is
+ * still 0 marks the end of the segment. Consumed records are marked by negating
+ * their length in place, and segments are deleted once all of their records
+ * have been consumed. The records that remain are picked up again when the log
+ * is reopened on the same directory.
+ */
+public class MappedSpillLog implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MappedSpillLog.class);
+
+    private static final String SEGMENT_SUFFIX = ".spill";
+
+    /**
+     * Length and timestamp.
+     */
+    private static final int RECORD_HEADER_BYTES = Integer.BYTES + Long.BYTES;
+
+    public static class Record {
+        private final Segment segment;
+        private final int position;
+        private final long timestamp;
+        private final byte[] payload;
+
+        private Record(Segment segment, int position, long timestamp, byte[] payload) {
+            this.segment = segment;
+            this.position = position;
+            this.timestamp = timestamp;
+            this.payload = payload;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public byte[] getPayload() {
+            return payload;
+        }
+    }
+
+    private static class Segment {
+        private final Path path;
+        private final MappedByteBuffer buffer;
+        private int readPosition = 0;
+        private int writePosition = 0;
+
+        private Segment(Path path, MappedByteBuffer buffer) {
+            this.path = path;
+            this.buffer = buffer;
+        }
+
+        private boolean hasRecords() {
+            return readPosition < writePosition;
+        }
+    }
+
+    private final Path directory;
+    private final long maxBytes;
+    private final int segmentBytes;
+    private final EvictionPolicy evictionPolicy;
+
+    private final Deque<Segment> segments = new ArrayDeque<>();
+    private long nextSegmentId = 0;
+    private long backlogBytes = 0;
+    private long backlogRecords = 0;
+    private long evictedRecords = 0;
+
+    public MappedSpillLog(Path directory, long maxBytes, int segmentBytes, EvictionPolicy evictionPolicy) throws IOException {
+        this.directory = Objects.requireNonNull(directory);
+        this.maxBytes = maxBytes;
+        this.segmentBytes = segmentBytes;
+        this.evictionPolicy = Objects.requireNonNull(evictionPolicy);
+        Files.createDirectories(directory);
+        recover();
+    }
+
+    /**
+     * Appends the given payload to the end of the log.
+     *
+     * @return <code>false</code> if the payload was discarded because the
+     * log is full and the eviction policy is {@link EvictionPolicy#DROP_NEWEST}
+     */
+    public synchronized boolean append(byte[] payload) throws IOException {
+        if (backlogBytes + payload.length > maxBytes) {
+            if (evictionPolicy == EvictionPolicy.DROP_NEWEST || payload.length > maxBytes) {
+                evictedRecords++;
+                return false;
+            }
+            while (backlogBytes + payload.length > maxBytes && remove()) {
+                evictedRecords++;
+            }
+        }
+
+        final int recordBytes = RECORD_HEADER_BYTES + payload.length;
+        Segment segment = segments.peekLast();
+        // Always keep room for a zeroed length at the end of the segment
+        if (segment == null || segment.writePosition + recordBytes + Integer.BYTES > segment.buffer.capacity()) {
+            segment = newSegment(Math.max(segmentBytes, recordBytes + Integer.BYTES));
+        }
+
+        final MappedByteBuffer buffer = segment.buffer;
+        final int position = segment.writePosition;
+        buffer.putLong(position + Integer.BYTES, System.currentTimeMillis());
+        final ByteBuffer view = buffer.duplicate();
+        view.position(position + RECORD_HEADER_BYTES);
+        view.put(payload);
+        buffer.putInt(position, payload.length);
+        segment.writePosition += recordBytes;
+
+        backlogBytes += payload.length;
+        backlogRecords++;
+        return true;
+    }
+
+    /**
+     * Returns the oldest record in the log without removing it.
+     *
+     * @return the record, or <code>null</code> if the log is empty
+     */
+    public synchronized Record peek() {
+        final Segment segment = segments.peekFirst();
+        if (segment == null || !segment.hasRecords()) {
+            return null;
+        }
+        final MappedByteBuffer buffer = segment.buffer;
+        final int position = segment.readPosition;
+        final byte[] payload = new byte[buffer.getInt(position)];
+        final ByteBuffer view = buffer.duplicate();
+        view.position(position + RECORD_HEADER_BYTES);
+        view.get(payload);
+        return new Record(segment, position, buffer.getLong(position + Integer.BYTES), payload);
+    }
+
+    /**
+     * Removes the oldest record from the log.
+     *
+     * @return <code>false</code> if the log was empty
+     */
+    public synchronized boolean remove() {
+        final Segment segment = segments.peekFirst();
+        if (segment == null || !segment.hasRecords()) {
+            return false;
+        }
+        removeHead(segment);
+        return true;
+    }
+
+    /**
+     * Removes the given record, if it is still the oldest record in the log.
+     *
+     * Consumers that {@link #peek()} a record and only remove it once it has been
+     * processed should use this method, since the record may have been evicted
+     * in the meantime by {@link #append(byte[])}.
+     *
+     * @return <code>false</code> if the record is no longer the oldest record
+     */
+    public synchronized boolean remove(Record record) {
+        final Segment segment = segments.peekFirst();
+        if (segment == null || !segment.hasRecords()
+                || segment != record.segment || segment.readPosition != record.position) {
+            return false;
+        }
+        removeHead(segment);
+        return true;
+    }
+
+    private void removeHead(Segment segment) {
+        final MappedByteBuffer buffer = segment.buffer;
+        final int length = buffer.getInt(segment.readPosition);
+        buffer.putInt(segment.readPosition, -length);
+        segment.readPosition = skipConsumed(buffer, segment.readPosition + RECORD_HEADER_BYTES + length, segment.writePosition);
+
+        backlogBytes -= length;
+        backlogRecords--;
+
+        if (!segment.hasRecords() && segments.size() > 1) {
+            segments.removeFirst();
+            delete(segment);
+        }
+    }
+
+    public synchronized boolean isEmpty() {
+        return backlogRecords == 0;
+    }
+
+    /**
+     * @return the number of payload bytes in the log
+     */
+    public synchronized long getBacklogBytes() {
+        return backlogBytes;
+    }
+
+    public synchronized long getBacklogRecords() {
+        return backlogRecords;
+    }
+
+    /**
+     * @return the number of records discarded by the eviction policy
+     */
+    public synchronized long getEvictedRecords() {
+        return evictedRecords;
+    }
+
+    /**
+     * @return the age in milliseconds of the oldest record, or 0 if the log is empty
+     */
+    public synchronized long getBacklogAgeMs() {
+        final Segment segment = segments.peekFirst();
+        if (segment == null || !segment.hasRecords()) {
+            return 0;
+        }
+        return Math.max(0, System.currentTimeMillis() - segment.buffer.getLong(segment.readPosition + Integer.BYTES));
+    }
+
+    @Override
+    public synchronized void close() {
+        for (final Segment segment : segments) {
+            segment.buffer.force();
+        }
+        segments.clear();
+    }
+
+    private Segment newSegment(int size) throws IOException {
+        // Only the last segment can be left without records
+        final Segment last = segments.peekLast();
+        if (last != null && !last.hasRecords()) {
+            segments.removeLast();
+            delete(last);
+        }
+
+        final long id = nextSegmentId++;
+        final Path path = directory.resolve(String.format("%020d%s", id, SEGMENT_SUFFIX));
+        final Segment segment = new Segment(path, map(path, size));
+        segments.addLast(segment);
+        return segment;
+    }
+
+    private static MappedByteBuffer map(Path path, int size) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // The mapping remains valid after the channel is closed
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(size, channel.size()));
+        }
+    }
+
+    private static void delete(Segment segment) {
+        try {
+            Files.deleteIfExists(segment.path);
+        } catch (IOException e) {
+            LOG.warn("Failed to delete spill segment {}", segment.path, e);
+        }
+    }
+
+    /**
+     * Returns the position of the first record at or after the given position
+     * that has not been consumed yet.
+     */
+    private static int skipConsumed(MappedByteBuffer buffer, int position, int limit) {
+        while (position < limit) {
+            final int length = buffer.getInt(position);
+            if (length >= 0) {
+                break;
+            }
+            position += RECORD_HEADER_BYTES - length;
+        }
+        return position;
+    }
+
+    /**
+     * Loads the segments left in the directory by a previous instance.
+     */
+    private void recover() throws IOException {
+        final List<Path> paths = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                paths.add(path);
+            }
+        }
+        Collections.sort(paths);
+
+        for (final Path path : paths) {
+            final long id;
+            try {
+                final String name = path.getFileName().toString();
+                id = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+            } catch (NumberFormatException e) {
+                LOG.warn("Ignoring unexpected file {} in the spill directory", path);
+                continue;
+            }
+            nextSegmentId = Math.max(nextSegmentId, id + 1);
+
+            final Segment segment = new Segment(path, map(path, 0));
+            final MappedByteBuffer buffer = segment.buffer;
+            int position = 0;
+            boolean first = true;
+            while (position + RECORD_HEADER_BYTES <= buffer.capacity()) {
+                final int length = buffer.getInt(position);
+                if (length == 0 || position + RECORD_HEADER_BYTES + Math.abs((long)length) > buffer.capacity()) {
+                    break;
+                }
+                if (length > 0) {
+                    if (first) {
+                        segment.readPosition = position;
+                        first = false;
+                    }
+                    backlogBytes += length;
+                    backlogRecords++;
+                }
+                position += RECORD_HEADER_BYTES + Math.abs(length);
+            }
+            segment.writePosition = position;
+            if (first) {
+                // Nothing left to consume
+                segment.readPosition = position;
+            }
+
+            if (segment.hasRecords()) {
+                segments.addLast(segment);
+            } else {
+                delete(segment);
+            }
+        }
+
+        if (backlogRecords > 0) {
+            LOG.info("Recovered {} spilled messages ({} bytes) from {}", backlogRecords, backlogBytes, directory);
+        }
+    }
+}
@@ -0,0 +1,198 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.core.ipc.sink.common;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.joda.time.Duration;
+import org.opennms.core.concurrent.LogPreservingThreadFactory;
+import org.opennms.core.ipc.sink.api.Message;
+import org.opennms.core.ipc.sink.api.SinkModule;
+import org.opennms.core.ipc.sink.api.SpillPolicy;
+import org.opennms.core.ipc.sink.common.MappedSpillLog.Record;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.swrve.ratelimitedlogger.RateLimitedLog;
+
+/**
+ * Dispatches messages with the given delegate and spills the ones that fail
+ * to a {@link MappedSpillLog}.
+ *
+ * Once messages have been spilled, subsequent messages are appended to the log
+ * as well, and a background thread replays the log in order until it is empty.
+ */
+public class SpillingDispatcher<S extends Message, T extends Message> implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SpillingDispatcher.class);
+
+    private static final long MIN_RETRY_DELAY_MS = TimeUnit.SECONDS.toMillis(1);
+    private static final long MAX_RETRY_DELAY_MS = TimeUnit.SECONDS.toMillis(30);
+
+    private final RateLimitedLog rateLimittedLogger = RateLimitedLog
+            .withRateLimit(LOG)
+            .maxRate(5).every(Duration.standardSeconds(30))
+            .build();
+
+    private final SinkModule<S, T> module;
+    private final Consumer<T> delegate;
+    private final MappedSpillLog log;
+    private final Counter spilledCounter;
+    private final Counter droppedCounter;
+    private final Thread drainer;
+    private final Object lock = new Object();
+
+    private volatile boolean closed = false;
+
+    public SpillingDispatcher(SinkModule<S, T> module, SpillPolicy spillPolicy, Consumer<T> delegate, MetricRegistry metrics) throws IOException {
+        this.module = Objects.requireNonNull(module);
+        this.delegate = Objects.requireNonNull(delegate);
+        log = new MappedSpillLog(Paths.get(spillPolicy.getDirectory(), module.getId()),
+                spillPolicy.getMaxBytes(), spillPolicy.getSegmentBytes(), spillPolicy.getEvictionPolicy());
+
+        spilledCounter = metrics.counter(MetricRegistry.name(module.getId(), "spill", "spilled"));
+        droppedCounter = metrics.counter(MetricRegistry.name(module.getId(), "spill", "dropped"));
+        metrics.register(MetricRegistry.name(module.getId(), "spill", "backlog-bytes"), new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return log.getBacklogBytes();
+            }
+        });
+        metrics.register(MetricRegistry.name(module.getId(), "spill", "backlog-messages"), new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return log.getBacklogRecords();
+            }
+        });
+        metrics.register(MetricRegistry.name(module.getId(), "spill", "backlog-age"), new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return log.getBacklogAgeMs();
+            }
+        });
+        metrics.register(MetricRegistry.name(module.getId(), "spill", "evicted"), new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return log.getEvictedRecords();
+            }
+        });
+
+        drainer = new LogPreservingThreadFactory("OpenNMS.Sink.Spill." + module.getId(), 1).newThread(this::drain);
+        drainer.start();
+    }
+
+    public void dispatch(T message) {
+        if (!log.isEmpty()) {
+            // Keep the messages in order while there is a backlog
+            spill(message);
+            return;
+        }
+        try {
+            delegate.accept(message);
+        } catch (RuntimeException e) {
+            rateLimittedLogger.warn("Failed to dispatch message for module {}, spilling it to disk.", module.getId(), e);
+            spill(message);
+        }
+    }
+
+    private void spill(T message) {
+        try {
+            if (log.append(module.marshal(message))) {
+                spilledCounter.inc();
+                synchronized (lock) {
+                    lock.notifyAll();
+                }
+            } else {
+                droppedCounter.inc();
+            }
+        } catch (IOException e) {
+            rateLimittedLogger.error("Failed to spill message for module {}, dropping it.", module.getId(), e);
+            droppedCounter.inc();
+        }
+    }
+
+    private void drain() {
+        long retryDelayMs = MIN_RETRY_DELAY_MS;
+        while (!closed) {
+            final Record record = log.peek();
+            if (record == null) {
+                synchronized (lock) {
+                    try {
+                        lock.wait(MIN_RETRY_DELAY_MS);
+                    } catch (InterruptedException e) {
+                        break;
+                    }
+                }
+                continue;
+            }
+
+            final T message;
+            try {
+                message = module.unmarshal(record.getPayload());
+            } catch (RuntimeException e) {
+                LOG.error("Failed to unmarshal spilled message for module {}, dropping it.", module.getId(), e);
+                if (log.remove(record)) {
+                    droppedCounter.inc();
+                }
+                continue;
+            }
+
+            try {
+                delegate.accept(message);
+                // The record may have been evicted while it was being delivered
+                log.remove(record);
+                retryDelayMs = MIN_RETRY_DELAY_MS;
+            } catch (RuntimeException e) {
+                rateLimittedLogger.warn("Failed to replay spilled message for module {}, retrying in {}ms.", module.getId(), retryDelayMs, e);
+                try {
+                    Thread.sleep(retryDelayMs);
+                } catch (InterruptedException ie) {
+                    break;
+                }
+                retryDelayMs = Math.min(retryDelayMs * 2, MAX_RETRY_DELAY_MS);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        closed = true;
+        drainer.interrupt();
+        drainer.join();
+        log.close();
+    }
+}
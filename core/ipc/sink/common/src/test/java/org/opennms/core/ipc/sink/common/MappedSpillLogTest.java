@@ -0,0 +1,151 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.core.ipc.sink.common;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opennms.core.ipc.sink.api.SpillPolicy.EvictionPolicy;
+
+public class MappedSpillLogTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void canAppendAndRemoveInOrder() throws Exception {
+        try (MappedSpillLog log = new MappedSpillLog(tempFolder.getRoot().toPath(), 1024 * 1024, 128, EvictionPolicy.DROP_OLDEST)) {
+            assertTrue(log.isEmpty());
+            assertNull(log.peek());
+
+            // Enough records to span several segments
+            for (int i = 0; i < 100; i++) {
+                assertTrue(log.append(bytes(i)));
+            }
+            assertEquals(100, log.getBacklogRecords());
+            assertTrue(tempFolder.getRoot().listFiles().length > 1);
+
+            for (int i = 0; i < 100; i++) {
+                assertArrayEquals(bytes(i), log.peek().getPayload());
+                assertTrue(log.remove());
+            }
+            assertTrue(log.isEmpty());
+            assertEquals(0, log.getBacklogBytes());
+            assertFalse(log.remove());
+            // Consumed segments are deleted
+            assertEquals(1, tempFolder.getRoot().listFiles().length);
+        }
+    }
+
+    @Test
+    public void canRecoverRecordsAfterReopening() throws Exception {
+        final File dir = tempFolder.getRoot();
+        try (MappedSpillLog log = new MappedSpillLog(dir.toPath(), 1024 * 1024, 128, EvictionPolicy.DROP_OLDEST)) {
+            for (int i = 0; i < 20; i++) {
+                log.append(bytes(i));
+            }
+            for (int i = 0; i < 5; i++) {
+                log.remove();
+            }
+        }
+
+        try (MappedSpillLog log = new MappedSpillLog(dir.toPath(), 1024 * 1024, 128, EvictionPolicy.DROP_OLDEST)) {
+            assertEquals(15, log.getBacklogRecords());
+            for (int i = 5; i < 20; i++) {
+                assertArrayEquals(bytes(i), log.peek().getPayload());
+                log.remove();
+            }
+            assertTrue(log.isEmpty());
+
+            // Appends go after the recovered records
+            log.append(bytes(42));
+            assertArrayEquals(bytes(42), log.peek().getPayload());
+        }
+    }
+
+    @Test
+    public void canDropOldestWhenFull() throws Exception {
+        final int size = bytes(0).length;
+        try (MappedSpillLog log = new MappedSpillLog(tempFolder.getRoot().toPath(), 10 * size, 1024, EvictionPolicy.DROP_OLDEST)) {
+            for (int i = 0; i < 15; i++) {
+                assertTrue(log.append(bytes(i)));
+            }
+            assertEquals(10, log.getBacklogRecords());
+            assertEquals(5, log.getEvictedRecords());
+            assertArrayEquals(bytes(5), log.peek().getPayload());
+        }
+    }
+
+    @Test
+    public void canDropNewestWhenFull() throws Exception {
+        final int size = bytes(0).length;
+        try (MappedSpillLog log = new MappedSpillLog(tempFolder.getRoot().toPath(), 10 * size, 1024, EvictionPolicy.DROP_NEWEST)) {
+            for (int i = 0; i < 15; i++) {
+                assertEquals(i < 10, log.append(bytes(i)));
+            }
+            assertEquals(10, log.getBacklogRecords());
+            assertEquals(5, log.getEvictedRecords());
+            assertArrayEquals(bytes(0), log.peek().getPayload());
+        }
+    }
+
+    @Test
+    public void doesNotRemoveRecordEvictedAfterPeek() throws Exception {
+        final int size = bytes(0).length;
+        try (MappedSpillLog log = new MappedSpillLog(tempFolder.getRoot().toPath(), 2 * size, 1024, EvictionPolicy.DROP_OLDEST)) {
+            log.append(bytes(0));
+            log.append(bytes(1));
+            final MappedSpillLog.Record record = log.peek();
+            assertArrayEquals(bytes(0), record.getPayload());
+
+            // Evicts the record that was peeked
+            log.append(bytes(2));
+            assertFalse(log.remove(record));
+            assertEquals(2, log.getBacklogRecords());
+            assertArrayEquals(bytes(1), log.peek().getPayload());
+
+            assertTrue(log.remove(log.peek()));
+            assertArrayEquals(bytes(2), log.peek().getPayload());
+        }
+    }
+
+    private static byte[] bytes(int i) {
+        return String.format("message-%04d", i).getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,118 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.core.ipc.sink.common;
+
+import static com.jayway.awaitility.Awaitility.await;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opennms.core.ipc.sink.api.Message;
+import org.opennms.core.ipc.sink.api.SinkModule;
+import org.opennms.core.ipc.sink.api.SpillPolicy;
+
+import com.codahale.metrics.MetricRegistry;
+
+public class SpillingDispatcherTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private static class MyMessage implements Message {
+        private final String value;
+
+        private MyMessage(String value) {
+            this.value = value;
+        }
+    }
+
+    @Test(timeout=60*1000)
+    public void canSpillAndReplayInOrder() throws Exception {
+        @SuppressWarnings("unchecked")
+        final SinkModule<MyMessage, MyMessage> module = mock(SinkModule.class);
+        when(module.getId()).thenReturn("test");
+        when(module.marshal(any(MyMessage.class))).thenAnswer(inv -> ((MyMessage)inv.getArguments()[0]).value.getBytes(StandardCharsets.UTF_8));
+        when(module.unmarshal(any(byte[].class))).thenAnswer(inv -> new MyMessage(new String((byte[])inv.getArguments()[0], StandardCharsets.UTF_8)));
+
+        final SpillPolicy spillPolicy = new SpillPolicy() {
+            @Override
+            public String getDirectory() {
+                return tempFolder.getRoot().getAbsolutePath();
+            }
+
+            @Override
+            public long getMaxBytes() {
+                return 1024 * 1024;
+            }
+        };
+
+        final AtomicBoolean available = new AtomicBoolean(true);
+        final List<String> dispatched = new CopyOnWriteArrayList<>();
+        final MetricRegistry metrics = new MetricRegistry();
+        try (SpillingDispatcher<MyMessage, MyMessage> dispatcher = new SpillingDispatcher<>(module, spillPolicy, message -> {
+                if (!available.get()) {
+                    throw new RuntimeException("unavailable");
+                }
+                dispatched.add(message.value);
+            }, metrics)) {
+
+            dispatcher.dispatch(new MyMessage("0"));
+            assertEquals(1, dispatched.size());
+
+            // Messages are spilled while the delegate is unavailable
+            available.set(false);
+            for (int i = 1; i < 10; i++) {
+                dispatcher.dispatch(new MyMessage(Integer.toString(i)));
+            }
+            assertEquals(1, dispatched.size());
+            assertEquals(9, metrics.counter("test.spill.spilled").getCount());
+
+            // They are replayed in order once it recovers, ahead of new messages
+            available.set(true);
+            dispatcher.dispatch(new MyMessage("10"));
+            await().atMost(30, TimeUnit.SECONDS).until(dispatched::size, equalTo(11));
+            for (int i = 0; i <= 10; i++) {
+                assertEquals(Integer.toString(i), dispatched.get(i));
+            }
+            assertEquals(0L, metrics.getGauges().get("test.spill.backlog-messages").getValue());
+        }
+    }
+}
@@ -71,6 +71,15 @@ public class KafkaRemoteMessageDispatcherFactory extends AbstractMessageDispatch
 
     @Override
     public <S extends Message, T extends Message> void dispatch(SinkModule<S, T> module, String topic, T message) {
+        send(module, topic, message, false);
+    }
+
+    @Override
+    public <S extends Message, T extends Message> void dispatchOrFail(SinkModule<S, T> module, String topic, T message) {
+        send(module, topic, message, true);
+    }
+
+    private <S extends Message, T extends Message> void send(SinkModule<S, T> module, String topic, T message, boolean failOnError) {
         try (MDCCloseable mdc = Logging.withPrefixCloseable(MessageConsumerManager.LOG_PREFIX)) {
             LOG.trace("dispatch({}): sending message {}", topic, message);
             final ProducerRecord<String,byte[]> record = new ProducerRecord<>(topic, module.marshal(message));
@@ -82,6 +91,10 @@ public class KafkaRemoteMessageDispatcherFactory extends AbstractMessageDispatch
             } catch (InterruptedException e) {
                 LOG.warn("Interrupted while sending message to topic {}.", topic, e);
             } catch (ExecutionException e) {
+                if (failOnError) {
+                    // Propagate the failure so that the message is spilled
+                    throw new RuntimeException("Error occured while sending message to topic " + topic + ".", e.getCause());
+                }
                 LOG.error("Error occured while sending message to topic {}.", topic, e);
             }
         }
@@ -0,0 +1,381 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+
+
+package org.opennms.netmgt.snmp;
+
+import java.net.InetAddress;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Learns a max-repetitions value for GETBULK requests per agent.
+ *
+ * The value starts at the configured max-repetitions and is adjusted by the walkers
+ * after every response: it grows while full responses stay well below the size and
+ * latency targets and shrinks on tooBig errors, timeouts, oversized or slow responses.
+ * The learned value is kept so that the next collection from the same agent starts
+ * where the last one left off. At most {@link #MAX_AGENTS_KEY} agents are remembered
+ * and agents that were not walked for {@link #AGENT_IDLE_TIMEOUT_KEY} milliseconds
+ * are forgotten.
+ *
+ * Agents are only tracked while the adaptive mode is enabled. Round-trip and varbind
+ * counts are totalled over all walks in either mode, see {@link #getTotals()}, so that
+ * both modes can be compared. Strategies can expose the per-agent statistics by
+ * registering a listener with {@link #addAgentListener(AgentListener)}.
+ */
+public class AdaptiveMaxRepetitions {
+    private static final Logger LOG = LoggerFactory.getLogger(AdaptiveMaxRepetitions.class);
+
+    public static final String ENABLED_KEY = "org.opennms.netmgt.snmp.adaptiveMaxRepetitions";
+    public static final String MAX_REPETITIONS_KEY = "org.opennms.netmgt.snmp.adaptiveMaxRepetitions.max";
+    public static final String MAX_RESPONSE_BYTES_KEY = "org.opennms.netmgt.snmp.adaptiveMaxRepetitions.maxResponseBytes";
+    public static final String TARGET_LATENCY_KEY = "org.opennms.netmgt.snmp.adaptiveMaxRepetitions.targetLatency";
+    public static final String MAX_AGENTS_KEY = "org.opennms.netmgt.snmp.adaptiveMaxRepetitions.maxAgents";
+    public static final String AGENT_IDLE_TIMEOUT_KEY = "org.opennms.netmgt.snmp.adaptiveMaxRepetitions.agentIdleTimeout";
+
+    private static final int DEFAULT_MAX_AGENTS = 10000;
+    private static final long DEFAULT_AGENT_IDLE_TIMEOUT = TimeUnit.DAYS.toMillis(1);
+
+    /**
+     * The known agents, least recently walked first. Guarded by itself.
+     */
+    private static final Map<InetAddress, AgentState> s_agents = new LinkedHashMap<>(16, 0.75f, true);
+
+    private static final List<AgentListener> s_listeners = new CopyOnWriteArrayList<>();
+
+    private static final Statistics s_totals = new Statistics();
+
+    /**
+     * Notified of the agents that are being tracked. The calls are made while
+     * holding the lock on the known agents and should return quickly.
+     */
+    public interface AgentListener {
+        void agentAdded(AgentState state);
+        void agentRemoved(AgentState state);
+    }
+
+    public static boolean isEnabled() {
+        return Boolean.getBoolean(ENABLED_KEY);
+    }
+
+    /**
+     * Returns the state for the given agent. The learned value is discarded if the
+     * configured max-repetitions for the agent has changed.
+     */
+    public static AgentState getAgentState(final InetAddress address, final int configuredMaxRepetitions) {
+        final long now = System.currentTimeMillis();
+        synchronized (s_agents) {
+            AgentState state = s_agents.get(address);
+            if (state == null) {
+                state = new AgentState(address, configuredMaxRepetitions,
+                        Integer.getInteger(MAX_REPETITIONS_KEY, 100),
+                        Integer.getInteger(MAX_RESPONSE_BYTES_KEY, 1400),
+                        Long.getLong(TARGET_LATENCY_KEY, 1000));
+                s_agents.put(address, state);
+                for (final AgentListener listener : s_listeners) {
+                    listener.agentAdded(state);
+                }
+            } else if (state.getConfiguredMaxRepetitions() != configuredMaxRepetitions) {
+                state.reconfigure(configuredMaxRepetitions);
+            }
+            state.m_lastUsed = now;
+            evict(state, now);
+            return state;
+        }
+    }
+
+    /**
+     * Removes the least recently walked agents until no more than the maximum
+     * number of agents are left and none of them is idle, keeping the given one.
+     */
+    private static void evict(final AgentState current, final long now) {
+        final int maxAgents = Math.max(1, Integer.getInteger(MAX_AGENTS_KEY, DEFAULT_MAX_AGENTS));
+        final long idleTimeout = Long.getLong(AGENT_IDLE_TIMEOUT_KEY, DEFAULT_AGENT_IDLE_TIMEOUT);
+        final Iterator<AgentState> it = s_agents.values().iterator();
+        while (it.hasNext()) {
+            final AgentState state = it.next();
+            if (state == current || (s_agents.size() <= maxAgents && now - state.m_lastUsed < idleTimeout)) {
+                break;
+            }
+            it.remove();
+            LOG.debug("Forgetting max-repetitions {} for {}", state.getMaxRepetitions(), state.getAddress());
+            for (final AgentListener listener : s_listeners) {
+                listener.agentRemoved(state);
+            }
+        }
+    }
+
+    /**
+     * Returns a copy of the states of the known agents.
+     */
+    public static Map<InetAddress, AgentState> getAgentStates() {
+        synchronized (s_agents) {
+            return new LinkedHashMap<>(s_agents);
+        }
+    }
+
+    /**
+     * Returns the statistics of all walks, whether or not the adaptive mode is enabled.
+     */
+    public static Statistics getTotals() {
+        return s_totals;
+    }
+
+    /**
+     * Registers a listener that is called with the state of every agent that is
+     * added or removed, and right away with the states of the known agents.
+     */
+    public static void addAgentListener(final AgentListener listener) {
+        synchronized (s_agents) {
+            s_listeners.add(listener);
+            s_agents.values().forEach(listener::agentAdded);
+        }
+    }
+
+    public static void removeAgentListener(final AgentListener listener) {
+        s_listeners.remove(listener);
+    }
+
+    public static void reset() {
+        synchronized (s_agents) {
+            for (final AgentState state : s_agents.values()) {
+                for (final AgentListener listener : s_listeners) {
+                    listener.agentRemoved(state);
+                }
+            }
+            s_agents.clear();
+        }
+    }
+
+    /**
+     * Walk statistics, for a single agent or for all of them.
+     */
+    public static class Statistics {
+        private final AtomicLong m_walks = new AtomicLong();
+        private final AtomicLong m_roundTrips = new AtomicLong();
+        private final AtomicLong m_varbinds = new AtomicLong();
+        private final AtomicLong m_tooBigs = new AtomicLong();
+        private final AtomicLong m_timeouts = new AtomicLong();
+
+        void walkStarted() {
+            m_walks.incrementAndGet();
+        }
+
+        void roundTrip(final int varbinds) {
+            m_roundTrips.incrementAndGet();
+            m_varbinds.addAndGet(varbinds);
+        }
+
+        void tooBig() {
+            m_tooBigs.incrementAndGet();
+        }
+
+        void timedOut() {
+            m_timeouts.incrementAndGet();
+        }
+
+        public long getWalks() {
+            return m_walks.get();
+        }
+
+        public long getRoundTrips() {
+            return m_roundTrips.get();
+        }
+
+        public long getVarbinds() {
+            return m_varbinds.get();
+        }
+
+        public long getTooBigs() {
+            return m_tooBigs.get();
+        }
+
+        public long getTimeouts() {
+            return m_timeouts.get();
+        }
+    }
+
+    public static class AgentState {
+        private final InetAddress m_address;
+        private final int m_maxRepetitionsLimit;
+        private final int m_maxResponseBytes;
+        private final long m_targetLatency;
+
+        private volatile int m_configuredMaxRepetitions;
+        private volatile int m_maxRepetitions;
+        private long m_lastUsed;
+
+        private final Statistics m_statistics = new Statistics();
+
+        public AgentState(final InetAddress address, final int maxRepetitions, final int maxRepetitionsLimit, final int maxResponseBytes, final long targetLatency) {
+            m_address = address;
+            m_configuredMaxRepetitions = maxRepetitions;
+            m_maxRepetitionsLimit = Math.max(1, maxRepetitionsLimit);
+            m_maxResponseBytes = maxResponseBytes;
+            m_targetLatency = targetLatency;
+            m_maxRepetitions = clamp(maxRepetitions);
+        }
+
+        /**
+         * The max-repetitions value to use for the next request to this agent.
+         */
+        public int getMaxRepetitions() {
+            return m_maxRepetitions;
+        }
+
+        private void reconfigure(final int maxRepetitions) {
+            LOG.debug("Configured max-repetitions for {} changed from {} to {}", m_address, m_configuredMaxRepetitions, maxRepetitions);
+            m_configuredMaxRepetitions = maxRepetitions;
+            m_maxRepetitions = clamp(maxRepetitions);
+        }
+
+        public void walkStarted() {
+            m_statistics.walkStarted();
+            s_totals.walkStarted();
+        }
+
+        /**
+         * Records a response that was received without errors and, if adaptive is set,
+         * adjusts the max-repetitions for the following requests.
+         *
+         * @param repeaters the number of repeating varbinds in the request, 0 for non-bulk requests
+         * @param maxRepetitions the max-repetitions of the request
+         * @param varbinds the number of varbinds in the response
+         * @param responseBytes the encoded size of the response PDU
+         * @param latency the time between sending the request and receiving the response, in milliseconds
+         */
+        public void responseReceived(final int repeaters, final int maxRepetitions, final int varbinds, final int responseBytes, final long latency, final boolean adaptive) {
+            m_statistics.roundTrip(varbinds);
+            s_totals.roundTrip(varbinds);
+            if (!adaptive || repeaters < 1 || maxRepetitions < 1) {
+                return;
+            }
+
+            if (responseBytes > m_maxResponseBytes || latency > m_targetLatency) {
+                // the response is likely to be fragmented or the agent is struggling, back off
+                update(maxRepetitions, maxRepetitions * 3 / 4);
+            } else if (varbinds >= repeaters * maxRepetitions && responseBytes * 2 <= m_maxResponseBytes && latency * 2 <= m_targetLatency) {
+                // the agent filled every repetition with room to spare, ask for as many as
+                // we expect to fit but at most twice the current value
+                final int bytesPerRepetition = Math.max(1, responseBytes / maxRepetitions);
+                update(maxRepetitions, Math.min(maxRepetitions * 2, m_maxResponseBytes / bytesPerRepetition));
+            }
+        }
+
+        /**
+         * Records a tooBig error. The response is only counted as a round trip if the
+         * request is going to be retried, otherwise it is passed on to
+         * {@link #responseReceived(int, int, int, int, long, boolean)} by the walker.
+         *
+         * @return true if the request can be retried with a smaller max-repetitions
+         */
+        public boolean tooBig(final int maxRepetitions, final boolean adaptive) {
+            m_statistics.tooBig();
+            s_totals.tooBig();
+            if (!adaptive || maxRepetitions <= 1) {
+                return false;
+            }
+            m_statistics.roundTrip(0);
+            s_totals.roundTrip(0);
+            update(maxRepetitions, maxRepetitions / 2);
+            return true;
+        }
+
+        public void timedOut(final int maxRepetitions, final boolean adaptive) {
+            m_statistics.timedOut();
+            s_totals.timedOut();
+            if (adaptive && maxRepetitions > 1) {
+                update(maxRepetitions, maxRepetitions / 2);
+            }
+        }
+
+        private void update(final int current, final int next) {
+            final int maxRepetitions = clamp(next);
+            if (maxRepetitions != current) {
+                LOG.debug("Changing max-repetitions for {} from {} to {}", m_address, current, maxRepetitions);
+            }
+            m_maxRepetitions = maxRepetitions;
+        }
+
+        private int clamp(final int maxRepetitions) {
+            return Math.max(1, Math.min(m_maxRepetitionsLimit, maxRepetitions));
+        }
+
+        public InetAddress getAddress() {
+            return m_address;
+        }
+
+        public int getConfiguredMaxRepetitions() {
+            return m_configuredMaxRepetitions;
+        }
+
+        public long getWalks() {
+            return m_statistics.getWalks();
+        }
+
+        public long getRoundTrips() {
+            return m_statistics.getRoundTrips();
+        }
+
+        public long getVarbinds() {
+            return m_statistics.getVarbinds();
+        }
+
+        public long getTooBigs() {
+            return m_statistics.getTooBigs();
+        }
+
+        public long getTimeouts() {
+            return m_statistics.getTimeouts();
+        }
+
+        @Override
+        public String toString() {
+            return new ToStringBuilder(this)
+                .append("address", m_address)
+                .append("max repetitions", m_maxRepetitions)
+                .append("walks", getWalks())
+                .append("round trips", getRoundTrips())
+                .append("varbinds", getVarbinds())
+                .append("tooBigs", getTooBigs())
+                .append("timeouts", getTimeouts())
+                .toString();
+        }
+    }
+}
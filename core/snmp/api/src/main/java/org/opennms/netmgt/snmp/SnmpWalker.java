@@ -32,7 +32,11 @@ import java.net.InetAddress;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 public abstract class SnmpWalker implements AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(SnmpWalker.class);
 
     protected abstract static class WalkerPduBuilder extends PduBuilder {
         protected WalkerPduBuilder(int maxVarsPerPdu) {
@@ -57,14 +61,24 @@ public abstract class SnmpWalker implements AutoCloseable {
 
     private SnmpWalkCallback m_callback;
 
+    private final AdaptiveMaxRepetitions.AgentState m_agentState;
+    private final boolean m_adaptive;
+    private long m_sentAt;
+    private int m_roundTrips = 0;
+    private int m_varbinds = 0;
+
     protected SnmpWalker(InetAddress address, String name, int maxVarsPerPdu, int maxRepetitions, int maxRetries, CollectionTracker tracker) {
         m_address = address;
         m_signal = new CountDownLatch(1);
         
         m_name = name;
 
+        // Agents are only tracked in adaptive mode, otherwise only the totals are counted
+        m_adaptive = address != null && AdaptiveMaxRepetitions.isEnabled();
+        m_agentState = m_adaptive ? AdaptiveMaxRepetitions.getAgentState(address, maxRepetitions) : null;
+
         m_tracker = tracker;
-        m_tracker.setMaxRepetitions(maxRepetitions);
+        m_tracker.setMaxRepetitions(m_adaptive ? m_agentState.getMaxRepetitions() : maxRepetitions);
         m_tracker.setMaxRetries(maxRetries);
         
         m_maxVarsPerPdu = maxVarsPerPdu;
@@ -83,6 +97,11 @@ public abstract class SnmpWalker implements AutoCloseable {
     protected abstract WalkerPduBuilder createPduBuilder(int maxVarsPerPdu);
     
     public void start() {
+        if (m_agentState != null) {
+            m_agentState.walkStarted();
+        } else {
+            AdaptiveMaxRepetitions.getTotals().walkStarted();
+        }
         m_pduBuilder = createPduBuilder(m_maxVarsPerPdu);
         try {
             buildAndSendNextPdu();
@@ -99,14 +118,78 @@ public abstract class SnmpWalker implements AutoCloseable {
         if (m_tracker.isFinished()) {
             handleDone();
         } else {
+            if (m_adaptive) {
+                m_tracker.setMaxRepetitions(m_agentState.getMaxRepetitions());
+            }
             m_pduBuilder.reset();
             m_responseProcessor = m_tracker.buildNextPdu(m_pduBuilder);
+            m_sentAt = System.currentTimeMillis();
             sendNextPdu(m_pduBuilder);
         }
     }
 
     protected abstract void sendNextPdu(WalkerPduBuilder pduBuilder) throws SnmpException;
 
+    /**
+     * Called by the implementations for every response that carries varbinds, before they are processed.
+     *
+     * @param repeaters the number of repeating varbinds in the request, 0 if it was not a GETBULK
+     * @param maxRepetitions the max-repetitions of the request
+     * @param varbinds the number of varbinds in the response
+     * @param responseBytes the encoded size of the response
+     */
+    protected void responseReceived(int repeaters, int maxRepetitions, int varbinds, int responseBytes) {
+        m_roundTrips++;
+        m_varbinds += varbinds;
+        if (m_agentState != null) {
+            m_agentState.responseReceived(repeaters, maxRepetitions, varbinds, responseBytes, System.currentTimeMillis() - m_sentAt, m_adaptive);
+        } else {
+            AdaptiveMaxRepetitions.getTotals().roundTrip(varbinds);
+        }
+    }
+
+    /**
+     * Called by the implementations when a GETBULK request was answered with a tooBig error.
+     *
+     * @return true if the max-repetitions were reduced and the request should be sent again,
+     *  false if the error should be handled by the trackers
+     */
+    protected boolean tooBigReceived(int maxRepetitions) {
+        if (m_agentState == null) {
+            AdaptiveMaxRepetitions.getTotals().tooBig();
+        } else if (m_agentState.tooBig(maxRepetitions, m_adaptive)) {
+            m_roundTrips++;
+            LOG.debug("Received tooBig from {} with max-repetitions {}, retrying with {}", m_address, maxRepetitions, m_agentState.getMaxRepetitions());
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Called by the implementations when a GETBULK request timed out.
+     */
+    protected void timeoutReceived(int maxRepetitions) {
+        if (m_agentState != null) {
+            m_agentState.timedOut(maxRepetitions, m_adaptive);
+        } else {
+            AdaptiveMaxRepetitions.getTotals().timedOut();
+        }
+    }
+
+    /**
+     * @return the number of requests answered by the agent during this walk
+     */
+    public final int getRoundTrips() {
+        return m_roundTrips;
+    }
+
+    /**
+     * @return the number of varbinds received during this walk
+     */
+    public final int getVarbinds() {
+        return m_varbinds;
+    }
+
     protected void handleDone() {
         finish();
     }
@@ -162,6 +245,8 @@ public abstract class SnmpWalker implements AutoCloseable {
     }
 
     private void finish() {
+        LOG.debug("{} for {} completed after {} round trips with {} varbinds{}", m_name, m_address, m_roundTrips, m_varbinds,
+                m_adaptive ? ", max-repetitions is now " + m_agentState.getMaxRepetitions() : "");
         signal();
         // Trigger the callback after the latch was decreased and the session was closed.
         if (m_callback != null) {
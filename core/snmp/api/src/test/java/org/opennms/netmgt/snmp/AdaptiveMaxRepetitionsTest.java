@@ -0,0 +1,210 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.snmp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+import org.opennms.netmgt.snmp.AdaptiveMaxRepetitions.AgentListener;
+import org.opennms.netmgt.snmp.AdaptiveMaxRepetitions.AgentState;
+
+public class AdaptiveMaxRepetitionsTest {
+
+    private static final InetAddress ADDRESS = InetAddress.getLoopbackAddress();
+
+    @After
+    public void tearDown() {
+        System.clearProperty(AdaptiveMaxRepetitions.MAX_AGENTS_KEY);
+        System.clearProperty(AdaptiveMaxRepetitions.AGENT_IDLE_TIMEOUT_KEY);
+        AdaptiveMaxRepetitions.reset();
+    }
+
+    @Test
+    public void canGrowWhileResponsesAreSmallAndFast() {
+        final AgentState state = new AgentState(ADDRESS, 2, 100, 1400, 1000);
+        // 2 repeaters, 2 repetitions, 4 varbinds of 25 bytes each
+        state.responseReceived(2, 2, 4, 100, 10, true);
+        assertEquals(4, state.getMaxRepetitions());
+        state.responseReceived(2, 4, 8, 200, 10, true);
+        assertEquals(8, state.getMaxRepetitions());
+        // 50 bytes per repetition, at most 28 repetitions fit
+        state.responseReceived(2, 16, 32, 800, 10, true);
+        assertEquals(8, state.getMaxRepetitions());
+        state.responseReceived(2, 8, 16, 400, 10, true);
+        assertEquals(16, state.getMaxRepetitions());
+        state.responseReceived(2, 16, 32, 600, 10, true);
+        assertEquals(32, state.getMaxRepetitions());
+        state.responseReceived(2, 32, 64, 680, 10, true);
+        assertEquals(64, state.getMaxRepetitions());
+        state.responseReceived(2, 64, 128, 690, 10, true);
+        assertEquals(100, state.getMaxRepetitions());
+
+        assertEquals(7, state.getRoundTrips());
+        assertEquals(284, state.getVarbinds());
+    }
+
+    @Test
+    public void doesNotGrowOnPartialResponses() {
+        final AgentState state = new AgentState(ADDRESS, 10, 100, 1400, 1000);
+        // the end of the table was reached
+        state.responseReceived(1, 10, 3, 100, 10, true);
+        assertEquals(10, state.getMaxRepetitions());
+    }
+
+    @Test
+    public void canShrinkOnLargeOrSlowResponses() {
+        final AgentState state = new AgentState(ADDRESS, 40, 100, 1400, 1000);
+        state.responseReceived(1, 40, 40, 2000, 10, true);
+        assertEquals(30, state.getMaxRepetitions());
+        state.responseReceived(1, 30, 30, 1000, 1500, true);
+        assertEquals(22, state.getMaxRepetitions());
+    }
+
+    @Test
+    public void canShrinkOnTooBigAndTimeouts() {
+        final AgentState state = new AgentState(ADDRESS, 40, 100, 1400, 1000);
+        assertTrue(state.tooBig(40, true));
+        assertEquals(20, state.getMaxRepetitions());
+        state.timedOut(20, true);
+        assertEquals(10, state.getMaxRepetitions());
+
+        state.timedOut(1, true);
+        assertEquals(10, state.getMaxRepetitions());
+        assertFalse(state.tooBig(1, true));
+        assertEquals(2, state.getTooBigs());
+        assertEquals(2, state.getTimeouts());
+        assertEquals(1, state.getRoundTrips());
+    }
+
+    @Test
+    public void onlyCountsWhenNotAdaptive() {
+        final long roundTrips = AdaptiveMaxRepetitions.getTotals().getRoundTrips();
+        final long varbinds = AdaptiveMaxRepetitions.getTotals().getVarbinds();
+        final AgentState state = new AgentState(ADDRESS, 2, 100, 1400, 1000);
+        state.responseReceived(1, 2, 2, 10, 10, false);
+        assertFalse(state.tooBig(2, false));
+        state.timedOut(2, false);
+        assertEquals(2, state.getMaxRepetitions());
+        assertEquals(1, state.getRoundTrips());
+        assertEquals(2, state.getVarbinds());
+        assertEquals(roundTrips + 1, AdaptiveMaxRepetitions.getTotals().getRoundTrips());
+        assertEquals(varbinds + 2, AdaptiveMaxRepetitions.getTotals().getVarbinds());
+    }
+
+    @Test
+    public void canRememberAgentsUntilTheConfigChanges() {
+        final AgentState state = AdaptiveMaxRepetitions.getAgentState(ADDRESS, 5);
+        state.tooBig(5, true);
+        assertSame(state, AdaptiveMaxRepetitions.getAgentState(ADDRESS, 5));
+        assertEquals(2, AdaptiveMaxRepetitions.getAgentState(ADDRESS, 5).getMaxRepetitions());
+
+        final AgentState changed = AdaptiveMaxRepetitions.getAgentState(ADDRESS, 8);
+        assertSame(state, changed);
+        assertEquals(8, changed.getMaxRepetitions());
+    }
+
+    @Test
+    public void canForgetLeastRecentlyWalkedAgents() throws Exception {
+        System.setProperty(AdaptiveMaxRepetitions.MAX_AGENTS_KEY, "2");
+        final InetAddress first = InetAddress.getByName("192.0.2.1");
+        final InetAddress second = InetAddress.getByName("192.0.2.2");
+        final InetAddress third = InetAddress.getByName("192.0.2.3");
+        final RecordingListener listener = new RecordingListener();
+        AdaptiveMaxRepetitions.addAgentListener(listener);
+        try {
+            AdaptiveMaxRepetitions.getAgentState(first, 5);
+            AdaptiveMaxRepetitions.getAgentState(second, 5);
+            AdaptiveMaxRepetitions.getAgentState(first, 5);
+            AdaptiveMaxRepetitions.getAgentState(third, 5);
+
+            assertEquals(Arrays.asList(first, third), new ArrayList<>(AdaptiveMaxRepetitions.getAgentStates().keySet()));
+            assertEquals(Collections.singletonList(second), listener.removed);
+
+            // Agents that were not walked for too long are forgotten as well
+            System.setProperty(AdaptiveMaxRepetitions.AGENT_IDLE_TIMEOUT_KEY, "0");
+            AdaptiveMaxRepetitions.getAgentState(second, 5);
+            assertEquals(Collections.singletonList(second), new ArrayList<>(AdaptiveMaxRepetitions.getAgentStates().keySet()));
+            assertEquals(Arrays.asList(second, first, third), listener.removed);
+        } finally {
+            AdaptiveMaxRepetitions.removeAgentListener(listener);
+        }
+    }
+
+    @Test
+    public void notifiesListenersOfNewAgents() {
+        final RecordingListener listener = new RecordingListener();
+        AdaptiveMaxRepetitions.getAgentState(ADDRESS, 5);
+        AdaptiveMaxRepetitions.addAgentListener(listener);
+        try {
+            // Known agents are reported right away
+            assertEquals(Collections.singletonList(ADDRESS), listener.added);
+
+            // Changing the configuration of a known agent does not report it again
+            AdaptiveMaxRepetitions.getAgentState(ADDRESS, 8);
+            assertEquals(1, listener.added.size());
+
+            AdaptiveMaxRepetitions.reset();
+            assertEquals(Collections.singletonList(ADDRESS), listener.removed);
+            AdaptiveMaxRepetitions.getAgentState(ADDRESS, 8);
+            assertEquals(2, listener.added.size());
+        } finally {
+            AdaptiveMaxRepetitions.removeAgentListener(listener);
+        }
+        AdaptiveMaxRepetitions.reset();
+        AdaptiveMaxRepetitions.getAgentState(ADDRESS, 8);
+        assertEquals(2, listener.added.size());
+        assertEquals(1, listener.removed.size());
+    }
+
+    private static class RecordingListener implements AgentListener {
+        private final List<InetAddress> added = new ArrayList<>();
+        private final List<InetAddress> removed = new ArrayList<>();
+
+        @Override
+        public void agentAdded(AgentState state) {
+            added.add(state.getAddress());
+        }
+
+        @Override
+        public void agentRemoved(AgentState state) {
+            removed.add(state.getAddress());
+        }
+    }
+}
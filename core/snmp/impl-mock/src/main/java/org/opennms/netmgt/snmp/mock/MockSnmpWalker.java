@@ -220,6 +220,7 @@ public class MockSnmpWalker extends SnmpWalker {
 	            	index++;
 	            }
 
+	            responseReceived(0, 1, responses.size(), 0);
 	            if (!processErrors(errorStatus.ordinal(), errorIndex)) {
 	            	LOG.debug("Responding with PDU of size {}.", responses.size());
 	            	for(MockVarBind vb : responses) {
@@ -0,0 +1,453 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.snmp.snmp4j;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.opennms.netmgt.snmp.AdaptiveMaxRepetitions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snmp4j.MessageDispatcher;
+import org.snmp4j.MessageDispatcherImpl;
+import org.snmp4j.PDU;
+import org.snmp4j.Snmp;
+import org.snmp4j.Target;
+import org.snmp4j.TransportMapping;
+import org.snmp4j.event.ResponseEvent;
+import org.snmp4j.event.ResponseListener;
+import org.snmp4j.mp.MPv1;
+import org.snmp4j.mp.MPv2c;
+import org.snmp4j.mp.MPv3;
+import org.snmp4j.security.SecurityProtocols;
+import org.snmp4j.security.USM;
+import org.snmp4j.security.UsmUser;
+import org.snmp4j.smi.Address;
+import org.snmp4j.smi.OctetString;
+import org.snmp4j.transport.DefaultUdpTransportMapping;
+import org.snmp4j.util.MultiThreadedMessageDispatcher;
+import org.snmp4j.util.ThreadPool;
+import org.snmp4j.util.WorkerPool;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.JmxReporter;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+/**
+ * <p>A set of long-lived SNMP4J sessions that all requests are multiplexed over.</p>
+ *
+ * <p>SNMPv1 and SNMPv2c requests are spread over a fixed number of sessions, the
+ * community being part of the target rather than of the session. SNMPv3 requests
+ * use one session per set of credentials, so that each USM only holds a single
+ * user and the engine IDs and times it discovers are kept for later requests.
+ * Idle SNMPv3 sessions are closed once there are more than
+ * {@link #MAX_V3_SESSIONS_KEY} of them.</p>
+ *
+ * <p>Responses are dispatched to a shared pool of threads. The number of
+ * requests outstanding for a single agent is bounded by
+ * {@link #MAX_REQUESTS_PER_AGENT_KEY}; further requests are queued and sent as
+ * earlier ones complete.</p>
+ */
+public class Snmp4JSessionPool {
+    private static final Logger LOG = LoggerFactory.getLogger(Snmp4JSessionPool.class);
+
+    public static final String SESSIONS_KEY = "org.opennms.snmp.snmp4j.sessions";
+    public static final String DISPATCHER_THREADS_KEY = "org.opennms.snmp.snmp4j.dispatcherThreads";
+    public static final String MAX_REQUESTS_PER_AGENT_KEY = "org.opennms.snmp.snmp4j.maxRequestsPerAgent";
+    public static final String MAX_V3_SESSIONS_KEY = "org.opennms.snmp.snmp4j.maxV3Sessions";
+
+    private static final int DEFAULT_SESSIONS = 4;
+    private static final int DEFAULT_DISPATCHER_THREADS = Math.max(4, Runtime.getRuntime().availableProcessors());
+    private static final int DEFAULT_MAX_REQUESTS_PER_AGENT = 32;
+    private static final int DEFAULT_MAX_V3_SESSIONS = 64;
+
+    private static class PooledSession {
+        private final Snmp m_snmp;
+        private final AtomicInteger m_outstanding = new AtomicInteger(0);
+
+        private PooledSession(Snmp snmp) {
+            m_snmp = snmp;
+        }
+    }
+
+    /**
+     * The requests outstanding and waiting for a single agent.
+     */
+    private static class AgentQueue {
+        private int m_outstanding = 0;
+        private final Queue<Runnable> m_waiting = new ArrayDeque<>();
+    }
+
+    private final int m_maxRequestsPerAgent;
+    private final int m_maxV3Sessions;
+    private final WorkerPool m_dispatcherPool;
+
+    private final PooledSession[] m_sessions;
+    private final AtomicInteger m_nextSession = new AtomicInteger(0);
+    private final Map<List<Object>, PooledSession> m_v3Sessions = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Address, AgentQueue> m_agents = new ConcurrentHashMap<>();
+
+    private final MetricRegistry m_metrics = new MetricRegistry();
+    private final Meter m_requests = m_metrics.meter("requests");
+    private final Meter m_timeouts = m_metrics.meter("timeouts");
+    private final Meter m_errors = m_metrics.meter("errors");
+    private final Timer m_responseTimes = m_metrics.timer("responses");
+    private final AtomicInteger m_outstanding = new AtomicInteger(0);
+    private final AtomicInteger m_queued = new AtomicInteger(0);
+    private final AtomicInteger m_sockets = new AtomicInteger(0);
+    private final JmxReporter m_reporter;
+    private final AdaptiveMaxRepetitions.AgentListener m_agentListener = new AdaptiveMaxRepetitions.AgentListener() {
+        @Override
+        public void agentAdded(final AdaptiveMaxRepetitions.AgentState state) {
+            registerAgentMetrics(state);
+        }
+
+        @Override
+        public void agentRemoved(final AdaptiveMaxRepetitions.AgentState state) {
+            final String prefix = getAgentMetricPrefix(state) + ".";
+            m_metrics.removeMatching((name, metric) -> name.startsWith(prefix));
+        }
+    };
+
+    public Snmp4JSessionPool() {
+        this(Integer.getInteger(SESSIONS_KEY, DEFAULT_SESSIONS),
+             Integer.getInteger(DISPATCHER_THREADS_KEY, DEFAULT_DISPATCHER_THREADS),
+             Integer.getInteger(MAX_REQUESTS_PER_AGENT_KEY, DEFAULT_MAX_REQUESTS_PER_AGENT),
+             Integer.getInteger(MAX_V3_SESSIONS_KEY, DEFAULT_MAX_V3_SESSIONS));
+    }
+
+    public Snmp4JSessionPool(int sessions, int dispatcherThreads, int maxRequestsPerAgent, int maxV3Sessions) {
+        m_sessions = new PooledSession[Math.max(1, sessions)];
+        m_maxRequestsPerAgent = maxRequestsPerAgent > 0 ? maxRequestsPerAgent : Integer.MAX_VALUE;
+        m_maxV3Sessions = Math.max(1, maxV3Sessions);
+        m_dispatcherPool = ThreadPool.create("SNMP4J-Dispatcher", Math.max(1, dispatcherThreads));
+
+        m_metrics.register("requests.outstanding", (Gauge<Integer>) m_outstanding::get);
+        m_metrics.register("requests.queued", (Gauge<Integer>) m_queued::get);
+        m_metrics.register("sockets", (Gauge<Integer>) m_sockets::get);
+        m_metrics.register("agents", (Gauge<Integer>) m_agents::size);
+        final AdaptiveMaxRepetitions.Statistics totals = AdaptiveMaxRepetitions.getTotals();
+        m_metrics.register("walks", (Gauge<Long>) totals::getWalks);
+        m_metrics.register("walks.round-trips", (Gauge<Long>) totals::getRoundTrips);
+        m_metrics.register("walks.varbinds", (Gauge<Long>) totals::getVarbinds);
+        m_metrics.register("walks.too-bigs", (Gauge<Long>) totals::getTooBigs);
+        m_metrics.register("walks.timeouts", (Gauge<Long>) totals::getTimeouts);
+        AdaptiveMaxRepetitions.addAgentListener(m_agentListener);
+        m_reporter = JmxReporter.forRegistry(m_metrics).inDomain("org.opennms.netmgt.snmp.snmp4j").build();
+        m_reporter.start();
+    }
+
+    /**
+     * Registers gauges for the max-repetitions and the walk statistics kept for
+     * the agent by {@link AdaptiveMaxRepetitions}. These are only available while
+     * the adaptive mode is enabled and are removed when the agent is forgotten.
+     */
+    private void registerAgentMetrics(final AdaptiveMaxRepetitions.AgentState state) {
+        final String prefix = getAgentMetricPrefix(state);
+        registerAgentGauge(MetricRegistry.name(prefix, "max-repetitions"), () -> (long)state.getMaxRepetitions());
+        registerAgentGauge(MetricRegistry.name(prefix, "walks"), state::getWalks);
+        registerAgentGauge(MetricRegistry.name(prefix, "round-trips"), state::getRoundTrips);
+        registerAgentGauge(MetricRegistry.name(prefix, "varbinds"), state::getVarbinds);
+        registerAgentGauge(MetricRegistry.name(prefix, "too-bigs"), state::getTooBigs);
+        registerAgentGauge(MetricRegistry.name(prefix, "timeouts"), state::getTimeouts);
+    }
+
+    private void registerAgentGauge(final String name, final Gauge<Long> gauge) {
+        m_metrics.remove(name);
+        m_metrics.register(name, gauge);
+    }
+
+    private static String getAgentMetricPrefix(final AdaptiveMaxRepetitions.AgentState state) {
+        return MetricRegistry.name("agent", state.getAddress().getHostAddress());
+    }
+
+    public MetricRegistry getMetricRegistry() {
+        return m_metrics;
+    }
+
+    /**
+     * Sends the given request. The listener is called exactly once, with the
+     * response, a timeout or an error. Requests that are queued behind others to
+     * the same agent report send errors to the listener instead of throwing them.
+     *
+     * @throws IOException if the request could not be sent right away
+     */
+    public void send(final Snmp4JAgentConfig agentConfig, final PDU pdu, final Target target, final ResponseListener listener) throws IOException {
+        // The session is released when the request completes
+        final PooledSession session = acquireSession(agentConfig);
+        final Address address = target.getAddress();
+        final Request request = new Request(session, address, pdu, target, listener);
+
+        m_requests.mark();
+        m_outstanding.incrementAndGet();
+
+        final boolean[] sendNow = { false };
+        m_agents.compute(address, (a, queue) -> {
+            if (queue == null) {
+                queue = new AgentQueue();
+            }
+            if (queue.m_outstanding < m_maxRequestsPerAgent) {
+                queue.m_outstanding++;
+                sendNow[0] = true;
+            } else {
+                queue.m_waiting.add(request::sendQueued);
+                m_queued.incrementAndGet();
+            }
+            return queue;
+        });
+
+        if (sendNow[0]) {
+            request.send();
+        }
+    }
+
+    /**
+     * Sends a PDU for which no response is expected, such as a trap.
+     */
+    public void sendUnconfirmed(final Snmp4JAgentConfig agentConfig, final PDU pdu, final Target target) throws IOException {
+        m_requests.mark();
+        final PooledSession session = acquireSession(agentConfig);
+        try {
+            session.m_snmp.send(pdu, target);
+        } finally {
+            session.m_outstanding.decrementAndGet();
+        }
+    }
+
+    private class Request implements ResponseListener {
+        private final PooledSession m_session;
+        private final Address m_address;
+        private final PDU m_pdu;
+        private final Target m_target;
+        private final ResponseListener m_listener;
+        private final AtomicBoolean m_completed = new AtomicBoolean(false);
+        private Timer.Context m_timerContext;
+
+        private Request(PooledSession session, Address address, PDU pdu, Target target, ResponseListener listener) {
+            m_session = session;
+            m_address = address;
+            m_pdu = pdu;
+            m_target = target;
+            m_listener = listener;
+        }
+
+        private void send() throws IOException {
+            m_timerContext = m_responseTimes.time();
+            try {
+                m_session.m_snmp.send(m_pdu, m_target, null, this);
+            } catch (final IOException | RuntimeException e) {
+                m_errors.mark();
+                complete();
+                throw e;
+            }
+        }
+
+        private void sendQueued() {
+            m_queued.decrementAndGet();
+            try {
+                send();
+            } catch (final Exception e) {
+                LOG.debug("Failed to send queued request to {}", m_address, e);
+                m_listener.onResponse(new ResponseEvent(m_session.m_snmp, null, m_pdu, null, null, e));
+            }
+        }
+
+        @Override
+        public void onResponse(final ResponseEvent event) {
+            // Asynchronous requests are kept by SNMP4J until they are cancelled
+            m_session.m_snmp.cancel(event.getRequest(), this);
+            if (!complete()) {
+                return;
+            }
+
+            if (event.getResponse() == null && event.getError() == null) {
+                m_timeouts.mark();
+            } else if (event.getError() != null) {
+                m_errors.mark();
+            } else {
+                m_timerContext.stop();
+            }
+            m_listener.onResponse(event);
+        }
+
+        /**
+         * Releases the slot held by this request and sends the next queued request to the same agent.
+         *
+         * @return false if the request had already been completed
+         */
+        private boolean complete() {
+            if (!m_completed.compareAndSet(false, true)) {
+                return false;
+            }
+            m_session.m_outstanding.decrementAndGet();
+            m_outstanding.decrementAndGet();
+
+            final Runnable[] next = { null };
+            m_agents.computeIfPresent(m_address, (a, queue) -> {
+                next[0] = queue.m_waiting.poll();
+                if (next[0] == null) {
+                    queue.m_outstanding--;
+                }
+                return queue.m_outstanding == 0 && queue.m_waiting.isEmpty() ? null : queue;
+            });
+            if (next[0] != null) {
+                next[0].run();
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Returns a session for the given agent, counting the caller as outstanding on
+     * it so that it is not closed before the caller is done with it. Callers must
+     * decrement the outstanding count of the session once they are done.
+     */
+    private PooledSession acquireSession(final Snmp4JAgentConfig agentConfig) throws IOException {
+        if (agentConfig.isSnmpV3()) {
+            return acquireV3Session(agentConfig);
+        }
+        final int index = Math.floorMod(m_nextSession.getAndIncrement(), m_sessions.length);
+        PooledSession session = m_sessions[index];
+        if (session == null) {
+            synchronized (m_sessions) {
+                session = m_sessions[index];
+                if (session == null) {
+                    final MessageDispatcher dispatcher = new MessageDispatcherImpl();
+                    dispatcher.addMessageProcessingModel(new MPv1());
+                    dispatcher.addMessageProcessingModel(new MPv2c());
+                    session = createSession(dispatcher);
+                    m_sessions[index] = session;
+                }
+            }
+        }
+        // SNMPv1 and SNMPv2c sessions are only closed with the pool
+        session.m_outstanding.incrementAndGet();
+        return session;
+    }
+
+    private PooledSession acquireV3Session(final Snmp4JAgentConfig agentConfig) throws IOException {
+        final List<Object> credentials = Arrays.asList(
+                agentConfig.getSecurityName(),
+                agentConfig.getAuthProtocol(),
+                agentConfig.getAuthPassPhrase(),
+                agentConfig.getPrivProtocol(),
+                agentConfig.getPrivPassPhrase());
+
+        final List<PooledSession> evicted = new ArrayList<>();
+        final PooledSession session;
+        synchronized (m_v3Sessions) {
+            PooledSession existing = m_v3Sessions.get(credentials);
+            if (existing == null) {
+                final USM usm = new USM(SecurityProtocols.getInstance(), new OctetString(MPv3.createLocalEngineID()), 0);
+                usm.addUser(agentConfig.getSecurityName(), new UsmUser(
+                        agentConfig.getSecurityName(),
+                        agentConfig.getAuthProtocol(),
+                        agentConfig.getAuthPassPhrase(),
+                        agentConfig.getPrivProtocol(),
+                        agentConfig.getPrivPassPhrase()));
+                final MessageDispatcher dispatcher = new MessageDispatcherImpl();
+                dispatcher.addMessageProcessingModel(new MPv3(usm));
+                existing = createSession(dispatcher);
+                m_v3Sessions.put(credentials, existing);
+
+                // Close the least recently used sessions that have nothing outstanding
+                final Iterator<PooledSession> it = m_v3Sessions.values().iterator();
+                while (m_v3Sessions.size() > m_maxV3Sessions && it.hasNext()) {
+                    final PooledSession candidate = it.next();
+                    if (candidate != existing && candidate.m_outstanding.get() == 0) {
+                        it.remove();
+                        evicted.add(candidate);
+                    }
+                }
+            }
+            // Count the caller before releasing the lock, so that the session
+            // cannot be evicted before it is used
+            existing.m_outstanding.incrementAndGet();
+            session = existing;
+        }
+
+        for (final PooledSession idle : evicted) {
+            close(idle);
+        }
+        return session;
+    }
+
+    private PooledSession createSession(final MessageDispatcher dispatcher) throws IOException {
+        final TransportMapping<?> transport = new DefaultUdpTransportMapping();
+        final Snmp snmp = new Snmp(new MultiThreadedMessageDispatcher(m_dispatcherPool, dispatcher), transport);
+        snmp.listen();
+        m_sockets.incrementAndGet();
+        LOG.debug("Opened pooled SNMP session on {}", transport.getListenAddress());
+        return new PooledSession(snmp);
+    }
+
+    private void close(final PooledSession session) {
+        try {
+            session.m_snmp.close();
+        } catch (final IOException e) {
+            LOG.warn("Error closing pooled SNMP session", e);
+        } finally {
+            m_sockets.decrementAndGet();
+        }
+    }
+
+    /**
+     * Closes all of the sessions. Outstanding requests complete with an error.
+     */
+    public void close() {
+        synchronized (m_sessions) {
+            for (int i = 0; i < m_sessions.length; i++) {
+                if (m_sessions[i] != null) {
+                    close(m_sessions[i]);
+                    m_sessions[i] = null;
+                }
+            }
+        }
+        synchronized (m_v3Sessions) {
+            m_v3Sessions.values().forEach(this::close);
+            m_v3Sessions.clear();
+        }
+        AdaptiveMaxRepetitions.removeAgentListener(m_agentListener);
+        m_dispatcherPool.stop();
+        m_reporter.stop();
+    }
+}
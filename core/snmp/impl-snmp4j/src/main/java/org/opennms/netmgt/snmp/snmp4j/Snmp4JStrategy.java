@@ -78,6 +78,7 @@ import org.snmp4j.event.ResponseEvent;
 import org.snmp4j.event.ResponseListener;
 import org.snmp4j.mp.MPv3;
 import org.snmp4j.mp.MessageProcessingModel;
+import org.snmp4j.mp.SnmpConstants;
 import org.snmp4j.mp.PduHandle;
 import org.snmp4j.security.SecurityLevel;
 import org.snmp4j.security.SecurityModel;
@@ -116,6 +117,14 @@ public class Snmp4JStrategy implements SnmpStrategy {
     private static long s_trackSummaryDelay = Long.getLong("org.opennms.core.snmp.trackSummaryDelay", 60);
     private static long s_trackSummaryLimit = Long.getLong("org.opennms.core.snmp.trackSummaryLimit", 10);
 
+    /**
+     * Set to false to open a new session, socket and listener thread for every
+     * request instead of sharing those of the {@link Snmp4JSessionPool}.
+     */
+    public static final String POOLED_SESSIONS_KEY = "org.opennms.snmp.snmp4j.pooledSessions";
+
+    private static Snmp4JSessionPool s_sessionPool;
+
     /**
      * Initialize for v3 communications
      */
@@ -172,11 +181,35 @@ public class Snmp4JStrategy implements SnmpStrategy {
     }
     
     /**
-     * Not yet implemented.  Use a walker.
+     * SNMP GetBulk implementation. All of the given OIDs are treated as repeaters
+     * and the max-repetitions are taken from the agent config. SNMPv1 agents
+     * do not support GETBULK so a GETNEXT is sent to them instead.
+     *
+     * @param agentConfig
+     * @param oids
+     * @return
+     *        Returns an array of Snmp4JValues in the order in which the agent
+     *        returned them, that is up to max-repetitions rows of oids.length
+     *        values.  If the getBulk was unsuccessful, then the first element
+     *        of the array will be null and length of 1.
      */
         @Override
-    public SnmpValue[] getBulk(SnmpAgentConfig agentConfig, SnmpObjId[] oid) {
-    	throw new UnsupportedOperationException("Snmp4JStrategy.getBulk not yet implemented.");
+    public SnmpValue[] getBulk(SnmpAgentConfig agentConfig, SnmpObjId[] oids) {
+        LOG.debug("getBulk: OIDs: {} for Agent: {}", oids, agentConfig);
+
+        final Snmp4JAgentConfig snmp4jAgentConfig = new Snmp4JAgentConfig(agentConfig);
+        if (snmp4jAgentConfig.getVersion() == SnmpConstants.version1) {
+            return getNext(agentConfig, oids);
+        }
+
+        final PDU pdu = buildPdu(snmp4jAgentConfig, PDU.GETBULK, oids, null);
+        if (pdu == null) {
+            return null;
+        }
+        pdu.setNonRepeaters(0);
+        pdu.setMaxRepetitions(Math.max(1, agentConfig.getMaxRepetitions()));
+
+        return send(snmp4jAgentConfig, pdu, true);
     }
 
         @Override
@@ -303,6 +336,11 @@ public class Snmp4JStrategy implements SnmpStrategy {
     }
 
     private void send(Snmp4JAgentConfig agentConfig, PDU pdu, boolean expectResponse, CompletableFuture<SnmpValue[]> future) {
+        if (isSessionPoolEnabled()) {
+            sendPooled(agentConfig, pdu, expectResponse, future);
+            return;
+        }
+
         Snmp session;
 
         try {
@@ -367,6 +405,46 @@ public class Snmp4JStrategy implements SnmpStrategy {
         }
     }
 
+    private static void sendPooled(Snmp4JAgentConfig agentConfig, PDU pdu, boolean expectResponse, CompletableFuture<SnmpValue[]> future) {
+        final Snmp4JSessionPool pool = getSessionPool();
+        if (expectResponse) {
+            try {
+                pool.send(agentConfig, pdu, agentConfig.getTarget(), new ResponseListener() {
+                    @Override
+                    public void onResponse(final ResponseEvent responseEvent) {
+                        try {
+                            future.complete(processResponse(agentConfig, responseEvent));
+                        } catch (final Exception e) {
+                            future.completeExceptionally(new SnmpException(e));
+                        }
+                    }
+                });
+            } catch (final Exception e) {
+                LOG.error("send: error during SNMP operation", e);
+                future.completeExceptionally(e);
+            }
+        } else {
+            try {
+                pool.sendUnconfirmed(agentConfig, pdu, agentConfig.getTarget());
+                future.complete(null);
+            } catch (final Exception e) {
+                LOG.error("send: error during SNMP operation", e);
+                future.completeExceptionally(new SnmpException(e));
+            }
+        }
+    }
+
+    static boolean isSessionPoolEnabled() {
+        return Boolean.parseBoolean(System.getProperty(POOLED_SESSIONS_KEY, "true"));
+    }
+
+    static synchronized Snmp4JSessionPool getSessionPool() {
+        if (s_sessionPool == null) {
+            s_sessionPool = new Snmp4JSessionPool();
+        }
+        return s_sessionPool;
+    }
+
     protected PDU buildPdu(Snmp4JAgentConfig agentConfig, int pduType, SnmpObjId[] oids, SnmpValue[] values) {
         PDU pdu = agentConfig.createPdu(pduType);
         
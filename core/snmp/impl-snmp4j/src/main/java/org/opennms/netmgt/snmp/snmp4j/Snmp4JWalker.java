@@ -135,12 +135,20 @@ public class Snmp4JWalker extends SnmpWalker {
      */
     public class Snmp4JResponseListener implements ResponseListener {
 
-        private void processResponse(final PDU response) throws SnmpException {
+        private void processResponse(final PDU request, final PDU response) throws SnmpException {
             try {
                 LOG.debug("Received a tracker PDU of type {} from {} of size {}, errorStatus = {}, errorStatusText = {}, errorIndex = {}", PDU.getTypeString(response.getType()), getAddress(), response.size(), response.getErrorStatus(), response.getErrorStatusText(), response.getErrorIndex());
                 if (response.getType() == PDU.REPORT) {
                     handleAuthError("A REPORT PDU was returned from the agent.  This is most likely an authentication problem.  Please check the config");
+                } else if (response.getErrorStatus() == PDU.tooBig && isBulk(request) && tooBigReceived(request.getMaxRepetitions())) {
+                    // ask again with fewer repetitions
+                    buildAndSendNextPdu();
                 } else {
+                    if (isBulk(request)) {
+                        responseReceived(request.size() - request.getNonRepeaters(), request.getMaxRepetitions(), response.size(), response.getBERLength());
+                    } else {
+                        responseReceived(0, 1, response.size(), response.getBERLength());
+                    }
                     if (!processErrors(response.getErrorStatus(), response.getErrorIndex())) {
                         if (response.size() == 0) { // NMS-6484
                             handleError("A PDU with no errors and 0 varbinds was returned from the agent at " + getAddress() + ". This seems to be related with a broken SNMP agent.");
@@ -160,16 +168,26 @@ public class Snmp4JWalker extends SnmpWalker {
             }
         }
 
+        private boolean isBulk(final PDU request) {
+            return request != null && request.getType() == PDU.GETBULK;
+        }
+
         @Override
         public void onResponse(ResponseEvent responseEvent) {
             // need to cancel the request here otherwise SNMP4J Keeps it around forever... go figure
-            m_session.cancel(responseEvent.getRequest(), this);
+            // (pooled sessions take care of this themselves)
+            if (m_session != null) {
+                m_session.cancel(responseEvent.getRequest(), this);
+            }
 
             // Check to see if we got an interrupted exception
             if (responseEvent.getError() instanceof InterruptedException) {
                 LOG.debug("Interruption event.  We have probably tried to close the session due to an error", responseEvent.getError());
             // Check to see if the response is null, indicating a timeout
             } else if (responseEvent.getResponse() == null) {
+                if (isBulk(responseEvent.getRequest())) {
+                    timeoutReceived(responseEvent.getRequest().getMaxRepetitions());
+                }
                 handleTimeout(getName()+": snmpTimeoutError for: " + getAddress());
             // Check to see if we got any kind of error
             } else if (responseEvent.getError() != null){
@@ -177,7 +195,7 @@ public class Snmp4JWalker extends SnmpWalker {
             // If we have a PDU in the response, process it
             } else {
                 try {
-                    processResponse(responseEvent.getResponse());
+                    processResponse(responseEvent.getRequest(), responseEvent.getResponse());
                 } catch (final SnmpException e) {
                     handleFatalError(e);
                 }
@@ -220,6 +238,18 @@ public class Snmp4JWalker extends SnmpWalker {
         @Override
     protected void sendNextPdu(WalkerPduBuilder pduBuilder) throws SnmpException {
         Snmp4JPduBuilder snmp4JPduBuilder = (Snmp4JPduBuilder)pduBuilder;
+        if (Snmp4JStrategy.isSessionPoolEnabled()) {
+            LOG.debug("Sending tracker pdu of size {}", snmp4JPduBuilder.getPdu().size());
+            try {
+                Snmp4JStrategy.getSessionPool().send(m_agentConfig, snmp4JPduBuilder.getPdu(), m_tgt, m_listener);
+            } catch (final IOException e) {
+                LOG.debug("Failed to send pdu of size {}", snmp4JPduBuilder.getPdu().size(), e);
+                close();
+                throw new SnmpException(e);
+            }
+            return;
+        }
+
         try {
             if (m_session == null) {
                 m_session = m_agentConfig.createSnmpSession();
@@ -31,14 +31,19 @@ package org.opennms.netmgt.snmp.snmp4j;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 
 import org.junit.Ignore;
 import org.junit.Test;
+import org.opennms.netmgt.snmp.SnmpAgentConfig;
 import org.opennms.netmgt.snmp.SnmpObjId;
 import org.opennms.netmgt.snmp.SnmpValue;
 import org.snmp4j.PDU;
+import org.snmp4j.event.ResponseEvent;
 import org.snmp4j.smi.SMIConstants;
 import org.snmp4j.smi.VariableBinding;
 
@@ -217,6 +222,44 @@ public class Snmp4JStrategyIT extends MockSnmpAgentITCase {
         assertSnmpValueEquals("values[1]", SnmpValue.SNMP_GAUGE32, 42, values[1]);
     }
 
+    @Test
+    public void testAsyncGetsShareSessions() throws Exception {
+        SnmpObjId[] oids = new SnmpObjId[] { SnmpObjId.get(".1.3.5.1.1.3.0") };
+
+        List<CompletableFuture<SnmpValue[]>> futures = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            futures.add(m_strategy.getAsync(getAgentConfig(), oids));
+        }
+        for (CompletableFuture<SnmpValue[]> future : futures) {
+            assertSnmpValueEquals("values[0]", SnmpValue.SNMP_INT32, 42, future.get()[0]);
+        }
+
+        final int sockets = (Integer)Snmp4JStrategy.getSessionPool().getMetricRegistry().getGauges().get("sockets").getValue();
+        assertTrue("expected the requests to share a few sockets, got " + sockets, sockets < futures.size());
+    }
+
+    @Test
+    public void testQueueRequestsBeyondMaxPerAgent() throws Exception {
+        final Snmp4JSessionPool pool = new Snmp4JSessionPool(1, 2, 1, 1);
+        try {
+            final Snmp4JAgentConfig agentConfig = new Snmp4JAgentConfig(getAgentConfig());
+            final List<CompletableFuture<ResponseEvent>> futures = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                final CompletableFuture<ResponseEvent> future = new CompletableFuture<>();
+                pool.send(agentConfig, m_strategy.buildPdu(agentConfig, PDU.GET, new SnmpObjId[] { SnmpObjId.get(".1.3.5.1.1.3.0") }, null), agentConfig.getTarget(), future::complete);
+                futures.add(future);
+            }
+            for (CompletableFuture<ResponseEvent> future : futures) {
+                assertNotNull("response should not be null", future.get().getResponse());
+            }
+            assertEquals(0, pool.getMetricRegistry().getGauges().get("requests.outstanding").getValue());
+            assertEquals(0, pool.getMetricRegistry().getGauges().get("requests.queued").getValue());
+            assertEquals(0, pool.getMetricRegistry().meter("timeouts").getCount());
+        } finally {
+            pool.close();
+        }
+    }
+
     @Test
     public void testGetNextSingleValue() throws Exception {
         SnmpObjId[] oids = new SnmpObjId[] { SnmpObjId.get(".1.3.5.1.1.3.0") };
@@ -246,6 +289,35 @@ public class Snmp4JStrategyIT extends MockSnmpAgentITCase {
         assertSnmpValueEquals("values[1]", SnmpValue.SNMP_COUNTER32, 42, values[1]);
     }
     
+    @Test
+    public void testGetBulk() throws Exception {
+        SnmpObjId[] oids = new SnmpObjId[] { SnmpObjId.get(".1.3.5.1.1.3.0") };
+        SnmpAgentConfig agentConfig = getAgentConfig();
+        agentConfig.setVersion(SnmpAgentConfig.VERSION2C);
+        agentConfig.setMaxRepetitions(3);
+
+        SnmpValue[] values = m_strategy.getBulk(agentConfig, oids);
+
+        assertNotNull("values should not be null", values);
+        assertEquals("values list size", 3, values.length);
+        assertSnmpValueEquals("values[0]", SnmpValue.SNMP_GAUGE32, 42, values[0]);
+        assertSnmpValueEquals("values[1]", SnmpValue.SNMP_COUNTER32, 42, values[1]);
+        assertEquals("values[2]", SnmpValue.SNMP_TIMETICKS, values[2].getType());
+    }
+
+    @Test
+    public void testGetBulkFallsBackToGetNextForV1() throws Exception {
+        SnmpObjId[] oids = new SnmpObjId[] { SnmpObjId.get(".1.3.5.1.1.3.0") };
+        SnmpAgentConfig agentConfig = getAgentConfig();
+        agentConfig.setMaxRepetitions(3);
+
+        SnmpValue[] values = m_strategy.getBulk(agentConfig, oids);
+
+        assertNotNull("values should not be null", values);
+        assertEquals("values list size", 1, values.length);
+        assertSnmpValueEquals("values[0]", SnmpValue.SNMP_GAUGE32, 42, values[0]);
+    }
+
     @Test
     public void testPreparePduWithNoValues() throws Exception {
         SnmpObjId[] oids = new SnmpObjId[] {
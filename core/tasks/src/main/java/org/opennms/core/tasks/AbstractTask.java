@@ -28,6 +28,9 @@
 
 package org.opennms.core.tasks;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.CountDownLatch;
@@ -67,6 +70,29 @@ public abstract class AbstractTask implements Task {
     private final AtomicInteger m_pendingPrereqs = new AtomicInteger(0);
     private final Set<AbstractTask> m_dependents = new CopyOnWriteArraySet<>();
     private final Set<AbstractTask> m_prerequisites = new CopyOnWriteArraySet<>();
+
+    /**
+     * These are only used when the coordinator runs in work-stealing mode. There
+     * the number of blockers is one for the missing call to schedule() plus one for
+     * every prerequisite that has not completed yet, and the task is submitted by
+     * whichever thread removes the last blocker. Dependents that are waiting for this
+     * task are kept on a lock-free stack that is closed when the task completes.
+     */
+    private final AtomicInteger m_blockers = new AtomicInteger(1);
+    private final AtomicReference<Waiter> m_waiters = new AtomicReference<>(null);
+    private final AtomicBoolean m_submitClaimed = new AtomicBoolean(false);
+
+    private static final class Waiter {
+        private final AbstractTask m_task;
+        private final Waiter m_next;
+
+        private Waiter(final AbstractTask task, final Waiter next) {
+            m_task = task;
+            m_next = next;
+        }
+    }
+
+    private static final Waiter CLOSED = new Waiter(null, null);
     
     private final TaskMonitor m_monitor;
     
@@ -125,7 +151,7 @@ public abstract class AbstractTask implements Task {
         }
     }
 
-    private final void notifyPrerequisiteAdded(final AbstractTask prereq) {
+    final void notifyPrerequisiteAdded(final AbstractTask prereq) {
         try {
             m_monitor.prerequisiteAdded(this, prereq);
         } catch (final Throwable t) {
@@ -133,7 +159,7 @@ public abstract class AbstractTask implements Task {
         }
     }
     
-    private final void notifyPrerequisiteCompleted(final AbstractTask prereq) {
+    final void notifyPrerequisiteCompleted(final AbstractTask prereq) {
         try {
             m_monitor.prerequisiteCompleted(this, prereq);
         } catch (final Throwable t) {
@@ -174,30 +200,91 @@ public abstract class AbstractTask implements Task {
         m_dependents.clear();
     }
 
+    final void addBlocker() {
+        m_blockers.incrementAndGet();
+    }
 
-    final void scheduled() {
-        setState(State.NEW, State.SCHEDULED);
+    /**
+     * @return true if the last blocker was removed and the task should be submitted
+     */
+    final boolean removeBlocker() {
+        return m_blockers.decrementAndGet() == 0;
+    }
+
+    /**
+     * @return false if this task has already completed and will not notify the dependent
+     */
+    final boolean tryAddWaiter(final AbstractTask dependent) {
+        while (true) {
+            final Waiter head = m_waiters.get();
+            if (head == CLOSED) {
+                return false;
+            }
+            if (m_waiters.compareAndSet(head, new Waiter(dependent, head))) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Returns the waiting dependents in the order they were added. Subsequent calls to
+     * {@link #tryAddWaiter(AbstractTask)} fail.
+     */
+    final List<AbstractTask> closeWaiters() {
+        Waiter head = m_waiters.getAndSet(CLOSED);
+        final List<AbstractTask> waiters = new ArrayList<>();
+        while (head != null && head != CLOSED) {
+            waiters.add(head.m_task);
+            head = head.m_next;
+        }
+        Collections.reverse(waiters);
+        return waiters;
+    }
+
+
+    final boolean scheduled() {
+        final boolean scheduled = setState(State.NEW, State.SCHEDULED);
         notifyScheduled();
+        return scheduled;
     }
     
-    private final void setState(final State oldState, final State newState) {
+    private final boolean setState(final State oldState, final State newState) {
         if (!m_state.compareAndSet(oldState, newState)) {
         	LOG.debug("Attempted to move to state {} with state not {} (actual value {})", newState, oldState, m_state.get());
+        	return false;
         } else {
         	LOG.trace("Set state to {}", newState);
+        	return true;
         }
     }
     
     final void submitIfReady() {
         if (isReady()) {
-            try {
-                doSubmit();
-            } catch (Throwable e) {
-                LOG.error("Unexpected throwable while trying to submit task: " + this, e);
-            } finally {
-                submitted();
-                completeSubmit();
-            }
+            submit();
+        }
+    }
+
+    /**
+     * Submits the task if it has been scheduled but not yet submitted, without looking
+     * at its prerequisites. Used in work-stealing mode once the last blocker is removed.
+     * A dependency may have been added again since then, and several threads may get
+     * here for the same task, so the blockers are checked again and only the first
+     * caller submits.
+     */
+    final void submitIfScheduled() {
+        if (m_blockers.get() == 0 && isInReadyState() && m_submitClaimed.compareAndSet(false, true)) {
+            submit();
+        }
+    }
+
+    private final void submit() {
+        try {
+            doSubmit();
+        } catch (Throwable e) {
+            LOG.error("Unexpected throwable while trying to submit task: " + this, e);
+        } finally {
+            submitted();
+            completeSubmit();
         }
     }
 
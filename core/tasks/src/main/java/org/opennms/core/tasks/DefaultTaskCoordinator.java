@@ -33,21 +33,43 @@ import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.opennms.core.concurrent.LogPreservingThreadFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.util.Assert;
 
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.JmxReporter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
 /**
  * This {@link DefaultTaskCoordinator} class provides utility methods to construct
  * and schedule hierarchies of {@link Tasks}.
+ *
+ * <p>By default all of the dependency bookkeeping is serialized on a single actor
+ * thread. When the coordinator is created in work-stealing mode, which can be
+ * enabled for all coordinators with the <code>org.opennms.core.tasks.workStealing</code>
+ * system property, the bookkeeping is done lock-free with per-task atomic counters
+ * instead and tasks that become ready are handed to a {@link ForkJoinPool}.</p>
+ *
+ * <p>The queue depth, queue wait and run time of every named executor are
+ * published through JMX in the <code>org.opennms.core.tasks</code> domain.</p>
  * 
  * @author brozow
  */
-public class DefaultTaskCoordinator implements TaskCoordinator, InitializingBean {
+public class DefaultTaskCoordinator implements TaskCoordinator, InitializingBean, DisposableBean {
 
     private static final Logger LOG = LoggerFactory.getLogger(DefaultTaskCoordinator.class);
 
@@ -72,6 +94,20 @@ public class DefaultTaskCoordinator implements TaskCoordinator, InitializingBean
      */
     private final Executor m_actorExecutor;
 
+    /**
+     * The pool used in work-stealing mode for the bookkeeping of ready tasks, or
+     * null if the coordinator is using the single actor thread.
+     */
+    private final ForkJoinPool m_workStealingPool;
+
+    private final String m_name;
+
+    private final MetricRegistry m_metrics = new MetricRegistry();
+
+    private final ConcurrentHashMap<String, ExecutorMetrics> m_executorMetrics = new ConcurrentHashMap<>();
+
+    private JmxReporter m_reporter;
+
     private final ConcurrentHashMap<String, Executor> m_taskExecutors = new ConcurrentHashMap<String, Executor>();
 
     private String m_defaultExecutorName = TaskCoordinator.DEFAULT_EXECUTOR;
@@ -85,18 +121,74 @@ public class DefaultTaskCoordinator implements TaskCoordinator, InitializingBean
      * @param defaultExecutor a {@link java.util.concurrent.Executor} object.
      */
     public DefaultTaskCoordinator(String name) {
-        // Create a new single-threaded actor executor
-        m_actorExecutor = Executors.newSingleThreadExecutor(
-            new LogPreservingThreadFactory(name+"-TaskScheduler", 1)
-        );
+        this(name, Boolean.getBoolean("org.opennms.core.tasks.workStealing"));
+    }
+
+    /**
+     * <p>Constructor for DefaultTaskCoordinator.</p>
+     *
+     * @param name a {@link java.lang.String} object.
+     * @param workStealing resolve dependencies lock-free and run ready tasks on a work-stealing pool
+     */
+    public DefaultTaskCoordinator(String name, boolean workStealing) {
+        m_name = name;
+        if (workStealing) {
+            final int threads = Integer.getInteger("org.opennms.core.tasks.workStealingThreads", Runtime.getRuntime().availableProcessors());
+            m_workStealingPool = new ForkJoinPool(threads, pool -> {
+                final ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                thread.setName(name + "-TaskScheduler-" + thread.getPoolIndex());
+                return thread;
+            }, null, true);
+            m_actorExecutor = m_workStealingPool;
+
+            m_metrics.register(MetricRegistry.name(name, "TaskScheduler", "queued"), new Gauge<Long>() {
+                @Override
+                public Long getValue() {
+                    return m_workStealingPool.getQueuedSubmissionCount() + m_workStealingPool.getQueuedTaskCount();
+                }
+            });
+            m_metrics.register(MetricRegistry.name(name, "TaskScheduler", "steals"), new Gauge<Long>() {
+                @Override
+                public Long getValue() {
+                    return m_workStealingPool.getStealCount();
+                }
+            });
+
+            // Tasks that do not name an executor share the work-stealing pool
+            addOrUpdateExecutor(m_defaultExecutorName, m_workStealingPool);
+        } else {
+            // Create a new single-threaded actor executor
+            m_workStealingPool = null;
+            m_actorExecutor = Executors.newSingleThreadExecutor(
+                new LogPreservingThreadFactory(name+"-TaskScheduler", 1)
+            );
 
-        // By default, add one single-threaded task executor to the coordinator
-        addOrUpdateExecutor(
-            m_defaultExecutorName,
-            Executors.newSingleThreadExecutor(
-                new LogPreservingThreadFactory(m_defaultExecutorName, 1)
-            )
-        );
+            // By default, add one single-threaded task executor to the coordinator
+            addOrUpdateExecutor(
+                m_defaultExecutorName,
+                Executors.newSingleThreadExecutor(
+                    new LogPreservingThreadFactory(m_defaultExecutorName, 1)
+                )
+            );
+        }
+    }
+
+    /**
+     * <p>isWorkStealing</p>
+     *
+     * @return true if dependencies are resolved lock-free on a work-stealing pool
+     */
+    public boolean isWorkStealing() {
+        return m_workStealingPool != null;
+    }
+
+    /**
+     * <p>getMetricRegistry</p>
+     *
+     * @return the registry holding the queue and latency metrics of the executors
+     */
+    public MetricRegistry getMetricRegistry() {
+        return m_metrics;
     }
 
     /**
@@ -115,8 +207,28 @@ public class DefaultTaskCoordinator implements TaskCoordinator, InitializingBean
     public void afterPropertiesSet() {
         Assert.notNull(m_defaultExecutorName, "defaultExecutor must be set");
         Assert.notNull(getExecutor(m_defaultExecutorName), "defaultExecutor must be set to the name of an added executor");
+
+        if (m_reporter == null) {
+            m_reporter = JmxReporter.forRegistry(m_metrics).inDomain("org.opennms.core.tasks").build();
+            m_reporter.start();
+        }
     }
     
+    /**
+     * Stops the JMX reporter and the scheduler threads of this coordinator. The
+     * executors that were added to it are left alone.
+     */
+    @Override
+    public void destroy() {
+        if (m_reporter != null) {
+            m_reporter.stop();
+            m_reporter = null;
+        }
+        if (m_actorExecutor instanceof ExecutorService) {
+            ((ExecutorService)m_actorExecutor).shutdown();
+        }
+    }
+
     /**
      * <p>createTask</p>
      *
@@ -238,6 +350,8 @@ public class DefaultTaskCoordinator implements TaskCoordinator, InitializingBean
     /**
      * <p>setLoopDelay</p>
      *
+     * <p>Only the single actor thread honours the delay, it has no effect in work-stealing mode.</p>
+     *
      * @param millis a long.
      */
     @Override
@@ -252,7 +366,13 @@ public class DefaultTaskCoordinator implements TaskCoordinator, InitializingBean
      */
     @Override
     public void schedule(final AbstractTask task) {
-        onProcessorThread(scheduler(task));
+        if (isWorkStealing()) {
+            if (task.scheduled()) {
+                removeBlocker(task);
+            }
+        } else {
+            onProcessorThread(scheduler(task));
+        }
     }
     
     /**
@@ -263,11 +383,47 @@ public class DefaultTaskCoordinator implements TaskCoordinator, InitializingBean
      */
     @Override
     public void addDependency(AbstractTask prereq, AbstractTask dependent) {
+        if (isWorkStealing()) {
+            Assert.notNull(prereq, "prereq must not be null");
+            Assert.notNull(dependent, "dependent must not be null");
+            // block the dependent before it becomes visible to the prereq so that
+            // completing the prereq can never release a blocker that was not added
+            dependent.addBlocker();
+            if (prereq.tryAddWaiter(dependent)) {
+                dependent.notifyPrerequisiteAdded(prereq);
+            } else {
+                // the prereq has already completed
+                removeBlocker(dependent);
+            }
+            return;
+        }
         // this is only needed when add dependencies while running
         dependent.incrPendingPrereqCount();
         onProcessorThread(dependencyAdder(prereq, dependent));
     }
 
+    /**
+     * Removes a blocker from the task in work-stealing mode and hands the task to the
+     * pool if that was the last one.
+     */
+    private void removeBlocker(final AbstractTask task) {
+        if (task.removeBlocker()) {
+            CompletableFuture.runAsync(task::submitIfScheduled, m_workStealingPool)
+            .exceptionally(e -> {
+                LOG.warn("Unexpected exception while submitting task " + task + ": " + e.getMessage(), e);
+                return null;
+            });
+        }
+    }
+
+    private void completeLockFree(final AbstractTask task) {
+        task.onComplete();
+        for (final AbstractTask dependent : task.closeWaiters()) {
+            dependent.notifyPrerequisiteCompleted(task);
+            removeBlocker(dependent);
+        }
+    }
+
     void onProcessorThread(final SerialRunnable r) {
         // If there's a delay set for testing, run the task
         // and then sleep for the delay
@@ -372,35 +528,49 @@ public class DefaultTaskCoordinator implements TaskCoordinator, InitializingBean
     
     
     private final Executor getExecutor(String name) {
-        Executor executor = m_taskExecutors.get(name);
-        if (executor == null) {
-            Executor defaultExecutor = m_taskExecutors.get(m_defaultExecutorName);
-            if (defaultExecutor == null) {
-                throw new IllegalStateException("No default executor in " + getClass().getName());
-            } else {
-                return defaultExecutor;
-            }
+        return m_taskExecutors.get(getExecutorName(name));
+    }
+
+    private final String getExecutorName(String name) {
+        if (m_taskExecutors.containsKey(name)) {
+            return name;
+        } else if (m_taskExecutors.containsKey(m_defaultExecutorName)) {
+            return m_defaultExecutorName;
         } else {
-            //LOG.debug("Using executor {}: {}", name, executor);
-            return executor;
+            throw new IllegalStateException("No default executor in " + getClass().getName());
         }
     }
     
     @Override
     public void markTaskAsCompleted(AbstractTask task) {
-        onProcessorThread(taskCompleter(task));
+        if (isWorkStealing()) {
+            completeLockFree(task);
+        } else {
+            onProcessorThread(taskCompleter(task));
+        }
     }
 
     @Override
     public void submitToExecutor(String executorPreference, Runnable workToBeDone, AbstractTask owningTask) {
-        CompletableFuture
+        final String executorName = getExecutorName(executorPreference);
+        final CompletableFuture<Void> future = m_executorMetrics.computeIfAbsent(executorName, ExecutorMetrics::new)
             // Run the work on the preferred executor
-            .runAsync(workToBeDone, getExecutor(executorPreference))
+            .runAsync(workToBeDone, getExecutor(executorName))
             // Log any uncaught exceptions from the task execution
             .exceptionally(e -> {
                 LOG.warn("Unexpected exception during task execution: " + e.getMessage(), e);
                 return null;
-            })
+            });
+
+        if (isWorkStealing()) {
+            // Completing is cheap in work-stealing mode so do it on the thread that ran the work
+            future.thenRun(() -> completeLockFree(owningTask))
+            .exceptionally(e -> {
+                LOG.warn("Unexpected exception during task completion: " + e.getMessage(), e);
+                return null;
+            });
+        } else {
+            future
             // Then run the completer on the actor executor
             .thenRunAsync(taskCompleter(owningTask), m_actorExecutor)
             // Log any uncaught exceptions from the task completer
@@ -408,6 +578,53 @@ public class DefaultTaskCoordinator implements TaskCoordinator, InitializingBean
                 LOG.warn("Unexpected exception during task completion: " + e.getMessage(), e);
                 return null;
             });
+        }
+    }
+
+    /**
+     * Queue depth, queue wait and run time of the work submitted to one executor.
+     */
+    private final class ExecutorMetrics {
+        private final Counter m_queued;
+        private final Timer m_wait;
+        private final Timer m_run;
+
+        private ExecutorMetrics(final String executorName) {
+            m_queued = m_metrics.counter(MetricRegistry.name(m_name, executorName, "queued"));
+            m_wait = m_metrics.timer(MetricRegistry.name(m_name, executorName, "wait"));
+            m_run = m_metrics.timer(MetricRegistry.name(m_name, executorName, "run"));
+        }
+
+        private CompletableFuture<Void> runAsync(final Runnable work, final Executor executor) {
+            m_queued.inc();
+            try {
+                return CompletableFuture.runAsync(wrap(work), executor);
+            } catch (final RejectedExecutionException e) {
+                m_queued.dec();
+                throw e;
+            }
+        }
+
+        private Runnable wrap(final Runnable work) {
+            final long submitted = System.nanoTime();
+            return new Runnable() {
+                @Override
+                public void run() {
+                    m_queued.dec();
+                    m_wait.update(System.nanoTime() - submitted, TimeUnit.NANOSECONDS);
+                    final Timer.Context context = m_run.time();
+                    try {
+                        work.run();
+                    } finally {
+                        context.stop();
+                    }
+                }
+                @Override
+                public String toString() {
+                    return work.toString();
+                }
+            };
+        }
     }
 
     /**
@@ -422,6 +639,18 @@ public class DefaultTaskCoordinator implements TaskCoordinator, InitializingBean
         if (service != null) {
             LOG.info("Replacing executor {} with {}", executorName, executor);
         }
+
+        final String poolSizeName = MetricRegistry.name(m_name, executorName, "poolSize");
+        m_metrics.remove(poolSizeName);
+        if (executor instanceof ThreadPoolExecutor) {
+            final ThreadPoolExecutor pool = (ThreadPoolExecutor)executor;
+            m_metrics.register(poolSizeName, new Gauge<Integer>() {
+                @Override
+                public Integer getValue() {
+                    return pool.getPoolSize();
+                }
+            });
+        }
     }
 
     /**
@@ -32,6 +32,7 @@ import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.util.List;
 import java.util.Timer;
@@ -40,17 +41,21 @@ import java.util.Vector;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.opennms.core.concurrent.LogPreservingThreadFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.codahale.metrics.Counter;
+
 
 /**
  * BaseTaskTest
@@ -69,9 +74,24 @@ public class TaskTest {
         m_executor = Executors.newFixedThreadPool(50,
             new LogPreservingThreadFactory(getClass().getSimpleName(), 50)
         );
-        m_coordinator = new DefaultTaskCoordinator("TaskTest");
+        m_coordinator = createCoordinator();
         m_coordinator.addOrUpdateExecutor(TaskCoordinator.DEFAULT_EXECUTOR, m_executor);
     }
+
+    @After
+    public void tearDown() {
+        if (m_coordinator instanceof DefaultTaskCoordinator) {
+            ((DefaultTaskCoordinator)m_coordinator).destroy();
+        }
+    }
+
+    protected TaskCoordinator createCoordinator() {
+        return new DefaultTaskCoordinator("TaskTest");
+    }
+
+    protected TaskCoordinator getCoordinator() {
+        return m_coordinator;
+    }
     
     @Test
     public void testSimpleTask() throws Exception {
@@ -449,6 +469,25 @@ public class TaskTest {
         
     }
     
+    @Test
+    public void testRejectedWorkIsNotCountedAsQueued() throws Exception {
+        final DefaultTaskCoordinator coordinator = (DefaultTaskCoordinator)m_coordinator;
+        coordinator.addOrUpdateExecutor("rejecting", r -> {
+            throw new RejectedExecutionException("executor is full");
+        });
+
+        try {
+            coordinator.submitToExecutor("rejecting", () -> {}, createTask(() -> {}));
+            fail("expected the executor to reject the work");
+        } catch (final RejectedExecutionException e) {
+            // expected
+        }
+
+        for (final Counter queued : coordinator.getMetricRegistry().getCounters().values()) {
+            assertEquals(0, queued.getCount());
+        }
+    }
+
     @Test
     public void testLargeBatchInProgress() throws Exception {
  
@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.core.tasks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Runs all of the {@link TaskTest} cases against a coordinator in work-stealing mode.
+ */
+public class WorkStealingTaskTest extends TaskTest {
+
+    @Override
+    protected TaskCoordinator createCoordinator() {
+        return new DefaultTaskCoordinator("WorkStealingTaskTest", true);
+    }
+
+    @Test
+    public void testLongSequence() throws Exception {
+        final int count = 10000;
+        final AtomicInteger last = new AtomicInteger(-1);
+        final AtomicInteger outOfOrder = new AtomicInteger(0);
+
+        final TaskBuilder<SequenceTask> builder = getCoordinator().createSequence();
+        for (int i = 0; i < count; i++) {
+            final int index = i;
+            builder.add(new Runnable() {
+                @Override
+                public void run() {
+                    if (!last.compareAndSet(index - 1, index)) {
+                        outOfOrder.incrementAndGet();
+                    }
+                }
+            });
+        }
+        final SequenceTask sequence = builder.get();
+        sequence.schedule();
+
+        assertTrue(sequence.waitFor(30, TimeUnit.SECONDS));
+        assertEquals(0, outOfOrder.get());
+        assertEquals(count - 1, last.get());
+    }
+
+    @Test
+    public void testLargeBatchRecordsExecutorMetrics() throws Exception {
+        final int count = 5000;
+        final AtomicInteger runs = new AtomicInteger(0);
+
+        final TaskBuilder<BatchTask> builder = getCoordinator().createBatch();
+        for (int i = 0; i < count; i++) {
+            builder.add(new Runnable() {
+                @Override
+                public void run() {
+                    runs.incrementAndGet();
+                }
+            });
+        }
+        final BatchTask batch = builder.get();
+        batch.schedule();
+
+        assertTrue(batch.waitFor(30, TimeUnit.SECONDS));
+        assertEquals(count, runs.get());
+
+        final DefaultTaskCoordinator coordinator = (DefaultTaskCoordinator)getCoordinator();
+        assertEquals(count, coordinator.getMetricRegistry().timer("WorkStealingTaskTest.default.run").getCount());
+        assertEquals(0, coordinator.getMetricRegistry().counter("WorkStealingTaskTest.default.queued").getCount());
+    }
+}
@@ -36,6 +36,7 @@ import java.io.IOException;
 import java.math.BigInteger;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
@@ -44,7 +45,12 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Function;
@@ -72,6 +78,7 @@ import org.opennms.netmgt.bsm.service.model.graph.internal.BusinessServiceGraphI
 import org.opennms.netmgt.bsm.service.model.graph.internal.GraphAlgorithms;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import com.google.common.base.Throwables;
@@ -82,31 +89,60 @@ import edu.uci.ics.jung.algorithms.layout.KKLayout;
 import edu.uci.ics.jung.algorithms.layout.Layout;
 import edu.uci.ics.jung.visualization.VisualizationImageServer;
 
-public class DefaultBusinessServiceStateMachine implements BusinessServiceStateMachine {
+public class DefaultBusinessServiceStateMachine implements BusinessServiceStateMachine, DisposableBean {
     private static final Logger LOG = LoggerFactory.getLogger(DefaultBusinessServiceStateMachine.class);
     public static final Status MIN_SEVERITY = Status.NORMAL;
 
     @Autowired
     private AlarmProvider m_alarmProvider;
 
+    /**
+     * How long, in milliseconds, alarm updates are collected before they are propagated
+     * together. When set, {@link #handleNewOrUpdatedAlarm(AlarmWrapper)} returns without
+     * waiting for the update to be applied. Disabled by default.
+     */
+    protected static final String BATCH_WINDOW_KEY = "org.opennms.features.bsm.alarmBatchWindow";
+    private static final long DEFAULT_BATCH_WINDOW = 0;
+
+    /**
+     * Vertices with a higher level are further away from the root vertices,
+     * and all of their parents have a lower level.
+     */
+    private static final Comparator<GraphVertex> DEEPEST_LEVEL_FIRST = Comparator.comparingInt(GraphVertex::getLevel).reversed();
+
     private final List<BusinessServiceStateChangeHandler> m_handlers = Lists.newArrayList();
     private final ReadWriteLock m_rwLock = new ReentrantReadWriteLock();
-    private BusinessServiceGraph m_g = new BusinessServiceGraphImpl(Collections.emptyList());
+    private volatile BusinessServiceGraph m_g = new BusinessServiceGraphImpl(Collections.emptyList());
+
+    private final long m_batchWindow = getBatchWindow();
+    // Guarded by itself
+    private final Map<String, Status> m_pendingAlarms = new LinkedHashMap<>();
+    // Guarded by m_pendingAlarms
+    private long m_alarmsQueued = 0;
+    // Guarded by m_pendingAlarms, only updated while holding the write lock
+    private long m_alarmsApplied = 0;
+    // Guarded by m_pendingAlarms, created when the first batch is scheduled
+    private ScheduledExecutorService m_batchExecutor;
 
     @Override
     public void setBusinessServices(List<BusinessService> businessServices) {
         m_rwLock.writeLock().lock();
         try {
+            // Apply any alarms that are still waiting to the current graph first,
+            // so that their state is carried over
+            applyPendingAlarms();
+
             // Create a new graph
             BusinessServiceGraph g = new BusinessServiceGraphImpl(businessServices);
 
             // Prime the graph with the state from the previous graph and
             // keep track of the new reductions keys
+            Map<GraphVertex, Status> statuses = new LinkedHashMap<>();
             Set<String> reductionsKeysToLookup = Sets.newHashSet();
             for (String reductionKey : g.getReductionKeys()) {
                 GraphVertex reductionKeyVertex = m_g.getVertexByReductionKey(reductionKey);
                 if (reductionKeyVertex != null) {
-                    updateAndPropagateVertex(g, g.getVertexByReductionKey(reductionKey), reductionKeyVertex.getStatus());
+                    statuses.put(g.getVertexByReductionKey(reductionKey), reductionKeyVertex.getStatus());
                 } else {
                     reductionsKeysToLookup.add(reductionKey);
                 }
@@ -121,10 +157,11 @@ public class DefaultBusinessServiceStateMachine implements BusinessServiceStateM
                 if (reductionsKeysToLookup.size() > 0) {
                     final Map<String, AlarmWrapper> lookup = m_alarmProvider.lookup(reductionsKeysToLookup);
                     for (Entry<String, AlarmWrapper> eachEntry : lookup.entrySet()) {
-                        updateAndPropagateVertex(g, g.getVertexByReductionKey(eachEntry.getKey()), eachEntry.getValue().getStatus());
+                        statuses.put(g.getVertexByReductionKey(eachEntry.getKey()), eachEntry.getValue().getStatus());
                     }
                 }
             }
+            updateAndPropagateVertices(g, statuses);
             m_g = g;
         } finally {
             m_rwLock.writeLock().unlock();
@@ -133,10 +170,29 @@ public class DefaultBusinessServiceStateMachine implements BusinessServiceStateM
 
     @Override
     public void handleNewOrUpdatedAlarm(AlarmWrapper alarm) {
+        // Queue the alarm, the latest status wins if the same reduction key
+        // is updated more than once before the queue is applied
+        final long ticket;
+        synchronized (m_pendingAlarms) {
+            final boolean firstInBatch = m_pendingAlarms.isEmpty();
+            m_pendingAlarms.put(alarm.getReductionKey(), alarm.getStatus());
+            ticket = ++m_alarmsQueued;
+
+            if (m_batchWindow > 0) {
+                if (firstInBatch) {
+                    // Propagate this alarm along with the ones that follow closely behind it
+                    getBatchExecutor().schedule(this::flushPendingAlarms, m_batchWindow, TimeUnit.MILLISECONDS);
+                }
+                return;
+            }
+        }
+
         m_rwLock.writeLock().lock();
         try {
-            // Recursively propagate the status
-            updateAndPropagateVertex(m_g, m_g.getVertexByReductionKey(alarm.getReductionKey()), alarm.getStatus());
+            // Another thread may have already applied our alarm along with its own
+            if (m_alarmsApplied < ticket) {
+                applyPendingAlarms();
+            }
         } finally {
             m_rwLock.writeLock().unlock();
         }
@@ -147,9 +203,12 @@ public class DefaultBusinessServiceStateMachine implements BusinessServiceStateM
         final Set<String> reductionKeysFromGivenAlarms = new HashSet<>(alarms.size());
         m_rwLock.writeLock().lock();
         try {
+            applyPendingAlarms();
+
+            final Map<GraphVertex, Status> statuses = new LinkedHashMap<>();
             for (AlarmWrapper alarm : alarms) {
-                // Recursively propagate the status for all of the given alarms
-                updateAndPropagateVertex(m_g, m_g.getVertexByReductionKey(alarm.getReductionKey()), alarm.getStatus());
+                // Propagate the status for all of the given alarms
+                statuses.put(m_g.getVertexByReductionKey(alarm.getReductionKey()), alarm.getStatus());
                 // Keep track of the reduction keys that have been processed
                 reductionKeysFromGivenAlarms.add(alarm.getReductionKey());
             }
@@ -157,19 +216,108 @@ public class DefaultBusinessServiceStateMachine implements BusinessServiceStateM
             for (String missingReductionKey : Sets.difference(m_g.getReductionKeys(), reductionKeysFromGivenAlarms)) {
                 // There is a vertex on the graph that corresponds to this reduction key
                 // but no alarm with this reduction key exists
-                updateAndPropagateVertex(m_g, m_g.getVertexByReductionKey(missingReductionKey), Status.INDETERMINATE);
+                statuses.put(m_g.getVertexByReductionKey(missingReductionKey), Status.INDETERMINATE);
             }
+            updateAndPropagateVertices(m_g, statuses);
+        } finally {
+            m_rwLock.writeLock().unlock();
+        }
+    }
+
+    private void flushPendingAlarms() {
+        m_rwLock.writeLock().lock();
+        try {
+            applyPendingAlarms();
+        } catch (Throwable t) {
+            LOG.error("Failed to propagate the status of the queued alarms.", t);
         } finally {
             m_rwLock.writeLock().unlock();
         }
     }
 
-    private void updateAndPropagateVertex(BusinessServiceGraph graph, GraphVertex vertex, Status newStatus) {
-        if (vertex == null) {
-            // Nothing to do here
+    private ScheduledExecutorService getBatchExecutor() {
+        if (m_batchExecutor == null) {
+            m_batchExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+                final Thread thread = new Thread(r, "BsmAlarmBatcher");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return m_batchExecutor;
+    }
+
+    /**
+     * Stops the batch thread once the batches that are already scheduled
+     * have been propagated.
+     */
+    @Override
+    public void destroy() throws InterruptedException {
+        final ScheduledExecutorService batchExecutor;
+        synchronized (m_pendingAlarms) {
+            batchExecutor = m_batchExecutor;
+            m_batchExecutor = null;
+        }
+        if (batchExecutor == null) {
             return;
         }
+        batchExecutor.shutdown();
+        if (!batchExecutor.awaitTermination(m_batchWindow + TimeUnit.SECONDS.toMillis(30), TimeUnit.MILLISECONDS)) {
+            LOG.warn("Timed out waiting for the queued alarms to be propagated.");
+            batchExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Applies all of the queued alarms to the current graph in a single pass.
+     * Must be called while holding the write lock.
+     */
+    private void applyPendingAlarms() {
+        final Map<String, Status> alarms;
+        synchronized (m_pendingAlarms) {
+            if (m_pendingAlarms.isEmpty()) {
+                return;
+            }
+            alarms = new LinkedHashMap<>(m_pendingAlarms);
+            m_pendingAlarms.clear();
+            m_alarmsApplied = m_alarmsQueued;
+        }
+
+        final Map<GraphVertex, Status> statuses = new LinkedHashMap<>();
+        for (Entry<String, Status> alarm : alarms.entrySet()) {
+            statuses.put(m_g.getVertexByReductionKey(alarm.getKey()), alarm.getValue());
+        }
+        LOG.debug("Propagating the status of {} alarms.", alarms.size());
+        updateAndPropagateVertices(m_g, statuses);
+    }
+
+    /**
+     * Updates the status of the given vertices and propagates the changes
+     * to their ancestors.
+     *
+     * Only the ancestors of the vertices whose status actually changed are
+     * visited. These are reduced from the deepest level up, so every child of
+     * a vertex has settled before the vertex itself is reduced, and each of
+     * them is reduced (and notified about) at most once.
+     */
+    private void updateAndPropagateVertices(BusinessServiceGraph graph, Map<GraphVertex, Status> statuses) {
+        final PriorityQueue<GraphVertex> dirtyVertices = new PriorityQueue<>(DEEPEST_LEVEL_FIRST);
+        final Set<GraphVertex> queuedVertices = new HashSet<>();
+        for (Entry<GraphVertex, Status> entry : statuses.entrySet()) {
+            if (entry.getKey() == null) {
+                // Nothing to do here
+                continue;
+            }
+            updateVertex(graph, entry.getKey(), entry.getValue(), dirtyVertices, queuedVertices);
+        }
 
+        while (!dirtyVertices.isEmpty()) {
+            final GraphVertex vertex = dirtyVertices.poll();
+            queuedVertices.remove(vertex);
+            updateVertex(graph, vertex, reduce(graph, vertex), dirtyVertices, queuedVertices);
+        }
+    }
+
+    private void updateVertex(BusinessServiceGraph graph, GraphVertex vertex, Status newStatus, Queue<GraphVertex> dirtyVertices, Set<GraphVertex> queuedVertices) {
         // Apply lower bound
         newStatus = newStatus.isLessThan(MIN_SEVERITY) ? MIN_SEVERITY : newStatus;
 
@@ -185,7 +333,6 @@ public class DefaultBusinessServiceStateMachine implements BusinessServiceStateM
         onStatusUpdated(graph, vertex, previousStatus);
 
         // Update the edges with the mapped status
-        List<GraphEdge> updatedEges = Lists.newArrayList();
         for (GraphEdge edge : graph.getInEdges(vertex)) {
             Status mappedStatus = newStatus;
             if (newStatus.isGreaterThan(MIN_SEVERITY)) {
@@ -200,38 +347,27 @@ public class DefaultBusinessServiceStateMachine implements BusinessServiceStateM
                 continue;
             }
 
-            // Update the status and add it to the list of edges to propagate
+            // Update the status and mark the parent for reduction
             edge.setStatus(mappedStatus);
-            updatedEges.add(edge);
-        }
-
-        // Propagate once all of the edges have been updated
-        for (GraphEdge edge : updatedEges) {
-            reduceUpdateAndPropagateVertex(graph, graph.getOpposite(vertex, edge));
+            final GraphVertex parent = graph.getOpposite(vertex, edge);
+            if (parent != null && queuedVertices.add(parent)) {
+                dirtyVertices.add(parent);
+            }
         }
     }
 
-    private void reduceUpdateAndPropagateVertex(BusinessServiceGraph graph, GraphVertex vertex) {
-        if (vertex == null) {
-            // Nothing to do here
-            return;
-        }
-
+    private static Status reduce(BusinessServiceGraph graph, GraphVertex vertex) {
         // Calculate the weighed statuses from the child edges
         List<StatusWithIndex> statuses = weighEdges(graph.getOutEdges(vertex));
 
         // Reduce
         Optional<StatusWithIndices> reducedStatus = vertex.getReductionFunction().reduce(statuses);
 
-        Status newStatus;
         if (reducedStatus.isPresent()) {
-            newStatus = reducedStatus.get().getStatus();
+            return reducedStatus.get().getStatus();
         } else {
-            newStatus = MIN_SEVERITY;
+            return MIN_SEVERITY;
         }
-
-        // Update and propagate
-        updateAndPropagateVertex(graph, vertex, newStatus);
     }
 
     public static List<StatusWithIndex> weighEdges(Collection<GraphEdge> edges) {
@@ -296,58 +432,38 @@ public class DefaultBusinessServiceStateMachine implements BusinessServiceStateM
     @Override
     public Status getOperationalStatus(BusinessService businessService) {
         Objects.requireNonNull(businessService);
-        m_rwLock.readLock().lock();
-        try {
-            GraphVertex vertex = m_g.getVertexByBusinessServiceId(businessService.getId());
-            if (vertex != null) {
-                return vertex.getStatus();
-            }
-            return null;
-        } finally {
-            m_rwLock.readLock().unlock();
+        GraphVertex vertex = m_g.getVertexByBusinessServiceId(businessService.getId());
+        if (vertex != null) {
+            return vertex.getStatus();
         }
+        return null;
     }
 
     @Override
     public Status getOperationalStatus(IpService ipService) {
-        m_rwLock.readLock().lock();
-        try {
-            GraphVertex vertex = m_g.getVertexByIpServiceId(ipService.getId());
-            if (vertex != null) {
-                return vertex.getStatus();
-            }
-            return null;
-        } finally {
-            m_rwLock.readLock().unlock();
+        GraphVertex vertex = m_g.getVertexByIpServiceId(ipService.getId());
+        if (vertex != null) {
+            return vertex.getStatus();
         }
+        return null;
     }
 
     @Override
     public Status getOperationalStatus(String reductionKey) {
-        m_rwLock.readLock().lock();
-        try {
-            GraphVertex vertex = m_g.getVertexByReductionKey(reductionKey);
-            if (vertex != null) {
-                return vertex.getStatus();
-            }
-            return null;
-        } finally {
-            m_rwLock.readLock().unlock();
+        GraphVertex vertex = m_g.getVertexByReductionKey(reductionKey);
+        if (vertex != null) {
+            return vertex.getStatus();
         }
+        return null;
     }
 
     @Override
     public Status getOperationalStatus(Edge edge) {
-        m_rwLock.readLock().lock();
-        try {
-            GraphVertex vertex = m_g.getVertexByEdgeId(edge.getId());
-            if (vertex != null) {
-                return vertex.getStatus();
-            }
-            return null;
-        } finally {
-            m_rwLock.readLock().unlock();
+        GraphVertex vertex = m_g.getVertexByEdgeId(edge.getId());
+        if (vertex != null) {
+            return vertex.getStatus();
         }
+        return null;
     }
 
     public void setAlarmProvider(AlarmProvider alarmProvider) {
@@ -561,4 +677,19 @@ public class DefaultBusinessServiceStateMachine implements BusinessServiceStateM
     private List<GraphVertex> calculateImpact(GraphVertex vertex) {
         return GraphAlgorithms.calculateImpact(m_g, vertex);
     }
+
+    private static long getBatchWindow() {
+        String batchWindowProperty = System.getProperty(BATCH_WINDOW_KEY, Long.toString(DEFAULT_BATCH_WINDOW));
+        try {
+            long batchWindow = Long.valueOf(batchWindowProperty);
+            if (batchWindow < 0) {
+                LOG.warn("Defined batch window must be greater than or equal to 0, but was {}. Falling back to default: {}", batchWindow, DEFAULT_BATCH_WINDOW);
+                return DEFAULT_BATCH_WINDOW;
+            }
+            return batchWindow;
+        } catch (Exception ex) {
+            LOG.warn("The defined batch window {} could not be interpreted as long value. Falling back to default: {}", batchWindowProperty, DEFAULT_BATCH_WINDOW);
+            return DEFAULT_BATCH_WINDOW;
+        }
+    }
 }
@@ -0,0 +1,223 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.bsm.service.internal;
+
+import static com.jayway.awaitility.Awaitility.await;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.netmgt.bsm.mock.MockAlarmWrapper;
+import org.opennms.netmgt.bsm.mock.MockBusinessService;
+import org.opennms.netmgt.bsm.mock.MockChildEdge;
+import org.opennms.netmgt.bsm.mock.MockReductionKeyEdge;
+import org.opennms.netmgt.bsm.service.model.AlarmWrapper;
+import org.opennms.netmgt.bsm.service.model.BusinessService;
+import org.opennms.netmgt.bsm.service.model.Status;
+import org.opennms.netmgt.bsm.service.model.graph.internal.BusinessServiceGraphImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Drives alarm updates through the state machine on a large synthetic hierarchy
+ * of business services, where most of the business services share their children
+ * with another parent, and reports how long the updates take and how long the
+ * readers of the operational status wait while the updates are being applied.
+ */
+public class DefaultBusinessServiceStateMachinePerfIT {
+    private static final Logger LOG = LoggerFactory.getLogger(DefaultBusinessServiceStateMachinePerfIT.class);
+
+    // 5000 business services in total
+    private static final int[] BUSINESS_SERVICES_PER_LEVEL = new int[] { 50, 450, 4500 };
+    // ~100k reduction keys on the leaves
+    private static final int REDUCTION_KEYS_PER_LEAF = 22;
+    private static final int NUM_ALARMS = 20000;
+    private static final int NUM_THREADS = 8;
+
+    private List<BusinessService> m_businessServices;
+    private List<String> m_reductionKeys;
+    private List<AlarmWrapper> m_alarms;
+    private Map<String, Status> m_finalStatuses;
+
+    @Before
+    public void setUp() {
+        buildHierarchy();
+
+        final Random random = new Random(42);
+        final Status[] statuses = Status.values();
+        m_alarms = new ArrayList<>(NUM_ALARMS);
+        m_finalStatuses = new LinkedHashMap<>();
+        for (int i = 0; i < NUM_ALARMS; i++) {
+            final String reductionKey = m_reductionKeys.get(random.nextInt(m_reductionKeys.size()));
+            final Status status = statuses[random.nextInt(statuses.length)];
+            m_alarms.add(new MockAlarmWrapper(reductionKey, status));
+            m_finalStatuses.put(reductionKey, status.isLessThan(DefaultBusinessServiceStateMachine.MIN_SEVERITY) ? DefaultBusinessServiceStateMachine.MIN_SEVERITY : status);
+        }
+    }
+
+    @Test
+    public void propagateAlarms() throws InterruptedException {
+        long start = System.nanoTime();
+        new BusinessServiceGraphImpl(m_businessServices);
+        LOG.info("Built a graph with {} business services and {} reduction keys in {}ms.",
+                m_businessServices.size(), m_reductionKeys.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+        // One alarm at a time from a single caller
+        final DefaultBusinessServiceStateMachine sequential = new DefaultBusinessServiceStateMachine();
+        sequential.setBusinessServices(m_businessServices);
+        start = System.nanoTime();
+        for (AlarmWrapper alarm : m_alarms) {
+            sequential.handleNewOrUpdatedAlarm(alarm);
+        }
+        LOG.info("Propagated {} alarms one at a time in {}ms.", m_alarms.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+        // Concurrent callers, each one owning a distinct set of reduction keys so
+        // that the final status of every reduction key is the same as above
+        final DefaultBusinessServiceStateMachine concurrent = new DefaultBusinessServiceStateMachine();
+        concurrent.setBusinessServices(m_businessServices);
+        timeConcurrentAlarms(concurrent, "one at a time");
+
+        // The same, but collecting the alarms into batches
+        System.setProperty(DefaultBusinessServiceStateMachine.BATCH_WINDOW_KEY, "5");
+        final DefaultBusinessServiceStateMachine batched;
+        try {
+            batched = new DefaultBusinessServiceStateMachine();
+        } finally {
+            System.clearProperty(DefaultBusinessServiceStateMachine.BATCH_WINDOW_KEY);
+        }
+        batched.setBusinessServices(m_businessServices);
+        timeConcurrentAlarms(batched, "in batches");
+
+        // Recalculate the whole graph from the final statuses and compare
+        final DefaultBusinessServiceStateMachine expected = new DefaultBusinessServiceStateMachine();
+        expected.setBusinessServices(m_businessServices);
+        expected.handleAllAlarms(m_finalStatuses.entrySet().stream()
+                .map(e -> new MockAlarmWrapper(e.getKey(), e.getValue()))
+                .collect(Collectors.toList()));
+        for (String reductionKey : m_finalStatuses.keySet()) {
+            assertEquals(expected.getOperationalStatus(reductionKey), sequential.getOperationalStatus(reductionKey));
+            assertEquals(expected.getOperationalStatus(reductionKey), concurrent.getOperationalStatus(reductionKey));
+            assertEquals(expected.getOperationalStatus(reductionKey), batched.getOperationalStatus(reductionKey));
+        }
+        for (BusinessService businessService : m_businessServices) {
+            assertEquals(expected.getOperationalStatus(businessService), sequential.getOperationalStatus(businessService));
+            assertEquals(expected.getOperationalStatus(businessService), concurrent.getOperationalStatus(businessService));
+            assertEquals(expected.getOperationalStatus(businessService), batched.getOperationalStatus(businessService));
+        }
+    }
+
+    private void timeConcurrentAlarms(DefaultBusinessServiceStateMachine stateMachine, String mode) throws InterruptedException {
+        final AtomicBoolean updating = new AtomicBoolean(true);
+        final AtomicLong reads = new AtomicLong();
+        final AtomicLong maxReadNanos = new AtomicLong();
+        final Thread reader = new Thread(() -> {
+            final Random random = new Random(7);
+            while (updating.get()) {
+                final BusinessService businessService = m_businessServices.get(random.nextInt(m_businessServices.size()));
+                final long readStart = System.nanoTime();
+                stateMachine.getOperationalStatus(businessService);
+                maxReadNanos.accumulateAndGet(System.nanoTime() - readStart, Math::max);
+                reads.incrementAndGet();
+            }
+        });
+        reader.start();
+
+        final List<Thread> writers = new ArrayList<>(NUM_THREADS);
+        for (int i = 0; i < NUM_THREADS; i++) {
+            final int writer = i;
+            writers.add(new Thread(() -> {
+                for (AlarmWrapper alarm : m_alarms) {
+                    if (Math.floorMod(alarm.getReductionKey().hashCode(), NUM_THREADS) == writer) {
+                        stateMachine.handleNewOrUpdatedAlarm(alarm);
+                    }
+                }
+            }));
+        }
+        final long start = System.nanoTime();
+        writers.forEach(Thread::start);
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        // Batched alarms may still be waiting to be propagated
+        await().atMost(1, TimeUnit.MINUTES).pollInterval(10, TimeUnit.MILLISECONDS).until(() -> m_finalStatuses.entrySet().stream()
+                .allMatch(e -> e.getValue().equals(stateMachine.getOperationalStatus(e.getKey()))));
+        final long elapsedNanos = System.nanoTime() - start;
+        updating.set(false);
+        reader.join();
+        LOG.info("Propagated {} alarms from {} threads {} in {}ms, while {} status reads took at most {}us.", m_alarms.size(), NUM_THREADS, mode,
+                TimeUnit.NANOSECONDS.toMillis(elapsedNanos), reads.get(), TimeUnit.NANOSECONDS.toMicros(maxReadNanos.get()));
+    }
+
+    /**
+     * Builds the levels of business services, where every business service below the
+     * first level is the child of up to two business services on the level above it.
+     */
+    private void buildHierarchy() {
+        m_businessServices = new ArrayList<>();
+        m_reductionKeys = new ArrayList<>();
+        long id = 0;
+        List<MockBusinessService> parents = new ArrayList<>();
+        for (int level = 0; level < BUSINESS_SERVICES_PER_LEVEL.length; level++) {
+            final List<MockBusinessService> businessServices = new ArrayList<>(BUSINESS_SERVICES_PER_LEVEL[level]);
+            for (int i = 0; i < BUSINESS_SERVICES_PER_LEVEL[level]; i++) {
+                final MockBusinessService businessService = new MockBusinessService(++id);
+                if (!parents.isEmpty()) {
+                    final MockBusinessService first = parents.get(i % parents.size());
+                    final MockBusinessService second = parents.get((i * 31 + 7) % parents.size());
+                    first.addEdge(new MockChildEdge(++id, businessService));
+                    if (second != first) {
+                        second.addEdge(new MockChildEdge(++id, businessService));
+                    }
+                }
+                businessServices.add(businessService);
+            }
+            m_businessServices.addAll(businessServices);
+            parents = businessServices;
+        }
+
+        for (MockBusinessService leaf : parents) {
+            for (int i = 0; i < REDUCTION_KEYS_PER_LEAF; i++) {
+                final String reductionKey = "uei.opennms.org/perf/" + leaf.getId() + "/" + i;
+                leaf.addEdge(new MockReductionKeyEdge(++id, reductionKey, null));
+                m_reductionKeys.add(reductionKey);
+            }
+        }
+    }
+}
@@ -28,6 +28,8 @@
 
 package org.opennms.netmgt.bsm.service.internal;
 
+import static com.jayway.awaitility.Awaitility.await;
+import static org.hamcrest.Matchers.equalTo;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
@@ -37,6 +39,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import org.junit.Rule;
 import org.junit.Test;
@@ -56,6 +60,7 @@ import org.opennms.netmgt.bsm.service.model.graph.GraphVertex;
 import org.opennms.netmgt.bsm.test.LoggingStateChangeHandler;
 
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
 public class DefaultBusinessServiceStateMachineTest {
@@ -241,6 +246,120 @@ public class DefaultBusinessServiceStateMachineTest {
         assertEquals("b1", impacts.get(0).getBusinessService().getName());
     }
 
+    @Test
+    public void canReduceSharedAncestorsOnce() {
+        /**
+         * Creates a graph that looks like:
+         *      B1
+         *     /  \
+         *    B2  B3
+         *   / \  |
+         *  a2  B4
+         *      |
+         *      a1
+         */
+        MockBusinessServiceHierarchy h = MockBusinessServiceHierarchy.builder()
+                .withBusinessService(1)
+                    .withBusinessService(2)
+                        .withReductionKey(21, "a2")
+                        .withBusinessService(4)
+                            .withReductionKey(41, "a1")
+                        .commit()
+                    .commit()
+                    .withBusinessService(3)
+                        .withBusinessService(4)
+                        .commit()
+                    .commit()
+                .commit()
+                .build();
+
+        // Setup the state machine
+        DefaultBusinessServiceStateMachine stateMachine = new DefaultBusinessServiceStateMachine();
+        LoggingStateChangeHandler stateChangeHandler = new LoggingStateChangeHandler();
+        stateMachine.addHandler(stateChangeHandler, Maps.newHashMap());
+        stateMachine.setBusinessServices(h.getBusinessServices());
+
+        // Both alarms are applied in a single pass
+        stateMachine.handleAllAlarms(Lists.newArrayList(
+                new MockAlarmWrapper("a1", Status.MAJOR),
+                new MockAlarmWrapper("a2", Status.CRITICAL)));
+        assertEquals(Status.CRITICAL, stateMachine.getOperationalStatus(h.getBusinessServiceById(1)));
+        assertEquals(Status.CRITICAL, stateMachine.getOperationalStatus(h.getBusinessServiceById(2)));
+        assertEquals(Status.MAJOR, stateMachine.getOperationalStatus(h.getBusinessServiceById(3)));
+        assertEquals(Status.MAJOR, stateMachine.getOperationalStatus(h.getBusinessServiceById(4)));
+
+        // B1 is only reduced once all of its children have settled, so it
+        // should only transition once, directly to its final status
+        List<LoggingStateChangeHandler.StateChange> b1Changes = stateChangeHandler.getStateChanges().stream()
+                .filter(c -> c.getBusinessService().getId() == 1L)
+                .collect(Collectors.toList());
+        assertEquals(1, b1Changes.size());
+        assertEquals(Status.NORMAL, b1Changes.get(0).getPrevSeverity());
+        assertEquals(Status.CRITICAL, b1Changes.get(0).getNewSeverity());
+        assertEquals(4, stateChangeHandler.getStateChanges().size());
+    }
+
+    @Test
+    public void canBatchAlarms() {
+        MockBusinessServiceHierarchy.HierarchyBuilder builder = MockBusinessServiceHierarchy.builder();
+        for (int i = 1; i <= 8; i++) {
+            builder.withBusinessService(i)
+                .withReductionKey(i, "a" + i)
+                .commit();
+        }
+        MockBusinessServiceHierarchy h = builder.build();
+
+        System.setProperty(DefaultBusinessServiceStateMachine.BATCH_WINDOW_KEY, "1000");
+        final DefaultBusinessServiceStateMachine stateMachine;
+        try {
+            stateMachine = new DefaultBusinessServiceStateMachine();
+        } finally {
+            System.clearProperty(DefaultBusinessServiceStateMachine.BATCH_WINDOW_KEY);
+        }
+        LoggingStateChangeHandler stateChangeHandler = new LoggingStateChangeHandler();
+        stateMachine.addHandler(stateChangeHandler, Maps.newHashMap());
+        stateMachine.setBusinessServices(h.getBusinessServices());
+
+        // The alarms are queued, and only propagated once the window has passed
+        for (int i = 1; i <= 8; i++) {
+            stateMachine.handleNewOrUpdatedAlarm(new MockAlarmWrapper("a" + i, Status.MINOR));
+            stateMachine.handleNewOrUpdatedAlarm(new MockAlarmWrapper("a" + i, Status.MAJOR));
+        }
+        assertEquals(Status.NORMAL, stateMachine.getOperationalStatus(h.getBusinessServiceById(1)));
+
+        await().atMost(10, TimeUnit.SECONDS).until(() -> stateChangeHandler.getStateChanges().size(), equalTo(8));
+        for (int i = 1; i <= 8; i++) {
+            assertEquals(Status.MAJOR, stateMachine.getOperationalStatus(h.getBusinessServiceById(i)));
+        }
+        // Only the latest status of every reduction key was propagated
+        stateChangeHandler.getStateChanges().forEach(c -> assertEquals(Status.MAJOR, c.getNewSeverity()));
+    }
+
+    @Test
+    public void canPropagateBatchedAlarmsOnDestroy() throws Exception {
+        MockBusinessServiceHierarchy h = MockBusinessServiceHierarchy.builder()
+                .withBusinessService(1)
+                    .withReductionKey(1, "a1")
+                .commit()
+                .build();
+
+        System.setProperty(DefaultBusinessServiceStateMachine.BATCH_WINDOW_KEY, "500");
+        final DefaultBusinessServiceStateMachine stateMachine;
+        try {
+            stateMachine = new DefaultBusinessServiceStateMachine();
+        } finally {
+            System.clearProperty(DefaultBusinessServiceStateMachine.BATCH_WINDOW_KEY);
+        }
+        stateMachine.setBusinessServices(h.getBusinessServices());
+
+        stateMachine.handleNewOrUpdatedAlarm(new MockAlarmWrapper("a1", Status.MAJOR));
+        assertEquals(Status.NORMAL, stateMachine.getOperationalStatus(h.getBusinessServiceById(1)));
+
+        // The batch that is in flight is propagated before the thread stops
+        stateMachine.destroy();
+        assertEquals(Status.MAJOR, stateMachine.getOperationalStatus(h.getBusinessServiceById(1)));
+    }
+
     @Test
     public void canRenderGraphToPng() {
         // Create a simple hierarchy
@@ -39,6 +39,7 @@ import org.opennms.netmgt.collection.api.PersistException;
 import org.opennms.netmgt.collection.api.ServiceParameters;
 import org.opennms.netmgt.dao.api.ResourceStorageDao;
 import org.opennms.netmgt.model.ResourcePath;
+import org.opennms.netmgt.rrd.AttributeStatisticsIndex;
 import org.opennms.netmgt.rrd.RrdRepository;
 import org.opennms.netmgt.rrd.RrdStrategy;
 import org.slf4j.Logger;
@@ -57,6 +58,7 @@ public class BasePersister extends AbstractPersister {
     private final RrdStrategy<?, ?> m_rrdStrategy;
     protected final ResourceStorageDao m_resourceStorageDao;
     private boolean m_dontReorderAttributes = false;
+    private AttributeStatisticsIndex m_statisticsIndex;
 
     /**
      * <p>Constructor for BasePersister.</p>
@@ -82,6 +84,8 @@ public class BasePersister extends AbstractPersister {
         if (resource.getTimeKeeper() != null) {
             builder.setTimeKeeper(resource.getTimeKeeper());
         }
+        builder.setStatisticsIndex(m_statisticsIndex);
+        builder.setResourceStorageDao(m_resourceStorageDao);
         for (Iterator<CollectionAttributeType> iter = attributeTypes.iterator(); iter.hasNext();) {
             CollectionAttributeType attrType = iter.next();
             if (attrType instanceof NumericCollectionAttributeType) {
@@ -115,4 +119,12 @@ public class BasePersister extends AbstractPersister {
     public boolean getDontReorderAttributes() {
         return m_dontReorderAttributes;
     }
+
+    public void setStatisticsIndex(AttributeStatisticsIndex statisticsIndex) {
+        m_statisticsIndex = statisticsIndex;
+    }
+
+    public AttributeStatisticsIndex getStatisticsIndex() {
+        return m_statisticsIndex;
+    }
 }
@@ -50,8 +50,11 @@ import org.opennms.netmgt.collection.api.PersistOperationBuilder;
 import org.opennms.netmgt.collection.api.ResourceIdentifier;
 import org.opennms.netmgt.collection.api.TimeKeeper;
 import org.opennms.netmgt.collection.support.DefaultTimeKeeper;
+import org.opennms.netmgt.dao.api.ResourceStorageDao;
+import org.opennms.netmgt.rrd.AttributeStatisticsIndex;
 import org.opennms.netmgt.rrd.RrdAttributeType;
 import org.opennms.netmgt.model.ResourcePath;
+import org.opennms.netmgt.model.ResourceTypeUtils;
 import org.opennms.netmgt.rrd.RrdDataSource;
 import org.opennms.netmgt.rrd.RrdException;
 import org.opennms.netmgt.rrd.RrdMetaDataUtils;
@@ -77,6 +80,8 @@ public class RrdPersistOperationBuilder implements PersistOperationBuilder {
     private final Map<CollectionAttributeType, Number> m_declarations;
     private final Map<String, String> m_metaData = new LinkedHashMap<String, String>();
     private TimeKeeper m_timeKeeper = new DefaultTimeKeeper();
+    private AttributeStatisticsIndex m_statisticsIndex;
+    private ResourceStorageDao m_resourceStorageDao;
 
     /** Constant <code>MAX_DS_NAME_LENGTH=19</code> */
     public static final int MAX_DS_NAME_LENGTH = 19;
@@ -199,12 +204,27 @@ public class RrdPersistOperationBuilder implements PersistOperationBuilder {
             final String ownerName = m_resource.getOwnerName();
             final String absolutePath = getResourceDir(m_resource);
 
+            final boolean indexed = m_resourceStorageDao != null && m_resourceStorageDao.isIndexed();
+
             RrdMetaDataUtils.createMetaDataFile(absolutePath, m_rrdName, m_metaData);
+            if (indexed) {
+                fileWritten(m_rrdName + ".meta");
+            }
 
             List<RrdDataSource> dataSources = getDataSources();
             if (dataSources != null && dataSources.size() > 0) {
+                final long timestamp = m_timeKeeper.getCurrentTime();
                 createRRD(m_rrdStrategy, ownerName, absolutePath, m_rrdName, getRepository().getStep(), dataSources, getRepository().getRraList());
-                updateRRD(m_rrdStrategy, ownerName, absolutePath, m_rrdName, m_timeKeeper.getCurrentTime(), getValues());
+                // Queuing strategies create the file later on, it is reported
+                // by the first persist that finds it on disk
+                final String rrdFileName = m_rrdName + m_rrdStrategy.getDefaultFileExtension();
+                if (indexed && new File(absolutePath, rrdFileName).exists()) {
+                    fileWritten(rrdFileName);
+                }
+                updateRRD(m_rrdStrategy, ownerName, absolutePath, m_rrdName, timestamp, getValues());
+                if (m_statisticsIndex != null && m_statisticsIndex.isEnabled()) {
+                    recordStatistics(new File(absolutePath, rrdFileName), timestamp);
+                }
             }
         } catch (FileNotFoundException e) {
             LoggerFactory.getLogger(getClass()).warn("Could not get resource directory: " + e.getMessage(), e);
@@ -230,6 +250,21 @@ public class RrdPersistOperationBuilder implements PersistOperationBuilder {
         return values.toString();
     }
 
+    private void fileWritten(String fileName) {
+        m_resourceStorageDao.fileWritten(ResourceTypeUtils.getResourcePathWithRepository(m_repository, m_resource.getPath()), fileName);
+    }
+
+    private void recordStatistics(File rrdFile, long timestamp) {
+        for (Map.Entry<CollectionAttributeType, Number> entry : m_declarations.entrySet()) {
+            final RrdAttributeType type = RrdPersistOperationBuilder.mapType(entry.getKey().getType());
+            if (type != null && entry.getValue() != null) {
+                // Recorded under the data source name, as found in the RRD file
+                final String dsName = StringUtils.truncate(entry.getKey().getName(), RrdPersistOperationBuilder.MAX_DS_NAME_LENGTH);
+                m_statisticsIndex.record(rrdFile, dsName, type, timestamp, entry.getValue().doubleValue());
+            }
+        }
+    }
+
     private List<RrdDataSource> getDataSources() {
         List<RrdDataSource> dataSources = new ArrayList<RrdDataSource>(m_declarations.size());
         for (CollectionAttributeType attrDef : m_declarations.keySet()) {
@@ -358,4 +393,30 @@ public class RrdPersistOperationBuilder implements PersistOperationBuilder {
     public void setTimeKeeper(TimeKeeper timeKeeper) {
         m_timeKeeper = timeKeeper;
     }
+
+    public AttributeStatisticsIndex getStatisticsIndex() {
+        return m_statisticsIndex;
+    }
+
+    /**
+     * <p>setStatisticsIndex</p>
+     *
+     * @param statisticsIndex the index to record the persisted values in, may be null
+     */
+    public void setStatisticsIndex(AttributeStatisticsIndex statisticsIndex) {
+        m_statisticsIndex = statisticsIndex;
+    }
+
+    public ResourceStorageDao getResourceStorageDao() {
+        return m_resourceStorageDao;
+    }
+
+    /**
+     * <p>setResourceStorageDao</p>
+     *
+     * @param resourceStorageDao the DAO to notify of the files that are written, may be null
+     */
+    public void setResourceStorageDao(ResourceStorageDao resourceStorageDao) {
+        m_resourceStorageDao = resourceStorageDao;
+    }
 }
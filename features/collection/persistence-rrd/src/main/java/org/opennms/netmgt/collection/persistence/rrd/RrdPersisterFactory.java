@@ -33,6 +33,7 @@ import org.opennms.netmgt.collection.api.PersisterFactory;
 import org.opennms.netmgt.collection.api.ServiceParameters;
 import org.opennms.netmgt.dao.api.ResourceStorageDao;
 import org.opennms.netmgt.model.ResourceTypeUtils;
+import org.opennms.netmgt.rrd.AttributeStatisticsIndex;
 import org.opennms.netmgt.rrd.RrdRepository;
 import org.opennms.netmgt.rrd.RrdStrategy;
 
@@ -42,6 +43,8 @@ public class RrdPersisterFactory implements PersisterFactory {
 
     private ResourceStorageDao m_resourceStorageDao;
 
+    private AttributeStatisticsIndex m_statisticsIndex;
+
     public Persister createPersister(ServiceParameters params, RrdRepository repository) {
         return createPersister(params, repository, false, false, false);
     }
@@ -61,6 +64,7 @@ public class RrdPersisterFactory implements PersisterFactory {
         GroupPersister persister = new GroupPersister(params, repository, m_rrdStrategy, m_resourceStorageDao);
         persister.setIgnorePersist(dontPersistCounters);
         persister.setDontReorderAttributes(dontReorderAttributes);
+        persister.setStatisticsIndex(m_statisticsIndex);
         return persister;
     }
 
@@ -69,6 +73,7 @@ public class RrdPersisterFactory implements PersisterFactory {
         OneToOnePersister persister = new OneToOnePersister(params, repository, m_rrdStrategy, m_resourceStorageDao);
         persister.setIgnorePersist(dontPersistCounters);
         persister.setDontReorderAttributes(dontReorderAttributes);
+        persister.setStatisticsIndex(m_statisticsIndex);
         return persister;
     }
 
@@ -87,5 +92,12 @@ public class RrdPersisterFactory implements PersisterFactory {
     public void setResourceStorageDao(ResourceStorageDao resourceStorageDao) {
         m_resourceStorageDao = resourceStorageDao;
     }
-}
 
+    public AttributeStatisticsIndex getStatisticsIndex() {
+        return m_statisticsIndex;
+    }
+
+    public void setStatisticsIndex(AttributeStatisticsIndex statisticsIndex) {
+        m_statisticsIndex = statisticsIndex;
+    }
+}
@@ -767,7 +767,7 @@ public abstract class AbstractEventUtil implements EventUtil {
 		try {
 			final EventTemplate eventTemplate = eventTemplateCache.get(input);
 			Supplier<String> expander = () -> eventTemplate.expand(event, decode);
-			if (eventTemplate.requiresTransaction()) {
+			if (eventTemplate.requiresTransaction() && !hasTransactionalLookups()) {
 				Objects.requireNonNull(transactionOperations);
 				return transactionOperations.execute(session -> expander.get());
 			} else {
@@ -778,6 +778,23 @@ public abstract class AbstractEventUtil implements EventUtil {
 		}
 	}
 
+	/**
+	 * Whether the lookups behind the expandable parameters, like {@link #getNodeLabel(long)},
+	 * open a transaction of their own when they need one. Templates with such parameters
+	 * are then expanded without wrapping them in a transaction.
+	 */
+	protected boolean hasTransactionalLookups() {
+		return false;
+	}
+
+	protected TransactionOperations getTransactionOperations() {
+		return transactionOperations;
+	}
+
+	public void setTransactionOperations(TransactionOperations transactionOperations) {
+		this.transactionOperations = transactionOperations;
+	}
+
 	/**
 	 * <p>getEventHost</p>
 	 *
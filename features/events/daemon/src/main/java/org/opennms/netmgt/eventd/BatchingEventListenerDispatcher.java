@@ -0,0 +1,302 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.eventd;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import org.opennms.core.concurrent.LogPreservingThreadFactory;
+import org.opennms.core.logging.Logging;
+import org.opennms.netmgt.events.api.EventListener;
+import org.opennms.netmgt.xml.event.Event;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Delivers events to a single {@link EventListener} from a bounded,
+ * multi-producer single-consumer ring.
+ *
+ * Broadcasting threads claim a slot in the ring with a single CAS and never
+ * allocate a task per event. The listener thread drains the ring in batches,
+ * releasing the slots of a whole batch before calling the listener, and parks
+ * when the ring is empty. Events that do not fit in the ring are dropped.
+ *
+ * The queue depth, the delivery lag and the number of dropped events are
+ * registered in the given {@link MetricRegistry} as
+ * <code>listeners.&lt;name&gt;.queued</code>, <code>listeners.&lt;name&gt;.lag</code>
+ * and <code>listeners.&lt;name&gt;.dropped</code>.
+ */
+class BatchingEventListenerDispatcher implements EventListenerDispatcher, Runnable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BatchingEventListenerDispatcher.class);
+
+    /**
+     * The longest time the listener thread parks before checking the ring
+     * again, in case a wakeup is missed.
+     */
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final EventListener m_listener;
+
+    private final int m_capacity;
+
+    private final int m_mask;
+
+    private final int m_batchSize;
+
+    /**
+     * The sequence of each slot. A slot at position <code>p</code> can be
+     * written when its sequence is <code>p</code> and read when its sequence
+     * is <code>p + 1</code>.
+     */
+    private final AtomicLongArray m_sequences;
+
+    private final Event[] m_events;
+
+    private final CompletableFuture<?>[] m_futures;
+
+    private final long[] m_enqueuedAt;
+
+    /**
+     * The next position to be claimed by a producer.
+     */
+    private final AtomicLong m_tail = new AtomicLong(0);
+
+    /**
+     * The next position to be read by the listener thread.
+     */
+    private volatile long m_head = 0;
+
+    private volatile boolean m_running = true;
+
+    private volatile boolean m_parked = false;
+
+    private final Thread m_thread;
+
+    private final MetricRegistry m_registry;
+
+    private final String m_metricPrefix;
+
+    private final Counter m_dropped;
+
+    private final Histogram m_lag;
+
+    /**
+     * Constructor
+     *
+     * @param listener the listener to deliver events to
+     * @param capacity the number of events that can be queued, rounded up to the next power of two
+     * @param batchSize the maximum number of events taken off the ring at once
+     * @param registry the registry to publish the metrics of this listener to
+     */
+    BatchingEventListenerDispatcher(final EventListener listener, final int capacity, final int batchSize, final MetricRegistry registry) {
+        m_listener = Objects.requireNonNull(listener);
+        if (capacity < 1 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("capacity must be between 1 and 2^30");
+        }
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be positive");
+        }
+
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        m_capacity = size;
+        m_mask = size - 1;
+        m_batchSize = Math.min(batchSize, size);
+
+        m_sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            m_sequences.set(i, i);
+        }
+        m_events = new Event[size];
+        m_futures = new CompletableFuture<?>[size];
+        m_enqueuedAt = new long[size];
+
+        m_registry = Objects.requireNonNull(registry);
+        m_metricPrefix = MetricRegistry.name("listeners", m_listener.getName());
+        m_registry.remove(MetricRegistry.name(m_metricPrefix, "queued"));
+        m_registry.register(MetricRegistry.name(m_metricPrefix, "queued"), new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return getQueueDepth();
+            }
+        });
+        m_dropped = m_registry.counter(MetricRegistry.name(m_metricPrefix, "dropped"));
+        m_lag = m_registry.histogram(MetricRegistry.name(m_metricPrefix, "lag"));
+
+        // This ThreadFactory will ensure that the log prefix of the calling thread
+        // is used for all events that this listener handles.
+        m_thread = new LogPreservingThreadFactory(m_listener.getName(), 1).newThread(this);
+        m_thread.start();
+    }
+
+    @Override
+    public CompletableFuture<Void> dispatch(final Event event, final boolean synchronous) {
+        final CompletableFuture<Void> future = synchronous ? new CompletableFuture<>() : null;
+
+        if (!m_running || !offer(event, future)) {
+            m_dropped.inc();
+            LOG.warn("Listener {}'s event queue is full, discarding event", m_listener.getName());
+            if (future != null) {
+                future.complete(null);
+            }
+            return future;
+        }
+
+        if (m_parked) {
+            LockSupport.unpark(m_thread);
+        }
+        return future;
+    }
+
+    private boolean offer(final Event event, final CompletableFuture<?> future) {
+        for (;;) {
+            final long pos = m_tail.get();
+            final int index = (int)(pos & m_mask);
+            final long diff = m_sequences.get(index) - pos;
+            if (diff < 0) {
+                // the slot has not yet been released by the listener thread, the ring is full
+                return false;
+            } else if (diff == 0 && m_tail.compareAndSet(pos, pos + 1)) {
+                m_events[index] = event;
+                m_futures[index] = future;
+                m_enqueuedAt[index] = System.nanoTime();
+                // publish the slot to the listener thread
+                m_sequences.set(index, pos + 1);
+                return true;
+            }
+            // another producer claimed the slot first, try again
+        }
+    }
+
+    /**
+     * Returns the number of events waiting to be delivered.
+     */
+    long getQueueDepth() {
+        return Math.max(0, m_tail.get() - m_head);
+    }
+
+    /**
+     * Returns the number of events that have been dropped because the ring was full.
+     */
+    long getDropped() {
+        return m_dropped.getCount();
+    }
+
+    @Override
+    public void run() {
+        final Event[] events = new Event[m_batchSize];
+        final CompletableFuture<?>[] futures = new CompletableFuture<?>[m_batchSize];
+        final long[] enqueuedAt = new long[m_batchSize];
+
+        for (;;) {
+            // take a batch of events off the ring
+            long head = m_head;
+            int count = 0;
+            while (count < m_batchSize) {
+                final int index = (int)(head & m_mask);
+                if (m_sequences.get(index) != head + 1) {
+                    break;
+                }
+                events[count] = m_events[index];
+                futures[count] = m_futures[index];
+                enqueuedAt[count] = m_enqueuedAt[index];
+                m_events[index] = null;
+                m_futures[index] = null;
+                // release the slot to the producers
+                m_sequences.set(index, head + m_capacity);
+                head++;
+                count++;
+            }
+            m_head = head;
+
+            if (count == 0) {
+                if (!m_running) {
+                    break;
+                }
+                m_parked = true;
+                if (m_sequences.get((int)(m_head & m_mask)) != m_head + 1 && m_running) {
+                    LockSupport.parkNanos(this, MAX_PARK_NANOS);
+                }
+                m_parked = false;
+                continue;
+            }
+
+            final long now = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                m_lag.update(TimeUnit.NANOSECONDS.toMillis(now - enqueuedAt[i]));
+                deliver(events[i]);
+                if (futures[i] != null) {
+                    futures[i].complete(null);
+                }
+                events[i] = null;
+                futures[i] = null;
+            }
+        }
+
+        LOG.debug("run: dispatcher for listener {} stopped", m_listener.getName());
+    }
+
+    private void deliver(final Event event) {
+        try {
+            if (LOG.isDebugEnabled()) LOG.debug("run: calling onEvent on {} for event {}", m_listener.getName(), event.toStringSimple());
+
+            // Make sure we restore our log4j logging prefix after onEvent is called
+            final Map<String,String> mdc = Logging.getCopyOfContextMap();
+            try {
+                m_listener.onEvent(event);
+            } finally {
+                Logging.setContextMap(mdc);
+            }
+        } catch (Throwable t) {
+            LOG.warn("run: an unexpected error occured during ListenerThread {}", m_listener.getName(), t);
+        }
+    }
+
+    @Override
+    public void stop() {
+        m_running = false;
+        LockSupport.unpark(m_thread);
+        m_registry.remove(MetricRegistry.name(m_metricPrefix, "queued"));
+        m_registry.remove(MetricRegistry.name(m_metricPrefix, "dropped"));
+        m_registry.remove(MetricRegistry.name(m_metricPrefix, "lag"));
+    }
+}
@@ -38,6 +38,7 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
@@ -47,6 +48,7 @@ import java.util.concurrent.TimeUnit;
 
 import org.opennms.core.concurrent.LogPreservingThreadFactory;
 import org.opennms.core.logging.Logging;
+import org.opennms.netmgt.config.eventd.EventdConfiguration;
 import org.opennms.netmgt.events.api.EventHandler;
 import org.opennms.netmgt.events.api.EventIpcBroadcaster;
 import org.opennms.netmgt.events.api.EventIpcManager;
@@ -112,7 +114,14 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
     /**
      * Hash table of event listener threads keyed by the listener's id
      */
-    private Map<String, EventListenerExecutor> m_listenerThreads = new HashMap<String, EventListenerExecutor>();
+    private Map<String, EventListenerDispatcher> m_listenerThreads = new HashMap<String, EventListenerDispatcher>();
+
+    /**
+     * Immutable snapshot of the listener registrations used to route events
+     * without holding the lock that guards the registration maps. It is
+     * replaced whenever a listener is added or removed.
+     */
+    private volatile ListenerIndex m_index = ListenerIndex.EMPTY;
 
     /**
      * The thread pool handling the events
@@ -125,15 +134,112 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
     
     private Integer m_handlerQueueLength;
 
+    private boolean m_batchListenerDispatch = false;
+
+    private int m_listenerQueueLength = DEFAULT_LISTENER_QUEUE_LENGTH;
+
+    private int m_listenerBatchSize = DEFAULT_LISTENER_BATCH_SIZE;
+
     private final MetricRegistry m_registry;
 
+    /** Constant <code>DEFAULT_LISTENER_QUEUE_LENGTH=EventdConfiguration.DEFAULT_LISTENER_QUEUE_LENGTH</code> */
+    public static final int DEFAULT_LISTENER_QUEUE_LENGTH = EventdConfiguration.DEFAULT_LISTENER_QUEUE_LENGTH;
+
+    /** Constant <code>DEFAULT_LISTENER_BATCH_SIZE=64</code> */
+    public static final int DEFAULT_LISTENER_BATCH_SIZE = 64;
+
+    /**
+     * The maximum number of distinct UEIs for which the resolved listeners
+     * are cached by a {@link ListenerIndex}.
+     */
+    private static final int MAX_CACHED_UEIS = 10000;
+
+    /**
+     * An immutable view of the registered listeners. The listeners matching a
+     * given UEI, including the partial wild card "directory" matches, are
+     * resolved once and then cached for the lifetime of the index.
+     */
+    private static final class ListenerIndex {
+        private static final ListenerIndex EMPTY = new ListenerIndex(Collections.emptyList(), Collections.emptyMap(), Collections.emptyMap());
+
+        private final List<EventListenerDispatcher> m_matchAll;
+        private final Map<String, List<EventListener>> m_ueiListeners;
+        private final Map<String, EventListenerDispatcher> m_dispatchers;
+        private final Map<String, List<EventListenerDispatcher>> m_resolved = new ConcurrentHashMap<>();
+
+        private ListenerIndex(final List<EventListener> matchAll, final Map<String, List<EventListener>> ueiListeners, final Map<String, EventListenerDispatcher> dispatchers) {
+            m_dispatchers = Collections.unmodifiableMap(new HashMap<>(dispatchers));
+            final List<EventListenerDispatcher> matchAllDispatchers = new ArrayList<>(matchAll.size());
+            for (final EventListener listener : matchAll) {
+                matchAllDispatchers.add(m_dispatchers.get(listener.getName()));
+            }
+            m_matchAll = Collections.unmodifiableList(matchAllDispatchers);
+            final Map<String, List<EventListener>> ueis = new HashMap<>();
+            for (final Map.Entry<String, List<EventListener>> entry : ueiListeners.entrySet()) {
+                if (!entry.getValue().isEmpty()) {
+                    ueis.put(entry.getKey(), Collections.unmodifiableList(new ArrayList<>(entry.getValue())));
+                }
+            }
+            m_ueiListeners = Collections.unmodifiableMap(ueis);
+        }
+
+        private List<EventListenerDispatcher> getMatchAll() {
+            return m_matchAll;
+        }
+
+        private boolean hasEventListener(final String uei) {
+            return m_ueiListeners.containsKey(uei);
+        }
+
+        private List<EventListenerDispatcher> getDispatchers(final String uei) {
+            final List<EventListenerDispatcher> cached = m_resolved.get(uei);
+            if (cached != null) {
+                return cached;
+            }
+            final List<EventListenerDispatcher> resolved = resolve(uei);
+            if (m_resolved.size() < MAX_CACHED_UEIS) {
+                m_resolved.put(uei, resolved);
+            }
+            return resolved;
+        }
+
+        /*
+         * Loop to attempt partial wild card "directory" matches.
+         */
+        private List<EventListenerDispatcher> resolve(final String eventUei) {
+            final Set<EventListener> sentToListeners = new HashSet<EventListener>();
+            final List<EventListenerDispatcher> dispatchers = new ArrayList<>();
+            for (String uei = eventUei; uei.length() > 0; ) {
+                final List<EventListener> listeners = m_ueiListeners.get(uei);
+                if (listeners != null) {
+                    for (EventListener listener : listeners) {
+                        if (sentToListeners.add(listener)) {
+                            dispatchers.add(m_dispatchers.get(listener.getName()));
+                        }
+                    }
+                }
+
+                // Try wild cards: Find / before last character
+                int i = uei.lastIndexOf("/", uei.length() - 2);
+                if (i > 0) {
+                    // Split at "/", including the /
+                    uei = uei.substring (0, i + 1);
+                } else {
+                    // No more wild cards to match
+                    break;
+                }
+            }
+            return Collections.unmodifiableList(dispatchers);
+        }
+    }
+
     /**
      * A thread dedicated to each listener. The events meant for each listener
      * is added to an execution queue when the 'sendNow()' is called. The
      * ListenerThread reads events off of this queue and sends them to the
      * appropriate listener.
      */
-    private static class EventListenerExecutor {
+    private static class EventListenerExecutor implements EventListenerDispatcher {
         /**
          * Listener to which this thread is dedicated
          */
@@ -170,7 +276,8 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
             );
         }
 
-        public CompletableFuture<Void> addEvent(final Event event) {
+        @Override
+        public CompletableFuture<Void> dispatch(final Event event, final boolean synchronous) {
             return CompletableFuture.runAsync(new Runnable() {
                 @Override
                 public void run() {
@@ -194,6 +301,7 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
         /**
          * Stops the execution of this listener.
          */
+        @Override
         public void stop() {
             m_delegateThread.shutdown();
         }
@@ -290,15 +398,17 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
             LOG.debug("Event ID {} to be broadcasted: {}", event.getDbid(), event.getUei());
         }
 
-        if (LOG.isDebugEnabled() && m_listeners.isEmpty()) {
+        final ListenerIndex index = m_index;
+
+        if (LOG.isDebugEnabled() && index.getMatchAll().isEmpty()) {
             LOG.debug("No listeners interested in all events");
         }
 
         List<CompletableFuture<Void>> listenerFutures = new ArrayList<>();
 
         // Send to listeners interested in receiving all events
-        for (EventListener listener : m_listeners) {
-            listenerFutures.add(queueEventToListener(event, listener));
+        for (EventListenerDispatcher dispatcher : index.getMatchAll()) {
+            queueEventToListener(event, dispatcher, synchronous, listenerFutures);
         }
 
         if (event.getUei() == null) {
@@ -310,31 +420,13 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
 
         /*
          * Send to listeners who are interested in this event UEI.
-         * Loop to attempt partial wild card "directory" matches.
          */
-        Set<EventListener> sentToListeners = new HashSet<EventListener>();
-        for (String uei = event.getUei(); uei.length() > 0; ) {
-            if (m_ueiListeners.containsKey(uei)) {
-                for (EventListener listener : m_ueiListeners.get(uei)) {
-                    if (!sentToListeners.contains(listener)) {
-                        listenerFutures.add(queueEventToListener(event, listener));
-                        sentToListeners.add(listener);
-                    }
-                }
-            }
-            
-            // Try wild cards: Find / before last character
-            int i = uei.lastIndexOf("/", uei.length() - 2);
-            if (i > 0) {
-                // Split at "/", including the /
-                uei = uei.substring (0, i + 1);
-            } else {
-                // No more wild cards to match
-                break;
-            }
+        final List<EventListenerDispatcher> dispatchers = index.getDispatchers(event.getUei());
+        for (EventListenerDispatcher dispatcher : dispatchers) {
+            queueEventToListener(event, dispatcher, synchronous, listenerFutures);
         }
         
-        if (sentToListeners.isEmpty()) {
+        if (dispatchers.isEmpty()) {
             if (LOG.isDebugEnabled()) {
                 LOG.debug("No listener interested in event ID {}: {}", event.getDbid(), event.getUei());
             }
@@ -347,8 +439,11 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
         }
     }
 
-    private CompletableFuture<Void> queueEventToListener(Event event, EventListener listener) {
-        return m_listenerThreads.get(listener.getName()).addEvent(event);
+    private static void queueEventToListener(Event event, EventListenerDispatcher dispatcher, boolean synchronous, List<CompletableFuture<Void>> listenerFutures) {
+        final CompletableFuture<Void> future = dispatcher.dispatch(event, synchronous);
+        if (future != null) {
+            listenerFutures.add(future);
+        }
     }
 
     /**
@@ -369,6 +464,8 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
         for (String uei : m_ueiListeners.keySet()) {
             removeUeiForListener(uei, listener);
         }
+
+        updateIndex();
     }
 
     /**
@@ -398,6 +495,8 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
 
         // Since we have a UEI-specific listener, remove the match-all listener
         removeMatchAllForListener(listener);
+
+        updateIndex();
     }
 
     /**
@@ -432,6 +531,8 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
         for (String uei : ueis) {
             removeUeiForListener(uei, listener);
         }
+
+        updateIndex();
     }
 
     /**
@@ -451,6 +552,8 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
         Assert.notNull(uei, "uei argument cannot be null");
 
         removeUeiForListener(uei, listener);
+
+        updateIndex();
     }
 
     /**
@@ -477,6 +580,8 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
 
             m_listenerThreads.remove(listener.getName());
         }
+
+        updateIndex();
     }
 
     /**
@@ -488,10 +593,23 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
             return;
         }
         
-        EventListenerExecutor listenerThread = new EventListenerExecutor(listener, m_handlerQueueLength);
+        final EventListenerDispatcher listenerThread;
+        if (m_batchListenerDispatch) {
+            listenerThread = new BatchingEventListenerDispatcher(listener, m_listenerQueueLength, m_listenerBatchSize, m_registry);
+        } else {
+            listenerThread = new EventListenerExecutor(listener, m_handlerQueueLength);
+        }
         m_listenerThreads.put(listener.getName(), listenerThread);
     }
 
+    /**
+     * Publish a new snapshot of the listener registrations. Must be called
+     * while holding the lock on this instance.
+     */
+    private void updateIndex() {
+        m_index = new ListenerIndex(m_listeners, m_ueiListeners, m_listenerThreads);
+    }
+
     /**
      * Add to uei listeners.
      */
@@ -628,12 +746,66 @@ public class EventIpcManagerDefaultImpl implements EventIpcManager, EventIpcBroa
         m_handlerQueueLength = size;
     }
 
+    /**
+     * <p>isBatchListenerDispatch</p>
+     *
+     * @return a boolean.
+     */
+    public boolean isBatchListenerDispatch() {
+        return m_batchListenerDispatch;
+    }
+
+    /**
+     * Deliver events to each listener in batches from a bounded ring instead
+     * of through a single-threaded executor per listener. Only affects
+     * listeners that are registered after this is set.
+     *
+     * @param batchListenerDispatch a boolean.
+     */
+    public void setBatchListenerDispatch(boolean batchListenerDispatch) {
+        m_batchListenerDispatch = batchListenerDispatch;
+    }
+
+    /**
+     * <p>getListenerQueueLength</p>
+     *
+     * @return a int.
+     */
+    public int getListenerQueueLength() {
+        return m_listenerQueueLength;
+    }
+
+    /**
+     * The number of events that can be queued for each listener when batch
+     * listener dispatch is enabled.
+     *
+     * @param listenerQueueLength a int.
+     */
+    public void setListenerQueueLength(int listenerQueueLength) {
+        m_listenerQueueLength = listenerQueueLength;
+    }
+
+    /**
+     * <p>getListenerBatchSize</p>
+     *
+     * @return a int.
+     */
+    public int getListenerBatchSize() {
+        return m_listenerBatchSize;
+    }
+
+    /**
+     * The maximum number of events taken off a listener's queue at once when
+     * batch listener dispatch is enabled.
+     *
+     * @param listenerBatchSize a int.
+     */
+    public void setListenerBatchSize(int listenerBatchSize) {
+        m_listenerBatchSize = listenerBatchSize;
+    }
+
     @Override
     public boolean hasEventListener(final String uei) {
-        if (this.m_ueiListeners.containsKey(uei)) {
-            return this.m_ueiListeners.get(uei).size() > 0;
-        } else {
-            return false;
-        }
+        return m_index.hasEventListener(uei);
     }
 }
@@ -0,0 +1,58 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.eventd;
+
+import java.util.concurrent.CompletableFuture;
+
+import org.opennms.netmgt.events.api.EventListener;
+import org.opennms.netmgt.xml.event.Event;
+
+/**
+ * Delivers the events that are broadcast to a single {@link EventListener}
+ * on a thread dedicated to that listener.
+ */
+interface EventListenerDispatcher {
+
+    /**
+     * Queues the event for delivery to the listener.
+     *
+     * @param event the event to deliver
+     * @param synchronous whether or not the caller is going to wait for the delivery
+     * @return a future that completes once the listener has handled the event, or
+     *         null if the delivery is not synchronous and the dispatcher does not
+     *         track completion of asynchronous deliveries
+     */
+    CompletableFuture<Void> dispatch(Event event, boolean synchronous);
+
+    /**
+     * Stops the delivery of events to this listener once the events that are
+     * already queued have been delivered.
+     */
+    void stop();
+}
@@ -31,9 +31,16 @@ package org.opennms.netmgt.eventd;
 import java.beans.PropertyDescriptor;
 import java.lang.reflect.InvocationTargetException;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -48,21 +55,57 @@ import org.opennms.netmgt.dao.api.AssetRecordDao;
 import org.opennms.netmgt.dao.api.HwEntityDao;
 import org.opennms.netmgt.dao.api.IpInterfaceDao;
 import org.opennms.netmgt.dao.api.NodeDao;
+import org.opennms.netmgt.events.api.EventConstants;
+import org.opennms.netmgt.events.api.EventListener;
+import org.opennms.netmgt.events.api.EventSubscriptionService;
 import org.opennms.netmgt.model.OnmsAssetRecord;
 import org.opennms.netmgt.model.OnmsHwEntity;
 import org.opennms.netmgt.model.OnmsIpInterface;
 import org.opennms.netmgt.model.OnmsNode;
 import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.event.Parm;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.support.TransactionOperations;
 
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
 import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.RatioGauge;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 
-public class EventUtilDaoImpl extends AbstractEventUtil {
+/**
+ * Looks up the node, interface, asset and hardware values of the expandable
+ * parameters in the database.
+ *
+ * Once subscribed to the events with {@link #setEventSubscriptionService(EventSubscriptionService)},
+ * the values are kept in a cache of up to {@link #NODE_CACHE_SIZE_PROPERTY} nodes.
+ * The values of a node are dropped when one of the {@link #NODE_CACHE_UEIS} events
+ * is received for it, and at the latest {@link #NODE_CACHE_TTL_PROPERTY} seconds
+ * after they were looked up.
+ */
+public class EventUtilDaoImpl extends AbstractEventUtil implements EventListener {
 
     private static final Logger LOG = LoggerFactory.getLogger(EventUtilDaoImpl.class);
 
+    public static final String NODE_CACHE_SIZE_PROPERTY = "org.opennms.eventd.nodeCacheSize";
+
+    public static final String NODE_CACHE_TTL_PROPERTY = "org.opennms.eventd.nodeCacheTtl";
+
+    /**
+     * The events that change the values cached for the node they refer to.
+     */
+    public static final List<String> NODE_CACHE_UEIS = Collections.unmodifiableList(Arrays.asList(
+            EventConstants.NODE_UPDATED_EVENT_UEI,
+            EventConstants.NODE_DELETED_EVENT_UEI,
+            EventConstants.NODE_LABEL_CHANGED_EVENT_UEI,
+            EventConstants.ASSET_INFO_CHANGED_EVENT_UEI,
+            EventConstants.INTERFACE_REPARENTED_EVENT_UEI,
+            EventConstants.INTERFACE_DELETED_EVENT_UEI,
+            EventConstants.HARDWARE_INVENTORY_SUCCESSFUL_UEI));
+
 	@Autowired
 	private NodeDao nodeDao;
 	
@@ -83,49 +126,193 @@ public class EventUtilDaoImpl extends AbstractEventUtil {
 
 	private final static Map<String, PropertyDescriptor> hwEntityDescriptorsByName = getDescriptorsForStrings(OnmsHwEntity.class);
 
-    public EventUtilDaoImpl() { }
+    /**
+     * The values looked up for a node, by the parameter they were looked up for.
+     */
+    private static class NodeValues {
+        private final ConcurrentMap<String, Optional<String>> m_values = new ConcurrentHashMap<>();
+    }
+
+    private final Cache<Integer, NodeValues> nodeCache;
+
+    private volatile boolean nodeCacheEnabled = false;
+
+    private final Counter nodeCacheHits = new Counter();
+
+    private final Counter nodeCacheMisses = new Counter();
+
+    public EventUtilDaoImpl() {
+        this(null);
+    }
 
     public EventUtilDaoImpl(MetricRegistry registry) {
+        this(registry, Long.getLong(NODE_CACHE_SIZE_PROPERTY, 10000L), Long.getLong(NODE_CACHE_TTL_PROPERTY, 300L));
+    }
+
+    /**
+     * @param nodeCacheSize the number of nodes to cache the values of, 0 disables the cache
+     * @param nodeCacheTtl the number of seconds to cache the values of a node for
+     */
+    protected EventUtilDaoImpl(MetricRegistry registry, long nodeCacheSize, long nodeCacheTtl) {
         super(registry);
+        if (nodeCacheSize > 0) {
+            nodeCache = CacheBuilder.newBuilder()
+                    .maximumSize(nodeCacheSize)
+                    .expireAfterWrite(nodeCacheTtl, TimeUnit.SECONDS)
+                    .build();
+        } else {
+            nodeCache = null;
+        }
+
+        if (registry != null && nodeCache != null) {
+            registry.register(MetricRegistry.name("eventutil.nodecache.capacity"),
+                    new Gauge<Long>() {
+                        @Override
+                        public Long getValue() {
+                            return nodeCacheSize;
+                        }
+                    });
+
+            registry.register(MetricRegistry.name("eventutil.nodecache.size"),
+                    new Gauge<Long>() {
+                        @Override
+                        public Long getValue() {
+                            return nodeCache.size();
+                        }
+                    });
+
+            registry.register(MetricRegistry.name("eventutil.nodecache.hits"), nodeCacheHits);
+            registry.register(MetricRegistry.name("eventutil.nodecache.misses"), nodeCacheMisses);
+            registry.register(MetricRegistry.name("eventutil.nodecache.hitratio"),
+                    new RatioGauge() {
+                        @Override
+                        protected Ratio getRatio() {
+                            return Ratio.of(nodeCacheHits.getCount(), nodeCacheHits.getCount() + nodeCacheMisses.getCount());
+                        }
+                    });
+        }
+    }
+
+    /**
+     * Returns the value of the parameter for the node from the cache, or looks it up
+     * in its own transaction and caches it.
+     */
+    private String getNodeValue(long nodeId, String parm, Supplier<String> lookup) {
+        if (!nodeCacheEnabled) {
+            return lookup.get();
+        }
+
+        final NodeValues nodeValues;
+        try {
+            nodeValues = nodeCache.get((int)nodeId, NodeValues::new);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e);
+        }
+        final Optional<String> cached = nodeValues.m_values.get(parm);
+        if (cached != null) {
+            nodeCacheHits.inc();
+            return cached.orElse(null);
+        }
+
+        nodeCacheMisses.inc();
+        final TransactionOperations transactionOperations = getTransactionOperations();
+        final String value = transactionOperations == null ? lookup.get() : transactionOperations.execute(status -> lookup.get());
+        // The values of a node that got invalidated in the meantime are no longer in the cache
+        nodeValues.m_values.put(parm, Optional.ofNullable(value));
+        return value;
+    }
+
+    @Override
+    protected boolean hasTransactionalLookups() {
+        return nodeCacheEnabled;
+    }
+
+    /**
+     * Subscribes to the events that change the values of the nodes, and enables the
+     * node cache unless its size is 0. Without the events, the values are always looked up.
+     */
+    public void setEventSubscriptionService(EventSubscriptionService eventSubscriptionService) {
+        if (nodeCache != null) {
+            eventSubscriptionService.addEventListener(this, NODE_CACHE_UEIS);
+            nodeCacheEnabled = true;
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "Eventd:EventUtil";
+    }
+
+    /**
+     * Drops the cached values of the nodes the event refers to.
+     */
+    @Override
+    public void onEvent(Event event) {
+        if (!nodeCacheEnabled) {
+            return;
+        }
+        if (event.hasNodeid()) {
+            nodeCache.invalidate(event.getNodeid().intValue());
+        }
+        if (EventConstants.INTERFACE_REPARENTED_EVENT_UEI.equals(event.getUei())) {
+            final Parm oldNodeId = event.getParm(EventConstants.PARM_OLD_NODEID);
+            if (oldNodeId != null && oldNodeId.getValue() != null) {
+                try {
+                    nodeCache.invalidate(Integer.valueOf(oldNodeId.getValue().getContent()));
+                } catch (NumberFormatException e) {
+                    LOG.warn("Invalid {} '{}' on event {}.", EventConstants.PARM_OLD_NODEID, oldNodeId.getValue().getContent(), event.getUei());
+                }
+            }
+        }
     }
 
     @Override
     public String getNodeLabel(long nodeId) {
-        return nodeDao.getLabelForId(Integer.valueOf((int)nodeId));
+        return getNodeValue(nodeId, TAG_NODELABEL, () -> nodeDao.getLabelForId(Integer.valueOf((int)nodeId)));
     }
 
     @Override
     public String getNodeLocation(long nodeId) {
-        return nodeDao.getLocationForId(Integer.valueOf((int)nodeId));
+        return getNodeValue(nodeId, TAG_NODELOCATION, () -> nodeDao.getLocationForId(Integer.valueOf((int)nodeId)));
     }
 
     @Override
     public String getForeignSource(long nodeId) {
-        OnmsNode node = nodeDao.get((int)nodeId);
-        if (node != null) {
-            return node.getForeignSource();
-        }
-        return null;
+        return getNodeValue(nodeId, TAG_FOREIGNSOURCE, () -> {
+            OnmsNode node = nodeDao.get((int)nodeId);
+            if (node != null) {
+                return node.getForeignSource();
+            }
+            return null;
+        });
     }
 
     @Override
     public String getForeignId(long nodeId) {
-        OnmsNode node = nodeDao.get((int)nodeId);
-        return node == null ? null : node.getForeignId();
+        return getNodeValue(nodeId, TAG_FOREIGNID, () -> {
+            OnmsNode node = nodeDao.get((int)nodeId);
+            return node == null ? null : node.getForeignId();
+        });
     }
 
     @Override
     public String getIfAlias(long nodeId, String ipaddr) {
-        OnmsIpInterface iface = ipInterfaceDao.findByNodeIdAndIpAddress((int)nodeId, ipaddr);
-        if (iface != null && iface.getSnmpInterface() != null) {
-            return iface.getSnmpInterface().getIfAlias();
-        } else {
-            return null;
-        }
+        return getNodeValue(nodeId, TAG_IFALIAS + ":" + ipaddr, () -> {
+            OnmsIpInterface iface = ipInterfaceDao.findByNodeIdAndIpAddress((int)nodeId, ipaddr);
+            if (iface != null && iface.getSnmpInterface() != null) {
+                return iface.getSnmpInterface().getIfAlias();
+            } else {
+                return null;
+            }
+        });
     }
 
     @Override
     public String getAssetFieldValue(String parm, long nodeId) {
+        return getNodeValue(nodeId, parm, () -> lookupAssetFieldValue(parm, nodeId));
+    }
+
+    private String lookupAssetFieldValue(String parm, long nodeId) {
         final Matcher matcher = ASSET_PARM_PATTERN.matcher(parm);
         if (!matcher.matches()) {
             LOG.warn("Unsupported asset field parameter '{}'.", parm);
@@ -143,6 +330,10 @@ public class EventUtilDaoImpl extends AbstractEventUtil {
 
     @Override
     public String getHardwareFieldValue(String parm, long nodeId) {
+        return getNodeValue(nodeId, parm, () -> lookupHardwareFieldValue(parm, nodeId));
+    }
+
+    private String lookupHardwareFieldValue(String parm, long nodeId) {
         final Matcher matcher = HW_PARM_PATTERN.matcher(parm);
         if (!matcher.matches()) {
             LOG.warn("Unsupported hardware field parameter '{}'.", parm);
@@ -207,14 +398,31 @@ public class EventUtilDaoImpl extends AbstractEventUtil {
      */
     @Override
     public String getHostName(final int nodeId, final String hostip) {
+        return getNodeValue(nodeId, TAG_HOST + ":" + hostip, () -> {
+            OnmsIpInterface ints = ipInterfaceDao.findByNodeIdAndIpAddress(nodeId, hostip);
+            if (ints == null) {
+                return hostip;
+            } else {
+                final String hostname = ints.getIpHostName();
+                return (hostname == null) ? hostip : hostname;
+            }
+        });
+    }
 
-        OnmsIpInterface ints = ipInterfaceDao.findByNodeIdAndIpAddress(nodeId, hostip);
-        if (ints == null) {
-            return hostip;
-        } else {
-            final String hostname = ints.getIpHostName();
-            return (hostname == null) ? hostip : hostname;
-        }
+    public void setNodeDao(NodeDao nodeDao) {
+        this.nodeDao = nodeDao;
+    }
+
+    public void setAssetRecordDao(AssetRecordDao assetRecordDao) {
+        this.assetRecordDao = assetRecordDao;
+    }
+
+    public void setIpInterfaceDao(IpInterfaceDao ipInterfaceDao) {
+        this.ipInterfaceDao = ipInterfaceDao;
+    }
+
+    public void setHwEntityDao(HwEntityDao hwEntityDao) {
+        this.hwEntityDao = hwEntityDao;
     }
 
     @Override
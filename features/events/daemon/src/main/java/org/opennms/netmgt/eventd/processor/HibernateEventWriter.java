@@ -32,7 +32,11 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
 
 import org.opennms.netmgt.dao.api.DistPollerDao;
@@ -63,6 +67,7 @@ import org.springframework.transaction.support.TransactionCallbackWithoutResult;
 import org.springframework.transaction.support.TransactionOperations;
 import org.springframework.util.Assert;
 
+import com.codahale.metrics.Histogram;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
 import com.codahale.metrics.Timer.Context;
@@ -86,6 +91,11 @@ import com.codahale.metrics.Timer.Context;
  * @see org.opennms.netmgt.events.api.EventDatabaseConstants#DB_ATTRIB_DELIM
  * @see org.opennms.netmgt.events.api.EventDatabaseConstants#NAME_VAL_DELIM
  *
+ * The events of logs processed concurrently are persisted together in group
+ * commits of up to {@link #MAX_GROUP_SIZE_PROPERTY} events. Each caller returns
+ * once the group holding its log is committed, so the events always have their
+ * database ID when they are broadcast.
+ *
  * @author <A HREF="mailto:sowmya@opennms.org">Sowmya Nataraj </A>
  * @author <A HREF="http://www.opennms.org">OpenNMS.org </A>
  */
@@ -97,6 +107,9 @@ public class HibernateEventWriter implements EventWriter {
     public static final String LOG_MSG_DEST_LOG_AND_DISPLAY = "logndisplay";
     public static final String LOG_MSG_DEST_LOG_ONLY = "logonly";
     public static final String LOG_MSG_DEST_DISPLAY_ONLY = "displayonly";
+
+    public static final String MAX_GROUP_SIZE_PROPERTY = "org.opennms.eventd.writer.maxGroupSize";
+    public static final String MAX_GROUP_DELAY_PROPERTY = "org.opennms.eventd.writer.maxGroupDelay";
     
     @Autowired
     private TransactionOperations m_transactionManager;
@@ -121,8 +134,59 @@ public class HibernateEventWriter implements EventWriter {
 
     private final Timer writeTimer;
 
+    private final Histogram groupSizes;
+
+    private final Timer commitTimer;
+
+    private final BlockingQueue<PendingLog> m_pending = new LinkedBlockingQueue<>();
+
+    private final ReentrantLock m_commitLock = new ReentrantLock();
+
+    private int m_maxGroupSize = Integer.getInteger(MAX_GROUP_SIZE_PROPERTY, 500);
+
+    private long m_maxGroupDelay = Long.getLong(MAX_GROUP_DELAY_PROPERTY, 0L);
+
     public HibernateEventWriter(MetricRegistry registry) {
         writeTimer = Objects.requireNonNull(registry).timer("eventlogs.process.write");
+        groupSizes = registry.histogram("eventlogs.process.write.groupSize");
+        commitTimer = registry.timer("eventlogs.process.write.commit");
+    }
+
+    /**
+     * The events of a log that wait to be persisted in a group commit.
+     */
+    private static class PendingLog {
+        private final Header m_header;
+        private final List<Event> m_events;
+        private Throwable m_failure;
+        private volatile boolean m_done = false;
+
+        public PendingLog(Header header, List<Event> events) {
+            m_header = header;
+            m_events = events;
+        }
+
+        public boolean isDone() {
+            return m_done;
+        }
+
+        public void complete(Throwable failure) {
+            m_failure = failure;
+            m_done = true;
+        }
+
+        public void rethrow() throws EventProcessorException {
+            if (m_failure == null) {
+                return;
+            } else if (m_failure instanceof EventProcessorException) {
+                throw (EventProcessorException)m_failure;
+            } else if (m_failure instanceof RuntimeException) {
+                throw (RuntimeException)m_failure;
+            } else if (m_failure instanceof Error) {
+                throw (Error)m_failure;
+            }
+            throw new EventProcessorException(m_failure);
+        }
     }
 
     /**
@@ -179,31 +243,130 @@ public class HibernateEventWriter implements EventWriter {
                 return;
             }
 
-            // Time the transaction and insertions
+            // Time the wait for the group commit, the transaction and insertions
+            final PendingLog pending = new PendingLog(eventLog.getHeader(), eventsToPersist);
             try (Context context = writeTimer.time()) {
-                final AtomicReference<EventProcessorException> exception = new AtomicReference<>();
+                m_pending.add(pending);
+                // Whoever holds the lock commits the logs queued so far,
+                // ours included unless it is already done when we get it
+                while (!pending.isDone()) {
+                    m_commitLock.lock();
+                    try {
+                        if (!pending.isDone()) {
+                            commitPendingLogs();
+                        }
+                    } finally {
+                        m_commitLock.unlock();
+                    }
+                }
+                pending.rethrow();
+            }
+        }
+    }
 
+    /**
+     * Persists the queued logs, up to {@link #m_maxGroupSize} events, in a single transaction.
+     * When {@link #m_maxGroupDelay} is set, waits that many milliseconds at most for more logs
+     * to fill the group.
+     */
+    private void commitPendingLogs() {
+        final List<PendingLog> group = new ArrayList<>();
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(m_maxGroupDelay);
+        int groupSize = 0;
+        while (group.isEmpty() || groupSize < m_maxGroupSize) {
+            PendingLog next = m_pending.poll();
+            if (next == null) {
+                final long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    break;
+                }
+                try {
+                    next = m_pending.poll(remaining, TimeUnit.NANOSECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                if (next == null) {
+                    break;
+                }
+            }
+            group.add(next);
+            groupSize += next.m_events.size();
+        }
+        if (group.isEmpty()) {
+            return;
+        }
+
+        groupSizes.update(groupSize);
+        try (Context context = commitTimer.time()) {
+            if (group.size() == 1) {
+                persist(group.get(0));
+                return;
+            }
+
+            final AtomicReference<EventProcessorException> exception = new AtomicReference<>();
+            try {
                 m_transactionManager.execute(new TransactionCallbackWithoutResult() {
                     @Override
                     protected void doInTransactionWithoutResult(TransactionStatus status) {
-                        for (Event eachEvent : eventsToPersist) {
-                            try {
-                                process(eventLog.getHeader(), eachEvent);
-                            } catch (EventProcessorException e) {
-                                exception.set(e);
-                                return;
+                        for (PendingLog pending : group) {
+                            for (Event eachEvent : pending.m_events) {
+                                try {
+                                    process(pending.m_header, eachEvent);
+                                } catch (EventProcessorException e) {
+                                    exception.set(e);
+                                    status.setRollbackOnly();
+                                    return;
+                                }
                             }
                         }
                     }
                 });
+            } catch (RuntimeException e) {
+                exception.set(new EventProcessorException(e));
+            }
 
-                if (exception.get() != null) {
-                    throw exception.get();
+            if (exception.get() == null) {
+                for (PendingLog pending : group) {
+                    pending.complete(null);
+                }
+            } else {
+                // Do not let one log fail the others: persist each of them on its own
+                LOG.debug("Unable to persist a group of {} events, persisting their logs one at a time.", groupSize, exception.get());
+                for (PendingLog pending : group) {
+                    persist(pending);
                 }
             }
         }
     }
 
+    /**
+     * Persists the events of a single log in their own transaction.
+     */
+    private void persist(final PendingLog pending) {
+        try {
+            final AtomicReference<EventProcessorException> exception = new AtomicReference<>();
+
+            m_transactionManager.execute(new TransactionCallbackWithoutResult() {
+                @Override
+                protected void doInTransactionWithoutResult(TransactionStatus status) {
+                    for (Event eachEvent : pending.m_events) {
+                        try {
+                            process(pending.m_header, eachEvent);
+                        } catch (EventProcessorException e) {
+                            exception.set(e);
+                            return;
+                        }
+                    }
+                }
+            });
+
+            pending.complete(exception.get());
+        } catch (Throwable t) {
+            pending.complete(t);
+        }
+    }
+
     /**
      * {@inheritDoc}
      *
@@ -405,4 +568,16 @@ public class HibernateEventWriter implements EventWriter {
     public void setTransactionManager(TransactionOperations transactionManager) {
         m_transactionManager = transactionManager;
     }
+
+    public void setMaxGroupSize(int maxGroupSize) {
+        m_maxGroupSize = maxGroupSize;
+    }
+
+    public void setMaxGroupDelay(long maxGroupDelay) {
+        m_maxGroupDelay = maxGroupDelay;
+    }
+
+    int getPendingLogCount() {
+        return m_pending.size();
+    }
 }
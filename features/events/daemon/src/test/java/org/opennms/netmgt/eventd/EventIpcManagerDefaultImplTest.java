@@ -36,6 +36,7 @@ import static org.opennms.core.utils.InetAddressUtils.addr;
 
 import java.lang.Thread.UncaughtExceptionHandler;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.RejectedExecutionException;
@@ -757,4 +758,94 @@ public class EventIpcManagerDefaultImplTest extends TestCase {
         // broadcastNow() returned, so the counter should have been increased
         assertEquals(1, counter.get());
     }
+
+    public void testBatchedBroadcastNowSyncWithUeiPart() throws InterruptedException {
+        final List<Event> received = new ArrayList<>();
+        final EventListener listener = new EventListener() {
+            @Override
+            public String getName() {
+                return "testBatchedBroadcastNowSyncWithUeiPart";
+            }
+
+            @Override
+            public void onEvent(Event event) {
+                received.add(event);
+            }
+        };
+
+        EventIpcManagerDefaultImpl manager = new EventIpcManagerDefaultImpl(m_registry);
+        manager.setHandlerPoolSize(5);
+        manager.setBatchListenerDispatch(true);
+        DefaultEventHandlerImpl handler = new DefaultEventHandlerImpl(m_registry);
+        manager.setEventHandler(handler);
+        manager.afterPropertiesSet();
+
+        manager.addEventListener(listener, Arrays.asList("uei.opennms.org/foo", "uei.opennms.org/"));
+        assertTrue(manager.hasEventListener("uei.opennms.org/"));
+        assertFalse(manager.hasEventListener("uei.opennms.org/bar"));
+
+        final Event foo = new EventBuilder("uei.opennms.org/foo", "testBatchedBroadcastNowSyncWithUeiPart").getEvent();
+        final Event bar = new EventBuilder("uei.opennms.org/bar", "testBatchedBroadcastNowSyncWithUeiPart").getEvent();
+        final Event other = new EventBuilder("uei.example.org/bar", "testBatchedBroadcastNowSyncWithUeiPart").getEvent();
+        manager.broadcastNow(foo, true);
+        manager.broadcastNow(bar, true);
+        manager.broadcastNow(other, true);
+
+        // the listener receives each event once even though it matches both UEIs
+        assertEquals(Arrays.asList(foo, bar), received);
+
+        manager.removeEventListener(listener);
+        assertFalse(manager.hasEventListener("uei.opennms.org/"));
+    }
+
+    public void testBatchedSlowEventListenerDiscardsWhenFull() throws InterruptedException {
+        final AtomicInteger counter = new AtomicInteger();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        EventListener slowListener = new EventListener() {
+            @Override
+            public String getName() {
+                return "testBatchedSlowEventListener";
+            }
+
+            @Override
+            public void onEvent(Event event) {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                }
+                counter.incrementAndGet();
+            }
+        };
+
+        EventIpcManagerDefaultImpl manager = new EventIpcManagerDefaultImpl(m_registry);
+        manager.setHandlerPoolSize(1);
+        manager.setBatchListenerDispatch(true);
+        manager.setListenerQueueLength(4);
+        manager.setListenerBatchSize(1);
+        DefaultEventHandlerImpl handler = new DefaultEventHandlerImpl(m_registry);
+        manager.setEventHandler(handler);
+        manager.afterPropertiesSet();
+
+        manager.addEventListener(slowListener);
+
+        // The first event blocks the listener thread, the next 4 fill up the
+        // listener's queue and the last 5 are discarded.
+        manager.broadcastNow(new EventBuilder("uei.opennms.org/foo", "testBatchedSlowEventListener").getEvent(), false);
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        for (int i = 0; i < 9; i++) {
+            EventBuilder bldr = new EventBuilder("uei.opennms.org/foo/" + i, "testBatchedSlowEventListener");
+            manager.broadcastNow(bldr.getEvent(), false);
+        }
+
+        assertEquals(4L, m_registry.getGauges().get("listeners.testBatchedSlowEventListener.queued").getValue());
+        assertEquals(5L, m_registry.getCounters().get("listeners.testBatchedSlowEventListener.dropped").getCount());
+
+        release.countDown();
+        await().untilAtomic(counter, is(equalTo(5)));
+        assertEquals(0L, m_registry.getGauges().get("listeners.testBatchedSlowEventListener.queued").getValue());
+        assertEquals(5L, m_registry.getHistograms().get("listeners.testBatchedSlowEventListener.lag").getCount());
+    }
 }
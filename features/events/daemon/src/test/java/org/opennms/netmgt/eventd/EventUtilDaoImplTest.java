@@ -0,0 +1,152 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.eventd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.netmgt.dao.api.AssetRecordDao;
+import org.opennms.netmgt.dao.api.NodeDao;
+import org.opennms.netmgt.events.api.EventConstants;
+import org.opennms.netmgt.events.api.EventSubscriptionService;
+import org.opennms.netmgt.model.OnmsAssetRecord;
+import org.opennms.netmgt.model.events.EventBuilder;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+
+public class EventUtilDaoImplTest {
+
+    private MetricRegistry m_registry;
+    private NodeDao m_nodeDao;
+    private AssetRecordDao m_assetRecordDao;
+    private EventUtilDaoImpl m_eventUtil;
+
+    @Before
+    public void setUp() {
+        m_registry = new MetricRegistry();
+        m_nodeDao = mock(NodeDao.class);
+        m_assetRecordDao = mock(AssetRecordDao.class);
+        m_eventUtil = createEventUtil(m_registry, 100);
+    }
+
+    private EventUtilDaoImpl createEventUtil(MetricRegistry registry, long nodeCacheSize) {
+        final EventUtilDaoImpl eventUtil = new EventUtilDaoImpl(registry, nodeCacheSize, 300);
+        eventUtil.setNodeDao(m_nodeDao);
+        eventUtil.setAssetRecordDao(m_assetRecordDao);
+        eventUtil.setEventSubscriptionService(mock(EventSubscriptionService.class));
+        return eventUtil;
+    }
+
+    @Test
+    public void canCacheNodeValues() {
+        when(m_nodeDao.getLabelForId(1)).thenReturn("node1");
+        final OnmsAssetRecord assetRecord = new OnmsAssetRecord();
+        assetRecord.setBuilding("HQ");
+        when(m_assetRecordDao.findByNodeId(1)).thenReturn(assetRecord);
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals("node1", m_eventUtil.getNodeLabel(1));
+            assertEquals("HQ", m_eventUtil.getAssetFieldValue("asset[building]", 1));
+            // missing values are cached too
+            assertNull(m_eventUtil.getNodeLabel(2));
+        }
+
+        verify(m_nodeDao, times(1)).getLabelForId(1);
+        verify(m_nodeDao, times(1)).getLabelForId(2);
+        verify(m_assetRecordDao, times(1)).findByNodeId(1);
+        assertEquals(6, m_registry.counter("eventutil.nodecache.hits").getCount());
+        assertEquals(3, m_registry.counter("eventutil.nodecache.misses").getCount());
+        assertEquals(2.0 / 3.0, (Double)m_registry.getGauges().get("eventutil.nodecache.hitratio").getValue(), 0.001);
+        assertEquals(2L, ((Gauge<?>)m_registry.getGauges().get("eventutil.nodecache.size")).getValue());
+    }
+
+    @Test
+    public void canInvalidateNodeValuesOnEvents() {
+        when(m_nodeDao.getLabelForId(1)).thenReturn("node1", "renamed");
+        assertEquals("node1", m_eventUtil.getNodeLabel(1));
+
+        // events for other nodes leave the values alone
+        m_eventUtil.onEvent(new EventBuilder(EventConstants.NODE_UPDATED_EVENT_UEI, "test").setNodeid(2).getEvent());
+        assertEquals("node1", m_eventUtil.getNodeLabel(1));
+
+        m_eventUtil.onEvent(new EventBuilder(EventConstants.NODE_LABEL_CHANGED_EVENT_UEI, "test").setNodeid(1).getEvent());
+        assertEquals("renamed", m_eventUtil.getNodeLabel(1));
+        verify(m_nodeDao, times(2)).getLabelForId(1);
+    }
+
+    @Test
+    public void canInvalidateOldNodeOnInterfaceReparented() {
+        when(m_nodeDao.getLabelForId(1)).thenReturn("node1");
+        m_eventUtil.getNodeLabel(1);
+
+        m_eventUtil.onEvent(new EventBuilder(EventConstants.INTERFACE_REPARENTED_EVENT_UEI, "test")
+                .setNodeid(2)
+                .addParam(EventConstants.PARM_OLD_NODEID, "1")
+                .getEvent());
+        m_eventUtil.getNodeLabel(1);
+        verify(m_nodeDao, times(2)).getLabelForId(1);
+    }
+
+    @Test
+    public void canSubscribeToNodeEvents() {
+        final EventSubscriptionService eventSubscriptionService = mock(EventSubscriptionService.class);
+        final EventUtilDaoImpl eventUtil = new EventUtilDaoImpl(new MetricRegistry(), 100, 300);
+        eventUtil.setNodeDao(m_nodeDao);
+        when(m_nodeDao.getLabelForId(1)).thenReturn("node1");
+
+        // values are not cached until the events that invalidate them are received
+        eventUtil.getNodeLabel(1);
+        eventUtil.getNodeLabel(1);
+        verify(m_nodeDao, times(2)).getLabelForId(1);
+
+        eventUtil.setEventSubscriptionService(eventSubscriptionService);
+        verify(eventSubscriptionService).addEventListener(eventUtil, EventUtilDaoImpl.NODE_CACHE_UEIS);
+        eventUtil.getNodeLabel(1);
+        eventUtil.getNodeLabel(1);
+        verify(m_nodeDao, times(3)).getLabelForId(1);
+    }
+
+    @Test
+    public void canDisableNodeCache() {
+        final EventUtilDaoImpl eventUtil = createEventUtil(new MetricRegistry(), 0);
+        when(m_nodeDao.getLabelForId(1)).thenReturn("node1");
+        for (int i = 0; i < 3; i++) {
+            assertEquals("node1", eventUtil.getNodeLabel(1));
+        }
+        verify(m_nodeDao, times(3)).getLabelForId(1);
+    }
+}
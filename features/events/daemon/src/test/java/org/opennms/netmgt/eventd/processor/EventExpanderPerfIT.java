@@ -0,0 +1,171 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.eventd.processor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyObject;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.netmgt.config.api.EventConfDao;
+import org.opennms.netmgt.dao.api.AssetRecordDao;
+import org.opennms.netmgt.dao.api.NodeDao;
+import org.opennms.netmgt.eventd.EventExpander;
+import org.opennms.netmgt.eventd.EventUtilDaoImpl;
+import org.opennms.netmgt.events.api.EventSubscriptionService;
+import org.opennms.netmgt.model.OnmsAssetRecord;
+import org.opennms.netmgt.model.OnmsNode;
+import org.opennms.netmgt.model.events.EventBuilder;
+import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.eventconf.Logmsg;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.support.TransactionOperations;
+
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Measures the expansion of events whose log message refers to node and asset
+ * values, with and without the node cache of {@link EventUtilDaoImpl}. Each
+ * database query and transaction is simulated with a fixed delay.
+ */
+public class EventExpanderPerfIT {
+    private static final Logger LOG = LoggerFactory.getLogger(EventExpanderPerfIT.class);
+
+    private static final String UEI = "uei.opennms.org/test/trap";
+    private static final int NUM_NODES = Integer.getInteger("nodes", 500);
+    private static final int NUM_EVENTS = Integer.getInteger("events", 10000);
+    private static final long QUERY_MICROS = Long.getLong("queryMicros", 100);
+
+    private final AtomicLong m_queries = new AtomicLong(0);
+    private NodeDao m_nodeDao;
+    private AssetRecordDao m_assetRecordDao;
+    private EventConfDao m_eventConfDao;
+
+    @Before
+    public void setUp() {
+        m_nodeDao = mock(NodeDao.class);
+        when(m_nodeDao.getLabelForId(anyInt())).thenAnswer(invocation -> {
+            query();
+            return "node" + invocation.getArguments()[0];
+        });
+        when(m_nodeDao.get(anyInt())).thenAnswer(invocation -> {
+            query();
+            final OnmsNode node = new OnmsNode();
+            node.setId((Integer)invocation.getArguments()[0]);
+            node.setForeignSource("fs");
+            node.setForeignId("id" + invocation.getArguments()[0]);
+            return node;
+        });
+        m_assetRecordDao = mock(AssetRecordDao.class);
+        when(m_assetRecordDao.findByNodeId(anyInt())).thenAnswer(invocation -> {
+            query();
+            final OnmsAssetRecord assetRecord = new OnmsAssetRecord();
+            assetRecord.setBuilding("building" + invocation.getArguments()[0]);
+            return assetRecord;
+        });
+
+        final org.opennms.netmgt.xml.eventconf.Event eventConf = new org.opennms.netmgt.xml.eventconf.Event();
+        eventConf.setUei(UEI);
+        final Logmsg logmsg = new Logmsg();
+        logmsg.setContent("Trap from %nodelabel% (%foreignsource%:%foreignid%) in %asset[building]%");
+        eventConf.setLogmsg(logmsg);
+        m_eventConfDao = mock(EventConfDao.class);
+        when(m_eventConfDao.findByEvent(anyObject())).thenReturn(eventConf);
+        when(m_eventConfDao.isSecureTag(anyString())).thenReturn(true);
+    }
+
+    private void query() {
+        m_queries.incrementAndGet();
+        LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(QUERY_MICROS));
+    }
+
+    private long expandEvents(long nodeCacheSize) {
+        System.setProperty(EventUtilDaoImpl.NODE_CACHE_SIZE_PROPERTY, Long.toString(nodeCacheSize));
+        final EventUtilDaoImpl eventUtil;
+        try {
+            eventUtil = new EventUtilDaoImpl(new MetricRegistry());
+        } finally {
+            System.clearProperty(EventUtilDaoImpl.NODE_CACHE_SIZE_PROPERTY);
+        }
+        eventUtil.setNodeDao(m_nodeDao);
+        eventUtil.setAssetRecordDao(m_assetRecordDao);
+        eventUtil.setEventSubscriptionService(mock(EventSubscriptionService.class));
+        eventUtil.setTransactionOperations(new TransactionOperations() {
+            @Override
+            public <T> T execute(org.springframework.transaction.support.TransactionCallback<T> action) {
+                // the round trips of beginning and committing the transaction
+                query();
+                return action.doInTransaction(null);
+            }
+        });
+
+        final EventExpander expander = new EventExpander(new MetricRegistry());
+        expander.setEventConfDao(m_eventConfDao);
+        expander.setEventUtil(eventUtil);
+        expander.afterPropertiesSet();
+
+        final Random random = new Random(42);
+        m_queries.set(0);
+        final long start = System.nanoTime();
+        Event event = null;
+        for (int i = 0; i < NUM_EVENTS; i++) {
+            final int nodeId = 1 + random.nextInt(NUM_NODES);
+            event = new EventBuilder(UEI, "test").setNodeid(nodeId).getEvent();
+            expander.expandEvent(event);
+        }
+        final long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        LOG.info("Expanded {} events with a node cache of {} in {}ms with {} simulated queries.", NUM_EVENTS, nodeCacheSize, elapsed, m_queries.get());
+        assertEquals("Trap from node" + event.getNodeid() + " (fs:id" + event.getNodeid() + ") in building" + event.getNodeid(), event.getLogmsg().getContent());
+        return m_queries.get();
+    }
+
+    @Test
+    public void expandWithAndWithoutNodeCache() {
+        final long uncachedQueries = expandEvents(0);
+        // leave room in the cache, its segments start evicting before it is full
+        final long cachedQueries = expandEvents(2 * NUM_NODES);
+
+        // one transaction and four lookups per event without the cache, with it
+        // only the four lookups of each node, in a transaction of their own
+        assertEquals(5L * NUM_EVENTS, uncachedQueries);
+        assertTrue(cachedQueries <= 8L * NUM_NODES);
+    }
+}
@@ -28,13 +28,27 @@
 
 package org.opennms.netmgt.eventd.processor;
 
+import static com.jayway.awaitility.Awaitility.await;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.reset;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.junit.Before;
 import org.junit.Test;
 import org.opennms.netmgt.events.api.EventProcessorException;
@@ -45,6 +59,7 @@ import org.opennms.netmgt.xml.event.Log;
 import org.springframework.transaction.support.TransactionOperations;
 
 import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 
 /**
  * Unit tests used to verify the number of transactions openened.
@@ -53,12 +68,14 @@ import com.codahale.metrics.MetricRegistry;
  */
 public class HibernateEventWriterTest {
 
+    private MetricRegistry registry;
     private HibernateEventWriter eventWriter;
     private TransactionOperations transactionManager;
 
     @Before
     public void setUp() {
-        eventWriter = new HibernateEventWriter(new MetricRegistry());
+        registry = new MetricRegistry();
+        eventWriter = new HibernateEventWriter(registry);
         transactionManager = mock(TransactionOperations.class);
         eventWriter.setTransactionManager(transactionManager);
     }
@@ -116,4 +133,91 @@ public class HibernateEventWriterTest {
         eventWriter.process(log);
         verify(transactionManager, times(1)).execute(any());
     }
+
+    /**
+     * Verifies that the logs queued while a transaction is running
+     * are persisted together in the next one.
+     */
+    @Test
+    public void testGroupCommit() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger transactions = new AtomicInteger(0);
+        doAnswer(invocation -> {
+            // Hold the first transaction until the other logs are queued
+            if (transactions.incrementAndGet() == 1) {
+                release.await();
+            }
+            return null;
+        }).when(transactionManager).execute(any());
+
+        final ExecutorService executor = Executors.newFixedThreadPool(5);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            futures.add(executor.submit(() -> { eventWriter.process(createLog()); return null; }));
+            await().atMost(5, TimeUnit.SECONDS).until(transactions::get, equalTo(1));
+            for (int i = 0; i < 4; i++) {
+                futures.add(executor.submit(() -> { eventWriter.process(createLog()); return null; }));
+            }
+            await().atMost(5, TimeUnit.SECONDS).until(eventWriter::getPendingLogCount, equalTo(4));
+
+            release.countDown();
+            for (Future<?> future : futures) {
+                assertNull(future.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        verify(transactionManager, times(2)).execute(any());
+        assertEquals(2, registry.histogram("eventlogs.process.write.groupSize").getCount());
+        assertEquals(4, registry.histogram("eventlogs.process.write.groupSize").getSnapshot().getMax());
+        final Timer commitTimer = registry.timer("eventlogs.process.write.commit");
+        assertEquals(2, commitTimer.getCount());
+    }
+
+    /**
+     * Verifies that the logs of a group that fails to commit
+     * are retried in a transaction of their own.
+     */
+    @Test
+    public void testGroupCommitFailure() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger transactions = new AtomicInteger(0);
+        doAnswer(invocation -> {
+            final int transaction = transactions.incrementAndGet();
+            if (transaction == 1) {
+                release.await();
+            } else if (transaction == 2) {
+                throw new IllegalStateException("group commit failed");
+            }
+            return null;
+        }).when(transactionManager).execute(any());
+
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            futures.add(executor.submit(() -> { eventWriter.process(createLog()); return null; }));
+            await().atMost(5, TimeUnit.SECONDS).until(transactions::get, equalTo(1));
+            for (int i = 0; i < 3; i++) {
+                futures.add(executor.submit(() -> { eventWriter.process(createLog()); return null; }));
+            }
+            await().atMost(5, TimeUnit.SECONDS).until(eventWriter::getPendingLogCount, equalTo(3));
+
+            release.countDown();
+            for (Future<?> future : futures) {
+                assertNull(future.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // The first log, the failed group and each of its logs on its own
+        verify(transactionManager, times(5)).execute(any());
+    }
+
+    private static Log createLog() {
+        final EventBuilder bldr = new EventBuilder("testUei", "testSource");
+        bldr.setLogDest(HibernateEventWriter.LOG_MSG_DEST_LOG_AND_DISPLAY);
+        return bldr.getLog();
+    }
 }
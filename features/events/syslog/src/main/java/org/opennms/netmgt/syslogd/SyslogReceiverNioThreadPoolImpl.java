@@ -0,0 +1,310 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.syslogd;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.net.InetSocketAddress;
+import java.net.SocketOption;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.opennms.core.logging.Logging;
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.netmgt.config.SyslogdConfig;
+import org.opennms.netmgt.syslogd.api.SyslogConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * A {@link SyslogReceiver} that reads datagrams with several threads from
+ * blocking {@link DatagramChannel}s.
+ *
+ * When the JVM supports <code>SO_REUSEPORT</code>, every thread binds its own
+ * channel to the listen address and the kernel balances the datagrams between
+ * them. Otherwise all of the threads share a single channel.
+ *
+ * Every thread receives into its own direct {@link ByteBuffer}, which is reused
+ * for the lifetime of the thread. Messages are queued by the Sink API before they
+ * are parsed, so each datagram is copied once into a heap buffer of its exact size
+ * which is then handed to the parsers as is.
+ */
+public class SyslogReceiverNioThreadPoolImpl extends SinkDispatchingSyslogReceiver {
+    private static final Logger LOG = LoggerFactory.getLogger(SyslogReceiverNioThreadPoolImpl.class);
+
+    /**
+     * The largest payload of a UDP datagram.
+     */
+    private static final int MAX_DATAGRAM_SIZE = 0xffff;
+
+    private final SyslogdConfig m_config;
+
+    private MetricRegistry m_metrics = new MetricRegistry();
+
+    private int m_receiverThreads = 0;
+
+    private volatile boolean m_stop = false;
+
+    private final List<DatagramChannel> m_channels = new ArrayList<>();
+
+    private final List<Thread> m_threads = new ArrayList<>();
+
+    public SyslogReceiverNioThreadPoolImpl(final SyslogdConfig config) {
+        super(config);
+        m_config = config;
+    }
+
+    @Override
+    public String getName() {
+        String listenAddress = m_config.getListenAddress() == null? "0.0.0.0" : m_config.getListenAddress();
+        return getClass().getSimpleName() + " [" + listenAddress + ":" + m_config.getSyslogPort() + "]";
+    }
+
+    /**
+     * Sets the number of threads that read from the socket, the number of
+     * available processors is used when this is 0 or less.
+     */
+    public void setReceiverThreads(final int receiverThreads) {
+        m_receiverThreads = receiverThreads;
+    }
+
+    public int getReceiverThreads() {
+        return m_receiverThreads > 0 ? m_receiverThreads : Runtime.getRuntime().availableProcessors();
+    }
+
+    public void setMetricRegistry(final MetricRegistry metrics) {
+        m_metrics = metrics;
+    }
+
+    public MetricRegistry getMetricRegistry() {
+        return m_metrics;
+    }
+
+    /**
+     * Opens the channels and runs the first receiver on the calling thread
+     * until the receiver is stopped.
+     */
+    @Override
+    public void run() {
+        // Setup logging and create the dispatcher
+        super.run();
+
+        final int numThreads = getReceiverThreads();
+        final SocketOption<Boolean> reusePort = getReusePortOption();
+        final List<Receiver> receivers = new ArrayList<>(numThreads);
+        synchronized (m_channels) {
+            if (m_stop) {
+                LOG.debug("Stop flag set before thread started, exiting");
+                return;
+            }
+
+            try {
+                if (reusePort != null && numThreads > 1) {
+                    LOG.debug("Binding {} channels with SO_REUSEPORT", numThreads);
+                    for (int i = 0; i < numThreads; i++) {
+                        receivers.add(new Receiver(i, openChannel(reusePort)));
+                    }
+                } else {
+                    LOG.debug("Sharing a single channel between {} receivers", numThreads);
+                    final DatagramChannel channel = openChannel(null);
+                    for (int i = 0; i < numThreads; i++) {
+                        receivers.add(new Receiver(i, channel));
+                    }
+                }
+            } catch (final IOException e) {
+                LOG.error("Failed to open the syslog datagram channel on {}", getName(), e);
+                closeChannels();
+                return;
+            }
+
+            m_threads.add(Thread.currentThread());
+            for (int i = 1; i < receivers.size(); i++) {
+                final Thread thread = new Thread(receivers.get(i), getName() + "-" + i);
+                m_threads.add(thread);
+                thread.start();
+            }
+        }
+
+        receivers.get(0).run();
+
+        // Take the other receivers down along with the calling thread
+        synchronized (m_channels) {
+            closeChannels();
+        }
+    }
+
+    @Override
+    public void stop() throws InterruptedException {
+        m_stop = true;
+
+        // Closing the channels wakes up the threads that are blocked on them
+        synchronized (m_channels) {
+            closeChannels();
+        }
+
+        for (final Thread thread : m_threads) {
+            LOG.debug("Stopping and joining thread {}", thread.getName());
+            thread.interrupt();
+            thread.join();
+        }
+        m_threads.clear();
+
+        super.stop();
+    }
+
+    private DatagramChannel openChannel(final SocketOption<Boolean> reusePort) throws IOException {
+        final DatagramChannel channel = DatagramChannel.open();
+        m_channels.add(channel);
+
+        // Set SO_REUSEADDR so that we don't run into problems in
+        // unit tests trying to rebind to an address where other tests
+        // also bound. This shouldn't have any effect at runtime.
+        channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        if (reusePort != null) {
+            channel.setOption(reusePort, true);
+        }
+
+        // Increase the receive buffer for the socket
+        try {
+            channel.setOption(StandardSocketOptions.SO_RCVBUF, Integer.MAX_VALUE);
+            LOG.debug("Actual receive buffer size is {}", channel.getOption(StandardSocketOptions.SO_RCVBUF));
+        } catch (final IOException e) {
+            LOG.info("Failed to set the receive buffer to {}", Integer.MAX_VALUE, e);
+        }
+
+        if (m_config.getListenAddress() != null) {
+            channel.bind(new InetSocketAddress(InetAddressUtils.addr(m_config.getListenAddress()), m_config.getSyslogPort()));
+        } else {
+            channel.bind(new InetSocketAddress(m_config.getSyslogPort()));
+        }
+        return channel;
+    }
+
+    private void closeChannels() {
+        for (final DatagramChannel channel : m_channels) {
+            try {
+                channel.close();
+            } catch (final IOException e) {
+                LOG.debug("Failed to close the datagram channel", e);
+            }
+        }
+        m_channels.clear();
+    }
+
+    /**
+     * <code>StandardSocketOptions.SO_REUSEPORT</code> only exists on Java 9 and
+     * later, and is not supported by every platform.
+     */
+    @SuppressWarnings("unchecked")
+    private static SocketOption<Boolean> getReusePortOption() {
+        try {
+            final Field field = StandardSocketOptions.class.getField("SO_REUSEPORT");
+            final SocketOption<Boolean> option = (SocketOption<Boolean>)field.get(null);
+            try (DatagramChannel channel = DatagramChannel.open()) {
+                return channel.supportedOptions().contains(option) ? option : null;
+            }
+        } catch (final NoSuchFieldException e) {
+            return null;
+        } catch (final IllegalAccessException|IOException e) {
+            LOG.debug("Failed to check for SO_REUSEPORT support", e);
+            return null;
+        }
+    }
+
+    private class Receiver implements Runnable {
+        private final DatagramChannel m_channel;
+        private final Meter m_packetMeter;
+        private final Histogram m_packetSizeHistogram;
+        private final Counter m_droppedCounter;
+
+        private Receiver(final int index, final DatagramChannel channel) {
+            m_channel = channel;
+            final String prefix = MetricRegistry.name(SyslogReceiverNioThreadPoolImpl.class, "receiver" + index);
+            m_packetMeter = m_metrics.meter(MetricRegistry.name(prefix, "packets"));
+            m_packetSizeHistogram = m_metrics.histogram(MetricRegistry.name(prefix, "packetSize"));
+            m_droppedCounter = m_metrics.counter(MetricRegistry.name(prefix, "dropped"));
+        }
+
+        @Override
+        public void run() {
+            Logging.putPrefix(Syslogd.LOG4J_CATEGORY);
+            LOG.debug("Receiver thread started");
+
+            final ByteBuffer buffer = ByteBuffer.allocateDirect(MAX_DATAGRAM_SIZE);
+            while (!m_stop && !Thread.currentThread().isInterrupted()) {
+                final InetSocketAddress source;
+                try {
+                    buffer.clear();
+                    source = (InetSocketAddress)m_channel.receive(buffer);
+                } catch (final ClosedChannelException e) {
+                    // Thrown when the channel is closed during normal shutdown
+                    break;
+                } catch (final IOException e) {
+                    if (m_stop) {
+                        LOG.debug("Shutting down the datagram receipt port: {}", e.getMessage());
+                    } else {
+                        LOG.error("An I/O exception occured on the datagram receipt port, exiting", e);
+                    }
+                    break;
+                }
+
+                buffer.flip();
+                m_packetMeter.mark();
+                m_packetSizeHistogram.update(buffer.remaining());
+
+                final ByteBuffer message = ByteBuffer.allocate(buffer.remaining());
+                message.put(buffer);
+                message.flip();
+
+                try {
+                    m_dispatcher.send(new SyslogConnection(source, message)).whenComplete((r, e) -> {
+                        if (e != null) {
+                            m_droppedCounter.inc();
+                        }
+                    });
+                } catch (final RuntimeException e) {
+                    LOG.warn("Failed to dispatch the syslog message from {}", source, e);
+                    m_droppedCounter.inc();
+                }
+            }
+
+            LOG.debug("Receiver thread exiting");
+        }
+    }
+}
@@ -54,6 +54,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
 import com.codahale.metrics.Timer.Context;
@@ -78,11 +79,13 @@ public class SyslogSinkConsumer implements MessageConsumer<SyslogConnection, Sys
     private final Timer consumerTimer;
     private final Timer toEventTimer;
     private final Timer broadcastTimer;
+    private final Meter discardedMeter;
 
     public SyslogSinkConsumer(MetricRegistry registry) {
         consumerTimer = registry.timer("consumer");
         toEventTimer = registry.timer("consumer.toevent");
         broadcastTimer = registry.timer("consumer.broadcast");
+        discardedMeter = registry.meter("consumer.discarded");
         localAddr = InetAddressUtils.getLocalHostName();
     }
 
@@ -125,6 +128,7 @@ public class SyslogSinkConsumer implements MessageConsumer<SyslogConnection, Sys
                     );
                 events.addEvent(re.getEvent());
             } catch (final MessageDiscardedException e) {
+                discardedMeter.mark();
                 LOG.info("Message discarded, returning without enqueueing event.", e);
             } catch (final Throwable e) {
                 LOG.error("Unexpected exception while processing SyslogConnection", e);
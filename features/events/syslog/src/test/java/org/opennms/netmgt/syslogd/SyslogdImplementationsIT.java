@@ -105,6 +105,10 @@ public class SyslogdImplementationsIT implements InitializingBean {
     @Qualifier("syslogReceiverCamelNetty")
     private SyslogReceiver m_netty;
 
+    @Autowired
+    @Qualifier("syslogReceiverNio")
+    private SyslogReceiver m_nio;
+
     @Override
     public void afterPropertiesSet() throws Exception {
         BeanUtils.assertAutowiring(this);
@@ -154,6 +158,12 @@ public class SyslogdImplementationsIT implements InitializingBean {
         doTestSyslogd(m_java);
     }
 
+    @Test(timeout=3*60*1000)
+    @Transactional
+    public void testNioThreadPoolReceiver() throws Exception {
+        doTestSyslogd(m_nio);
+    }
+
     private void doTestSyslogd(SyslogReceiver receiver) throws Exception {
         Thread listener = new Thread(receiver);
         listener.start();
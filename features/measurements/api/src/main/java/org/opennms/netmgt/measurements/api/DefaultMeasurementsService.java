@@ -29,6 +29,7 @@
 package org.opennms.netmgt.measurements.api;
 
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import org.opennms.netmgt.measurements.api.exceptions.FetchException;
 import org.opennms.netmgt.measurements.api.exceptions.MeasurementException;
@@ -37,25 +38,45 @@ import org.opennms.netmgt.measurements.api.exceptions.ValidationException;
 import org.opennms.netmgt.measurements.model.QueryRequest;
 import org.opennms.netmgt.measurements.model.QueryResponse;
 import org.opennms.netmgt.measurements.model.Source;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import com.codahale.metrics.JmxReporter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.RowSortedTable;
 
 @Component("measurementsService")
-public class DefaultMeasurementsService implements MeasurementsService {
+public class DefaultMeasurementsService implements MeasurementsService, DisposableBean {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DefaultMeasurementsService.class);
 
     private final MeasurementFetchStrategy fetchStrategy;
     private final ExpressionEngine expressionEngine;
     private final FilterEngine filterEngine;
     private final QueryRequestValidator queryRequestValidator = new QueryRequestValidator();
 
+    private final MetricRegistry metrics = new MetricRegistry();
+    private final Timer fetchTimer = metrics.timer("fetch");
+    private final Timer expressionsTimer = metrics.timer("expressions");
+    private final Timer filtersTimer = metrics.timer("filters");
+    private final JmxReporter reporter = JmxReporter.forRegistry(metrics).inDomain("org.opennms.netmgt.measurements").build();
+
     @Autowired
     public DefaultMeasurementsService(MeasurementFetchStrategy fetchStrategy, ExpressionEngine expressionEngine, FilterEngine filterEngine) {
         this.fetchStrategy = Preconditions.checkNotNull(fetchStrategy);
         this.expressionEngine = Preconditions.checkNotNull(expressionEngine);
         this.filterEngine = Preconditions.checkNotNull(filterEngine);
+        reporter.start();
+    }
+
+    @Override
+    public void destroy() {
+        reporter.stop();
     }
 
     @Override
@@ -63,6 +84,7 @@ public class DefaultMeasurementsService implements MeasurementsService {
         validate(request);
 
         // Fetch the measurements
+        final long fetchStart = System.nanoTime();
         FetchResults results;
         try {
             results = fetchStrategy.fetch(
@@ -77,20 +99,34 @@ public class DefaultMeasurementsService implements MeasurementsService {
         } catch (Exception e) {
             throw new FetchException(e, "Fetch failed: {}", e.getMessage());
         }
+        final long fetchTime = System.nanoTime() - fetchStart;
+        fetchTimer.update(fetchTime, TimeUnit.NANOSECONDS);
         if (results == null) {
             throw new ResourceNotFoundException(request);
         }
 
         // Apply the expression to the fetch results
+        final long expressionsStart = System.nanoTime();
         expressionEngine.applyExpressions(request, results);
+        final long expressionsTime = System.nanoTime() - expressionsStart;
+        expressionsTimer.update(expressionsTime, TimeUnit.NANOSECONDS);
 
         // Apply the filters
+        long filtersTime = 0;
         if (!request.getFilters().isEmpty()) {
+            final long filtersStart = System.nanoTime();
             RowSortedTable<Long, String, Double> table = results.asRowSortedTable();
             filterEngine.filter(request.getFilters(), table);
             results = new FetchResults(table, results.getStep(), results.getConstants());
+            filtersTime = System.nanoTime() - filtersStart;
+            filtersTimer.update(filtersTime, TimeUnit.NANOSECONDS);
         }
 
+        LOG.debug("Query with {} sources and {} expressions over {} rows: fetch={}ms, expressions={}ms, filters={}ms",
+                request.getSources().size(), request.getExpressions().size(), results.getTimestamps().length,
+                TimeUnit.NANOSECONDS.toMillis(fetchTime), TimeUnit.NANOSECONDS.toMillis(expressionsTime),
+                TimeUnit.NANOSECONDS.toMillis(filtersTime));
+
         // Remove any transient values belonging to sources
         final Map<String, double[]> columns = results.getColumns();
         for (final Source source : request.getSources()) {
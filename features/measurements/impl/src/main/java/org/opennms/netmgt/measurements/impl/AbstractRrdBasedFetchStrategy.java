@@ -70,7 +70,10 @@ public abstract class AbstractRrdBasedFetchStrategy implements MeasurementFetchS
         final Map<String, Object> constants = Maps.newHashMap();
 
         final Map<Source, String> rrdsBySource = Maps.newHashMap();
-        
+
+        // Sources usually share a handful of resources, so only look each one up once
+        final Map<ResourceId, OnmsResource> resourcesById = Maps.newHashMap();
+
         for (final Source source : sources) {
             final ResourceId resourceId;
             try {
@@ -82,7 +85,11 @@ public abstract class AbstractRrdBasedFetchStrategy implements MeasurementFetchS
             }
 
             // Grab the resource
-            final OnmsResource resource = m_resourceDao.getResourceById(resourceId);
+            OnmsResource resource = resourcesById.get(resourceId);
+            if (resource == null && !resourcesById.containsKey(resourceId)) {
+                resource = m_resourceDao.getResourceById(resourceId);
+                resourcesById.put(resourceId, resource);
+            }
             if (resource == null) {
                 if (relaxed) continue;
                 LOG.error("No resource with id: {}", source.getResourceId());
@@ -34,10 +34,10 @@ import java.util.Map;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Maps;
 
-import org.apache.commons.jexl2.JexlContext;
 import org.apache.commons.jexl2.JexlEngine;
 import org.apache.commons.jexl2.JexlException;
 import org.apache.commons.jexl2.MapContext;
+import org.apache.commons.jexl2.NamespaceResolver;
 import org.opennms.netmgt.measurements.api.ExpressionEngine;
 import org.opennms.netmgt.measurements.api.FetchResults;
 import org.opennms.netmgt.measurements.api.exceptions.ExpressionException;
@@ -58,12 +58,35 @@ public class JEXLExpressionEngine implements ExpressionEngine {
 
     private static final Logger LOG = LoggerFactory.getLogger(JEXLExpressionEngine.class);
 
+    private static final int DEFAULT_CACHE_SIZE = 512;
+
     /**
      * Use a single instance of the JEXL engine, which is thread-safe.
      */
     private final JexlEngine jexl = new JexlEngine();
 
+    /**
+     * Resolves the "jexl" namespace to the {@link JexlEvaluateFunctions} of the
+     * current query, so that concurrent queries do not share the engine's
+     * function map.
+     */
+    private static class ExpressionContext extends MapContext implements NamespaceResolver {
+        private JexlEvaluateFunctions m_jexlEvaluateFunctions;
+
+        private ExpressionContext(final Map<String, Object> values) {
+            super(values);
+        }
+
+        @Override
+        public Object resolveNamespace(final String name) {
+            return "jexl".equals(name) ? m_jexlEvaluateFunctions : null;
+        }
+    }
+
     public JEXLExpressionEngine() {
+        // Cache the compiled expressions, keyed by their text
+        jexl.setCache(Integer.getInteger("org.opennms.netmgt.measurements.expressionCacheSize", DEFAULT_CACHE_SIZE));
+
         // Add additional functions to the engine
         Map<String, Object> functions = Maps.newHashMap();
         functions.put("math", Math.class);
@@ -116,7 +139,7 @@ public class JEXLExpressionEngine implements ExpressionEngine {
 
         // Prepare the JEXL context
         final Map<String, Object> jexlValues = Maps.newHashMap();
-        final JexlContext context = new MapContext(jexlValues);
+        final ExpressionContext context = new ExpressionContext(jexlValues);
 
         // Add constants (i.e. values from strings.properties) retrieved by the fetch operation
         jexlValues.putAll(results.getConstants());
@@ -130,9 +153,8 @@ public class JEXLExpressionEngine implements ExpressionEngine {
         jexlValues.put("__PI", java.lang.Math.PI);
         
         // Add JexlEvaluateFunctions with current context and jexl engine to allow string constants to be evaluated.
-        JexlEvaluateFunctions jexlEvaluateFunctions = new JexlEvaluateFunctions(context, jexl) ;
-        jexl.getFunctions().put("jexl", jexlEvaluateFunctions);
-        
+        context.m_jexlEvaluateFunctions = new JexlEvaluateFunctions(context, jexl);
+
         final long timestamps[] = results.getTimestamps();
         final Map<String, double[]> columns = results.getColumns();
         final int numRows = timestamps.length;
@@ -140,28 +162,33 @@ public class JEXLExpressionEngine implements ExpressionEngine {
         // Calculate the time span
         jexlValues.put("__diff_time", numRows < 1 ? 0d : timestamps[numRows-1] - timestamps[0]);
 
+        // Add a reference to the complete array for each column to allow backwards referencing of samples
+        final String sourceLabels[] = columns.keySet().toArray(new String[columns.size()]);
+        final double sourceValues[][] = new double[sourceLabels.length][];
+        for (int l = 0; l < sourceLabels.length; l++) {
+            sourceValues[l] = columns.get(sourceLabels[l]);
+            jexlValues.put("__" + sourceLabels[l], sourceValues[l]);
+        }
+
         final double expressionValues[][] = new double[numNonTransientExpression][numRows];
 
         // Iterate through all of the rows, apply the expressions
         for (int i = 0; i < numRows; i++) {
+            // Update the timestamp
+            jexlValues.put("timestamp", timestamps[i]);
+
+            // add index as a referenced variable in context
+            jexlValues.put("__i",Integer.valueOf(i));
+
+            // Add all of the values from the row to the context
+            // overwriting values from the last row
+            for (int l = 0; l < sourceLabels.length; l++) {
+                jexlValues.put(sourceLabels[l], sourceValues[l][i]);
+            }
+
             // Evaluate every expression, in the same order as which they appeared in the query
             j = k = 0;
             for (final Map.Entry<String, org.apache.commons.jexl2.Expression> expressionEntry : expressions.entrySet()) {
-                // Update the timestamp
-                jexlValues.put("timestamp", timestamps[i]);
-                
-                // add index as a referenced variable in context
-                jexlValues.put("__i",Integer.valueOf(i));
-
-                // Add all of the values from the row to the context
-                // overwriting values from the last loop
-                for (final String sourceLabel : columns.keySet()) {
-                    jexlValues.put(sourceLabel, columns.get(sourceLabel)[i]);
-                    
-                    // add reference to complete array for each column to allow backwards referencing of samples
-                    jexlValues.put("__"+sourceLabel, columns.get(sourceLabel));
-                }
-
                 // Evaluate the expression
                 try {
                     Object derived = expressionEntry.getValue().evaluate(context);
@@ -29,22 +29,59 @@
 package org.opennms.netmgt.measurements.impl;
 
 import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import org.jrobin.core.FetchData;
+import org.jrobin.core.RrdDb;
 import org.jrobin.core.RrdException;
 import org.jrobin.data.DataProcessor;
 import org.opennms.netmgt.measurements.api.FetchResults;
 import org.opennms.netmgt.measurements.model.Source;
+import org.opennms.netmgt.rrd.jrobin.RrdDbCache;
+import org.springframework.beans.factory.DisposableBean;
 
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 /**
  * Used to fetch measurements from JRB files.
  *
+ * Files are read through the {@link RrdDbCache} shared with the
+ * JRobinRrdStrategy, and each file is only fetched once per
+ * consolidation function, regardless of how many sources refer to it.
+ * Distinct files are read in parallel on a pool of
+ * <code>org.opennms.netmgt.measurements.jrobin.fetchThreads</code> threads
+ * (defaults to 4, 1 reads them one after the other in the calling thread).
+ *
  * @author Jesse White <jesse@opennms.org>
  * @author Dustin Frisch <fooker@lab.sh>
  */
-public class JrobinFetchStrategy extends AbstractRrdBasedFetchStrategy {
+public class JrobinFetchStrategy extends AbstractRrdBasedFetchStrategy implements DisposableBean {
+
+    private static final int FETCH_THREADS = Integer.getInteger("org.opennms.netmgt.measurements.jrobin.fetchThreads", 4);
+
+    private final ExecutorService m_fetchPool = FETCH_THREADS > 1 ? Executors.newFixedThreadPool(FETCH_THREADS,
+            new ThreadFactoryBuilder().setNameFormat("jrobin-fetch-%d").setDaemon(true).build()) : null;
+
+    /**
+     * Stops the fetch threads and closes the idle handles of the
+     * {@link RrdDbCache}.
+     */
+    @Override
+    public void destroy() {
+        if (m_fetchPool != null) {
+            m_fetchPool.shutdownNow();
+        }
+        RrdDbCache.getInstance().close();
+    }
 
     /**
      * {@inheritDoc}
@@ -68,11 +105,23 @@ public class JrobinFetchStrategy extends AbstractRrdBasedFetchStrategy {
         }
         dproc.setFetchRequestResolution(stepInSeconds);
 
+        // Fetch every file once per consolidation function
+        final long resolution = stepInSeconds;
+        final Map<String, Callable<FetchData>> fetches = new LinkedHashMap<>();
         for (final Map.Entry<Source, String> entry : rrdsBySource.entrySet()) {
-            final Source source = entry.getKey();
             final String rrdFile = entry.getValue();
-            dproc.addDatasource(source.getLabel(), rrdFile, source.getEffectiveDataSource(),
-                    source.getAggregation());
+            final String consolidationFunction = entry.getKey().getAggregation();
+            final String key = rrdFile + '\0' + consolidationFunction;
+            if (!fetches.containsKey(key)) {
+                fetches.put(key, () -> fetch(rrdFile, consolidationFunction, startInSeconds, endInSeconds, resolution));
+            }
+        }
+        final Map<String, FetchData> fetched = fetchAll(fetches);
+
+        for (final Map.Entry<Source, String> entry : rrdsBySource.entrySet()) {
+            final Source source = entry.getKey();
+            final FetchData data = fetched.get(entry.getValue() + '\0' + source.getAggregation());
+            dproc.addDatasource(source.getLabel(), source.getEffectiveDataSource(), data);
         }
 
         try {
@@ -95,4 +144,49 @@ public class JrobinFetchStrategy extends AbstractRrdBasedFetchStrategy {
 
         return new FetchResults(timestamps, columns, dproc.getStep() * 1000, constants);
     }
+
+    private static FetchData fetch(final String rrdFile, final String consolidationFunction, final long start, final long end, final long resolution) throws IOException, RrdException {
+        final RrdDbCache cache = RrdDbCache.getInstance();
+        final RrdDb rrd = cache.acquire(rrdFile);
+        try {
+            return rrd.createFetchRequest(consolidationFunction, start, end, resolution).fetchData();
+        } finally {
+            cache.release(rrd);
+        }
+    }
+
+    private Map<String, FetchData> fetchAll(final Map<String, Callable<FetchData>> fetches) throws RrdException {
+        final Map<String, FetchData> fetched = Maps.newHashMapWithExpectedSize(fetches.size());
+        try {
+            if (m_fetchPool == null || fetches.size() < 2) {
+                for (final Map.Entry<String, Callable<FetchData>> entry : fetches.entrySet()) {
+                    fetched.put(entry.getKey(), entry.getValue().call());
+                }
+            } else {
+                final List<Future<FetchData>> futures = Lists.newArrayListWithCapacity(fetches.size());
+                for (final Callable<FetchData> fetch : fetches.values()) {
+                    futures.add(m_fetchPool.submit(fetch));
+                }
+                int i = 0;
+                for (final String key : fetches.keySet()) {
+                    try {
+                        fetched.put(key, futures.get(i++).get());
+                    } catch (ExecutionException e) {
+                        for (final Future<FetchData> future : futures) {
+                            future.cancel(false);
+                        }
+                        throw e.getCause();
+                    }
+                }
+            }
+        } catch (RrdException e) {
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RrdException("JRB fetch interrupted.", e);
+        } catch (Throwable e) {
+            throw new RrdException("JRB processing failed.", e);
+        }
+        return fetched;
+    }
 }
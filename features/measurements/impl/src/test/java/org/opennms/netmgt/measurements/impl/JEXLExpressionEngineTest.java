@@ -29,8 +29,14 @@
 package org.opennms.netmgt.measurements.impl;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.Test;
 import org.opennms.netmgt.measurements.api.ExpressionEngine;
@@ -384,6 +390,37 @@ public class JEXLExpressionEngineTest {
         assertEquals(99000.0, results[0], 0.0001);
     }
 
+    @Test
+    public void canEvaluateStringConstantsConcurrently() throws Exception {
+        // Every query evaluates its own formula through the jexl: namespace
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<Boolean>> futures = Lists.newArrayList();
+            for (int i = 0; i < 200; i++) {
+                final int multiplier = i;
+                futures.add(executor.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() throws Exception {
+                        final Map<String, Object> constants = Maps.newHashMap();
+                        constants.put("__formula", "x * " + multiplier);
+                        final double results[] = performExpression("jexl:evaluate(__formula)", constants);
+                        for (int j = 0; j < results.length; j++) {
+                            if (results[j] != j * multiplier) {
+                                return false;
+                            }
+                        }
+                        return true;
+                    }
+                }));
+            }
+            for (final Future<Boolean> future : futures) {
+                assertTrue(future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
     private double[] performExpression(String expression) throws ExpressionException {
         Map<String, Object> constants = Maps.newHashMap();
         return performExpression(expression, constants);
@@ -0,0 +1,72 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.plugins.elasticsearch.rest;
+
+/**
+ * Picks the number of bytes to put into the next bulk request.
+ *
+ * The target grows by a quarter while bulks that fill at least half of it
+ * complete within the target latency, and it is halved whenever a bulk is
+ * slower than that or fails outright.
+ */
+public class AdaptiveBulkSizer {
+
+	private final long minBytes;
+	private final long maxBytes;
+	private final long targetLatencyMs;
+
+	private volatile long targetBytes;
+
+	public AdaptiveBulkSizer(long minBytes, long maxBytes, long targetLatencyMs) {
+		if (minBytes < 1 || maxBytes < minBytes) {
+			throw new IllegalArgumentException("Invalid bulk size range: " + minBytes + " - " + maxBytes);
+		}
+		this.minBytes = minBytes;
+		this.maxBytes = maxBytes;
+		this.targetLatencyMs = targetLatencyMs;
+		this.targetBytes = minBytes;
+	}
+
+	public long getTargetBytes() {
+		return targetBytes;
+	}
+
+	public synchronized void onSuccess(long bytes, long latencyMs) {
+		if (latencyMs > targetLatencyMs) {
+			targetBytes = Math.max(minBytes, targetBytes / 2);
+		} else if (bytes >= targetBytes / 2) {
+			targetBytes = Math.min(maxBytes, targetBytes + Math.max(1, targetBytes / 4));
+		}
+	}
+
+	public synchronized void onFailure() {
+		targetBytes = Math.max(minBytes, targetBytes / 2);
+	}
+}
@@ -0,0 +1,681 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.plugins.elasticsearch.rest;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.opennms.core.ipc.sink.api.SpillPolicy.EvictionPolicy;
+import org.opennms.core.ipc.sink.common.MappedSpillLog;
+import org.opennms.netmgt.xml.event.Event;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.JmxReporter;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
+import io.searchbox.action.BulkableAction;
+import io.searchbox.client.JestClient;
+import io.searchbox.core.Bulk;
+import io.searchbox.core.BulkResult;
+import io.searchbox.core.BulkResult.BulkResultItem;
+import io.searchbox.core.DocumentResult;
+
+/**
+ * <p>Forwards events to Elasticsearch without tying up the threads that hand
+ * them over.</p>
+ *
+ * <p>Events are put on a bounded queue. A single batcher thread converts them
+ * into Elasticsearch actions and groups them into bulk requests, whose size in
+ * bytes is chosen by an {@link AdaptiveBulkSizer}. A bulk is sent once it
+ * reaches that size or once its oldest action has waited for the flush
+ * interval. At most <code>maxInFlight</code> bulks are outstanding at a time;
+ * beyond that the batcher waits, the queue fills up, and further events are
+ * appended to a {@link MappedSpillLog} from which they are replayed in order.
+ * Without a spill directory the caller blocks on the full queue instead.</p>
+ *
+ * <p>Only the items of a bulk that failed with a transient status are sent
+ * again, and indices that were reported missing are created first.</p>
+ */
+public class BulkForwarder implements AutoCloseable {
+
+	private static final Logger LOG = LoggerFactory.getLogger(BulkForwarder.class);
+
+	public static final int DEFAULT_QUEUE_SIZE = 10000;
+	public static final long DEFAULT_MIN_BULK_BYTES = 16 * 1024;
+	public static final long DEFAULT_MAX_BULK_BYTES = 5 * 1024 * 1024;
+	public static final long DEFAULT_BULK_TARGET_LATENCY_MS = 1000;
+	public static final long DEFAULT_FLUSH_INTERVAL_MS = 500;
+	public static final int DEFAULT_MAX_RETRIES = 3;
+	public static final long DEFAULT_RETRY_DELAY_MS = 500;
+	public static final long DEFAULT_SPILL_MAX_BYTES = 256L * 1024 * 1024;
+
+	private static final int SPILL_SEGMENT_BYTES = 16 * 1024 * 1024;
+
+	/**
+	 * Maximum number of events taken off the queue or the spill log at once.
+	 */
+	private static final int DRAIN_LIMIT = 256;
+
+	private static final long SHUTDOWN_TIMEOUT_MS = 10000;
+
+	private static final Gson GSON = new Gson();
+
+	private static class PendingEvent {
+		private final Event event;
+		private final long receivedAt;
+
+		private PendingEvent(Event event, long receivedAt) {
+			this.event = event;
+			this.receivedAt = receivedAt;
+		}
+	}
+
+	private static class PendingAction {
+		private final BulkableAction<DocumentResult> action;
+		private final long bytes;
+		private final long receivedAt;
+
+		private PendingAction(BulkableAction<DocumentResult> action, long receivedAt) {
+			this.action = action;
+			final String data = action.getData(GSON);
+			// Account for the action/metadata line as well as the source
+			this.bytes = 128 + (data == null ? 0 : data.length());
+			this.receivedAt = receivedAt;
+		}
+	}
+
+	private final Function<List<Event>,List<BulkableAction<DocumentResult>>> converter;
+	private final Supplier<JestClient> clientSupplier;
+	private final Runnable clientResetter;
+
+	private int queueSize = DEFAULT_QUEUE_SIZE;
+	private int maxInFlight = EventToIndex.DEFAULT_NUMBER_OF_THREADS;
+	private long minBulkBytes = DEFAULT_MIN_BULK_BYTES;
+	private long maxBulkBytes = DEFAULT_MAX_BULK_BYTES;
+	private long bulkTargetLatencyMs = DEFAULT_BULK_TARGET_LATENCY_MS;
+	private long flushIntervalMs = DEFAULT_FLUSH_INTERVAL_MS;
+	private int maxRetries = DEFAULT_MAX_RETRIES;
+	private long retryDelayMs = DEFAULT_RETRY_DELAY_MS;
+	private Path spillDirectory = null;
+	private long spillMaxBytes = DEFAULT_SPILL_MAX_BYTES;
+
+	private final MetricRegistry metrics = new MetricRegistry();
+	private final Meter eventsReceived = metrics.meter("events.received");
+	private final Meter eventsSpilled = metrics.meter("events.spilled");
+	private final Meter eventsDropped = metrics.meter("events.dropped");
+	private final Meter documentsIndexed = metrics.meter("documents.indexed");
+	private final Meter documentsRetried = metrics.meter("documents.retried");
+	private final Meter documentsFailed = metrics.meter("documents.failed");
+	private final Timer bulkLatency = metrics.timer("bulk.latency");
+	private final Histogram bulkBytes = metrics.histogram("bulk.bytes");
+	private final Histogram bulkDocuments = metrics.histogram("bulk.documents");
+	private final Histogram lag = metrics.histogram("lag");
+	private JmxReporter reporter;
+
+	private BlockingQueue<PendingEvent> queue;
+	private MappedSpillLog spillLog;
+	private AdaptiveBulkSizer sizer;
+	private Semaphore inFlight;
+	private ExecutorService senders;
+	private Thread batcher;
+	private volatile boolean running = false;
+	private volatile boolean closed = false;
+
+	public BulkForwarder(Function<List<Event>,List<BulkableAction<DocumentResult>>> converter, Supplier<JestClient> clientSupplier, Runnable clientResetter) {
+		this.converter = Objects.requireNonNull(converter);
+		this.clientSupplier = Objects.requireNonNull(clientSupplier);
+		this.clientResetter = Objects.requireNonNull(clientResetter);
+
+		metrics.register("queue.size", (Gauge<Integer>) () -> queue == null ? 0 : queue.size());
+		metrics.register("spill.records", (Gauge<Long>) () -> spillLog == null ? 0 : spillLog.getBacklogRecords());
+		metrics.register("spill.bytes", (Gauge<Long>) () -> spillLog == null ? 0 : spillLog.getBacklogBytes());
+		metrics.register("spill.evicted", (Gauge<Long>) () -> spillLog == null ? 0 : spillLog.getEvictedRecords());
+		metrics.register("bulk.target.bytes", (Gauge<Long>) () -> sizer == null ? 0 : sizer.getTargetBytes());
+		metrics.register("bulk.inflight", (Gauge<Integer>) () -> inFlight == null ? 0 : maxInFlight - inFlight.availablePermits());
+		metrics.register("lag.current", (Gauge<Long>) this::getCurrentLagMs);
+	}
+
+	public MetricRegistry getMetricRegistry() {
+		return metrics;
+	}
+
+	public synchronized void start() {
+		if (running) {
+			return;
+		}
+		if (closed) {
+			throw new IllegalStateException("The forwarder has been closed");
+		}
+		queue = new ArrayBlockingQueue<>(queueSize);
+		sizer = new AdaptiveBulkSizer(minBulkBytes, Math.max(minBulkBytes, maxBulkBytes), bulkTargetLatencyMs);
+		inFlight = new Semaphore(maxInFlight);
+		if (spillDirectory != null && spillMaxBytes > 0) {
+			try {
+				spillLog = new MappedSpillLog(spillDirectory, spillMaxBytes, (int)Math.min(SPILL_SEGMENT_BYTES, spillMaxBytes), EvictionPolicy.DROP_OLDEST);
+				if (!spillLog.isEmpty()) {
+					LOG.info("Replaying {} events spilled to {}", spillLog.getBacklogRecords(), spillDirectory);
+				}
+			} catch (IOException e) {
+				LOG.error("Unable to open the spill log in {}, events will not be spilled to disk", spillDirectory, e);
+				spillLog = null;
+			}
+		}
+
+		final AtomicInteger index = new AtomicInteger();
+		senders = Executors.newFixedThreadPool(maxInFlight, r -> {
+			return new Thread(r, EventToIndex.class.getSimpleName() + "-Thread-" + String.valueOf(index.incrementAndGet()));
+		});
+
+		reporter = JmxReporter.forRegistry(metrics).inDomain("org.opennms.plugins.elasticsearch.rest.forwarder").build();
+		reporter.start();
+
+		running = true;
+		batcher = new Thread(this::batch, EventToIndex.class.getSimpleName() + "-Batcher");
+		batcher.setDaemon(true);
+		batcher.start();
+	}
+
+	/**
+	 * Queues the given events. This only blocks if the queue is full and
+	 * no spill directory is configured. Events forwarded once the forwarder
+	 * is closed are dropped.
+	 */
+	public void forward(List<Event> events) {
+		if (closed || (!running && !startUnlessClosed())) {
+			eventsDropped.mark(events.size());
+			LOG.warn("Dropping {} events, the forwarder has been closed", events.size());
+			return;
+		}
+		final long now = System.currentTimeMillis();
+		for (Event event : events) {
+			eventsReceived.mark();
+			final MappedSpillLog spill = spillLog;
+			if (spill != null) {
+				// Once events are being spilled, keep spilling until the backlog
+				// has been replayed so that they are forwarded in order
+				if (!spill.isEmpty() || !queue.offer(new PendingEvent(event, now))) {
+					spill(spill, event);
+				}
+			} else {
+				try {
+					queue.put(new PendingEvent(event, now));
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					eventsDropped.mark();
+					LOG.warn("Interrupted while queueing event {} for Elasticsearch", event.getUei());
+					return;
+				}
+			}
+		}
+	}
+
+	private synchronized boolean startUnlessClosed() {
+		if (closed) {
+			return false;
+		}
+		start();
+		return true;
+	}
+
+	private void spill(MappedSpillLog spill, Event event) {
+		try {
+			if (spill.append(serialize(event))) {
+				eventsSpilled.mark();
+			} else {
+				eventsDropped.mark();
+			}
+		} catch (IOException e) {
+			eventsDropped.mark();
+			LOG.error("Unable to spill event {} to disk, dropping it", event.getUei(), e);
+		}
+	}
+
+	private void batch() {
+		List<PendingAction> bulk = new ArrayList<>();
+		long bytes = 0;
+		long deadline = Long.MAX_VALUE;
+
+		while (running) {
+			try {
+				final long now = System.currentTimeMillis();
+				final List<PendingEvent> events = nextEvents(bulk.isEmpty() ? flushIntervalMs : Math.max(0, deadline - now));
+
+				for (PendingEvent pending : events) {
+					final List<BulkableAction<DocumentResult>> actions;
+					try {
+						actions = converter.apply(Collections.singletonList(pending.event));
+					} catch (Throwable e) {
+						documentsFailed.mark();
+						LOG.error("Unexpected exception while converting event {}, dropping it: {}", pending.event.getUei(), e.getMessage(), e);
+						continue;
+					}
+					for (BulkableAction<DocumentResult> action : actions) {
+						if (action == null) {
+							continue;
+						}
+						final PendingAction pendingAction = new PendingAction(action, pending.receivedAt);
+						if (bulk.isEmpty()) {
+							deadline = System.currentTimeMillis() + flushIntervalMs;
+						}
+						bulk.add(pendingAction);
+						bytes += pendingAction.bytes;
+
+						if (bytes >= sizer.getTargetBytes()) {
+							submit(bulk);
+							bulk = new ArrayList<>();
+							bytes = 0;
+							deadline = Long.MAX_VALUE;
+						}
+					}
+				}
+
+				if (!bulk.isEmpty() && System.currentTimeMillis() >= deadline) {
+					submit(bulk);
+					bulk = new ArrayList<>();
+					bytes = 0;
+					deadline = Long.MAX_VALUE;
+				}
+			} catch (InterruptedException e) {
+				break;
+			} catch (Throwable e) {
+				LOG.error("Unexpected exception while batching events: {}", e.getMessage(), e);
+			}
+		}
+
+		// Send whatever has been converted already
+		if (!bulk.isEmpty()) {
+			submit(bulk);
+		}
+	}
+
+	/**
+	 * Takes events off the queue first, since anything on it was received before
+	 * the current spill backlog, and then off the spill log. Waits for up to the
+	 * given time if there are none.
+	 */
+	private List<PendingEvent> nextEvents(long timeoutMs) throws InterruptedException {
+		// Check the spill log first: events are only spilled while the queue is
+		// full, or after events were spilled, so if the log already holds events
+		// the queue cannot receive any more before it is drained below
+		final MappedSpillLog spill = spillLog;
+		final boolean spilled = spill != null && !spill.isEmpty();
+
+		final List<PendingEvent> events = new ArrayList<>();
+		if (queue.drainTo(events, DRAIN_LIMIT) > 0) {
+			return events;
+		}
+
+		if (spilled) {
+			// Only read the records that are spilled already. Once they are gone
+			// new events are queued again, and anything spilled after those must
+			// wait for them
+			long available = Math.min(DRAIN_LIMIT, spill.getBacklogRecords());
+			MappedSpillLog.Record record;
+			while (available-- > 0 && (record = spill.peek()) != null) {
+				// Only remove the record we read: if it was evicted by a concurrent
+				// append, removing the head would discard an event that was never read
+				spill.remove(record);
+				final Event event = deserialize(record.getPayload());
+				if (event != null) {
+					events.add(new PendingEvent(event, record.getTimestamp()));
+				}
+			}
+			return events;
+		}
+
+		final PendingEvent event = queue.poll(timeoutMs, TimeUnit.MILLISECONDS);
+		if (event != null) {
+			events.add(event);
+			queue.drainTo(events, DRAIN_LIMIT - 1);
+		}
+		return events;
+	}
+
+	private void submit(List<PendingAction> bulk) {
+		// Wait for one of the outstanding bulks to complete, this is what pushes
+		// back on the queue once Elasticsearch can no longer keep up. Events that
+		// were already taken off the queue are not abandoned when interrupted.
+		inFlight.acquireUninterruptibly();
+		try {
+			senders.execute(() -> {
+				try {
+					send(bulk);
+				} catch (Throwable e) {
+					LOG.error("Unexpected problem sending events to Elasticsearch", e);
+				} finally {
+					inFlight.release();
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			inFlight.release();
+			documentsFailed.mark(bulk.size());
+			LOG.warn("Discarding {} documents, the forwarder is shutting down", bulk.size());
+		}
+	}
+
+	private void send(List<PendingAction> actions) {
+		bulkDocuments.update(actions.size());
+		List<PendingAction> remaining = actions;
+		for (int attempt = 0; ; attempt++) {
+			remaining = execute(remaining);
+			if (remaining.isEmpty()) {
+				return;
+			}
+			if (attempt >= maxRetries) {
+				documentsFailed.mark(remaining.size());
+				LOG.error("Giving up on {} documents after {} attempts", remaining.size(), attempt + 1);
+				return;
+			}
+			documentsRetried.mark(remaining.size());
+			try {
+				Thread.sleep(retryDelayMs << Math.min(attempt, 16));
+			} catch (InterruptedException e) {
+				documentsFailed.mark(remaining.size());
+				LOG.warn("Interrupted while waiting to retry {} documents", remaining.size());
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Sends the given actions as a single bulk request.
+	 *
+	 * @return the actions that should be retried
+	 */
+	private List<PendingAction> execute(List<PendingAction> actions) {
+		final Bulk.Builder builder = new Bulk.Builder();
+		long bytes = 0;
+		for (PendingAction action : actions) {
+			builder.addAction(action.action);
+			bytes += action.bytes;
+		}
+		bulkBytes.update(bytes);
+
+		final JestClient client;
+		final BulkResult result;
+		final long start = System.nanoTime();
+		try {
+			client = clientSupplier.get();
+			result = client.execute(builder.build());
+		} catch (Throwable e) {
+			LOG.error("Unexpected problem sending {} documents to Elasticsearch", actions.size(), e);
+			// Shutdown the ES client, it will be recreated as needed
+			clientResetter.run();
+			sizer.onFailure();
+			return actions;
+		}
+		final long elapsed = System.nanoTime() - start;
+		bulkLatency.update(elapsed, TimeUnit.NANOSECONDS);
+
+		final List<BulkResultItem> items = getItems(result);
+		if (items.size() != actions.size()) {
+			// The bulk command failed completely
+			if (result == null) {
+				EventToIndex.logEsError("Bulk API action", null, null, null, -1, null);
+			} else {
+				EventToIndex.logEsError("Bulk API action", null, null, result.getJsonString(), result.getResponseCode(), result.getErrorMessage());
+			}
+			sizer.onFailure();
+			return actions;
+		}
+		sizer.onSuccess(bytes, TimeUnit.NANOSECONDS.toMillis(elapsed));
+
+		final long now = System.currentTimeMillis();
+		final List<PendingAction> retry = new ArrayList<>();
+		final Map<String,String> missingIndices = new LinkedHashMap<>();
+		for (int i = 0; i < items.size(); i++) {
+			final BulkResultItem item = items.get(i);
+			final PendingAction action = actions.get(i);
+			if (item.status >= 200 && item.status < 300) {
+				documentsIndexed.mark();
+				lag.update(now - action.receivedAt);
+				if (LOG.isDebugEnabled()) {
+					EventToIndex.logEsDebug(item.operation, item.index, item.type, "none", item.status, item.error);
+				}
+			} else if (item.status == 404) {
+				// index doesn't exist for upsert command so create new index and try again
+				missingIndices.put(action.action.getIndex(), action.action.getType());
+				retry.add(action);
+			} else if (item.status == 429 || item.status >= 500) {
+				EventToIndex.logEsDebug(item.operation, item.index, item.type, "none", item.status, item.error);
+				retry.add(action);
+			} else {
+				documentsFailed.mark();
+				EventToIndex.logEsError(item.operation, item.index, item.type, "none", item.status, item.error);
+			}
+		}
+
+		for (Map.Entry<String,String> index : missingIndices.entrySet()) {
+			if (LOG.isDebugEnabled()) {
+				LOG.debug("index name " + index.getKey() + " doesn't exist, creating new index");
+			}
+			try {
+				EventToIndex.createIndex(client, index.getKey(), index.getValue());
+			} catch (Throwable e) {
+				LOG.warn("Unable to create index {}", index.getKey(), e);
+			}
+		}
+		return retry;
+	}
+
+	private static List<BulkResultItem> getItems(BulkResult result) {
+		if (result == null) {
+			return Collections.emptyList();
+		}
+		final JsonObject json = result.getJsonObject();
+		if (json == null || !json.has("items")) {
+			return Collections.emptyList();
+		}
+		return result.getItems();
+	}
+
+	private long getCurrentLagMs() {
+		final MappedSpillLog spill = spillLog;
+		if (spill != null && !spill.isEmpty()) {
+			return spill.getBacklogAgeMs();
+		}
+		final BlockingQueue<PendingEvent> q = queue;
+		final PendingEvent head = q == null ? null : q.peek();
+		return head == null ? 0 : Math.max(0, System.currentTimeMillis() - head.receivedAt);
+	}
+
+	private static byte[] serialize(Event event) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(event);
+		}
+		return bytes.toByteArray();
+	}
+
+	private static Event deserialize(byte[] payload) {
+		try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(payload))) {
+			return (Event)in.readObject();
+		} catch (IOException | ClassNotFoundException | ClassCastException e) {
+			LOG.error("Discarding unreadable spilled event: {}", new String(payload, 0, Math.min(payload.length, 64), StandardCharsets.ISO_8859_1), e);
+			return null;
+		}
+	}
+
+	/**
+	 * Stops the batcher, waits for the outstanding bulks and keeps any events
+	 * that are still queued in the spill log so that they are forwarded on the
+	 * next start.
+	 */
+	@Override
+	public synchronized void close() {
+		closed = true;
+		if (!running) {
+			return;
+		}
+		running = false;
+		batcher.interrupt();
+		try {
+			batcher.join(SHUTDOWN_TIMEOUT_MS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		senders.shutdown();
+		try {
+			if (!senders.awaitTermination(SHUTDOWN_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+				LOG.warn("Outstanding bulk requests did not complete within {}ms", SHUTDOWN_TIMEOUT_MS);
+				senders.shutdownNow();
+			}
+		} catch (InterruptedException e) {
+			senders.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+
+		final List<PendingEvent> remaining = new ArrayList<>();
+		queue.drainTo(remaining);
+		if (spillLog != null) {
+			for (PendingEvent pending : remaining) {
+				spill(spillLog, pending.event);
+			}
+			spillLog.close();
+			spillLog = null;
+		} else if (!remaining.isEmpty()) {
+			eventsDropped.mark(remaining.size());
+			LOG.warn("Discarding {} queued events on shutdown", remaining.size());
+		}
+
+		reporter.stop();
+		reporter = null;
+	}
+
+	public int getQueueSize() {
+		return queueSize;
+	}
+
+	public void setQueueSize(int queueSize) {
+		this.queueSize = queueSize > 0 ? queueSize : DEFAULT_QUEUE_SIZE;
+	}
+
+	public int getMaxInFlight() {
+		return maxInFlight;
+	}
+
+	public void setMaxInFlight(int maxInFlight) {
+		this.maxInFlight = maxInFlight > 0 ? maxInFlight : EventToIndex.DEFAULT_NUMBER_OF_THREADS;
+	}
+
+	public long getMinBulkBytes() {
+		return minBulkBytes;
+	}
+
+	public void setMinBulkBytes(long minBulkBytes) {
+		this.minBulkBytes = minBulkBytes > 0 ? minBulkBytes : DEFAULT_MIN_BULK_BYTES;
+	}
+
+	public long getMaxBulkBytes() {
+		return maxBulkBytes;
+	}
+
+	public void setMaxBulkBytes(long maxBulkBytes) {
+		this.maxBulkBytes = maxBulkBytes > 0 ? maxBulkBytes : DEFAULT_MAX_BULK_BYTES;
+	}
+
+	public long getBulkTargetLatency() {
+		return bulkTargetLatencyMs;
+	}
+
+	public void setBulkTargetLatency(long bulkTargetLatencyMs) {
+		this.bulkTargetLatencyMs = bulkTargetLatencyMs > 0 ? bulkTargetLatencyMs : DEFAULT_BULK_TARGET_LATENCY_MS;
+	}
+
+	public long getFlushInterval() {
+		return flushIntervalMs;
+	}
+
+	public void setFlushInterval(long flushIntervalMs) {
+		this.flushIntervalMs = Math.max(0, flushIntervalMs);
+	}
+
+	public int getMaxRetries() {
+		return maxRetries;
+	}
+
+	public void setMaxRetries(int maxRetries) {
+		this.maxRetries = Math.max(0, maxRetries);
+	}
+
+	public long getRetryDelay() {
+		return retryDelayMs;
+	}
+
+	public void setRetryDelay(long retryDelayMs) {
+		this.retryDelayMs = Math.max(0, retryDelayMs);
+	}
+
+	public Path getSpillDirectory() {
+		return spillDirectory;
+	}
+
+	public void setSpillDirectory(Path spillDirectory) {
+		this.spillDirectory = spillDirectory;
+	}
+
+	public long getSpillMaxBytes() {
+		return spillMaxBytes;
+	}
+
+	public void setSpillMaxBytes(long spillMaxBytes) {
+		this.spillMaxBytes = spillMaxBytes;
+	}
+}
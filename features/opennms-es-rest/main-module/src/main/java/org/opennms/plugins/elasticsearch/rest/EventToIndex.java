@@ -29,6 +29,7 @@
 package org.opennms.plugins.elasticsearch.rest;
 
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
@@ -36,13 +37,6 @@ import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.SynchronousQueue;
-import java.util.concurrent.ThreadFactory;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.stream.Collectors;
 
 import javax.xml.bind.DatatypeConverter;
 
@@ -56,12 +50,11 @@ import org.opennms.netmgt.xml.event.Parm;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.codahale.metrics.MetricRegistry;
+
 import io.searchbox.action.BulkableAction;
 import io.searchbox.client.JestClient;
 import io.searchbox.client.JestResult;
-import io.searchbox.core.Bulk;
-import io.searchbox.core.BulkResult;
-import io.searchbox.core.BulkResult.BulkResultItem;
 import io.searchbox.core.DocumentResult;
 import io.searchbox.core.Index;
 import io.searchbox.core.Update;
@@ -165,21 +158,7 @@ public class EventToIndex implements AutoCloseable {
 
 	private int threads = DEFAULT_NUMBER_OF_THREADS;
 
-	private final ThreadPoolExecutor executor = new ThreadPoolExecutor(
-		threads,
-		threads,
-		0L, TimeUnit.MILLISECONDS,
-		new SynchronousQueue<>(true),
-		new ThreadFactory() {
-			final AtomicInteger index = new AtomicInteger();
-			@Override
-			public Thread newThread(Runnable r) {
-				return new Thread(r, EventToIndex.class.getSimpleName() + "-Thread-" + String.valueOf(index.incrementAndGet()));
-			}
-		},
-		// Throttle incoming tasks by running them on the caller thread
-		new ThreadPoolExecutor.CallerRunsPolicy()
-	);
+	private final BulkForwarder forwarder = new BulkForwarder(this::convertEventsToEsActions, this::getJestClient, this::closeJestClient);
 
 	private IndexNameFunction indexNameFunction = new IndexNameFunction();
 
@@ -214,14 +193,103 @@ public class EventToIndex implements AutoCloseable {
 	public void setThreads(int threads) {
 		if (threads > 0) {
 			this.threads = threads;
-			// Resize the executor pool
-			executor.setCorePoolSize(threads);
-			executor.setMaximumPoolSize(threads);
+			// Bounds the number of bulk requests in flight
+			forwarder.setMaxInFlight(threads);
 		} else {
 			setThreads(DEFAULT_NUMBER_OF_THREADS);
 		}
 	}
 
+	public int getQueueSize() {
+		return forwarder.getQueueSize();
+	}
+
+	/**
+	 * @param queueSize Number of events that are held in memory before
+	 *   they are spilled to disk
+	 */
+	public void setQueueSize(int queueSize) {
+		forwarder.setQueueSize(queueSize);
+	}
+
+	public long getBulkMaxBytes() {
+		return forwarder.getMaxBulkBytes();
+	}
+
+	public void setBulkMaxBytes(long bulkMaxBytes) {
+		forwarder.setMaxBulkBytes(bulkMaxBytes);
+	}
+
+	public long getBulkTargetLatency() {
+		return forwarder.getBulkTargetLatency();
+	}
+
+	/**
+	 * @param bulkTargetLatency Bulk requests are made smaller while they take
+	 *   longer than this many milliseconds
+	 */
+	public void setBulkTargetLatency(long bulkTargetLatency) {
+		forwarder.setBulkTargetLatency(bulkTargetLatency);
+	}
+
+	public long getBulkFlushInterval() {
+		return forwarder.getFlushInterval();
+	}
+
+	/**
+	 * @param bulkFlushInterval Maximum time in milliseconds that an event
+	 *   waits for a bulk request to fill up
+	 */
+	public void setBulkFlushInterval(long bulkFlushInterval) {
+		forwarder.setFlushInterval(bulkFlushInterval);
+	}
+
+	public int getBulkRetries() {
+		return forwarder.getMaxRetries();
+	}
+
+	/**
+	 * @param bulkRetries Number of times the failed items of a bulk request
+	 *   are sent again
+	 */
+	public void setBulkRetries(int bulkRetries) {
+		forwarder.setMaxRetries(bulkRetries);
+	}
+
+	public String getSpillDirectory() {
+		return forwarder.getSpillDirectory() == null ? null : forwarder.getSpillDirectory().toString();
+	}
+
+	/**
+	 * @param spillDirectory Directory that events are spilled to when the
+	 *   queue is full. Defaults to a directory below <code>${karaf.data}</code>.
+	 */
+	public void setSpillDirectory(String spillDirectory) {
+		if (spillDirectory != null && !spillDirectory.trim().isEmpty()) {
+			forwarder.setSpillDirectory(Paths.get(spillDirectory.trim()));
+		} else if (System.getProperty("karaf.data") != null) {
+			forwarder.setSpillDirectory(Paths.get(System.getProperty("karaf.data"), "elasticsearch-forwarder"));
+		} else {
+			forwarder.setSpillDirectory(null);
+		}
+	}
+
+	public long getSpillMaxBytes() {
+		return forwarder.getSpillMaxBytes();
+	}
+
+	/**
+	 * @param spillMaxBytes Maximum size of the spilled events, the oldest
+	 *   ones are discarded beyond it. Set to 0 to disable spilling.
+	 */
+	public void setSpillMaxBytes(long spillMaxBytes) {
+		forwarder.setSpillMaxBytes(spillMaxBytes);
+	}
+
+	public MetricRegistry getMetricRegistry() {
+		return forwarder.getMetricRegistry();
+	}
+
 	public NodeCache getNodeCache() {
 		return nodeCache;
 	}
@@ -310,136 +378,23 @@ public class EventToIndex implements AutoCloseable {
 
 	@Override
 	public void close(){
-		closeJestClient();
+		// Stop forwarding before the client goes away
+		forwarder.close();
 
-		// Shutdown the thread pool
-		executor.shutdown();
+		closeJestClient();
 	}
 
 	/**
+	 * Hands the events over to the {@link BulkForwarder}, which converts and
+	 * sends them in the background.
+	 * 
 	 * @param events
 	 */
 	public void forwardEvents(final List<Event> events) {
-		CompletableFuture.completedFuture(events)
-			// Convert the events to ES actions
-			.thenApplyAsync(this::convertEventsToEsActions, executor)
-			// Log any uncaught exceptions
-			.exceptionally(e -> {
-				LOG.error("Unexpected exception during task execution: " + e.getMessage(), e);
-				return null;
-			})
-			// Send the events to Elasticsearch
-			.thenAcceptAsync(this::sendEvents, executor)
-			// Log any uncaught exceptions
-			.exceptionally(e -> {
-				LOG.error("Unexpected exception during task completion: " + e.getMessage(), e);
-				return null;
-			});
+		forwarder.forward(events);
 	}
 
-	private void sendEvents(final List<BulkableAction<DocumentResult>> actions) {
-		if (actions != null && actions.size() > 0) {
-			// Split the actions up by index
-			for (Map.Entry<String,List<BulkableAction<DocumentResult>>> entry : actions.stream().collect(Collectors.groupingBy(BulkableAction::getIndex)).entrySet()) {
-
-				try {
-					final List<BulkableAction<DocumentResult>> actionList = entry.getValue();
-
-					if (entry.getValue().size() == 1) {
-						// Not bulk
-						final BulkableAction<DocumentResult> action = actionList.get(0);
-						executeSingleAction(getJestClient(), action);
-					} else {
-						// The type will be identical for all events in the same index
-						final String type = actionList.get(0).getType();
-
-						final Bulk.Builder builder = new Bulk.Builder()
-								.defaultIndex(entry.getKey())
-								.defaultType(type);
-
-						// Add all actions to the bulk operation
-						builder.addAction(actionList);
-
-						final Bulk bulk = builder.build();
-
-						BulkResult result = getJestClient().execute(bulk);
-
-						// If the bulk command fails completely...
-						if (result == null || !result.isSucceeded()) {
-							if (result == null) {
-								logEsError("Bulk API action", entry.getKey(), type, null, -1, null);
-							} else {
-								logEsError("Bulk API action", entry.getKey(), type, result.getJsonString(), result.getResponseCode(), result.getErrorMessage());
-							}
-
-							// Try and issue the bulk actions individually as a fallback
-							for (BulkableAction<DocumentResult> action : entry.getValue()) {
-								executeSingleAction(getJestClient(), action);
-							}
-
-							continue;
-						}
-
-						// Check the return codes of the results
-						List<BulkResultItem> items = result.getItems();
-						boolean all404s = true;
-						for (BulkResultItem item : items) {
-							if (item.status != 404) {
-								all404s = false;
-								break;
-							}
-						}
-
-						if(all404s){
-							// index doesn't exist for upsert command so create new index and try again
-
-							if(LOG.isDebugEnabled()) {
-								LOG.debug("index name "+entry.getKey() + " doesn't exist, creating new index");
-							}
-
-							createIndex(getJestClient(), entry.getKey(), type);
-
-							result = getJestClient().execute(bulk);
-						}
-
-						// If the bulk command fails completely...
-						if (result == null || !result.isSucceeded()) {
-							if (result == null) {
-								logEsError("Bulk API action", entry.getKey(), type, null, -1, null);
-							} else {
-								logEsError("Bulk API action", entry.getKey(), type, result.getJsonString(), result.getResponseCode(), result.getErrorMessage());
-							}
-
-							// Try and issue the bulk actions individually as a fallback
-							for (BulkableAction<DocumentResult> action : entry.getValue()) {
-								executeSingleAction(getJestClient(), action);
-							}
-
-							continue;
-						}
-
-						// Log any unsuccessful completions as errors
-						for (BulkResultItem item : result.getItems()) {
-							if(item.status >= 200 && item.status < 300){
-								if (LOG.isDebugEnabled()) {
-									// If debug is enabled, log all completions
-									logEsDebug(item.operation, entry.getKey(), item.type, "none", item.status, item.error);
-								}
-							} else {
-								logEsError(item.operation, entry.getKey(), item.type, "none", item.status, item.error);
-							}
-						}
-					}
-				} catch (Throwable ex){
-					LOG.error("Unexpected problem sending event to Elasticsearch", ex);
-					// Shutdown the ES client, it will be recreated as needed
-					closeJestClient();
-				}
-			}
-		}
-	}
-
-	private static final void logEsError(String operation, String index, String type, String result, int responseCode, String errorMessage) {
+	static final void logEsError(String operation, String index, String type, String result, int responseCode, String errorMessage) {
 		LOG.error("Error while performing {} on Elasticsearch index: {}, type: {}\n" +
 				"   received result: {}\n" + 
 				"   response code: {}\n" + 
@@ -448,7 +403,7 @@ public class EventToIndex implements AutoCloseable {
 		);
 	}
 
-	private static final void logEsDebug(String operation, String index, String type, String result, int responseCode, String errorMessage) {
+	static final void logEsDebug(String operation, String index, String type, String result, int responseCode, String errorMessage) {
 		LOG.debug("Performed {} on Elasticsearch index: {}, type: {}\n" +
 				"   received result: {}\n" + 
 				"   response code: {}\n" + 
@@ -457,43 +412,6 @@ public class EventToIndex implements AutoCloseable {
 		);
 	}
 
-	/**
-	 * This executes single Elasticsearch actions, creating indices as needed.
-	 * 
-	 * @param client
-	 * @param action
-	 * @throws IOException
-	 */
-	private static void executeSingleAction(JestClient client, BulkableAction<DocumentResult> action) throws IOException {
-
-		DocumentResult result = client.execute(action);
-
-		if(result == null || result.getResponseCode() == 404){
-			// index doesn't exist for upsert command so create new index and try again
-
-			if(LOG.isDebugEnabled()) {
-				if (result == null) {
-					logEsDebug(action.getRestMethodName(), action.getIndex(), action.getType(), null, -1, null);
-				} else {
-					logEsDebug(action.getRestMethodName(), action.getIndex(), action.getType(), result.getJsonString(), result.getResponseCode(), result.getErrorMessage());
-				}
-				LOG.debug("index name "+action.getIndex() + " doesn't exist, creating new index");
-			}
-
-			createIndex(client, action.getIndex(), action.getType());
-
-			result = client.execute(action);
-		}
-
-		if (result == null) {
-			logEsError(action.getRestMethodName(), action.getIndex(), action.getType(), null, -1, null);
-		} else if (!result.isSucceeded()){
-			logEsError(action.getRestMethodName(), action.getIndex(), action.getType(), result.getJsonString(), result.getResponseCode(), result.getErrorMessage());
-		} else if(LOG.isDebugEnabled()) {
-			logEsDebug(action.getRestMethodName(), action.getIndex(), action.getType(), result.getJsonString(), result.getResponseCode(), result.getErrorMessage());
-		}
-	}
-
 	/** 
 	 * <p>This method converts events into a sequence of Elasticsearch index/update commands.
 	 * Three types of actions are possible:</p>
@@ -951,7 +869,7 @@ public class EventToIndex implements AutoCloseable {
 		}
 	}
 
-	private static void createIndex(JestClient client, String name, String type) throws IOException {
+	static void createIndex(JestClient client, String name, String type) throws IOException {
 		// create new index
 		CreateIndex createIndex = new CreateIndex.Builder(name).build();
 		JestResult result = new OnmsJestResult(client.execute(createIndex));
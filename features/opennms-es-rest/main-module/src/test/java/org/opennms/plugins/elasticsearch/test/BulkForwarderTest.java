@@ -0,0 +1,294 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.plugins.elasticsearch.test;
+
+import static com.jayway.awaitility.Awaitility.await;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opennms.netmgt.xml.event.Event;
+import org.opennms.plugins.elasticsearch.rest.AdaptiveBulkSizer;
+import org.opennms.plugins.elasticsearch.rest.BulkForwarder;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import io.searchbox.action.Action;
+import io.searchbox.action.BulkableAction;
+import io.searchbox.client.JestClient;
+import io.searchbox.client.JestResult;
+import io.searchbox.client.JestResultHandler;
+import io.searchbox.core.Bulk;
+import io.searchbox.core.BulkResult;
+import io.searchbox.core.DocumentResult;
+import io.searchbox.core.Index;
+
+public class BulkForwarderTest {
+
+	@Rule
+	public TemporaryFolder tempFolder = new TemporaryFolder();
+
+	private BulkForwarder forwarder;
+
+	/**
+	 * Answers bulk requests with 201 for every item, except for the documents
+	 * whose ids are in {@link #failOnce} which fail with 429 the first time.
+	 */
+	private static class MockJestClient implements JestClient {
+		private final Gson gson = new Gson();
+		private final List<List<String>> bulks = new CopyOnWriteArrayList<>();
+		private final Set<String> failOnce = ConcurrentHashMap.newKeySet();
+		private volatile CountDownLatch gate = new CountDownLatch(0);
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public <T extends JestResult> T execute(Action<T> clientRequest) throws IOException {
+			try {
+				gate.await();
+			} catch (InterruptedException e) {
+				throw new IOException(e);
+			}
+
+			final List<String> ids = new ArrayList<>();
+			boolean errors = false;
+			final JsonArray items = new JsonArray();
+			final String[] lines = ((Bulk)clientRequest).getData(gson).split("\n");
+			for (int i = 0; i < lines.length; i += 2) {
+				final Map.Entry<String,JsonElement> metadata = new JsonParser().parse(lines[i]).getAsJsonObject().entrySet().iterator().next();
+				final String id = metadata.getValue().getAsJsonObject().get("_id").getAsString();
+				ids.add(id);
+
+				final JsonObject item = new JsonObject();
+				item.addProperty("_index", metadata.getValue().getAsJsonObject().get("_index").getAsString());
+				item.addProperty("_type", metadata.getValue().getAsJsonObject().get("_type").getAsString());
+				item.addProperty("_id", id);
+				if (failOnce.remove(id)) {
+					item.addProperty("status", 429);
+					errors = true;
+				} else {
+					item.addProperty("status", 201);
+				}
+				final JsonObject wrapper = new JsonObject();
+				wrapper.add(metadata.getKey(), item);
+				items.add(wrapper);
+			}
+			bulks.add(ids);
+
+			final JsonObject json = new JsonObject();
+			json.addProperty("errors", errors);
+			json.add("items", items);
+
+			final BulkResult result = new BulkResult(gson);
+			result.setJsonObject(json);
+			result.setJsonString(json.toString());
+			result.setResponseCode(200);
+			result.setSucceeded(true);
+			return (T)result;
+		}
+
+		@Override
+		public <T extends JestResult> void executeAsync(Action<T> clientRequest, JestResultHandler<? super T> jestResultHandler) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void shutdownClient() {
+		}
+
+		@Override
+		public void setServers(Set<String> servers) {
+		}
+
+		private List<String> getSentIds() {
+			return bulks.stream().flatMap(List::stream).collect(Collectors.toList());
+		}
+	}
+
+	private static List<BulkableAction<DocumentResult>> toActions(List<Event> events) {
+		final List<BulkableAction<DocumentResult>> actions = new ArrayList<>();
+		for (Event event : events) {
+			actions.add(new Index.Builder("{\"id\":" + event.getDbid() + "}")
+					.index("opennms-events-raw-2018.01")
+					.type("eventdata")
+					.id(Integer.toString(event.getDbid()))
+					.build());
+		}
+		return actions;
+	}
+
+	private static List<Event> createEvents(int first, int last) {
+		final List<Event> events = new ArrayList<>();
+		for (int i = first; i <= last; i++) {
+			final Event event = new Event();
+			event.setUei("uei.opennms.org/test");
+			event.setDbid(i);
+			events.add(event);
+		}
+		return events;
+	}
+
+	private static List<String> ids(int first, int last) {
+		return createEvents(first, last).stream().map(e -> Integer.toString(e.getDbid())).collect(Collectors.toList());
+	}
+
+	@After
+	public void tearDown() {
+		if (forwarder != null) {
+			forwarder.close();
+		}
+	}
+
+	@Test
+	public void canRetryOnlyFailedItems() {
+		final MockJestClient client = new MockJestClient();
+		client.failOnce.addAll(Arrays.asList("3", "7"));
+
+		forwarder = new BulkForwarder(BulkForwarderTest::toActions, () -> client, () -> {});
+		forwarder.setFlushInterval(100);
+		forwarder.setRetryDelay(10);
+		forwarder.forward(createEvents(1, 10));
+
+		await().atMost(10, TimeUnit.SECONDS).until(() -> forwarder.getMetricRegistry().meter("documents.indexed").getCount(), equalTo(10L));
+
+		assertEquals(2, client.bulks.size());
+		assertEquals(ids(1, 10), client.bulks.get(0));
+		assertEquals(Arrays.asList("3", "7"), client.bulks.get(1));
+		assertEquals(2, forwarder.getMetricRegistry().meter("documents.retried").getCount());
+		assertEquals(0, forwarder.getMetricRegistry().meter("documents.failed").getCount());
+	}
+
+	@Test
+	public void canSpillWhileElasticsearchIsBlocked() {
+		final MockJestClient client = new MockJestClient();
+		client.gate = new CountDownLatch(1);
+
+		forwarder = new BulkForwarder(BulkForwarderTest::toActions, () -> client, () -> {});
+		forwarder.setQueueSize(10);
+		forwarder.setMaxInFlight(1);
+		forwarder.setFlushInterval(10);
+		forwarder.setSpillDirectory(tempFolder.getRoot().toPath());
+
+		// None of these may block, even though nothing is being indexed
+		for (Event event : createEvents(1, 1000)) {
+			forwarder.forward(Collections.singletonList(event));
+		}
+		assertTrue(forwarder.getMetricRegistry().meter("events.spilled").getCount() > 0);
+		assertEquals(0, forwarder.getMetricRegistry().meter("documents.indexed").getCount());
+
+		client.gate.countDown();
+		await().atMost(10, TimeUnit.SECONDS).until(() -> forwarder.getMetricRegistry().meter("documents.indexed").getCount(), equalTo(1000L));
+
+		// The spilled events are replayed in order
+		assertEquals(ids(1, 1000), client.getSentIds());
+		assertEquals(0, forwarder.getMetricRegistry().meter("events.dropped").getCount());
+	}
+
+	@Test
+	public void countsEventsThatCannotBeConverted() {
+		final MockJestClient client = new MockJestClient();
+
+		forwarder = new BulkForwarder(events -> {
+			if (events.get(0).getDbid() == 2) {
+				throw new IllegalArgumentException("unconvertible");
+			}
+			return toActions(events);
+		}, () -> client, () -> {});
+		forwarder.setFlushInterval(10);
+		forwarder.forward(createEvents(1, 3));
+
+		await().atMost(10, TimeUnit.SECONDS).until(() -> forwarder.getMetricRegistry().meter("documents.indexed").getCount(), equalTo(2L));
+		assertEquals(1, forwarder.getMetricRegistry().meter("documents.failed").getCount());
+		assertEquals(Arrays.asList("1", "3"), client.getSentIds());
+	}
+
+	@Test
+	public void dropsEventsForwardedAfterClose() {
+		final MockJestClient client = new MockJestClient();
+
+		forwarder = new BulkForwarder(BulkForwarderTest::toActions, () -> client, () -> {});
+		forwarder.setFlushInterval(10);
+		forwarder.forward(createEvents(1, 1));
+		await().atMost(10, TimeUnit.SECONDS).until(() -> forwarder.getMetricRegistry().meter("documents.indexed").getCount(), equalTo(1L));
+		forwarder.close();
+
+		// The forwarder must not be started again
+		forwarder.forward(createEvents(2, 3));
+		assertEquals(2, forwarder.getMetricRegistry().meter("events.dropped").getCount());
+		assertEquals(1, forwarder.getMetricRegistry().meter("events.received").getCount());
+		assertEquals(ids(1, 1), client.getSentIds());
+	}
+
+	@Test
+	public void canAdaptBulkSizeToLatency() {
+		final AdaptiveBulkSizer sizer = new AdaptiveBulkSizer(1000, 10000, 100);
+		assertEquals(1000, sizer.getTargetBytes());
+
+		// Bulks that are flushed well before they are full don't grow the target
+		sizer.onSuccess(100, 10);
+		assertEquals(1000, sizer.getTargetBytes());
+
+		// Full and fast bulks grow it up to the maximum
+		for (int i = 0; i < 20; i++) {
+			sizer.onSuccess(sizer.getTargetBytes(), 10);
+		}
+		assertEquals(10000, sizer.getTargetBytes());
+
+		// Slow bulks and failures halve it
+		sizer.onSuccess(10000, 500);
+		assertEquals(5000, sizer.getTargetBytes());
+		sizer.onFailure();
+		assertEquals(2500, sizer.getTargetBytes());
+		for (int i = 0; i < 10; i++) {
+			sizer.onFailure();
+		}
+		assertEquals(1000, sizer.getTargetBytes());
+	}
+}
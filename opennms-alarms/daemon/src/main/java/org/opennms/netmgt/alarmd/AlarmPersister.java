@@ -28,6 +28,8 @@
 
 package org.opennms.netmgt.alarmd;
 
+import java.util.function.Consumer;
+
 import org.opennms.netmgt.model.OnmsAlarm;
 import org.opennms.netmgt.xml.event.Event;
 
@@ -47,4 +49,17 @@ public interface AlarmPersister {
      */
     OnmsAlarm persist(Event event);
 
+    /**
+     * Sets the handler of the alarms that were updated after {@link #persist(Event)}
+     * returned, when their reductions were deferred.
+     *
+     * @param handler called with each alarm once its deferred reductions are written
+     */
+    void setDeferredAlarmHandler(Consumer<OnmsAlarm> handler);
+
+    /**
+     * Writes the deferred reductions, if any.
+     */
+    void flush();
+
 }
@@ -28,7 +28,18 @@
 
 package org.opennms.netmgt.alarmd;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
 import org.hibernate.Hibernate;
+import org.opennms.core.concurrent.LogPreservingThreadFactory;
 import org.opennms.netmgt.dao.api.AlarmDao;
 import org.opennms.netmgt.dao.api.EventDao;
 import org.opennms.netmgt.events.api.EventConstants;
@@ -41,6 +52,7 @@ import org.opennms.netmgt.xml.event.Event;
 import org.opennms.netmgt.xml.event.UpdateField;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.support.TransactionCallback;
 import org.springframework.transaction.support.TransactionOperations;
@@ -49,16 +61,48 @@ import org.springframework.util.Assert;
 /**
  * Singleton to persist OnmsAlarms.
  *
+ * The ids of the alarms are indexed by reduction key. When
+ * {@link #REDUCTION_WINDOW_PROPERTY} is set, the events that reduce to an indexed
+ * alarm are not written right away: the reductions of an alarm received within the
+ * window are written together, with a single update of the alarm and a single
+ * {@link EventConstants#ALARM_UPDATED_WITH_REDUCED_EVENT_UEI} event.
+ *
  * @author <a href="mailto:david@opennms.org">David Hustace</a>
  * @version $Id: $
  */
-public class AlarmPersisterImpl implements AlarmPersister {
+public class AlarmPersisterImpl implements AlarmPersister, DisposableBean {
     private static final Logger LOG = LoggerFactory.getLogger(AlarmPersisterImpl.class);
 
+    public static final String REDUCTION_WINDOW_PROPERTY = "org.opennms.alarmd.reductionWindow";
+    public static final String REDUCTION_KEY_INDEX_SIZE_PROPERTY = "org.opennms.alarmd.reductionKeyIndexSize";
+
     private AlarmDao m_alarmDao;
     private EventDao m_eventDao;
     private EventForwarder m_eventForwarder;
     private TransactionOperations m_transactionOperations;
+    private Consumer<OnmsAlarm> m_deferredAlarmHandler = alarm -> {};
+
+    private long m_reductionWindow = Long.getLong(REDUCTION_WINDOW_PROPERTY, 0L);
+    private final int m_reductionKeyIndexSize = Integer.getInteger(REDUCTION_KEY_INDEX_SIZE_PROPERTY, 10000);
+
+    /**
+     * The ids of the most recently persisted alarms by reduction key.
+     */
+    private final Map<String, Integer> m_alarmIdsByReductionKey = new LinkedHashMap<String, Integer>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+            return size() > m_reductionKeyIndexSize;
+        }
+    };
+
+    /**
+     * The events waiting to be reduced, by reduction key, in the order they were received.
+     */
+    private final Map<String, List<Event>> m_pendingReductions = new LinkedHashMap<>();
+
+    private ScheduledExecutorService m_flushExecutor;
 
     private static class OnmsAlarmAndLifecycleEvent {
         private final OnmsAlarm m_alarm;
@@ -81,7 +125,7 @@ public class AlarmPersisterImpl implements AlarmPersister {
     /** {@inheritDoc} 
      * @return */
     @Override
-    public OnmsAlarm persist(Event event) {
+    public synchronized OnmsAlarm persist(Event event) {
         if (!checkEventSanityAndDoWeProcess(event)) {
             return null;
         }
@@ -90,6 +134,32 @@ public class AlarmPersisterImpl implements AlarmPersister {
             LOG.debug("process: {}; nodeid: {}; ipaddr: {}; serviceid: {}", event.getUei(), event.getNodeid(), event.getInterface(), event.getService());
         }
 
+        if (m_reductionWindow > 0) {
+            final String reductionKey = event.getAlarmData().getReductionKey();
+            final List<Event> pending = m_pendingReductions.get(reductionKey);
+            if (pending != null) {
+                pending.add(event);
+                return null;
+            } else if (m_alarmIdsByReductionKey.get(reductionKey) != null) {
+                // Looked up rather than checked so the key stays among the most recently used
+                LOG.debug("persist: deferring the reduction of {} to alarm with reduction key {}", event.getUei(), reductionKey);
+                if (m_pendingReductions.isEmpty()) {
+                    scheduleFlush();
+                }
+                m_pendingReductions.put(reductionKey, new ArrayList<>(Collections.singletonList(event)));
+                return null;
+            }
+        }
+
+        final OnmsAlarmAndLifecycleEvent alarmAndEvent = persistNow(event);
+
+        // Send the event outside of the database transaction
+        m_eventForwarder.sendNow(alarmAndEvent.getEvent());
+
+        return alarmAndEvent.getAlarm();
+    }
+
+    private OnmsAlarmAndLifecycleEvent persistNow(Event event) {
         // Process the alarm inside a transaction
         OnmsAlarmAndLifecycleEvent alarmAndEvent = m_transactionOperations.execute(new TransactionCallback<OnmsAlarmAndLifecycleEvent>() {
             @Override
@@ -97,11 +167,129 @@ public class AlarmPersisterImpl implements AlarmPersister {
                 return addOrReduceEventAsAlarm(event);
             }
         });
+        index(alarmAndEvent.getAlarm());
+        return alarmAndEvent;
+    }
 
-        // Send the event outside of the database transaction
-        m_eventForwarder.sendNow(alarmAndEvent.getEvent());
+    private void index(OnmsAlarm alarm) {
+        if (m_reductionWindow > 0 && alarm.getId() != null) {
+            m_alarmIdsByReductionKey.put(alarm.getReductionKey(), alarm.getId());
+        }
+    }
 
-        return alarmAndEvent.getAlarm();
+    private void scheduleFlush() {
+        if (m_flushExecutor == null) {
+            m_flushExecutor = Executors.newSingleThreadScheduledExecutor(new LogPreservingThreadFactory("AlarmPersister-Flush", 1));
+        }
+        m_flushExecutor.schedule(this::flush, m_reductionWindow, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Writes the deferred reductions in a single transaction. If it fails, the
+     * events are persisted one at a time instead.
+     *
+     * The lifecycle events and the updated alarms are forwarded once the lock is
+     * released, so that events can be persisted while the handlers run.
+     */
+    @Override
+    public void flush() {
+        for (OnmsAlarmAndLifecycleEvent alarmAndEvent : reducePendingEvents()) {
+            try {
+                m_eventForwarder.sendNow(alarmAndEvent.getEvent());
+                m_deferredAlarmHandler.accept(alarmAndEvent.getAlarm());
+            } catch (RuntimeException e) {
+                LOG.error("flush: failed to forward the update of alarm {}.", alarmAndEvent.getAlarm().getId(), e);
+            }
+        }
+    }
+
+    private synchronized List<OnmsAlarmAndLifecycleEvent> reducePendingEvents() {
+        if (m_pendingReductions.isEmpty()) {
+            return Collections.emptyList();
+        }
+        final Map<String, List<Event>> pendingReductions = new LinkedHashMap<>(m_pendingReductions);
+        m_pendingReductions.clear();
+
+        List<OnmsAlarmAndLifecycleEvent> alarmsAndEvents = null;
+        try {
+            alarmsAndEvents = m_transactionOperations.execute(new TransactionCallback<List<OnmsAlarmAndLifecycleEvent>>() {
+                @Override
+                public List<OnmsAlarmAndLifecycleEvent> doInTransaction(TransactionStatus status) {
+                    return reduceEventsToAlarms(pendingReductions);
+                }
+            });
+        } catch (RuntimeException e) {
+            LOG.warn("flush: failed to reduce the events of {} alarms together, reducing them one at a time.", pendingReductions.size(), e);
+        }
+
+        if (alarmsAndEvents != null) {
+            for (OnmsAlarmAndLifecycleEvent alarmAndEvent : alarmsAndEvents) {
+                index(alarmAndEvent.getAlarm());
+            }
+            return alarmsAndEvents;
+        }
+
+        alarmsAndEvents = new ArrayList<>();
+        for (List<Event> events : pendingReductions.values()) {
+            for (Event event : events) {
+                try {
+                    alarmsAndEvents.add(persistNow(event));
+                } catch (RuntimeException e) {
+                    LOG.error("flush: failed to persist event {} as alarm.", event.getDbid(), e);
+                }
+            }
+        }
+        return alarmsAndEvents;
+    }
+
+    private List<OnmsAlarmAndLifecycleEvent> reduceEventsToAlarms(Map<String, List<Event>> pendingReductions) {
+        final List<OnmsAlarmAndLifecycleEvent> alarmsAndEvents = new ArrayList<>();
+        for (Map.Entry<String, List<Event>> entry : pendingReductions.entrySet()) {
+            final Integer alarmId = m_alarmIdsByReductionKey.get(entry.getKey());
+            final OnmsAlarm alarm = alarmId == null ? null : m_alarmDao.get(alarmId);
+            if (alarm == null || !entry.getKey().equals(alarm.getReductionKey())) {
+                // The alarm was deleted since it was indexed, look it up or create it again
+                m_alarmIdsByReductionKey.remove(entry.getKey());
+                for (Event event : entry.getValue()) {
+                    alarmsAndEvents.add(addOrReduceEventAsAlarm(event));
+                }
+            } else {
+                alarmsAndEvents.add(reduceEventsToAlarm(alarm, entry.getValue()));
+            }
+        }
+        return alarmsAndEvents;
+    }
+
+    /**
+     * Reduces the events to the alarm in the order they were received, updating
+     * the alarm and cleaning up its previous events once.
+     */
+    private OnmsAlarmAndLifecycleEvent reduceEventsToAlarm(OnmsAlarm alarm, List<Event> events) {
+        int lastAutoClean = -1;
+        for (int i = 0; i < events.size(); i++) {
+            if (events.get(i).getAlarmData().isAutoClean()) {
+                lastAutoClean = i;
+            }
+        }
+
+        LOG.debug("reduceEventsToAlarm: reducing {} events to existing alarm: {}", events.size(), alarm.getId());
+        for (int i = 0; i < events.size(); i++) {
+            final Event event = events.get(i);
+            final OnmsEvent e = m_eventDao.get(event.getDbid());
+            Assert.notNull(e, "Event was deleted before we could retrieve it and reduce it to an alarm.");
+
+            reduceEvent(e, alarm, event);
+            m_eventDao.update(e);
+
+            // The events before the last one to clean up are deleted by it anyway
+            if (i == lastAutoClean) {
+                m_alarmDao.update(alarm);
+                m_eventDao.deletePreviousEventsForAlarm(alarm.getId(), e);
+            }
+        }
+        m_alarmDao.update(alarm);
+
+        return createLifecycleEvent(alarm, new EventBuilder(EventConstants.ALARM_UPDATED_WITH_REDUCED_EVENT_UEI, Alarmd.NAME));
     }
 
     private OnmsAlarmAndLifecycleEvent addOrReduceEventAsAlarm(Event event) {
@@ -140,6 +328,10 @@ public class AlarmPersisterImpl implements AlarmPersister {
             ebldr = new EventBuilder(EventConstants.ALARM_UPDATED_WITH_REDUCED_EVENT_UEI, Alarmd.NAME);
         }
 
+        return createLifecycleEvent(alarm, ebldr);
+    }
+
+    private static OnmsAlarmAndLifecycleEvent createLifecycleEvent(OnmsAlarm alarm, EventBuilder ebldr) {
         if (alarm.getNodeId() != null) {
             alarm.getNode().getForeignSource(); // This should trigger the lazy loading of the node object, to properly populate the NorthboundAlarm class.
         }
@@ -268,6 +460,26 @@ public class AlarmPersisterImpl implements AlarmPersister {
         return true;
     }
 
+    @Override
+    public void destroy() {
+        if (m_flushExecutor != null) {
+            m_flushExecutor.shutdownNow();
+        }
+        flush();
+    }
+
+    @Override
+    public void setDeferredAlarmHandler(Consumer<OnmsAlarm> handler) {
+        m_deferredAlarmHandler = handler;
+    }
+
+    /**
+     * @param reductionWindow the number of milliseconds to defer the reductions of an alarm for, 0 to reduce right away
+     */
+    public void setReductionWindow(long reductionWindow) {
+        m_reductionWindow = reductionWindow;
+    }
+
     public TransactionOperations getTransactionOperations() {
         return m_transactionOperations;
     }
@@ -91,15 +91,19 @@ public class Alarmd implements SpringServiceDaemon, DisposableBean {
         OnmsAlarm alarm = m_persister.persist(e);
         
         if (alarm != null) {
-        	NorthboundAlarm a = new NorthboundAlarm(alarm);
-
-            for (Northbounder nbi : m_northboundInterfaces) {
-                nbi.onAlarm(a);
-            }
+            onAlarm(alarm);
         }
         
     }
 
+    private void onAlarm(OnmsAlarm alarm) {
+        NorthboundAlarm a = new NorthboundAlarm(alarm);
+
+        for (Northbounder nbi : m_northboundInterfaces) {
+            nbi.onAlarm(a);
+        }
+    }
+
     private void handleReloadEvent(Event e) {
         LOG.info("Received reload configuration event: {}", e);
 
@@ -172,6 +176,7 @@ public class Alarmd implements SpringServiceDaemon, DisposableBean {
      */
     @Override
     public void afterPropertiesSet() throws Exception {
+        m_persister.setDeferredAlarmHandler(this::onAlarm);
         if (getNorthboundInterfaces() != null) {
             for (final Northbounder nb : getNorthboundInterfaces()) {
                 LOG.debug("afterPropertiesSet: starting {}", nb.getName());
@@ -187,6 +192,7 @@ public class Alarmd implements SpringServiceDaemon, DisposableBean {
      */
     @Override
     public void destroy() throws Exception {
+        m_persister.flush();
         if (getNorthboundInterfaces() != null) {
             for (final Northbounder nb : getNorthboundInterfaces()) {
                 LOG.debug("destroy: stopping {}", nb.getName());
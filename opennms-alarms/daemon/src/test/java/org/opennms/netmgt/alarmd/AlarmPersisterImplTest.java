@@ -0,0 +1,278 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.alarmd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.netmgt.dao.api.DistPollerDao;
+import org.opennms.netmgt.dao.api.EventDao;
+import org.opennms.netmgt.dao.api.NodeDao;
+import org.opennms.netmgt.dao.api.ServiceTypeDao;
+import org.opennms.netmgt.dao.mock.MockAlarmDao;
+import org.opennms.netmgt.dao.mock.MockDistPollerDao;
+import org.opennms.netmgt.dao.mock.MockEventDao;
+import org.opennms.netmgt.dao.mock.MockNodeDao;
+import org.opennms.netmgt.dao.mock.MockServiceTypeDao;
+import org.opennms.netmgt.events.api.EventConstants;
+import org.opennms.netmgt.events.api.EventForwarder;
+import org.opennms.netmgt.model.OnmsAlarm;
+import org.opennms.netmgt.model.OnmsEvent;
+import org.opennms.netmgt.model.OnmsSeverity;
+import org.opennms.netmgt.model.events.EventBuilder;
+import org.opennms.netmgt.xml.event.AlarmData;
+import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.event.Log;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionOperations;
+
+public class AlarmPersisterImplTest {
+
+    private static final String UEI = "uei.opennms.org/test/alarmPersister";
+
+    private TestEventDao m_eventDao;
+    private TestAlarmDao m_alarmDao;
+    private final List<Event> m_lifecycleEvents = new ArrayList<>();
+    private final List<OnmsAlarm> m_deferredAlarms = new ArrayList<>();
+    private int m_transactions = 0;
+    private AlarmPersisterImpl m_persister;
+
+    private static class TestEventDao extends MockEventDao {
+        private int m_deletes = 0;
+
+        @Override
+        public int deletePreviousEventsForAlarm(final Integer id, final OnmsEvent e) {
+            m_deletes++;
+            return 0;
+        }
+    }
+
+    private class TestAlarmDao extends MockAlarmDao {
+        private int m_updates = 0;
+
+        @Override
+        public void update(final OnmsAlarm alarm) {
+            super.update(alarm);
+            m_updates++;
+        }
+
+        @Override
+        public OnmsAlarm findByReductionKey(final String reductionKey) {
+            return findAll().stream().filter(a -> reductionKey.equals(a.getReductionKey())).findFirst().orElse(null);
+        }
+
+        @Override
+        protected DistPollerDao getDistPollerDao() {
+            return new MockDistPollerDao();
+        }
+
+        @Override
+        protected EventDao getEventDao() {
+            return m_eventDao;
+        }
+
+        @Override
+        protected NodeDao getNodeDao() {
+            return new MockNodeDao();
+        }
+
+        @Override
+        protected ServiceTypeDao getServiceTypeDao() {
+            return new MockServiceTypeDao();
+        }
+    }
+
+    @Before
+    public void setUp() {
+        m_eventDao = new TestEventDao();
+        m_alarmDao = new TestAlarmDao();
+
+        m_persister = new AlarmPersisterImpl();
+        m_persister.setEventDao(m_eventDao);
+        m_persister.setAlarmDao(m_alarmDao);
+        m_persister.setTransactionOperations(new TransactionOperations() {
+            @Override
+            public <T> T execute(TransactionCallback<T> action) {
+                m_transactions++;
+                return action.doInTransaction(null);
+            }
+        });
+        m_persister.setEventForwarder(new EventForwarder() {
+            @Override
+            public void sendNow(Event event) {
+                m_lifecycleEvents.add(event);
+            }
+
+            @Override
+            public void sendNow(Log eventLog) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void sendNowSync(Event event) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void sendNowSync(Log eventLog) {
+                throw new UnsupportedOperationException();
+            }
+        });
+        m_persister.setDeferredAlarmHandler(m_deferredAlarms::add);
+    }
+
+    @Test
+    public void canReduceEventsRightAway() {
+        final OnmsAlarm alarm = m_persister.persist(createEvent("key", false));
+        assertNotNull(alarm);
+        assertEquals(alarm, m_persister.persist(createEvent("key", false)));
+
+        assertEquals(2, alarm.getCounter().intValue());
+        assertEquals(2, m_transactions);
+        assertEquals(EventConstants.ALARM_CREATED_UEI, m_lifecycleEvents.get(0).getUei());
+        assertEquals(EventConstants.ALARM_UPDATED_WITH_REDUCED_EVENT_UEI, m_lifecycleEvents.get(1).getUei());
+        assertEquals(0, m_deferredAlarms.size());
+    }
+
+    @Test
+    public void canDeferReductions() {
+        // Long enough for the flusher not to get in the way
+        m_persister.setReductionWindow(60000);
+
+        final OnmsAlarm alarm = m_persister.persist(createEvent("key", false));
+        assertNotNull(alarm);
+        assertEquals(1, m_transactions);
+
+        for (int i = 0; i < 10; i++) {
+            assertNull(m_persister.persist(createEvent("key", false)));
+        }
+        final OnmsAlarm other = m_persister.persist(createEvent("other", false));
+        assertNotNull(other);
+        assertEquals(1, alarm.getCounter().intValue());
+        assertEquals(2, m_transactions);
+        assertEquals(0, m_alarmDao.m_updates);
+
+        m_persister.flush();
+
+        assertEquals(11, alarm.getCounter().intValue());
+        assertEquals(3, m_transactions);
+        assertEquals(1, m_alarmDao.m_updates);
+        assertEquals(3, m_lifecycleEvents.size());
+        assertEquals(EventConstants.ALARM_UPDATED_WITH_REDUCED_EVENT_UEI, m_lifecycleEvents.get(2).getUei());
+        assertEquals(1, m_deferredAlarms.size());
+        assertEquals(alarm, m_deferredAlarms.get(0));
+
+        // Nothing left to write
+        m_persister.flush();
+        assertEquals(3, m_transactions);
+    }
+
+    @Test
+    public void canCleanUpPreviousEventsOnceWhenDeferred() {
+        m_persister.setReductionWindow(60000);
+
+        final OnmsAlarm alarm = m_persister.persist(createEvent("key", true));
+        for (int i = 0; i < 5; i++) {
+            m_persister.persist(createEvent("key", true));
+        }
+        m_persister.flush();
+
+        assertEquals(6, alarm.getCounter().intValue());
+        assertEquals(1, m_eventDao.m_deletes);
+    }
+
+    @Test
+    public void canRecreateAlarmsDeletedBeforeFlush() {
+        m_persister.setReductionWindow(60000);
+
+        final OnmsAlarm alarm = m_persister.persist(createEvent("key", false));
+        m_persister.persist(createEvent("key", false));
+        m_persister.persist(createEvent("key", false));
+        m_alarmDao.delete(alarm);
+
+        m_persister.flush();
+
+        final OnmsAlarm recreated = m_alarmDao.findByReductionKey("key");
+        assertNotNull(recreated);
+        assertEquals(2, recreated.getCounter().intValue());
+        assertEquals(EventConstants.ALARM_CREATED_UEI, m_lifecycleEvents.get(1).getUei());
+        assertEquals(EventConstants.ALARM_UPDATED_WITH_REDUCED_EVENT_UEI, m_lifecycleEvents.get(2).getUei());
+    }
+
+    @Test
+    public void canPersistWhileDeferredAlarmsAreForwarded() throws Exception {
+        m_persister.setReductionWindow(60000);
+
+        final OnmsAlarm alarm = m_persister.persist(createEvent("key", false));
+        m_persister.persist(createEvent("key", false));
+
+        // The handler blocks on another thread that persists an event
+        final List<OnmsAlarm> persisted = new ArrayList<>();
+        m_persister.setDeferredAlarmHandler(a -> {
+            final Thread thread = new Thread(() -> persisted.add(m_persister.persist(createEvent("other", false))));
+            thread.start();
+            try {
+                thread.join(10000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        m_persister.flush();
+
+        assertEquals(2, alarm.getCounter().intValue());
+        assertEquals(1, persisted.size());
+        assertNotNull(persisted.get(0));
+    }
+
+    private Event createEvent(String reductionKey, boolean autoClean) {
+        final OnmsEvent e = new OnmsEvent();
+        e.setEventUei(UEI);
+        e.setEventTime(new Date());
+        e.setEventSeverity(OnmsSeverity.MINOR.getId());
+        m_eventDao.save(e);
+
+        final AlarmData alarmData = new AlarmData();
+        alarmData.setAlarmType(1);
+        alarmData.setReductionKey(reductionKey);
+        alarmData.setAutoClean(autoClean);
+
+        final Event event = new EventBuilder(UEI, "test").getEvent();
+        event.setDbid(e.getId());
+        event.setAlarmData(alarmData);
+        return event;
+    }
+}
@@ -65,6 +65,15 @@ public interface FilterDao {
 
     void flushActiveIpAddressListCache();
 
+    /**
+     * Discards any results that were cached for the rules evaluated so far.
+     * This should be called whenever the nodes, interfaces, services or
+     * categories that rules may select are changed.
+     */
+    default void flushResultCache() {
+        // No results are cached by default
+    }
+
     /**
      * Get the (non-deleted) IP addresses that match the specified rule.
      *
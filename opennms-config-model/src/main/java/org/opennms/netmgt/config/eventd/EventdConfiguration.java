@@ -48,6 +48,12 @@ import org.opennms.netmgt.config.utils.ConfigUtils;
 public class EventdConfiguration implements Serializable {
     private static final long serialVersionUID = 1L;
 
+    /**
+     * The number of events that can be queued for each listener when
+     * listenerQueueLength is not set.
+     */
+    public static final int DEFAULT_LISTENER_QUEUE_LENGTH = 16384;
+
     /**
      * The IP address on which eventd listens for TCP connections.
      *  If "" is specified, eventd will bind to all addresses. The default
@@ -125,6 +131,21 @@ public class EventdConfiguration implements Serializable {
     @XmlAttribute(name = "logEventSummaries")
     private Boolean m_logEventSummaries;
 
+    /**
+     * Whether or not events are delivered to each listener in batches
+     *  from a bounded queue instead of through a dedicated executor per
+     *  listener.
+     */
+    @XmlAttribute(name = "batchListenerDispatch")
+    private Boolean m_batchListenerDispatch;
+
+    /**
+     * The maximum number of events that can be queued for each listener
+     *  when batchListenerDispatch is enabled.
+     */
+    @XmlAttribute(name = "listenerQueueLength")
+    private Integer m_listenerQueueLength;
+
     @XmlValue
     private String m_contents;
 
@@ -211,6 +232,22 @@ public class EventdConfiguration implements Serializable {
         m_logEventSummaries = logEventSummaries;
     }
 
+    public Boolean getBatchListenerDispatch() {
+        return m_batchListenerDispatch != null ? m_batchListenerDispatch : false;
+    }
+
+    public void setBatchListenerDispatch(final Boolean batchListenerDispatch) {
+        m_batchListenerDispatch = batchListenerDispatch;
+    }
+
+    public Optional<Integer> getListenerQueueLength() {
+        return Optional.ofNullable(m_listenerQueueLength);
+    }
+
+    public void setListenerQueueLength(final Integer listenerQueueLength) {
+        m_listenerQueueLength = listenerQueueLength;
+    }
+
     @Override
     public int hashCode() {
         return Objects.hash(
@@ -223,7 +260,9 @@ public class EventdConfiguration implements Serializable {
                             m_getNextEventID, 
                             m_socketSoTimeoutRequired, 
                             m_socketSoTimeoutPeriod, 
-                            m_logEventSummaries);
+                            m_logEventSummaries, 
+                            m_batchListenerDispatch, 
+                            m_listenerQueueLength);
     }
 
     @Override
@@ -243,7 +282,9 @@ public class EventdConfiguration implements Serializable {
                     && Objects.equals(this.m_getNextEventID, that.m_getNextEventID)
                     && Objects.equals(this.m_socketSoTimeoutRequired, that.m_socketSoTimeoutRequired)
                     && Objects.equals(this.m_socketSoTimeoutPeriod, that.m_socketSoTimeoutPeriod)
-                    && Objects.equals(this.m_logEventSummaries, that.m_logEventSummaries);
+                    && Objects.equals(this.m_logEventSummaries, that.m_logEventSummaries)
+                    && Objects.equals(this.m_batchListenerDispatch, that.m_batchListenerDispatch)
+                    && Objects.equals(this.m_listenerQueueLength, that.m_listenerQueueLength);
         }
         return false;
     }
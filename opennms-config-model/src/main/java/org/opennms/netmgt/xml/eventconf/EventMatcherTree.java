@@ -0,0 +1,342 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.xml.eventconf;
+
+import static org.opennms.netmgt.xml.eventconf.EventMatchers.field;
+import static org.opennms.netmgt.xml.eventconf.EventMatchers.varbind;
+import static org.opennms.netmgt.xml.eventconf.Maskelement.TAG_SNMP_GENERIC;
+import static org.opennms.netmgt.xml.eventconf.Maskelement.TAG_SNMP_SPECIFIC;
+import static org.opennms.netmgt.xml.eventconf.Maskelement.TAG_UEI;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * An immutable discrimination tree over the event definitions of a single
+ * {@link Events} document.
+ *
+ * Every level of the tree branches on one field of the incoming event (UEI,
+ * partition key, generic and specific trap numbers) for which a definition
+ * requires an exact value. Definitions that do not constrain the field, or that
+ * constrain it with a prefix or a regular expression, are kept in the wildcard
+ * branch of that level. The bottom level branches on the varbind that is most
+ * often constrained by the definitions that remain.
+ *
+ * A lookup follows both the keyed and the wildcard branch of every level and
+ * only tests the {@link EventMatcher} of the definitions it reaches. The
+ * definition that appears first in the document wins, so the result is the same
+ * as the one of a linear scan over the partitioned definitions.
+ */
+class EventMatcherTree {
+
+    /**
+     * Lists shorter than this are scanned rather than split any further.
+     */
+    private static final int MIN_SPLIT_SIZE = 8;
+
+    private interface Discriminator {
+        /**
+         * @return the values the definition requires, an empty list if it can
+         *         never match, or null if it may match any value
+         */
+        List<String> keys(Event eventConf);
+
+        String key(org.opennms.netmgt.xml.event.Event matchingEvent);
+    }
+
+    private interface Node {
+        /**
+         * @return the lowest position below <code>best</code> of a matching
+         *         definition, or <code>best</code> if there is none
+         */
+        int findFirstMatch(Event[] events, org.opennms.netmgt.xml.event.Event matchingEvent, int best);
+    }
+
+    private static class Leaf implements Node {
+        private final int[] m_positions;
+
+        private Leaf(final int[] positions) {
+            m_positions = positions;
+        }
+
+        @Override
+        public int findFirstMatch(final Event[] events, final org.opennms.netmgt.xml.event.Event matchingEvent, final int best) {
+            for (final int position : m_positions) {
+                if (position >= best) {
+                    break;
+                }
+                if (events[position].matches(matchingEvent)) {
+                    return position;
+                }
+            }
+            return best;
+        }
+    }
+
+    private static class Branch implements Node {
+        private final Discriminator m_discriminator;
+        private final Map<String, Node> m_children;
+        private final Node m_wildcard;
+
+        private Branch(final Discriminator discriminator, final Map<String, Node> children, final Node wildcard) {
+            m_discriminator = discriminator;
+            m_children = children;
+            m_wildcard = wildcard;
+        }
+
+        @Override
+        public int findFirstMatch(final Event[] events, final org.opennms.netmgt.xml.event.Event matchingEvent, final int best) {
+            int found = best;
+            final String key = m_discriminator.key(matchingEvent);
+            if (key != null) {
+                final Node child = m_children.get(key);
+                if (child != null) {
+                    found = child.findFirstMatch(events, matchingEvent, found);
+                }
+            }
+            if (m_wildcard != null) {
+                found = m_wildcard.findFirstMatch(events, matchingEvent, found);
+            }
+            return found;
+        }
+    }
+
+    private final Event[] m_events;
+    private final List<Discriminator> m_discriminators;
+    private final Node m_root;
+
+    EventMatcherTree(final List<Event> events, final Partition partition) {
+        m_events = events.toArray(new Event[events.size()]);
+        m_discriminators = new ArrayList<>(4);
+        m_discriminators.add(ueiDiscriminator());
+        m_discriminators.add(partitionDiscriminator(partition));
+        m_discriminators.add(maskElementDiscriminator(TAG_SNMP_GENERIC));
+        m_discriminators.add(maskElementDiscriminator(TAG_SNMP_SPECIFIC));
+
+        final int[] positions = new int[m_events.length];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = i;
+        }
+        m_root = build(positions, 0);
+    }
+
+    public Event findFirstMatchingEvent(final org.opennms.netmgt.xml.event.Event matchingEvent) {
+        final int position = m_root.findFirstMatch(m_events, matchingEvent, Integer.MAX_VALUE);
+        return position == Integer.MAX_VALUE ? null : m_events[position];
+    }
+
+    private Node build(final int[] positions, final int level) {
+        if (positions.length < MIN_SPLIT_SIZE) {
+            return new Leaf(positions);
+        }
+
+        final Discriminator discriminator;
+        if (level < m_discriminators.size()) {
+            discriminator = m_discriminators.get(level);
+        } else if (level == m_discriminators.size()) {
+            discriminator = varbindDiscriminator(positions);
+            if (discriminator == null) {
+                return new Leaf(positions);
+            }
+        } else {
+            return new Leaf(positions);
+        }
+
+        final Map<String, List<Integer>> keyed = new LinkedHashMap<>();
+        final List<Integer> wildcard = new ArrayList<>();
+        for (final int position : positions) {
+            final List<String> keys = discriminator.keys(m_events[position]);
+            if (keys == null) {
+                wildcard.add(position);
+                continue;
+            }
+            for (final String key : keys) {
+                final List<Integer> bucket = keyed.computeIfAbsent(key, k -> new ArrayList<>());
+                // The same value may be listed more than once
+                if (bucket.isEmpty() || bucket.get(bucket.size() - 1) != position) {
+                    bucket.add(position);
+                }
+            }
+        }
+
+        if (keyed.isEmpty()) {
+            // Nothing to branch on at this level
+            return build(toArray(wildcard), level + 1);
+        }
+
+        final Map<String, Node> children = new HashMap<>();
+        for (final Entry<String, List<Integer>> entry : keyed.entrySet()) {
+            children.put(entry.getKey(), build(toArray(entry.getValue()), level + 1));
+        }
+        final Node wildcardNode = wildcard.isEmpty() ? null : build(toArray(wildcard), level + 1);
+        return new Branch(discriminator, children, wildcardNode);
+    }
+
+    /**
+     * Picks the varbind that is constrained to exact values by the largest
+     * number of the given definitions, or returns null if there is none.
+     */
+    private Discriminator varbindDiscriminator(final int[] positions) {
+        final Map<Integer, Integer> counts = new HashMap<>();
+        for (final int position : positions) {
+            final Mask mask = m_events[position].getMask();
+            if (!hasMaskElements(mask)) {
+                continue;
+            }
+            for (final Varbind vb : mask.getVarbinds()) {
+                final Integer vbnumber = vb.getVbnumber();
+                if (vbnumber != null && vbnumber > 0 && exactValues(vb.getVbvalues()) != null) {
+                    counts.merge(vbnumber, 1, Integer::sum);
+                }
+            }
+        }
+
+        Integer selected = null;
+        int selectedCount = 0;
+        for (final Entry<Integer, Integer> entry : counts.entrySet()) {
+            if (entry.getValue() > selectedCount) {
+                selected = entry.getKey();
+                selectedCount = entry.getValue();
+            }
+        }
+        return selected == null ? null : varbindDiscriminator(selected);
+    }
+
+    private static Discriminator varbindDiscriminator(final int vbnumber) {
+        final Field field = varbind(vbnumber);
+        return new Discriminator() {
+            @Override
+            public List<String> keys(final Event eventConf) {
+                final Mask mask = eventConf.getMask();
+                if (!hasMaskElements(mask)) {
+                    return null;
+                }
+                for (final Varbind vb : mask.getVarbinds()) {
+                    if (vb.getVbnumber() != null && vb.getVbnumber() == vbnumber) {
+                        final List<String> values = exactValues(vb.getVbvalues());
+                        if (values != null) {
+                            return values;
+                        }
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public String key(final org.opennms.netmgt.xml.event.Event matchingEvent) {
+                return field.get(matchingEvent);
+            }
+        };
+    }
+
+    private static Discriminator ueiDiscriminator() {
+        final Field field = field(TAG_UEI);
+        return new Discriminator() {
+            @Override
+            public List<String> keys(final Event eventConf) {
+                if (!hasMaskElements(eventConf.getMask())) {
+                    // Matched on the UEI alone, see Event#constructMatcher()
+                    return eventConf.getUei() == null ? Collections.emptyList() : Collections.singletonList(eventConf.getUei());
+                }
+                return exactValues(eventConf.getMaskElementValues(TAG_UEI));
+            }
+
+            @Override
+            public String key(final org.opennms.netmgt.xml.event.Event matchingEvent) {
+                return field.get(matchingEvent);
+            }
+        };
+    }
+
+    private static Discriminator partitionDiscriminator(final Partition partition) {
+        return new Discriminator() {
+            @Override
+            public List<String> keys(final Event eventConf) {
+                return partition.group(eventConf);
+            }
+
+            @Override
+            public String key(final org.opennms.netmgt.xml.event.Event matchingEvent) {
+                return partition.group(matchingEvent);
+            }
+        };
+    }
+
+    private static Discriminator maskElementDiscriminator(final String mename) {
+        final Field field = field(mename);
+        return new Discriminator() {
+            @Override
+            public List<String> keys(final Event eventConf) {
+                if (!hasMaskElements(eventConf.getMask())) {
+                    return null;
+                }
+                return exactValues(eventConf.getMaskElementValues(mename));
+            }
+
+            @Override
+            public String key(final org.opennms.netmgt.xml.event.Event matchingEvent) {
+                return field.get(matchingEvent);
+            }
+        };
+    }
+
+    private static boolean hasMaskElements(final Mask mask) {
+        return mask != null && mask.getMaskelements().size() > 0;
+    }
+
+    /**
+     * @return the given values if all of them are matched by equality, or
+     *         null if any of them is a prefix or a regular expression
+     */
+    private static List<String> exactValues(final List<String> values) {
+        if (values == null || values.isEmpty()) {
+            return null;
+        }
+        for (final String value : values) {
+            if (value == null || value.startsWith("~") || value.endsWith("%")) {
+                return null;
+            }
+        }
+        return values;
+    }
+
+    private static int[] toArray(final List<Integer> positions) {
+        final int[] array = new int[positions.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = positions.get(i);
+        }
+        return array;
+    }
+}
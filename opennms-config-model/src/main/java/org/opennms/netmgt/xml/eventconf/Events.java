@@ -84,6 +84,12 @@ public class Events implements Serializable {
 
     private static final long serialVersionUID = 2L;
 
+    /**
+     * Set this system property to <code>false</code> to match events against
+     * the partitioned definitions one by one instead of using an {@link EventMatcherTree}.
+     */
+    public static final String MATCHER_TREE_SYS_PROP = "org.opennms.eventd.eventconf.matcherTree";
+
     /**
      * Global settings for this configuration
      */
@@ -108,6 +114,9 @@ public class Events implements Serializable {
     @XmlTransient
     private List<Event> m_nullPartitionedEvents;
 
+    @XmlTransient
+    private volatile EventMatcherTree m_matcherTree;
+
     @XmlTransient
     private Map<String, Event> m_eventsByUei = new HashMap<>();
 
@@ -282,7 +291,32 @@ public class Events implements Serializable {
             }
         }
 
-        // If the UEI match failed, fallback to searching with the matchers through the partitions
+        // If the UEI match failed, fallback to searching with the matchers
+        final EventMatcherTree matcherTree = m_matcherTree;
+        if (matcherTree != null) {
+            final Event event = matcherTree.findFirstMatchingEvent(matchingEvent);
+            if (event != null) {
+                return event;
+            }
+        } else {
+            final Event event = findFirstMatchingEventInPartitions(matchingEvent);
+            if (event != null) {
+                return event;
+            }
+        }
+
+        for(Entry<String, Events> loadedEvents : m_loadedEventFiles.entrySet()) {
+            final Events subEvents = loadedEvents.getValue();
+            final Event event = subEvents.findFirstMatchingEvent(matchingEvent);
+            if (event != null) {
+                return event;
+            }
+        }
+
+        return null;
+    }
+
+    private Event findFirstMatchingEventInPartitions(final org.opennms.netmgt.xml.event.Event matchingEvent) {
         final String key = m_partition.group(matchingEvent);
         Collection<Event> potentialMatches = m_nullPartitionedEvents;
         if (key != null) {
@@ -299,14 +333,6 @@ public class Events implements Serializable {
             }
         }
 
-        for(Entry<String, Events> loadedEvents : m_loadedEventFiles.entrySet()) {
-            final Events subEvents = loadedEvents.getValue();
-            final Event event = subEvents.findFirstMatchingEvent(matchingEvent);
-            if (event != null) {
-                return event;
-            }
-        }
-
         return null;
     }
 
@@ -353,6 +379,8 @@ public class Events implements Serializable {
         }
 
         partitionEvents(partition);
+        // Build the new tree before swapping it in, lookups keep using the previous one until then
+        m_matcherTree = Boolean.parseBoolean(System.getProperty(MATCHER_TREE_SYS_PROP, "true")) ? new EventMatcherTree(m_events, partition) : null;
 
         for(final Entry<String, Events> loadedEvents : m_loadedEventFiles.entrySet()) {
             final Events events = loadedEvents.getValue();
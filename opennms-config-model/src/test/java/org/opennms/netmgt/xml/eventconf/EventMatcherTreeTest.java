@@ -0,0 +1,158 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.xml.eventconf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.netmgt.xml.event.Parm;
+import org.opennms.netmgt.xml.event.Snmp;
+import org.opennms.netmgt.xml.event.Value;
+
+public class EventMatcherTreeTest {
+
+    private static final String ENTERPRISE = ".1.3.6.1.4.1.5813";
+
+    private final List<Event> m_definitions = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        // Enough definitions on the same enterprise for every level to be split
+        for (int i = 1; i <= 20; i++) {
+            m_definitions.add(definition("uei.opennms.org/test/specific" + i, ENTERPRISE, "6", Integer.toString(i)));
+        }
+    }
+
+    @Test
+    public void canMatchOnExactValues() {
+        final EventMatcherTree tree = tree();
+        assertEquals("uei.opennms.org/test/specific7", tree.findFirstMatchingEvent(trap(ENTERPRISE, 6, 7)).getUei());
+        assertNull(tree.findFirstMatchingEvent(trap(ENTERPRISE, 6, 21)));
+        assertNull(tree.findFirstMatchingEvent(trap(".1.3.6.1.4.1.9", 6, 7)));
+    }
+
+    @Test
+    public void canMatchDefinitionsInDocumentOrder() {
+        // A wildcard definition ahead of the exact ones takes precedence
+        m_definitions.add(0, definition("uei.opennms.org/test/anySpecific", ENTERPRISE, "6", "~[0-9]+"));
+        // and one that follows them only matches what they do not
+        m_definitions.add(definition("uei.opennms.org/test/prefix", ENTERPRISE, "6", "2%"));
+
+        EventMatcherTree tree = tree();
+        assertEquals("uei.opennms.org/test/anySpecific", tree.findFirstMatchingEvent(trap(ENTERPRISE, 6, 7)).getUei());
+
+        m_definitions.remove(0);
+        tree = tree();
+        assertEquals("uei.opennms.org/test/specific20", tree.findFirstMatchingEvent(trap(ENTERPRISE, 6, 20)).getUei());
+        assertEquals("uei.opennms.org/test/prefix", tree.findFirstMatchingEvent(trap(ENTERPRISE, 6, 21)).getUei());
+    }
+
+    @Test
+    public void canMatchOnVarbindValues() {
+        m_definitions.clear();
+        for (int i = 0; i < 20; i++) {
+            final Event definition = definition("uei.opennms.org/test/state" + i, ENTERPRISE, "6", "1");
+            final Varbind vb = new Varbind();
+            vb.setVbnumber(2);
+            vb.addVbvalue(Integer.toString(i));
+            definition.getMask().addVarbind(vb);
+            m_definitions.add(definition);
+        }
+        m_definitions.add(definition("uei.opennms.org/test/other", ENTERPRISE, "6", "1"));
+
+        final EventMatcherTree tree = tree();
+        assertEquals("uei.opennms.org/test/state13", tree.findFirstMatchingEvent(trap(ENTERPRISE, 6, 1, "x", "13")).getUei());
+        assertEquals("uei.opennms.org/test/other", tree.findFirstMatchingEvent(trap(ENTERPRISE, 6, 1, "x", "42")).getUei());
+        assertEquals("uei.opennms.org/test/other", tree.findFirstMatchingEvent(trap(ENTERPRISE, 6, 1)).getUei());
+    }
+
+    @Test
+    public void canMatchDefinitionsWithoutMaskOnUei() {
+        for (int i = 0; i < 10; i++) {
+            final Event definition = new Event();
+            definition.setUei("uei.opennms.org/test/plain" + i);
+            m_definitions.add(definition);
+        }
+
+        final EventMatcherTree tree = tree();
+        final org.opennms.netmgt.xml.event.Event event = new org.opennms.netmgt.xml.event.Event();
+        event.setUei("uei.opennms.org/test/plain3");
+        assertEquals("uei.opennms.org/test/plain3", tree.findFirstMatchingEvent(event).getUei());
+        event.setUei("uei.opennms.org/test/plain10");
+        assertNull(tree.findFirstMatchingEvent(event));
+    }
+
+    private EventMatcherTree tree() {
+        final EventOrdering ordering = new EventOrdering();
+        for (final Event definition : m_definitions) {
+            definition.initialize(ordering.next());
+        }
+        return new EventMatcherTree(m_definitions, new EnterpriseIdPartition());
+    }
+
+    private static Event definition(final String uei, final String id, final String generic, final String specific) {
+        final Mask mask = new Mask();
+        mask.addMaskelement(maskelement("id", id));
+        mask.addMaskelement(maskelement("generic", generic));
+        mask.addMaskelement(maskelement("specific", specific));
+        final Event definition = new Event();
+        definition.setUei(uei);
+        definition.setMask(mask);
+        return definition;
+    }
+
+    private static Maskelement maskelement(final String name, final String value) {
+        final Maskelement element = new Maskelement();
+        element.setMename(name);
+        element.addMevalue(value);
+        return element;
+    }
+
+    private static org.opennms.netmgt.xml.event.Event trap(final String id, final int generic, final int specific, final String... varbinds) {
+        final Snmp snmp = new Snmp();
+        snmp.setId(id);
+        snmp.setGeneric(generic);
+        snmp.setSpecific(specific);
+        final org.opennms.netmgt.xml.event.Event event = new org.opennms.netmgt.xml.event.Event();
+        event.setSnmp(snmp);
+        for (int i = 0; i < varbinds.length; i++) {
+            final Parm parm = new Parm();
+            parm.setParmName(id + "." + (i + 1));
+            parm.setValue(new Value(varbinds[i]));
+            event.addParm(parm);
+        }
+        return event;
+    }
+}
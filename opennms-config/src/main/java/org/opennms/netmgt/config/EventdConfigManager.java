@@ -225,6 +225,33 @@ public class EventdConfigManager implements EventdConfig {
         }
     }
 
+    /**
+     * Whether or not Eventd should deliver events to its listeners in batches.
+     */
+    public boolean shouldBatchListenerDispatch() {
+        getReadLock().lock();
+        try {
+            return m_config.getBatchListenerDispatch();
+        } finally {
+            getReadLock().unlock();
+        }
+    }
+
+    /**
+     * Return the length of the queue of each listener when batch listener
+     * dispatch is enabled.
+     *
+     * @return the maximum number of events that can be queued for a listener
+     */
+    public int getListenerQueueLength() {
+        getReadLock().lock();
+        try {
+            return m_config.getListenerQueueLength().orElse(EventdConfiguration.DEFAULT_LISTENER_QUEUE_LENGTH);
+        } finally {
+            getReadLock().unlock();
+        }
+    }
+
     /**
      * Return the SQL statement to get the next event ID.
      *
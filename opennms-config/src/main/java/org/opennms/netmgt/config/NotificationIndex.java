@@ -0,0 +1,175 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.opennms.netmgt.config.notifications.Notification;
+import org.opennms.netmgt.config.notifications.Notifications;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The notifications of a {@link Notifications} configuration indexed by UEI,
+ * with their UEI and severity patterns compiled once.
+ *
+ * The index is immutable: it is replaced as a whole when the configuration changes.
+ */
+final class NotificationIndex {
+    private static final Logger LOG = LoggerFactory.getLogger(NotificationIndex.class);
+
+    static final String MATCH_ANY_UEI = "MATCH-ANY-UEI";
+
+    /**
+     * A notification along with its position in the configuration and its compiled patterns.
+     */
+    static final class Candidate implements Comparable<Candidate> {
+        private final Notification m_notification;
+        private final int m_position;
+        private final Pattern m_ueiPattern;
+        private final Pattern m_severityPattern;
+
+        private Candidate(final Notification notification, final int position, final Pattern ueiPattern, final Pattern severityPattern) {
+            m_notification = notification;
+            m_position = position;
+            m_ueiPattern = ueiPattern;
+            m_severityPattern = severityPattern;
+        }
+
+        Notification getNotification() {
+            return m_notification;
+        }
+
+        /**
+         * @return true if the notification has no severity pattern, or if it matches the given severity
+         */
+        boolean matchesSeverity(final String severity) {
+            return m_severityPattern == null || m_severityPattern.matcher(severity.toLowerCase()).matches();
+        }
+
+        @Override
+        public int compareTo(final Candidate other) {
+            return Integer.compare(m_position, other.m_position);
+        }
+    }
+
+    private final Notifications m_notifications;
+    private final Map<String, List<Candidate>> m_candidatesByUei = new HashMap<>();
+    private final List<Candidate> m_matchAnyUeiCandidates = new ArrayList<>();
+    private final List<Candidate> m_regexCandidates = new ArrayList<>();
+
+    NotificationIndex(final Notifications notifications) {
+        m_notifications = notifications;
+
+        int position = 0;
+        for (final Notification notif : notifications.getNotifications()) {
+            final String uei = notif.getUei();
+            final int currentPosition = position++;
+
+            final Pattern severityPattern;
+            try {
+                severityPattern = notif.getEventSeverity().isPresent() ? Pattern.compile(notif.getEventSeverity().get().toLowerCase()) : null;
+            } catch (final PatternSyntaxException e) {
+                LOG.error("Invalid event severity pattern for notification {}: {}. The notification will never match: {}", notif.getName(), notif.getEventSeverity().get(), e.getDescription());
+                continue;
+            }
+
+            if (MATCH_ANY_UEI.equals(uei)) {
+                m_matchAnyUeiCandidates.add(new Candidate(notif, currentPosition, null, severityPattern));
+            } else if (uei != null && uei.startsWith("~")) {
+                try {
+                    m_regexCandidates.add(new Candidate(notif, currentPosition, Pattern.compile(uei.substring(1)), severityPattern));
+                } catch (final PatternSyntaxException e) {
+                    LOG.error("Invalid UEI pattern for notification {}: {}. The notification will never match: {}", notif.getName(), uei, e.getDescription());
+                }
+            } else {
+                m_candidatesByUei.computeIfAbsent(uei, k -> new ArrayList<>()).add(new Candidate(notif, currentPosition, null, severityPattern));
+            }
+        }
+    }
+
+    /**
+     * @return true if this is the index of the given configuration
+     */
+    boolean isIndexOf(final Notifications notifications) {
+        return m_notifications == notifications;
+    }
+
+    /**
+     * @return true if at least one notification matches the given UEI
+     */
+    boolean hasUei(final String uei) {
+        if (m_candidatesByUei.containsKey(uei) || !m_matchAnyUeiCandidates.isEmpty()) {
+            return true;
+        }
+        for (final Candidate candidate : m_regexCandidates) {
+            if (candidate.m_ueiPattern.matcher(uei).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Retrieves the notifications whose UEI, or UEI pattern, matches the given UEI.
+     *
+     * @return the matching notifications in the order they are configured
+     */
+    List<Candidate> getCandidates(final String uei) {
+        final List<Candidate> exactCandidates = m_candidatesByUei.getOrDefault(uei, Collections.emptyList());
+        List<Candidate> regexCandidates = Collections.emptyList();
+        for (final Candidate candidate : m_regexCandidates) {
+            if (candidate.m_ueiPattern.matcher(uei).matches()) {
+                LOG.debug("Regex hit using notification UEI {} for event UEI: {}", candidate.m_notification.getUei(), uei);
+                if (regexCandidates.isEmpty()) {
+                    regexCandidates = new ArrayList<>();
+                }
+                regexCandidates.add(candidate);
+            }
+        }
+
+        if (regexCandidates.isEmpty() && m_matchAnyUeiCandidates.isEmpty()) {
+            return exactCandidates;
+        }
+
+        final List<Candidate> candidates = new ArrayList<>(exactCandidates.size() + m_matchAnyUeiCandidates.size() + regexCandidates.size());
+        candidates.addAll(exactCandidates);
+        candidates.addAll(m_matchAnyUeiCandidates);
+        candidates.addAll(regexCandidates);
+        Collections.sort(candidates);
+        return candidates;
+    }
+}
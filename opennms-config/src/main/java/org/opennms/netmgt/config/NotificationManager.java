@@ -40,6 +40,7 @@ import java.sql.Statement;
 import java.sql.Timestamp;
 import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
@@ -49,6 +50,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
 
 import javax.sql.DataSource;
 
@@ -71,6 +73,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.util.Assert;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
 /**
  * <p>Abstract NotificationManager class.</p>
  *
@@ -100,6 +105,56 @@ public abstract class NotificationManager {
     private long m_binaryNoticesInterrupted = 0;
     private long m_javaNoticesInterrupted = 0;
     private long m_unknownNoticesInterrupted = 0;
+
+    /**
+     * The maximum number of filter rules, combined with the node, interface and service
+     * of an event, whose result is cached when the rule match cache is enabled.
+     */
+    public static final String RULE_MATCH_CACHE_SIZE_PROPERTY = "org.opennms.notifd.ruleMatchCacheSize";
+
+    /**
+     * The number of seconds after which the rule match cache is cleared.
+     */
+    public static final String RULE_MATCH_CACHE_TTL_PROPERTY = "org.opennms.notifd.ruleMatchCacheTtl";
+
+    /**
+     * The UEIs of the events that change the nodes, interfaces and services that filter
+     * rules select. The rule match cache must be flushed when one of them is received.
+     */
+    public static final Set<String> RULE_MATCH_CACHE_UEIS = Collections.unmodifiableSet(new TreeSet<>(Arrays.asList(
+            EventConstants.NODE_ADDED_EVENT_UEI,
+            EventConstants.NODE_UPDATED_EVENT_UEI,
+            EventConstants.NODE_DELETED_EVENT_UEI,
+            EventConstants.NODE_LABEL_CHANGED_EVENT_UEI,
+            EventConstants.NODE_INFO_CHANGED_EVENT_UEI,
+            EventConstants.NODE_CATEGORY_MEMBERSHIP_CHANGED_EVENT_UEI,
+            EventConstants.ASSET_INFO_CHANGED_EVENT_UEI,
+            EventConstants.NODE_GAINED_INTERFACE_EVENT_UEI,
+            EventConstants.INTERFACE_DELETED_EVENT_UEI,
+            EventConstants.INTERFACE_REPARENTED_EVENT_UEI,
+            EventConstants.PRIMARY_SNMP_INTERFACE_CHANGED_EVENT_UEI,
+            EventConstants.NODE_GAINED_SERVICE_EVENT_UEI,
+            EventConstants.SERVICE_DELETED_EVENT_UEI,
+            EventConstants.SERVICE_UNMANAGED_EVENT_UEI
+    )));
+
+    private final int m_ruleMatchCacheSize = Integer.getInteger(RULE_MATCH_CACHE_SIZE_PROPERTY, 10000);
+    private final long m_ruleMatchCacheTtl = TimeUnit.SECONDS.toMillis(Long.getLong(RULE_MATCH_CACHE_TTL_PROPERTY, 300L));
+
+    /**
+     * The notifications indexed by UEI, rebuilt when the configuration changes.
+     */
+    private volatile NotificationIndex m_index;
+
+    /**
+     * The results of the filter rules, once combined with the node, interface and service of an event.
+     * The least recently used results are evicted once the cache is full.
+     */
+    private final Cache<String, Boolean> m_ruleMatches = CacheBuilder.newBuilder()
+            .maximumSize(m_ruleMatchCacheSize)
+            .expireAfterWrite(m_ruleMatchCacheTtl, TimeUnit.MILLISECONDS)
+            .build();
+    private volatile boolean m_ruleMatchCacheEnabled = false;
     
     /**
      * 
@@ -190,6 +245,8 @@ public abstract class NotificationManager {
     public synchronized void parseXML(final Reader reader) {
         m_notifications = JaxbUtils.unmarshal(Notifications.class, reader, true);
         oldHeader = m_notifications.getHeader();
+        m_index = new NotificationIndex(m_notifications);
+        flushRuleMatchCache();
     }
 
     /**
@@ -203,6 +260,22 @@ public abstract class NotificationManager {
             m_notifications = JaxbUtils.unmarshal(Notifications.class, reader, true);
         }
         oldHeader = m_notifications.getHeader();
+        m_index = new NotificationIndex(m_notifications);
+        flushRuleMatchCache();
+    }
+
+    /**
+     * Retrieves the index of the current notifications, building it if they were
+     * modified or replaced since it was built.
+     */
+    private NotificationIndex getIndex() {
+        final Notifications notifications = m_notifications;
+        NotificationIndex index = m_index;
+        if (index == null || !index.isIndexOf(notifications)) {
+            index = new NotificationIndex(notifications);
+            m_index = index;
+        }
+        return index;
     }
 
     /**
@@ -215,18 +288,7 @@ public abstract class NotificationManager {
     public boolean hasUei(final String uei) throws IOException {
         update();
 
-        for (Notification notif : m_notifications.getNotifications()) {
-            if (uei.equals(notif.getUei()) || "MATCH-ANY-UEI".equals(notif.getUei())) {
-                return true;
-            } else if (notif.getUei().charAt(0) == '~') {
-                if (uei.matches(notif.getUei().substring(1))) {
-                    return true;
-                }
-
-            }
-        }
-
-        return false;
+        return getIndex().hasUei(uei);
     }
 
     /**
@@ -252,40 +314,19 @@ public abstract class NotificationManager {
             return null;
         }
 
-        for (Notification curNotif : m_notifications.getNotifications()) {
+        // Only the notifications whose UEI matches the event are considered, in the order they are configured
+        for (NotificationIndex.Candidate candidate : getIndex().getCandidates(event.getUei())) {
+            final Notification curNotif = candidate.getNotification();
 
             LOG.trace("Checking notification {} against event {} with UEI {}", curNotif.getUei(), event.getDbid(), event.getUei());
 
-            if (event.getUei().equals(curNotif.getUei()) || "MATCH-ANY-UEI".equals(curNotif.getUei())) {
-                // Match!
-            	LOG.debug("Exact match using notification UEI {} for event UEI: {}", curNotif.getUei(), event.getUei());
-            } else if (curNotif.getUei().charAt(0) == '~') {
-                if (event.getUei().matches(curNotif.getUei().substring(1))) {
-                	//Match!
-                    LOG.debug("Regex hit using notification UEI {} for event UEI: {}", curNotif.getUei(), event.getUei());
-                } else {
-
-                    LOG.trace("Notification regex {} failed to match event UEI: {}", event.getUei(), curNotif.getUei());
-                    continue;
-                }
-            } else {
-
-                LOG.debug("Notification UEI {} did not match UEI of event {}: {}", curNotif.getUei(), event.getDbid(), event.getUei());
-                continue;
-            }
-
             /**
              * Check if event severity matches pattern in notification
              */
 
             LOG.trace("Checking event severity: {} against notification severity: {}", curNotif.getEventSeverity().orElse(null), event.getSeverity());
             // parameter is optional, return true if not set
-            if (!curNotif.getEventSeverity().isPresent()) {
-                // Skip matching on severity
-            } else if (event.getSeverity().toLowerCase().matches(curNotif.getEventSeverity().get().toLowerCase())) {
-                // Severities match
-            } else {
-
+            if (!candidate.matchesSeverity(event.getSeverity())) {
                 LOG.debug("Event severity: {} did not match notification severity: {}", curNotif.getEventSeverity().orElse(null), event.getSeverity());
                 continue;
             }
@@ -387,12 +428,45 @@ public abstract class NotificationManager {
     }
 
     private boolean isRuleMatchingFilter(final Notification notif, final String rule) {
+        if (m_ruleMatchCacheEnabled) {
+            final Boolean matches = m_ruleMatches.getIfPresent(rule);
+            if (matches != null) {
+                return matches;
+            }
+        }
+
+        final boolean matches;
         try {
-            return FilterDaoFactory.getInstance().isRuleMatching(rule);
+            matches = FilterDaoFactory.getInstance().isRuleMatching(rule);
         } catch (FilterParseException e) {
             LOG.error("Invalid filter rule for notification {}: {}", notif.getName(), notif.getRule(), e);
             throw e;
         }
+
+        if (m_ruleMatchCacheEnabled) {
+            m_ruleMatches.put(rule, matches);
+        }
+        return matches;
+    }
+
+    /**
+     * Enables caching the result of the filter rules of the notifications for the
+     * node, interface and service of the events. Whoever enables it must call
+     * {@link #flushRuleMatchCache()} when one of the {@link #RULE_MATCH_CACHE_UEIS}
+     * events is received.
+     *
+     * @param enabled whether to cache the results of the filter rules
+     */
+    public void setRuleMatchCacheEnabled(final boolean enabled) {
+        m_ruleMatchCacheEnabled = enabled && m_ruleMatchCacheSize > 0;
+        flushRuleMatchCache();
+    }
+
+    /**
+     * Clears the cached results of the filter rules.
+     */
+    public void flushRuleMatchCache() {
+        m_ruleMatches.invalidateAll();
     }
 
     /**
@@ -1070,6 +1144,8 @@ public abstract class NotificationManager {
      * @throws java.lang.ClassNotFoundException if any.
      */
     public synchronized void saveCurrent() throws IOException, ClassNotFoundException {
+        // The notifications may have been modified in place
+        m_index = null;
         m_notifications.setHeader(rebuildHeader());
 
         // Marshal to a string first, then write the string to the file. This
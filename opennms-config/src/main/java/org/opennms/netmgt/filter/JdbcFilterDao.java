@@ -36,15 +36,16 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -64,6 +65,13 @@ import org.springframework.cache.annotation.Cacheable;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.Assert;
 
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.JmxReporter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.RatioGauge;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
 /**
  * <p>JdbcFilterDao class.</p>
  *
@@ -80,9 +88,103 @@ public class JdbcFilterDao implements FilterDao, InitializingBean {
 	private static final Pattern SQL_IPLIKE_PATTERN = Pattern.compile("(\\w+)\\s+IPLIKE\\s+([0-9a-f.:*,-]+|###@\\d+@###)", Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
 	private static final String SQL_IPLIKE6_RHS_REGEX = "^[0-9A-Fa-f:*,-]+$";
 
+	/**
+	 * When true, the results of {@link #getNodeMap(String)}, {@link #getIPAddressServiceMap(String)}
+	 * and {@link #isValid(String, String)} are cached by rule until {@link #flushResultCache()} is called.
+	 */
+	public static final String RESULT_CACHE_SYS_PROP = "org.opennms.netmgt.filter.resultCache";
+
+	/**
+	 * The maximum number of rules for which SQL statements, or results, are cached.
+	 * The least recently used rules are evicted first.
+	 */
+	private static final int MAX_CACHED_RULES = 4096;
+
+	private enum StatementType {
+	    NODE_MAPPING,
+	    IP_SERVICE_MAPPING,
+	    INTERFACE_WITH_SERVICE,
+	    IP_ADDRESS
+	}
+
+	private static class StatementKey {
+	    private final StatementType m_type;
+	    private final String m_rule;
+
+	    private StatementKey(final StatementType type, final String rule) {
+	        m_type = type;
+	        m_rule = rule;
+	    }
+
+	    @Override
+	    public int hashCode() {
+	        return 31 * m_type.hashCode() + m_rule.hashCode();
+	    }
+
+	    @Override
+	    public boolean equals(final Object obj) {
+	        if (!(obj instanceof StatementKey)) {
+	            return false;
+	        }
+	        final StatementKey other = (StatementKey)obj;
+	        return m_type == other.m_type && m_rule.equals(other.m_rule);
+	    }
+	}
+
+	/**
+	 * A cache of results computed for a rule, along with its hit and miss counters.
+	 */
+	private class ResultCache<V> {
+	    private final Cache<String, V> m_results = CacheBuilder.newBuilder().maximumSize(MAX_CACHED_RULES).build();
+	    private final Counter m_hits;
+	    private final Counter m_misses;
+
+	    private ResultCache(final String name) {
+	        m_hits = m_metrics.counter(MetricRegistry.name("results", name, "hits"));
+	        m_misses = m_metrics.counter(MetricRegistry.name("results", name, "misses"));
+	        registerHitRatio(MetricRegistry.name("results", name, "hit-ratio"), m_hits, m_misses);
+	    }
+
+	    private V get(final String rule) {
+	        final V result = m_results.getIfPresent(rule);
+	        if (result != null) {
+	            m_hits.inc();
+	        } else {
+	            m_misses.inc();
+	        }
+	        return result;
+	    }
+
+	    /**
+	     * Caches a result unless the cache was flushed after the generation was retrieved,
+	     * since the result may already be stale.
+	     */
+	    private void put(final String rule, final V result, final long generation) {
+	        m_results.put(rule, result);
+	        if (m_resultCacheGeneration.get() != generation) {
+	            m_results.invalidate(rule);
+	        }
+	    }
+
+	    private void clear() {
+	        m_results.invalidateAll();
+	    }
+	}
+
 	private DataSource m_dataSource;
     private DatabaseSchemaConfig m_databaseSchemaConfigFactory;
 
+    private final boolean m_resultCacheEnabled = Boolean.getBoolean(RESULT_CACHE_SYS_PROP);
+    private final MetricRegistry m_metrics = new MetricRegistry();
+    private final Cache<StatementKey, String> m_statements = CacheBuilder.newBuilder().maximumSize(MAX_CACHED_RULES).build();
+    private final Counter m_statementHits = m_metrics.counter(MetricRegistry.name("statements", "hits"));
+    private final Counter m_statementMisses = m_metrics.counter(MetricRegistry.name("statements", "misses"));
+    private final AtomicLong m_resultCacheGeneration = new AtomicLong(0);
+    private final ResultCache<SortedMap<Integer, String>> m_nodeMaps = new ResultCache<>("nodeMap");
+    private final ResultCache<Map<InetAddress, Set<String>>> m_ipAddressServiceMaps = new ResultCache<>("ipAddressServiceMap");
+    private final ResultCache<Set<String>> m_activeIpAddresses = new ResultCache<>("activeIpAddresses");
+    private JmxReporter m_reporter;
+
     /**
      * <p>setDataSource</p>
      *
@@ -108,6 +210,8 @@ public class JdbcFilterDao implements FilterDao, InitializingBean {
      */
     public void setDatabaseSchemaConfigFactory(final DatabaseSchemaConfig factory) {
         m_databaseSchemaConfigFactory = factory;
+        // The generated SQL depends on the schema
+        m_statements.invalidateAll();
     }
 
     /**
@@ -126,6 +230,33 @@ public class JdbcFilterDao implements FilterDao, InitializingBean {
     public void afterPropertiesSet() {
         Assert.state(m_dataSource != null, "property dataSource cannot be null");
         Assert.state(m_databaseSchemaConfigFactory != null, "property databaseSchemaConfigFactory cannot be null");
+
+        registerHitRatio(MetricRegistry.name("statements", "hit-ratio"), m_statementHits, m_statementMisses);
+        if (m_reporter == null) {
+            m_reporter = JmxReporter.forRegistry(m_metrics).inDomain("org.opennms.netmgt.filter").build();
+            m_reporter.start();
+        }
+    }
+
+    /**
+     * <p>getMetricRegistry</p>
+     *
+     * @return the registry holding the hit and miss counts of the statement and result caches
+     */
+    public MetricRegistry getMetricRegistry() {
+        return m_metrics;
+    }
+
+    private void registerHitRatio(final String name, final Counter hits, final Counter misses) {
+        if (m_metrics.getGauges().containsKey(name)) {
+            return;
+        }
+        m_metrics.register(name, new RatioGauge() {
+            @Override
+            protected Ratio getRatio() {
+                return Ratio.of(hits.getCount(), hits.getCount() + misses.getCount());
+            }
+        });
     }
 
     /**
@@ -139,6 +270,20 @@ public class JdbcFilterDao implements FilterDao, InitializingBean {
      */
     @Override
     public SortedMap<Integer, String> getNodeMap(final String rule) throws FilterParseException {
+        if (m_resultCacheEnabled) {
+            SortedMap<Integer, String> nodeMap = m_nodeMaps.get(rule);
+            if (nodeMap == null) {
+                final long generation = m_resultCacheGeneration.get();
+                nodeMap = queryNodeMap(rule);
+                m_nodeMaps.put(rule, nodeMap, generation);
+            }
+            // The cached map is shared, so callers must not be able to modify it
+            return Collections.unmodifiableSortedMap(nodeMap);
+        }
+        return Collections.unmodifiableSortedMap(queryNodeMap(rule));
+    }
+
+    private SortedMap<Integer, String> queryNodeMap(final String rule) throws FilterParseException {
     	final SortedMap<Integer, String> resultMap = new TreeMap<Integer, String>();
         String sqlString;
 
@@ -156,9 +301,9 @@ public class JdbcFilterDao implements FilterDao, InitializingBean {
             LOG.debug("Filter.getNodeMap({}): SQL statement: {}", rule, sqlString);
 
             // execute query
-            final Statement stmt = conn.createStatement();
+            final PreparedStatement stmt = conn.prepareStatement(sqlString);
             d.watch(stmt);
-            final ResultSet rset = stmt.executeQuery(sqlString);
+            final ResultSet rset = stmt.executeQuery();
             d.watch(rset);
 
             if (rset != null) {
@@ -180,12 +325,30 @@ public class JdbcFilterDao implements FilterDao, InitializingBean {
             d.cleanUp();
         }
 
-        return Collections.unmodifiableSortedMap(resultMap);
+        return resultMap;
     }
 
     /** {@inheritDoc} */
     @Override
     public Map<InetAddress, Set<String>> getIPAddressServiceMap(final String rule) throws FilterParseException {
+        if (m_resultCacheEnabled) {
+            Map<InetAddress, Set<String>> ipServices = m_ipAddressServiceMaps.get(rule);
+            if (ipServices == null) {
+                final long generation = m_resultCacheGeneration.get();
+                ipServices = queryIPAddressServiceMap(rule);
+                m_ipAddressServiceMaps.put(rule, ipServices, generation);
+            }
+            // Callers are free to modify the map that is returned, so hand out a copy
+            final Map<InetAddress, Set<String>> copy = new TreeMap<InetAddress, Set<String>>(new InetAddressComparator());
+            for (final Map.Entry<InetAddress, Set<String>> entry : ipServices.entrySet()) {
+                copy.put(entry.getKey(), new TreeSet<String>(entry.getValue()));
+            }
+            return copy;
+        }
+        return queryIPAddressServiceMap(rule);
+    }
+
+    private Map<InetAddress, Set<String>> queryIPAddressServiceMap(final String rule) throws FilterParseException {
         final Map<InetAddress, Set<String>> ipServices = new TreeMap<InetAddress, Set<String>>(new InetAddressComparator());
         String sqlString;
 
@@ -203,9 +366,9 @@ public class JdbcFilterDao implements FilterDao, InitializingBean {
             LOG.debug("Filter.getIPAddressServiceMap({}): SQL statement: {}", rule, sqlString);
 
             // execute query
-            final Statement stmt = conn.createStatement();
+            final PreparedStatement stmt = conn.prepareStatement(sqlString);
             d.watch(stmt);
-            final ResultSet rset = stmt.executeQuery(sqlString);
+            final ResultSet rset = stmt.executeQuery();
             d.watch(rset);
 
             // fill up the array list if the result set has values
@@ -247,6 +410,17 @@ public class JdbcFilterDao implements FilterDao, InitializingBean {
     @CacheEvict(value="activeIpAddressList", allEntries=true)
     public void flushActiveIpAddressListCache() {}
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void flushResultCache() {
+        m_resultCacheGeneration.incrementAndGet();
+        m_nodeMaps.clear();
+        m_ipAddressServiceMaps.clear();
+        m_activeIpAddresses.clear();
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -313,9 +487,9 @@ public class JdbcFilterDao implements FilterDao, InitializingBean {
                 d.watch(preparedStatement);
                 rset = preparedStatement.executeQuery();
             } else {
-                final Statement stmt = conn.createStatement();
+                final PreparedStatement stmt = conn.prepareStatement(sqlString);
                 d.watch(stmt);
-                rset = stmt.executeQuery(sqlString);
+                rset = stmt.executeQuery();
             }
             d.watch(rset);
 
@@ -356,11 +530,64 @@ public class JdbcFilterDao implements FilterDao, InitializingBean {
     public boolean isValid(final String addr, final String rule) throws FilterParseException {
         if (rule.length() == 0) {
             return true;
+        } else if (m_resultCacheEnabled) {
+            Set<String> activeIpAddresses = m_activeIpAddresses.get(rule);
+            if (activeIpAddresses == null) {
+                final long generation = m_resultCacheGeneration.get();
+                activeIpAddresses = getActiveIPAddressStrings(rule);
+                m_activeIpAddresses.put(rule, activeIpAddresses, generation);
+            }
+            return activeIpAddresses.contains(addr);
         } else {
             return getActiveIPAddress(rule, addr) != null;
         }
     }
 
+    /**
+     * Retrieves the (non-deleted) IP addresses that match the rule as they are
+     * stored in the database, so that they compare the same way as they do in SQL.
+     */
+    private Set<String> getActiveIPAddressStrings(final String rule) throws FilterParseException {
+        final Set<String> resultSet = new HashSet<>();
+
+        LOG.debug("Filter.getActiveIPAddressStrings({})", rule);
+
+        final DBUtils d = new DBUtils(getClass());
+        try {
+            String sqlString = getSQLStatement(rule);
+            if (!sqlString.contains("isManaged")) {
+                sqlString += " AND (ipInterface.isManaged != 'D' or ipInterface.isManaged IS NULL)";
+            }
+
+            final Connection conn = getDataSource().getConnection();
+            d.watch(conn);
+
+            LOG.debug("Filter.getActiveIPAddressStrings({}): SQL statement: {}", rule, sqlString);
+
+            final PreparedStatement stmt = conn.prepareStatement(sqlString);
+            d.watch(stmt);
+            final ResultSet rset = stmt.executeQuery();
+            d.watch(rset);
+
+            while (rset.next()) {
+                resultSet.add(rset.getString(1));
+            }
+        } catch (final FilterParseException e) {
+            LOG.warn("Filter Parse Exception occurred getting IP List.", e);
+            throw new FilterParseException("Filter Parse Exception occurred getting IP List: " + e.getLocalizedMessage(), e);
+        } catch (final SQLException e) {
+            LOG.warn("SQL Exception occurred getting IP List.", e);
+            throw new FilterParseException("SQL Exception occurred getting IP List: " + e.getLocalizedMessage(), e);
+        } catch (final Throwable e) {
+            LOG.error("Exception getting database connection.", e);
+            throw new UndeclaredThrowableException(e);
+        } finally {
+            d.cleanUp();
+        }
+
+        return resultSet;
+    }
+
     /** {@inheritDoc} */
     @Override
     public boolean isRuleMatching(final String rule) throws FilterParseException {
@@ -382,9 +609,9 @@ public class JdbcFilterDao implements FilterDao, InitializingBean {
             LOG.debug("Filter.isRuleMatching({}): SQL statement: {}", rule, sqlString);
 
             // execute query and return the list of ip addresses
-            final Statement stmt = conn.createStatement();
+            final PreparedStatement stmt = conn.prepareStatement(sqlString);
             d.watch(stmt);
-            final ResultSet rset = stmt.executeQuery(sqlString);
+            final ResultSet rset = stmt.executeQuery();
             d.watch(rset);
 
             // we only want to check if zero or one rows were fetched, so just
@@ -423,6 +650,10 @@ public class JdbcFilterDao implements FilterDao, InitializingBean {
      * @throws org.opennms.netmgt.filter.api.FilterParseException if any.
      */
     public String getNodeMappingStatement(final String rule) throws FilterParseException {
+        return getCachedStatement(StatementType.NODE_MAPPING, rule);
+    }
+
+    private String buildNodeMappingStatement(final String rule) throws FilterParseException {
         final List<Table> tables = new ArrayList<>();
 
         final StringBuilder columns = new StringBuilder();
@@ -443,6 +674,10 @@ public class JdbcFilterDao implements FilterDao, InitializingBean {
      * @throws org.opennms.netmgt.filter.api.FilterParseException if any.
      */
     public String getIPServiceMappingStatement(final String rule) throws FilterParseException {
+        return getCachedStatement(StatementType.IP_SERVICE_MAPPING, rule);
+    }
+
+    private String buildIPServiceMappingStatement(final String rule) throws FilterParseException {
     	final List<Table> tables = new ArrayList<>();
 
     	final StringBuilder columns = new StringBuilder();
@@ -463,6 +698,10 @@ public class JdbcFilterDao implements FilterDao, InitializingBean {
      * @throws org.opennms.netmgt.filter.api.FilterParseException if any.
      */
     public String getInterfaceWithServiceStatement(final String rule) throws FilterParseException {
+        return getCachedStatement(StatementType.INTERFACE_WITH_SERVICE, rule);
+    }
+
+    private String buildInterfaceWithServiceStatement(final String rule) throws FilterParseException {
     	final List<Table> tables = new ArrayList<>();
 
     	final StringBuilder columns = new StringBuilder();
@@ -485,6 +724,10 @@ public class JdbcFilterDao implements FilterDao, InitializingBean {
      * @throws org.opennms.netmgt.filter.api.FilterParseException if any.
      */
     protected String getSQLStatement(final String rule) throws FilterParseException {
+        return getCachedStatement(StatementType.IP_ADDRESS, rule);
+    }
+
+    private String buildSQLStatement(final String rule) throws FilterParseException {
         final List<Table> tables = new ArrayList<>();
 
         final StringBuilder columns = new StringBuilder();
@@ -496,6 +739,38 @@ public class JdbcFilterDao implements FilterDao, InitializingBean {
         return "SELECT DISTINCT " + columns.toString() + " " + from + " " + where;
     }
 
+    /**
+     * Returns the SQL statement of the given type for the rule, only parsing
+     * the rule the first time it is seen.
+     */
+    private String getCachedStatement(final StatementType type, final String rule) throws FilterParseException {
+        final StatementKey key = new StatementKey(type, rule == null ? "" : rule);
+        String statement = m_statements.getIfPresent(key);
+        if (statement != null) {
+            m_statementHits.inc();
+            return statement;
+        }
+        m_statementMisses.inc();
+
+        switch (type) {
+        case NODE_MAPPING:
+            statement = buildNodeMappingStatement(rule);
+            break;
+        case IP_SERVICE_MAPPING:
+            statement = buildIPServiceMappingStatement(rule);
+            break;
+        case INTERFACE_WITH_SERVICE:
+            statement = buildInterfaceWithServiceStatement(rule);
+            break;
+        default:
+            statement = buildSQLStatement(rule);
+            break;
+        }
+
+        m_statements.put(key, statement);
+        return statement;
+    }
+
     /**
      * This method should be called if you want to put constraints on the node,
      * interface or service that is returned in the rule. This is useful to see
@@ -0,0 +1,181 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.config;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.core.test.ConfigurationTestUtils;
+import org.opennms.core.test.MockLogAppender;
+import org.opennms.netmgt.model.events.EventBuilder;
+import org.opennms.netmgt.xml.eventconf.Event;
+import org.opennms.netmgt.xml.eventconf.Events;
+import org.opennms.netmgt.xml.eventconf.Mask;
+import org.opennms.netmgt.xml.eventconf.Varbind;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.FileSystemResource;
+
+/**
+ * Compares the lookups of {@link DefaultEventConfDao#findByEvent} with and
+ * without the matcher tree on the full default eventconf, using a mix of
+ * traps built from the masks of the vendor event definitions.
+ */
+public class EventConfMatcherPerfIT {
+    private static final Logger LOG = LoggerFactory.getLogger(EventConfMatcherPerfIT.class);
+
+    private static final int NUM_EVENTS = 20000;
+    private static final int NUM_ROUNDS = 5;
+
+    private DefaultEventConfDao m_treeDao;
+    private DefaultEventConfDao m_scanDao;
+    private List<org.opennms.netmgt.xml.event.Event> m_events;
+
+    @Before
+    public void setUp() throws Exception {
+        MockLogAppender.setupLogging(true, "INFO");
+        m_treeDao = loadDao(true);
+        m_scanDao = loadDao(false);
+        m_events = buildTrapMix(m_treeDao.getAllEvents());
+    }
+
+    @After
+    public void tearDown() {
+        System.clearProperty(Events.MATCHER_TREE_SYS_PROP);
+    }
+
+    @Test
+    public void compareMatchers() {
+        // Both lookups must return the same definitions
+        final Map<Event, Integer> scanPositions = positions(m_scanDao);
+        final Map<Event, Integer> treePositions = positions(m_treeDao);
+        for (final org.opennms.netmgt.xml.event.Event event : m_events) {
+            assertEquals(scanPositions.get(m_scanDao.findByEvent(event)), treePositions.get(m_treeDao.findByEvent(event)));
+        }
+
+        for (int round = 1; round <= NUM_ROUNDS; round++) {
+            final long scanNanos = time(m_scanDao);
+            final long treeNanos = time(m_treeDao);
+            LOG.info("Round {}: matched {} events in {}ms by scanning and in {}ms with the matcher tree.", round, m_events.size(),
+                    TimeUnit.NANOSECONDS.toMillis(scanNanos), TimeUnit.NANOSECONDS.toMillis(treeNanos));
+        }
+    }
+
+    private static Map<Event, Integer> positions(final DefaultEventConfDao dao) {
+        final Map<Event, Integer> positions = new IdentityHashMap<>();
+        for (final Event definition : dao.getAllEvents()) {
+            positions.put(definition, positions.size());
+        }
+        return positions;
+    }
+
+    private long time(final DefaultEventConfDao dao) {
+        final long start = System.nanoTime();
+        for (final org.opennms.netmgt.xml.event.Event event : m_events) {
+            dao.findByEvent(event);
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static DefaultEventConfDao loadDao(final boolean matcherTree) throws Exception {
+        System.setProperty(Events.MATCHER_TREE_SYS_PROP, Boolean.toString(matcherTree));
+        final DefaultEventConfDao dao = new DefaultEventConfDao();
+        dao.setConfigResource(new FileSystemResource(ConfigurationTestUtils.getFileForConfigFile("eventconf.xml")));
+        dao.afterPropertiesSet();
+        return dao;
+    }
+
+    /**
+     * Builds traps that match the exact mask values of randomly picked
+     * definitions, along with unknown traps from known enterprises.
+     */
+    private static List<org.opennms.netmgt.xml.event.Event> buildTrapMix(final List<Event> definitions) {
+        final List<Event> traps = new ArrayList<>();
+        for (final Event definition : definitions) {
+            if (definition.getMaskElementValues("id") != null && definition.getMaskElementValues("generic") != null) {
+                traps.add(definition);
+            }
+        }
+
+        final Random random = new Random(42);
+        final List<org.opennms.netmgt.xml.event.Event> events = new ArrayList<>(NUM_EVENTS);
+        for (int i = 0; i < NUM_EVENTS; i++) {
+            final Event definition = traps.get(random.nextInt(traps.size()));
+            final String id = first(definition.getMaskElementValues("id"), ".1.3.6.1.4.1.5813");
+            final EventBuilder eb = new EventBuilder(null, "trapd");
+            eb.setEnterpriseId(id);
+            eb.setGeneric(toInt(first(definition.getMaskElementValues("generic"), "6"), 6));
+            if (i % 10 == 0) {
+                // No definition is expected to match this one
+                eb.setSpecific(Integer.MAX_VALUE);
+            } else {
+                eb.setSpecific(toInt(first(definition.getMaskElementValues("specific"), "0"), 0));
+            }
+
+            final Mask mask = definition.getMask();
+            for (int vbnumber = 1; vbnumber <= 10; vbnumber++) {
+                String value = Integer.toString(random.nextInt(5));
+                for (final Varbind vb : mask.getVarbinds()) {
+                    if (vb.getVbnumber() != null && vb.getVbnumber() == vbnumber) {
+                        value = first(vb.getVbvalues(), value);
+                    }
+                }
+                eb.addParam(id + "." + vbnumber, value);
+            }
+            events.add(eb.getEvent());
+        }
+        return events;
+    }
+
+    private static String first(final List<String> values, final String defaultValue) {
+        if (values == null || values.isEmpty()) {
+            return defaultValue;
+        }
+        final String value = values.get(0);
+        return value.startsWith("~") || value.endsWith("%") ? defaultValue : value;
+    }
+
+    private static int toInt(final String value, final int defaultValue) {
+        try {
+            return Integer.parseInt(value);
+        } catch (final NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.netmgt.config.notifications.Notification;
+import org.opennms.netmgt.config.notifications.Notifications;
+
+public class NotificationIndexTest {
+
+    private Notifications m_notifications;
+
+    @Before
+    public void setUp() {
+        m_notifications = new Notifications();
+        m_notifications.addNotification(createNotification("regex", "~^uei.opennms.org/nodes/node(Down|Up)$", null));
+        m_notifications.addNotification(createNotification("nodeDown", "uei.opennms.org/nodes/nodeDown", null));
+        m_notifications.addNotification(createNotification("any", "MATCH-ANY-UEI", "major|critical"));
+        m_notifications.addNotification(createNotification("nodeDownAgain", "uei.opennms.org/nodes/nodeDown", "Warning"));
+        m_notifications.addNotification(createNotification("invalid", "~uei.opennms.org/(", null));
+    }
+
+    @Test
+    public void canMatchInConfiguredOrder() {
+        final NotificationIndex index = new NotificationIndex(m_notifications);
+
+        assertEquals("[regex, nodeDown, any, nodeDownAgain]", getNames(index.getCandidates("uei.opennms.org/nodes/nodeDown")));
+        assertEquals("[regex, any]", getNames(index.getCandidates("uei.opennms.org/nodes/nodeUp")));
+        assertEquals("[any]", getNames(index.getCandidates("uei.opennms.org/nodes/nodeLostService")));
+    }
+
+    @Test
+    public void canMatchExactUeisOnly() {
+        m_notifications = new Notifications();
+        m_notifications.addNotification(createNotification("nodeDown", "uei.opennms.org/nodes/nodeDown", null));
+        final NotificationIndex index = new NotificationIndex(m_notifications);
+
+        assertTrue(index.hasUei("uei.opennms.org/nodes/nodeDown"));
+        assertFalse(index.hasUei("uei.opennms.org/nodes/nodeUp"));
+        assertEquals("[nodeDown]", getNames(index.getCandidates("uei.opennms.org/nodes/nodeDown")));
+        assertEquals("[]", getNames(index.getCandidates("uei.opennms.org/nodes/nodeUp")));
+    }
+
+    @Test
+    public void canMatchSeverities() {
+        final NotificationIndex index = new NotificationIndex(m_notifications);
+        final List<NotificationIndex.Candidate> candidates = index.getCandidates("uei.opennms.org/nodes/nodeDown");
+
+        // no pattern
+        assertTrue(candidates.get(0).matchesSeverity("Normal"));
+        // patterns are matched regardless of case
+        assertTrue(candidates.get(2).matchesSeverity("Major"));
+        assertFalse(candidates.get(2).matchesSeverity("Minor"));
+        assertTrue(candidates.get(3).matchesSeverity("WARNING"));
+    }
+
+    @Test
+    public void canTellWhichConfigurationIsIndexed() {
+        final NotificationIndex index = new NotificationIndex(m_notifications);
+
+        assertTrue(index.isIndexOf(m_notifications));
+        assertFalse(index.isIndexOf(new Notifications()));
+    }
+
+    private static Notification createNotification(String name, String uei, String severity) {
+        final Notification notification = new Notification();
+        notification.setName(name);
+        notification.setStatus("on");
+        notification.setUei(uei);
+        notification.setRule("IPADDR IPLIKE *.*.*.*");
+        notification.setEventSeverity(severity);
+        return notification;
+    }
+
+    private static String getNames(List<NotificationIndex.Candidate> candidates) {
+        return candidates.stream().map(c -> c.getNotification().getName()).collect(Collectors.toList()).toString();
+    }
+}
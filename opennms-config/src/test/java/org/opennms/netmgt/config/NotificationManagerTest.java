@@ -0,0 +1,178 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.config;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.core.xml.JaxbUtils;
+import org.opennms.netmgt.config.notifications.Notification;
+import org.opennms.netmgt.config.notifications.Notifications;
+import org.opennms.netmgt.filter.FilterDaoFactory;
+import org.opennms.netmgt.filter.api.FilterDao;
+import org.opennms.netmgt.xml.event.Event;
+
+public class NotificationManagerTest {
+
+    private static final String RULE = "IPADDR IPLIKE *.*.*.*";
+
+    private FilterDao m_filterDao;
+    private Notification m_notification;
+
+    @Before
+    public void setUp() {
+        m_filterDao = createMock(FilterDao.class);
+        FilterDaoFactory.setInstance(m_filterDao);
+
+        m_notification = new Notification();
+        m_notification.setName("nodeDown");
+        m_notification.setStatus("on");
+        m_notification.setUei("uei.opennms.org/nodes/nodeDown");
+        m_notification.setRule(RULE);
+    }
+
+    @After
+    public void tearDown() {
+        System.clearProperty(NotificationManager.RULE_MATCH_CACHE_SIZE_PROPERTY);
+        FilterDaoFactory.setInstance(null);
+    }
+
+    @Test
+    public void cachesTheRuleMatchesOfEachNode() {
+        expect(m_filterDao.isRuleMatching(ruleForNode(1))).andReturn(true).once();
+        expect(m_filterDao.isRuleMatching(ruleForNode(2))).andReturn(true).once();
+        replay(m_filterDao);
+
+        final NotificationManager manager = createManager(true);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(manager.nodeInterfaceServiceValid(m_notification, createEvent(1)));
+            assertTrue(manager.nodeInterfaceServiceValid(m_notification, createEvent(2)));
+        }
+
+        verify(m_filterDao);
+    }
+
+    @Test
+    public void queriesEveryTimeWhenDisabled() {
+        expect(m_filterDao.isRuleMatching(ruleForNode(1))).andReturn(true).times(3);
+        replay(m_filterDao);
+
+        final NotificationManager manager = createManager(false);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(manager.nodeInterfaceServiceValid(m_notification, createEvent(1)));
+        }
+
+        verify(m_filterDao);
+    }
+
+    @Test
+    public void flushesTheRuleMatchesWhenTheConfigurationIsReloaded() {
+        expect(m_filterDao.isRuleMatching(ruleForNode(1))).andReturn(true).times(2);
+        replay(m_filterDao);
+
+        final NotificationManager manager = createManager(true);
+        assertTrue(manager.nodeInterfaceServiceValid(m_notification, createEvent(1)));
+        assertTrue(manager.nodeInterfaceServiceValid(m_notification, createEvent(1)));
+
+        manager.parseXML(new StringReader(createConfiguration()));
+        assertTrue(manager.nodeInterfaceServiceValid(m_notification, createEvent(1)));
+        assertTrue(manager.nodeInterfaceServiceValid(m_notification, createEvent(1)));
+
+        verify(m_filterDao);
+    }
+
+    @Test
+    public void evictsTheLeastRecentlyUsedRuleMatchesWhenFull() {
+        System.setProperty(NotificationManager.RULE_MATCH_CACHE_SIZE_PROPERTY, "2");
+
+        expect(m_filterDao.isRuleMatching(ruleForNode(1))).andReturn(true).times(2);
+        expect(m_filterDao.isRuleMatching(ruleForNode(2))).andReturn(true).once();
+        expect(m_filterDao.isRuleMatching(ruleForNode(3))).andReturn(true).once();
+        expect(m_filterDao.isRuleMatching(ruleForNode(4))).andReturn(true).once();
+        replay(m_filterDao);
+
+        final NotificationManager manager = createManager(true);
+        manager.nodeInterfaceServiceValid(m_notification, createEvent(1));
+        manager.nodeInterfaceServiceValid(m_notification, createEvent(2));
+        // node 2 is now the most recently used, node 1 is evicted by node 3
+        manager.nodeInterfaceServiceValid(m_notification, createEvent(2));
+        manager.nodeInterfaceServiceValid(m_notification, createEvent(3));
+        manager.nodeInterfaceServiceValid(m_notification, createEvent(2));
+        manager.nodeInterfaceServiceValid(m_notification, createEvent(3));
+
+        // a full cache keeps caching the new results
+        manager.nodeInterfaceServiceValid(m_notification, createEvent(1));
+        manager.nodeInterfaceServiceValid(m_notification, createEvent(1));
+        manager.nodeInterfaceServiceValid(m_notification, createEvent(4));
+        manager.nodeInterfaceServiceValid(m_notification, createEvent(4));
+
+        verify(m_filterDao);
+    }
+
+    private NotificationManager createManager(final boolean cacheEnabled) {
+        final NotificationManager manager = new NotificationManager(null, null) {
+            @Override
+            protected void saveXML(final String xmlString) {
+            }
+
+            @Override
+            public void update() {
+            }
+        };
+        manager.parseXML(new StringReader(createConfiguration()));
+        manager.setRuleMatchCacheEnabled(cacheEnabled);
+        return manager;
+    }
+
+    private String createConfiguration() {
+        final Notifications notifications = new Notifications();
+        notifications.addNotification(m_notification);
+        return JaxbUtils.marshal(notifications);
+    }
+
+    private static Event createEvent(final long nodeId) {
+        final Event event = new Event();
+        event.setUei("uei.opennms.org/nodes/nodeDown");
+        event.setNodeid(nodeId);
+        return event;
+    }
+
+    private static String ruleForNode(final int nodeId) {
+        return "((" + RULE + ") & (nodeId == " + nodeId + "))";
+    }
+}
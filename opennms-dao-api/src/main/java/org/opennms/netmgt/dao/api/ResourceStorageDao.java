@@ -150,4 +150,28 @@ public interface ResourceStorageDao {
      * Retrieves the meta-data stored at the given path.
      */
     public Map<String,String> getMetaData(ResourcePath path);
+
+    /**
+     * Notifies the storage that the persistence layer wrote the given file
+     * at the given path.
+     *
+     * Strategies that keep an index of the stored resources use this to
+     * learn about new metrics without scanning for them, others may ignore it.
+     *
+     * @param path resource path the file was written to
+     * @param fileName name of the file that was written
+     */
+    public default void fileWritten(ResourcePath path, String fileName) {
+        // pass
+    }
+
+    /**
+     * Whether the storage keeps an index of the stored resources and
+     * wants to be notified through {@link #fileWritten(ResourcePath, String)}.
+     *
+     * @return true if the written files should be reported
+     */
+    public default boolean isIndexed() {
+        return false;
+    }
 }
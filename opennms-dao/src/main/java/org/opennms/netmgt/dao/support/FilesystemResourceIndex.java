@@ -0,0 +1,270 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.dao.support;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * In-memory index of the directories below the RRD directory and of the RRD,
+ * .meta and properties files they hold, used by
+ * {@link FilesystemResourceStorageDao} to walk the resource tree without
+ * listing directories.
+ *
+ * All paths are relative to the RRD directory. The index only ever grows
+ * from scans and additions, entries are dropped by {@link #remove(Path)}.
+ */
+class FilesystemResourceIndex {
+    private static final Logger LOG = LoggerFactory.getLogger(FilesystemResourceIndex.class);
+
+    private static final String META_EXTENSION = ".meta";
+
+    private static class Node {
+        private final ConcurrentMap<String, Node> m_children = new ConcurrentHashMap<>();
+        private final Set<String> m_files = ConcurrentHashMap.newKeySet();
+    }
+
+    private final Path m_root;
+    private final String m_rrdExtension;
+    private final Node m_rootNode = new Node();
+    private Consumer<Path> m_directoryListener;
+
+    FilesystemResourceIndex(final Path root, final String rrdExtension) {
+        m_root = root;
+        m_rrdExtension = rrdExtension;
+    }
+
+    /**
+     * Sets a callback that is invoked with the absolute path of every
+     * directory that is scanned.
+     */
+    void setDirectoryListener(final Consumer<Path> directoryListener) {
+        m_directoryListener = directoryListener;
+    }
+
+    /**
+     * Scans the whole tree using the given number of threads.
+     */
+    void scan(final int threads) {
+        final ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            pool.invoke(new ScanTask(m_root, m_rootNode));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Scans the tree below the given directory in the calling thread.
+     */
+    void scan(final Path directory) {
+        new ScanTask(m_root.resolve(directory), getOrCreate(directory)).invoke();
+    }
+
+    boolean isIndexed(final String fileName) {
+        return fileName.endsWith(m_rrdExtension)
+                || fileName.endsWith(META_EXTENSION)
+                || RrdResourceAttributeUtils.DS_PROPERTIES_FILE.equals(fileName)
+                || RrdResourceAttributeUtils.STRINGS_PROPERTIES_FILE_NAME.equals(fileName);
+    }
+
+    boolean exists(final Path directory, final int depth) {
+        final Node node = find(directory);
+        return node != null && exists(node, depth);
+    }
+
+    boolean existsWithin(final Path directory, final int depth) {
+        final Node node = find(directory);
+        return node != null && existsWithin(node, depth);
+    }
+
+    /**
+     * Returns the names of the sub-directories of the given directory that
+     * hold RRD files at the given depth.
+     */
+    Set<String> children(final Path directory, final int depth) {
+        final Node node = find(directory);
+        if (node == null) {
+            return Collections.emptySet();
+        }
+        return node.m_children.entrySet().stream()
+                .filter(e -> exists(e.getValue(), depth - 1))
+                .map(e -> e.getKey())
+                .collect(Collectors.toSet());
+    }
+
+    /**
+     * Returns the names of the indexed files in the given directory.
+     */
+    Set<String> getFiles(final Path directory) {
+        final Node node = find(directory);
+        if (node == null) {
+            return Collections.emptySet();
+        }
+        return Collections.unmodifiableSet(node.m_files);
+    }
+
+    boolean hasFile(final Path directory, final String fileName) {
+        final Node node = find(directory);
+        return node != null && node.m_files.contains(fileName);
+    }
+
+    /**
+     * Adds the given file, along with the directories leading to it.
+     */
+    void add(final Path directory, final String fileName) {
+        if (isIndexed(fileName)) {
+            getOrCreate(directory).m_files.add(fileName);
+        }
+    }
+
+    /**
+     * Removes the given file or directory.
+     */
+    void remove(final Path path) {
+        final Path parent = path.getParent();
+        final Node node = find(parent == null ? Paths.get("") : parent);
+        if (node != null) {
+            final String name = path.getFileName().toString();
+            node.m_children.remove(name);
+            node.m_files.remove(name);
+        }
+    }
+
+    private boolean exists(final Node node, final int depth) {
+        if (depth == 0) {
+            return hasRrdFile(node);
+        }
+        for (final Node child : node.m_children.values()) {
+            if (exists(child, depth - 1)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean existsWithin(final Node node, final int depth) {
+        if (depth < 0) {
+            return false;
+        }
+        if (hasRrdFile(node)) {
+            return true;
+        }
+        for (final Node child : node.m_children.values()) {
+            if (existsWithin(child, depth - 1)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean hasRrdFile(final Node node) {
+        for (final String fileName : node.m_files) {
+            if (fileName.endsWith(m_rrdExtension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Node find(final Path directory) {
+        Node node = m_rootNode;
+        for (final Path name : directory) {
+            if (name.toString().isEmpty()) {
+                continue;
+            }
+            node = node.m_children.get(name.toString());
+            if (node == null) {
+                return null;
+            }
+        }
+        return node;
+    }
+
+    private Node getOrCreate(final Path directory) {
+        Node node = m_rootNode;
+        for (final Path name : directory) {
+            if (name.toString().isEmpty()) {
+                continue;
+            }
+            node = node.m_children.computeIfAbsent(name.toString(), n -> new Node());
+        }
+        return node;
+    }
+
+    private class ScanTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Path m_directory;
+        private final Node m_node;
+
+        private ScanTask(final Path directory, final Node node) {
+            m_directory = directory;
+            m_node = node;
+        }
+
+        @Override
+        protected void compute() {
+            if (m_directoryListener != null) {
+                m_directoryListener.accept(m_directory);
+            }
+
+            final List<ScanTask> tasks = new ArrayList<>();
+            try (final DirectoryStream<Path> stream = Files.newDirectoryStream(m_directory)) {
+                for (final Path entry : stream) {
+                    final String name = entry.getFileName().toString();
+                    if (isIndexed(name) && Files.isRegularFile(entry)) {
+                        m_node.m_files.add(name);
+                    } else if (Files.isDirectory(entry)) {
+                        tasks.add(new ScanTask(entry, m_node.m_children.computeIfAbsent(name, n -> new Node())));
+                    }
+                }
+            } catch (final IOException e) {
+                LOG.warn("Failed to list {}, its resources will not be indexed.", m_directory, e);
+            }
+            invokeAll(tasks);
+        }
+    }
+}
@@ -30,8 +30,15 @@ package org.opennms.netmgt.dao.support;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 import java.util.Collections;
 import java.util.Map;
 import java.util.Properties;
@@ -49,6 +56,7 @@ import org.opennms.netmgt.rrd.RrdStrategy;
 import org.opennms.netmgt.rrd.RrdMetaDataUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
 
@@ -60,9 +68,15 @@ import com.google.common.collect.Maps;
  * Used in conjunction with RRD/JRB strategies that persist
  * metrics to the local disk.
  *
+ * When indexing is enabled the directory tree is scanned once in the
+ * background and the lookups are answered from memory as soon as the scan
+ * completes. The index is kept current by the writes made through this DAO,
+ * by the files the persisters report through {@link #fileWritten(ResourcePath, String)}
+ * and, optionally, by watching every directory for changes made by others.
+ *
  * @author jwhite
  */
-public class FilesystemResourceStorageDao implements ResourceStorageDao, InitializingBean {
+public class FilesystemResourceStorageDao implements ResourceStorageDao, InitializingBean, DisposableBean {
 
     private static final Logger LOG = LoggerFactory.getLogger(FilesystemResourceStorageDao.class);
 
@@ -73,27 +87,137 @@ public class FilesystemResourceStorageDao implements ResourceStorageDao, Initial
 
     private File m_rrdDirectory;
 
+    private boolean m_indexed = false;
+
+    private boolean m_watched = false;
+
+    private int m_indexThreads = Runtime.getRuntime().availableProcessors();
+
+    private FilesystemResourceIndex m_index;
+
+    private volatile boolean m_indexReady = false;
+
+    private WatchService m_watchService;
+
+    private Thread m_watchThread;
+
     @Override
     public void afterPropertiesSet() throws Exception {
         BeanUtils.assertAutowiring(this);
         setRrdExtension(m_rrdStrategy.getDefaultFileExtension());
+        if (m_indexed) {
+            startIndexing();
+        }
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (m_watchService != null) {
+            m_watchService.close();
+        }
+    }
+
+    private void startIndexing() throws IOException {
+        final Path root = m_rrdDirectory.getAbsoluteFile().toPath();
+        m_index = new FilesystemResourceIndex(root, RRD_EXTENSION);
+
+        if (m_watched) {
+            m_watchService = FileSystems.getDefault().newWatchService();
+            m_index.setDirectoryListener(this::watch);
+            m_watchThread = new Thread(this::processWatchEvents, "FilesystemResourceStorageDao-Watcher");
+            m_watchThread.setDaemon(true);
+            m_watchThread.start();
+        }
+
+        final Thread scanThread = new Thread(() -> {
+            final long start = System.currentTimeMillis();
+            m_index.scan(m_indexThreads);
+            m_indexReady = true;
+            LOG.info("Indexed the resources in {} in {}ms.", root, System.currentTimeMillis() - start);
+        }, "FilesystemResourceStorageDao-Scanner");
+        scanThread.setDaemon(true);
+        scanThread.start();
+    }
+
+    private void watch(final Path directory) {
+        try {
+            directory.register(m_watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE);
+        } catch (ClosedWatchServiceException e) {
+            // shutting down
+        } catch (IOException e) {
+            LOG.warn("Failed to watch {} for changes.", directory, e);
+        }
+    }
+
+    private void processWatchEvents() {
+        final Path root = m_rrdDirectory.getAbsoluteFile().toPath();
+        while (true) {
+            final WatchKey key;
+            try {
+                key = m_watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+
+            final Path directory = (Path)key.watchable();
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    LOG.warn("Missed changes in {}, rescanning it.", directory);
+                    m_index.scan(root.relativize(directory));
+                    continue;
+                }
+
+                final Path path = directory.resolve((Path)event.context());
+                final Path relativePath = root.relativize(path);
+                if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                    m_index.remove(relativePath);
+                } else if (Files.isDirectory(path)) {
+                    m_index.scan(relativePath);
+                } else {
+                    m_index.add(root.relativize(directory), path.getFileName().toString());
+                }
+            }
+            key.reset();
+        }
+    }
+
+    /**
+     * Returns the index once the initial scan completed, null otherwise.
+     */
+    private FilesystemResourceIndex getIndex() {
+        return m_indexReady ? m_index : null;
     }
 
     @Override
     public boolean exists(ResourcePath path, int depth) {
         Preconditions.checkArgument(depth >= 0, "depth must be non-negative");
+        final FilesystemResourceIndex index = getIndex();
+        if (index != null) {
+            return index.exists(toRelativePath(path), depth);
+        }
         return exists(toPath(path), depth);
     }
 
     @Override
     public boolean existsWithin(ResourcePath path, int depth) {
         Preconditions.checkArgument(depth >= 0, "depth must be non-negative");
+        final FilesystemResourceIndex index = getIndex();
+        if (index != null) {
+            return index.existsWithin(toRelativePath(path), depth);
+        }
         return existsWithin(toPath(path), depth);
     }
 
     @Override
     public Set<ResourcePath> children(ResourcePath path, int depth) {
         Preconditions.checkArgument(depth > 0, "depth must be positive");
+        final FilesystemResourceIndex index = getIndex();
+        if (index != null) {
+            return index.children(toRelativePath(path), depth).stream()
+                .map(name -> ResourcePath.get(path, name))
+                .collect(Collectors.toSet());
+        }
+
         final Path root = toPath(path);
         if (!Files.isDirectory(root)) {
             return Collections.emptySet();
@@ -112,6 +236,11 @@ public class FilesystemResourceStorageDao implements ResourceStorageDao, Initial
 
     @Override
     public Set<OnmsAttribute> getAttributes(ResourcePath path) {
+        final FilesystemResourceIndex index = getIndex();
+        if (index != null) {
+            final Path relativePath = toRelativePath(path);
+            return RrdResourceAttributeUtils.getAttributesAtRelativePath(m_rrdDirectory, relativePath.toString(), RRD_EXTENSION, index.getFiles(relativePath));
+        }
         return RrdResourceAttributeUtils.getAttributesAtRelativePath(m_rrdDirectory, ResourcePath.resourceToFilesystemPath(path).toString(), RRD_EXTENSION);
     }
 
@@ -122,15 +251,26 @@ public class FilesystemResourceStorageDao implements ResourceStorageDao, Initial
         } catch (IOException e) {
             throw Throwables.propagate(e);
         }
+        if (m_index != null) {
+            m_index.add(toRelativePath(path), RrdResourceAttributeUtils.STRINGS_PROPERTIES_FILE_NAME);
+        }
     }
 
     @Override
     public String getStringAttribute(ResourcePath path, String key) {
+        final FilesystemResourceIndex index = getIndex();
+        if (index != null && !index.hasFile(toRelativePath(path), RrdResourceAttributeUtils.STRINGS_PROPERTIES_FILE_NAME)) {
+            return null;
+        }
         return RrdResourceAttributeUtils.getStringProperty(toPath(path).toFile(), key);
     }
 
     @Override
     public Map<String, String> getStringAttributes(ResourcePath path) {
+        final FilesystemResourceIndex index = getIndex();
+        if (index != null && !index.hasFile(toRelativePath(path), RrdResourceAttributeUtils.STRINGS_PROPERTIES_FILE_NAME)) {
+            return Collections.emptyMap();
+        }
         Properties props = RrdResourceAttributeUtils.getStringProperties(m_rrdDirectory, ResourcePath.resourceToFilesystemPath(path).toString());
         return Maps.fromProperties(props);
     }
@@ -138,16 +278,39 @@ public class FilesystemResourceStorageDao implements ResourceStorageDao, Initial
     @Override
     public void updateMetricToResourceMappings(ResourcePath path, Map<String, String> metricsNameToResourceNames) {
         RrdResourceAttributeUtils.updateDsProperties(toPath(path).toFile(), metricsNameToResourceNames);
+        if (m_index != null) {
+            m_index.add(toRelativePath(path), RrdResourceAttributeUtils.DS_PROPERTIES_FILE);
+        }
+    }
+
+    @Override
+    public void fileWritten(ResourcePath path, String fileName) {
+        if (m_index != null) {
+            m_index.add(toRelativePath(path), fileName);
+        }
     }
 
     @Override
     public Map<String, String> getMetaData(ResourcePath path) {
+        final FilesystemResourceIndex index = getIndex();
+        if (index != null) {
+            // The meta-data of a metric lives next to it, in <name>.meta
+            final Path relativePath = toRelativePath(path);
+            final Path directory = relativePath.getParent() != null ? relativePath.getParent() : Paths.get("");
+            if (!index.hasFile(directory, relativePath.getFileName() + ".meta")) {
+                return Collections.emptyMap();
+            }
+        }
         return RrdMetaDataUtils.readMetaDataFile(getRrdDirectory(), ResourcePath.resourceToFilesystemPath(path).toString());
     }
 
     @Override
     public boolean delete(ResourcePath path) {
-        return FileUtils.deleteQuietly(toPath(path).toFile());
+        final boolean deleted = FileUtils.deleteQuietly(toPath(path).toFile());
+        if (m_index != null) {
+            m_index.remove(toRelativePath(path));
+        }
+        return deleted;
     }
 
     private boolean exists(Path root, int depth) {
@@ -184,6 +347,10 @@ public class FilesystemResourceStorageDao implements ResourceStorageDao, Initial
         return m_rrdDirectory.getAbsoluteFile().toPath().resolve(ResourcePath.resourceToFilesystemPath(path));
     }
 
+    private static Path toRelativePath(final ResourcePath path) {
+        return ResourcePath.resourceToFilesystemPath(path);
+    }
+
     public void setRrdDirectory(File rrdDirectory) {
         m_rrdDirectory = rrdDirectory;
     }
@@ -192,6 +359,38 @@ public class FilesystemResourceStorageDao implements ResourceStorageDao, Initial
         return m_rrdDirectory;
     }
 
+    /**
+     * Enables the in-memory index of the resource tree.
+     */
+    public void setIndexed(boolean indexed) {
+        m_indexed = indexed;
+    }
+
+    @Override
+    public boolean isIndexed() {
+        return m_indexed;
+    }
+
+    /**
+     * Watches every directory for changes made by other processes, this only
+     * applies when the index is enabled.
+     */
+    public void setWatched(boolean watched) {
+        m_watched = watched;
+    }
+
+    public boolean isWatched() {
+        return m_watched;
+    }
+
+    public void setIndexThreads(int indexThreads) {
+        m_indexThreads = indexThreads;
+    }
+
+    protected boolean isIndexReady() {
+        return m_indexReady;
+    }
+
     public void setRrdStrategy(RrdStrategy<?, ?> rrdStrategy) {
         m_rrdStrategy = rrdStrategy;
         setRrdExtension(m_rrdStrategy.getDefaultFileExtension());
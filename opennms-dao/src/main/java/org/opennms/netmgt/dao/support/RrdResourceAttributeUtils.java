@@ -32,6 +32,7 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -81,6 +82,31 @@ public abstract class RrdResourceAttributeUtils {
         return attributes;
     }
 
+    /**
+     * Same as {@link #getAttributesAtRelativePath(File, String, String)} but
+     * uses the given names of the files in the directory instead of listing it.
+     *
+     * @param rrdDirectory a {@link java.io.File} object.
+     * @param relativePath a {@link java.lang.String} object.
+     * @param fileNames the names of the files at the relative path.
+     * @return a {@link java.util.Set} object.
+     */
+    protected static Set<OnmsAttribute> getAttributesAtRelativePath(File rrdDirectory, String relativePath, String rrdFileSuffix, Collection<String> fileNames) {
+        Set<OnmsAttribute> attributes =  new HashSet<>();
+
+        File resourceDir = new File(rrdDirectory, relativePath);
+        for (String fileName : fileNames) {
+            if (fileName.endsWith(rrdFileSuffix)) {
+                loadRrdAttributes(resourceDir, relativePath, fileName, attributes, rrdFileSuffix.length());
+            }
+        }
+        if (fileNames.contains(STRINGS_PROPERTIES_FILE_NAME)) {
+            loadStringAttributes(rrdDirectory, relativePath, attributes);
+        }
+
+        return attributes;
+    }
+
     private static void loadStringAttributes(File rrdDirectory,
             String relativePath, Set<OnmsAttribute> attributes) {
         Properties properties = getStringProperties(rrdDirectory, relativePath);
@@ -108,20 +134,23 @@ public abstract class RrdResourceAttributeUtils {
         }
         
         for (final File file : files) {
-            String fileName = file.getName();
-            if (ResourceTypeUtils.isStoreByGroup() && !ResourceTypeUtils.isResponseTime(relativePath)) {
-                String groupName = fileName.substring(0, fileName.length() - suffixLength);
-                Properties props = getDsProperties(resourceDir);
-                for (Object o : props.keySet()) {
-                    String dsName = (String)o;
-                    if (props.getProperty(dsName).equals(groupName)) {
-                        attributes.add(new RrdGraphAttribute(dsName, relativePath, fileName));
-                    }
+            loadRrdAttributes(resourceDir, relativePath, file.getName(), attributes, suffixLength);
+        }
+    }
+
+    private static void loadRrdAttributes(File resourceDir, String relativePath, String fileName, Set<OnmsAttribute> attributes, int suffixLength) {
+        if (ResourceTypeUtils.isStoreByGroup() && !ResourceTypeUtils.isResponseTime(relativePath)) {
+            String groupName = fileName.substring(0, fileName.length() - suffixLength);
+            Properties props = getDsProperties(resourceDir);
+            for (Object o : props.keySet()) {
+                String dsName = (String)o;
+                if (props.getProperty(dsName).equals(groupName)) {
+                    attributes.add(new RrdGraphAttribute(dsName, relativePath, fileName));
                 }
-            } else {
-                String dsName = fileName.substring(0, fileName.length() - suffixLength);
-                attributes.add(new RrdGraphAttribute(dsName, relativePath, fileName));
             }
+        } else {
+            String dsName = fileName.substring(0, fileName.length() - suffixLength);
+            attributes.add(new RrdGraphAttribute(dsName, relativePath, fileName));
         }
     }
 
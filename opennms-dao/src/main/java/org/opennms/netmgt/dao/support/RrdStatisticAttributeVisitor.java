@@ -35,6 +35,7 @@ import org.opennms.netmgt.model.AttributeStatisticVisitor;
 import org.opennms.netmgt.model.AttributeVisitor;
 import org.opennms.netmgt.model.OnmsAttribute;
 import org.opennms.netmgt.model.RrdGraphAttribute;
+import org.opennms.netmgt.rrd.AttributeStatisticsIndex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.InitializingBean;
@@ -42,6 +43,8 @@ import org.springframework.util.Assert;
 
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.function.Supplier;
 
 /**
@@ -59,6 +62,13 @@ public class RrdStatisticAttributeVisitor implements AttributeVisitor, Initializ
     private Long m_startTime;
     private Long m_endTime;
     private AttributeStatisticVisitor m_statisticVisitor;
+    private AttributeStatisticsIndex m_statisticsIndex;
+
+    /**
+     * The statistics found in the index by attribute name, null if the index
+     * does not cover the report window for that attribute.
+     */
+    private final Map<String, Map<String, Double>> m_indexedStatistics = new HashMap<>();
 
     private interface Aggregator {
         double getValue();
@@ -146,6 +156,16 @@ public class RrdStatisticAttributeVisitor implements AttributeVisitor, Initializ
             return;
         }
 
+        final Map<String, Double> indexedStatistics = getIndexedStatistics(attribute.getName());
+        if (indexedStatistics != null) {
+            final Double statistic = indexedStatistics.get(AttributeStatisticsIndex.toKey(((RrdGraphAttribute) attribute).getRrdRelativePath()));
+            LOG.debug("The indexed value of {} is {}", attribute, statistic);
+            if (statistic != null && !Double.isNaN(statistic)) {
+                m_statisticVisitor.visit(attribute, statistic);
+            }
+            return;
+        }
+
         final Source source = new Source();
         source.setLabel("result");
         source.setResourceId(attribute.getResource().getId().toString());
@@ -206,6 +226,16 @@ public class RrdStatisticAttributeVisitor implements AttributeVisitor, Initializ
         m_statisticVisitor.visit(attribute, statistic);
     }
 
+    private Map<String, Double> getIndexedStatistics(final String attributeName) {
+        if (m_statisticsIndex == null) {
+            return null;
+        }
+        if (!m_indexedStatistics.containsKey(attributeName)) {
+            m_indexedStatistics.put(attributeName, m_statisticsIndex.getStatistics(attributeName, m_startTime, m_endTime, m_consolidationFunction));
+        }
+        return m_indexedStatistics.get(attributeName);
+    }
+
     /**
      * <p>afterPropertiesSet</p>
      *
@@ -220,6 +250,20 @@ public class RrdStatisticAttributeVisitor implements AttributeVisitor, Initializ
         Assert.state(m_statisticVisitor != null, "property statisticVisitor must be set to a non-null value");
     }
 
+    public AttributeStatisticsIndex getStatisticsIndex() {
+        return m_statisticsIndex;
+    }
+
+    /**
+     * Sets the index to answer from when it covers the report window, the
+     * RRD files are fetched otherwise.
+     *
+     * @param statisticsIndex a {@link org.opennms.netmgt.rrd.AttributeStatisticsIndex} object, may be null.
+     */
+    public void setStatisticsIndex(AttributeStatisticsIndex statisticsIndex) {
+        m_statisticsIndex = statisticsIndex;
+    }
+
     public MeasurementFetchStrategy getFetchStrategy() {
         return m_fetchStrategy;
     }
@@ -30,12 +30,16 @@ package org.opennms.netmgt.dao.support;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Collections;
 import java.util.Set;
+import java.util.function.BooleanSupplier;
 
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -63,6 +67,11 @@ public class FilesystemResourceStorageDaoTest {
         m_fsResourceStorageDao.setRrdStrategy(rrdStrategy);
     }
 
+    @After
+    public void tearDown() throws Exception {
+        m_fsResourceStorageDao.destroy();
+    }
+
     @Test
     public void exists() throws IOException {
         // Path is missing when the folder is missing
@@ -150,4 +159,69 @@ public class FilesystemResourceStorageDaoTest {
         Set<OnmsAttribute> attributes = m_fsResourceStorageDao.getAttributes(ResourcePath.get("a"));
         assertEquals(1, attributes.size());
     }
+
+    @Test
+    public void indexedLookups() throws Exception {
+        File folder = tempFolder.newFolder("a", "b");
+        new File(folder, "ds" + m_rrdFileExtension).createNewFile();
+        new File(folder, "ds.meta").createNewFile();
+
+        m_fsResourceStorageDao.setIndexed(true);
+        m_fsResourceStorageDao.afterPropertiesSet();
+        waitFor(m_fsResourceStorageDao::isIndexReady);
+
+        assertTrue(m_fsResourceStorageDao.exists(ResourcePath.get("a", "b"), 0));
+        assertTrue(m_fsResourceStorageDao.exists(ResourcePath.get("a"), 1));
+        assertFalse(m_fsResourceStorageDao.exists(ResourcePath.get("a"), 0));
+        assertFalse(m_fsResourceStorageDao.existsWithin(ResourcePath.get("a"), 0));
+        assertTrue(m_fsResourceStorageDao.existsWithin(ResourcePath.get("a"), 1));
+        assertEquals(Collections.singleton(ResourcePath.get("a", "b")), m_fsResourceStorageDao.children(ResourcePath.get("a"), 1));
+        assertEquals(1, m_fsResourceStorageDao.getAttributes(ResourcePath.get("a", "b")).size());
+        assertEquals(0, m_fsResourceStorageDao.getMetaData(ResourcePath.get("a", "b", "missing")).size());
+
+        // Files are only seen once the persistence layer reports them
+        File subFolder = tempFolder.newFolder("a", "c");
+        new File(subFolder, "ds" + m_rrdFileExtension).createNewFile();
+        assertFalse(m_fsResourceStorageDao.exists(ResourcePath.get("a", "c"), 0));
+        m_fsResourceStorageDao.fileWritten(ResourcePath.get("a", "c"), "ds" + m_rrdFileExtension);
+        assertTrue(m_fsResourceStorageDao.exists(ResourcePath.get("a", "c"), 0));
+        assertEquals(2, m_fsResourceStorageDao.children(ResourcePath.get("a"), 1).size());
+
+        // String attributes written through the DAO are indexed
+        assertNull(m_fsResourceStorageDao.getStringAttribute(ResourcePath.get("a", "c"), "key"));
+        m_fsResourceStorageDao.setStringAttribute(ResourcePath.get("a", "c"), "key", "value");
+        assertEquals("value", m_fsResourceStorageDao.getStringAttribute(ResourcePath.get("a", "c"), "key"));
+        assertEquals(2, m_fsResourceStorageDao.getAttributes(ResourcePath.get("a", "c")).size());
+
+        assertTrue(m_fsResourceStorageDao.delete(ResourcePath.get("a", "c")));
+        assertFalse(m_fsResourceStorageDao.exists(ResourcePath.get("a", "c"), 0));
+        assertEquals(1, m_fsResourceStorageDao.children(ResourcePath.get("a"), 1).size());
+    }
+
+    @Test
+    public void indexWatchesForChanges() throws Exception {
+        File folder = tempFolder.newFolder("a");
+
+        m_fsResourceStorageDao.setIndexed(true);
+        m_fsResourceStorageDao.setWatched(true);
+        m_fsResourceStorageDao.afterPropertiesSet();
+        waitFor(m_fsResourceStorageDao::isIndexReady);
+
+        File subFolder = new File(folder, "b");
+        subFolder.mkdir();
+        File rrd = new File(subFolder, "ds" + m_rrdFileExtension);
+        rrd.createNewFile();
+        waitFor(() -> m_fsResourceStorageDao.exists(ResourcePath.get("a", "b"), 0));
+
+        rrd.delete();
+        waitFor(() -> !m_fsResourceStorageDao.exists(ResourcePath.get("a", "b"), 0));
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 30000;
+        while (!condition.getAsBoolean()) {
+            assertTrue("Timed out waiting for the condition", System.currentTimeMillis() < deadline);
+            Thread.sleep(50);
+        }
+    }
 }
@@ -35,6 +35,7 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.InputStream;
 import java.net.InetAddress;
@@ -322,6 +323,51 @@ public class JdbcFilterDaoIT implements InitializingBean {
         assertTrue("isValid should return true for non-empty rules", m_dao.isValid("1.1.1.1", ""));
     }
 
+    @Test
+    public void testResultCache() throws Exception {
+        final JdbcFilterDao dao;
+        System.setProperty(JdbcFilterDao.RESULT_CACHE_SYS_PROP, "true");
+        try {
+            dao = new JdbcFilterDao();
+        } finally {
+            System.clearProperty(JdbcFilterDao.RESULT_CACHE_SYS_PROP);
+        }
+        dao.setDataSource(m_dataSource);
+        dao.setDatabaseSchemaConfigFactory(DatabaseSchemaConfigFactory.getInstance());
+        dao.afterPropertiesSet();
+
+        final String rule = "ipaddr == '192.168.1.1'";
+        assertTrue(dao.isValid("192.168.1.1", rule));
+        assertFalse(dao.isValid("192.168.1.2", rule));
+        assertEquals(1, dao.getNodeMap(rule).size());
+        assertEquals(1, dao.getNodeMap(rule).size());
+        assertEquals(1, dao.getMetricRegistry().counter("results.nodeMap.hits").getCount());
+        assertEquals(1, dao.getMetricRegistry().counter("results.activeIpAddresses.hits").getCount());
+
+        // Callers cannot modify the cached node map
+        try {
+            dao.getNodeMap(rule).clear();
+            fail("The cached node map should not be modifiable");
+        } catch (UnsupportedOperationException e) {
+        }
+        assertEquals(1, dao.getNodeMap(rule).size());
+
+        m_transTemplate.execute(new TransactionCallbackWithoutResult() {
+            @Override
+            public void doInTransactionWithoutResult(TransactionStatus status) {
+                final OnmsIpInterface iface = m_interfaceDao.findByIpAddress("192.168.1.1").get(0);
+                iface.setIsManaged("D");
+                m_interfaceDao.save(iface);
+                m_interfaceDao.flush();
+            }
+        });
+
+        // The cached results are used until the cache is flushed
+        assertTrue(dao.isValid("192.168.1.1", rule));
+        dao.flushResultCache();
+        assertFalse(dao.isValid("192.168.1.1", rule));
+    }
+
     @Test
     public void testGetInterfaceWithServiceStatement() throws Exception {
         assertEquals("SQL from getInterfaceWithServiceStatement", "SELECT DISTINCT ipInterface.ipAddr, service.serviceName, node.nodeID FROM ipInterface JOIN ifServices ON (ipInterface.id = ifServices.ipInterfaceId) JOIN service ON (ifServices.serviceID = service.serviceID) JOIN node ON (ipInterface.nodeID = node.nodeID) WHERE IPLIKE(ipInterface.ipaddr, '*.*.*.*')", m_dao.getInterfaceWithServiceStatement("ipaddr IPLIKE *.*.*.*"));
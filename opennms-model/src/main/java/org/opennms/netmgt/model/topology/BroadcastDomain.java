@@ -398,6 +398,9 @@ E:    	for (BridgeElement element: bridgeelements) {
             portifindexmap.put(bridgeport, bridgeportifIndex);
 
         }
+        // the port towards a segment only depends on its designated bridge
+        // when that is not the bridge itself: walk up once per designated bridge
+        Map<Integer,Integer> upPorts = new HashMap<Integer, Integer>();
         synchronized (m_topology) {
             for (SharedSegment segment: m_topology) {
                 
@@ -405,7 +408,16 @@ E:    	for (BridgeElement element: bridgeelements) {
                 
                 if (macs == null || macs.isEmpty())
                     continue;
-                Integer bridgeport = goUp(segment,bridge,0);
+                Integer designatedBridgeId = segment.getDesignatedBridge();
+                Integer bridgeport;
+                if (designatedBridgeId.intValue() == bridgeId.intValue()) {
+                    bridgeport = goUp(segment,bridge,0);
+                } else if (upPorts.containsKey(designatedBridgeId)) {
+                    bridgeport = upPorts.get(designatedBridgeId);
+                } else {
+                    bridgeport = goUp(segment,bridge,0);
+                    upPorts.put(designatedBridgeId, bridgeport);
+                }
                 if (!bft.containsKey(bridgeport))
                     bft.put(bridgeport, new HashSet<String>());
                 bft.get(bridgeport).addAll(macs);
@@ -46,6 +46,8 @@ import org.opennms.netmgt.provision.service.lifecycle.annotations.Activity;
 import org.opennms.netmgt.provision.service.lifecycle.annotations.ActivityProvider;
 import org.opennms.netmgt.provision.service.operations.ImportOperation;
 import org.opennms.netmgt.provision.service.operations.ImportOperationsManager;
+import org.opennms.netmgt.provision.service.operations.NoOpProvisionMonitor;
+import org.opennms.netmgt.provision.service.operations.ProvisionMonitor;
 import org.opennms.netmgt.provision.service.operations.RequisitionImport;
 import org.springframework.core.io.Resource;
 
@@ -58,6 +60,15 @@ import org.springframework.core.io.Resource;
 @ActivityProvider
 public class CoreImportActivities {
     private static final Logger LOG = LoggerFactory.getLogger(CoreImportActivities.class);
+
+    private static final ProvisionMonitor NO_OP_MONITOR = new NoOpProvisionMonitor();
+
+    /**
+     * Number of operations of the same type persisted together in a single
+     * transaction. The default of 1 keeps the historical node-at-a-time
+     * behaviour.
+     */
+    private static final int IMPORT_BATCH_SIZE = Integer.getInteger("org.opennms.provisiond.importBatchSize", 1);
     
     private final ProvisionService m_provisionService;
     
@@ -66,23 +77,26 @@ public class CoreImportActivities {
     }
 
     @Activity( lifecycle = "import", phase = "validate", schedulingHint="import")
-    public RequisitionImport loadSpecFile(final Resource resource) {
+    public RequisitionImport loadSpecFile(final Resource resource, final ProvisionMonitor monitor) {
         final RequisitionImport ri = new RequisitionImport();
 
         info("Loading requisition from resource {}", resource);
+        monitor(monitor).beginLoadingResource(resource);
         try {
             final Requisition specFile = m_provisionService.loadRequisition(resource);
             ri.setRequisition(specFile);
             debug("Finished loading requisition.");
         } catch (final Throwable t) {
             ri.abort(t);
+        } finally {
+            monitor(monitor).finishLoadingResource(resource);
         }
 
         return ri;
     }
     
     @Activity( lifecycle = "import", phase = "audit", schedulingHint="import" )
-    public ImportOperationsManager auditNodes(final RequisitionImport ri, final String rescanExisting) {
+    public ImportOperationsManager auditNodes(final RequisitionImport ri, final String rescanExisting, final ProvisionMonitor monitor) {
         if (ri.isAborted()) {
             info("The import has been aborted, skipping audit phase import.");
             return null;
@@ -92,6 +106,7 @@ public class CoreImportActivities {
 
         info("Auditing nodes for requisition {}. The parameter {} was set to {} during import.", specFile, EventConstants.PARM_IMPORT_RESCAN_EXISTING, rescanExisting);
 
+        monitor(monitor).beginAuditNodes();
         final String foreignSource = specFile.getForeignSource();
         final Map<String, Integer> foreignIdsToNodes = m_provisionService.getForeignIdToNodeIdMap(foreignSource);
 
@@ -99,6 +114,7 @@ public class CoreImportActivities {
         
         opsMgr.setForeignSource(foreignSource);
         opsMgr.auditNodes(specFile);
+        monitor(monitor).finishAuditNodes();
 
         debug("Finished auditing nodes.");
         
@@ -106,7 +122,7 @@ public class CoreImportActivities {
     }
     
     @Activity( lifecycle = "import", phase = "scan", schedulingHint="import" )
-    public static void scanNodes(final Phase currentPhase, final ImportOperationsManager opsMgr, final RequisitionImport ri, final String rescanExisting) {
+    public static void scanNodes(final Phase currentPhase, final ImportOperationsManager opsMgr, final RequisitionImport ri, final String rescanExisting, final ProvisionMonitor monitor) {
         if (ri.isAborted()) {
             info("The import has been aborted, skipping scan phase import.");
             return;
@@ -114,7 +130,10 @@ public class CoreImportActivities {
 
         info("Scheduling nodes for phase {}", currentPhase);
         
-        final Collection<ImportOperation> operations = opsMgr.getOperations();
+        monitor(monitor).beginProcessingOps(opsMgr.getDeleteCount(), opsMgr.getUpdateCount(), opsMgr.getInsertCount());
+        monitor(monitor).beginPreprocessingOps();
+
+        final Collection<ImportOperation> operations = IMPORT_BATCH_SIZE > 1 ? opsMgr.getOperationBatches(IMPORT_BATCH_SIZE) : opsMgr.getOperations();
         
         for(final ImportOperation op : operations) {
             final LifeCycleInstance nodeScan = currentPhase.createNestedLifeCycle("nodeImport");
@@ -124,6 +143,7 @@ public class CoreImportActivities {
             nodeScan.setAttribute("operation", op);
             nodeScan.setAttribute("requisitionImport", ri);
             nodeScan.setAttribute("rescanExisting", rescanExisting);
+            nodeScan.setAttribute("monitor", monitor);
             nodeScan.trigger();
         }
 
@@ -132,7 +152,7 @@ public class CoreImportActivities {
     
     
     @Activity( lifecycle = "nodeImport", phase = "scan", schedulingHint="import" )
-    public static void scanNode(final ImportOperation operation, final RequisitionImport ri, final String rescanExisting) {
+    public static void scanNode(final ImportOperation operation, final RequisitionImport ri, final String rescanExisting, final ProvisionMonitor monitor) {
         if (ri.isAborted()) {
             info("The import has been aborted, skipping scan phase nodeImport.");
             return;
@@ -140,7 +160,9 @@ public class CoreImportActivities {
 
         if (rescanExisting == null || Boolean.valueOf(rescanExisting)) {
             info("Running scan phase of {}, the parameter {} was set to {} during import.", operation, EventConstants.PARM_IMPORT_RESCAN_EXISTING, rescanExisting);
+            monitor(monitor).beginPreprocessing(operation);
             operation.scan();
+            monitor(monitor).finishPreprocessing(operation);
     
             info("Finished Running scan phase of {}", operation);
         } else {
@@ -149,25 +171,33 @@ public class CoreImportActivities {
     }
     
     @Activity( lifecycle = "nodeImport", phase = "persist" , schedulingHint = "import" )
-    public static void persistNode(final ImportOperation operation, final RequisitionImport ri) {
+    public static void persistNode(final ImportOperation operation, final RequisitionImport ri, final ProvisionMonitor monitor) {
         if (ri.isAborted()) {
             info("The import has been aborted, skipping persist phase.");
             return;
         }
 
         info("Running persist phase of {}", operation);
+        monitor(monitor).beginPersisting(operation);
         operation.persist();
+        monitor(monitor).finishPersisting(operation);
         info("Finished Running persist phase of {}", operation);
 
     }
     
     @Activity( lifecycle = "import", phase = "relate" , schedulingHint = "import" )
-    public void relateNodes(final BatchTask currentPhase, final RequisitionImport ri) {
+    public void relateNodes(final BatchTask currentPhase, final RequisitionImport ri, final ProvisionMonitor monitor) {
+        // the scan phase has finished whether or not the import was aborted
+        monitor(monitor).finishPreprocessingOps();
+        monitor(monitor).finishProcessingOps();
+
         if (ri.isAborted()) {
             info("The import has been aborted, skipping relate phase.");
             return;
         }
 
+        monitor(monitor).beginRelateNodes();
+
         info("Running relate phase");
         
         final Requisition requisition = ri.getRequisition();
@@ -214,6 +244,10 @@ public class CoreImportActivities {
         }; 
     }
 
+    private static ProvisionMonitor monitor(final ProvisionMonitor monitor) {
+        return monitor == null ? NO_OP_MONITOR : monitor;
+    }
+
     protected static void info(String format, Object... args) {
     	LOG.info(format, args);
     }
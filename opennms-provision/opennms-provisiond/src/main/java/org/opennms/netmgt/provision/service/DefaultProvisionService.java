@@ -224,11 +224,26 @@ public class DefaultProvisionService implements ProvisionService, InitializingBe
     @Transactional
     @Override
     public void insertNode(final OnmsNode node) {
+        insertNode(node, m_eventForwarder);
+    }
+
+    /** {@inheritDoc} */
+    @Transactional
+    @Override
+    public void insertNodes(final List<OnmsNode> nodes) {
+        final EventAccumulator accumulator = new EventAccumulator(m_eventForwarder);
+        for (final OnmsNode node : nodes) {
+            insertNode(node, accumulator);
+        }
+        accumulator.flushAsLog();
+    }
+
+    private void insertNode(final OnmsNode node, final EventForwarder eventForwarder) {
         updateLocation(node);
         m_nodeDao.save(node);
         m_nodeDao.flush();
 
-        final EntityVisitor visitor = new AddEventVisitor(m_eventForwarder);
+        final EntityVisitor visitor = new AddEventVisitor(eventForwarder);
         node.visit(visitor);
     }
 
@@ -236,13 +251,28 @@ public class DefaultProvisionService implements ProvisionService, InitializingBe
     @Transactional
     @Override
     public void updateNode(final OnmsNode node, String rescanExisting) {
+        updateNode(node, rescanExisting, m_eventForwarder);
+    }
+
+    /** {@inheritDoc} */
+    @Transactional
+    @Override
+    public void updateNodes(final List<OnmsNode> nodes, final String rescanExisting) {
+        final EventAccumulator accumulator = new EventAccumulator(m_eventForwarder);
+        for (final OnmsNode node : nodes) {
+            updateNode(node, rescanExisting, accumulator);
+        }
+        accumulator.flushAsLog();
+    }
+
+    private void updateNode(final OnmsNode node, final String rescanExisting, final EventForwarder eventForwarder) {
         updateLocation(node);
         final OnmsNode dbNode = m_nodeDao.getHierarchy(node.getId());
 
         // on an update, leave categories alone, let the NodeScan handle applying requisitioned categories
         node.setCategories(dbNode.getCategories());
 
-        final EventAccumulator accumulator = new EventAccumulator(m_eventForwarder);
+        final EventAccumulator accumulator = new EventAccumulator(eventForwarder);
         dbNode.mergeNode(node, accumulator, false);
 
         updateNodeHostname(dbNode);
@@ -250,7 +280,7 @@ public class DefaultProvisionService implements ProvisionService, InitializingBe
         m_nodeDao.flush();
 
         accumulator.flush();
-        final EntityVisitor eventAccumlator = new UpdateEventVisitor(m_eventForwarder, rescanExisting);
+        final EntityVisitor eventAccumlator = new UpdateEventVisitor(eventForwarder, rescanExisting);
         dbNode.visit(eventAccumlator);
     }
 
@@ -300,11 +330,26 @@ public class DefaultProvisionService implements ProvisionService, InitializingBe
     @Transactional
     @Override
     public void deleteNode(final Integer nodeId) {
+        deleteNode(nodeId, m_eventForwarder);
+    }
+
+    /** {@inheritDoc} */
+    @Transactional
+    @Override
+    public void deleteNodes(final List<Integer> nodeIds) {
+        final EventAccumulator accumulator = new EventAccumulator(m_eventForwarder);
+        for (final Integer nodeId : nodeIds) {
+            deleteNode(nodeId, accumulator);
+        }
+        accumulator.flushAsLog();
+    }
+
+    private void deleteNode(final Integer nodeId, final EventForwarder eventForwarder) {
         LOG.debug("deleteNode: nodeId={}", nodeId);
 
         final OnmsNode node = m_nodeDao.get(nodeId);
         if (node != null) {
-            final DeleteEventVisitor visitor = new DeleteEventVisitor(m_eventForwarder);
+            final DeleteEventVisitor visitor = new DeleteEventVisitor(eventForwarder);
 
             m_nodeDao.delete(node);
             m_nodeDao.flush();
@@ -33,6 +33,7 @@ import java.util.concurrent.ConcurrentLinkedQueue;
 
 import org.opennms.netmgt.events.api.EventForwarder;
 import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.event.Events;
 import org.opennms.netmgt.xml.event.Log;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -88,4 +89,21 @@ final class EventAccumulator implements EventForwarder {
         LOG.debug("flush(): sent {} events: {}", i, m_events);
     }
 
+    /**
+     * Sends all of the accumulated events in a single {@link Log}.
+     */
+    public void flushAsLog() {
+        final Events events = new Events();
+        Event event;
+        while ((event = m_events.poll()) != null) {
+            events.addEvent(event);
+        }
+        if (events.getEventCount() > 0) {
+            final Log log = new Log();
+            log.setEvents(events);
+            m_eventForwarder.sendNow(log);
+        }
+        LOG.debug("flushAsLog(): sent {} events", events.getEventCount());
+    }
+
 }
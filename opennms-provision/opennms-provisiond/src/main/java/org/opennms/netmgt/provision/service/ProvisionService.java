@@ -98,6 +98,14 @@ public interface ProvisionService {
      */
     @Transactional
     void updateNode(OnmsNode node, String rescanExisting);
+
+    /**
+     * Update the given nodes in a single transaction, as {@link #updateNode(OnmsNode, String)}
+     * does for each one of them. The resulting events are sent together once all of the
+     * nodes have been written.
+     */
+    @Transactional
+    void updateNodes(List<OnmsNode> nodes, String rescanExisting);
     
     @Transactional
     OnmsNode updateNodeAttributes(OnmsNode node);
@@ -129,6 +137,13 @@ public interface ProvisionService {
     @Transactional
     void deleteNode(Integer nodeId);
 
+    /**
+     * Delete the indicated nodes from the database in a single transaction and send
+     * the resulting events together.
+     */
+    @Transactional
+    void deleteNodes(List<Integer> nodeIds);
+
     @Transactional
     void deleteInterface(Integer nodeId, String ipAddr);
 
@@ -141,6 +156,13 @@ public interface ProvisionService {
     @Transactional
     void insertNode(OnmsNode node);
 
+    /**
+     * Insert the provided nodes into the database in a single transaction and send
+     * the resulting events together.
+     */
+    @Transactional
+    void insertNodes(List<OnmsNode> nodes);
+
     /**
      * Look up the OnmsServiceType with the given name, creating one if it
      * doesn't exist.
@@ -31,6 +31,7 @@ package org.opennms.netmgt.provision.service;
 import java.util.List;
 
 import org.opennms.netmgt.provision.service.operations.ImportOperation;
+import org.opennms.netmgt.provision.service.operations.ImportOperationBatch;
 import org.opennms.netmgt.provision.service.operations.ProvisionMonitor;
 import org.opennms.netmgt.provision.service.operations.SaveOrUpdateOperation;
 import org.opennms.netmgt.xml.event.Event;
@@ -94,7 +95,7 @@ public class TimeTrackingMonitor implements ProvisionMonitor {
 	/** {@inheritDoc} */
         @Override
 	public void beginPreprocessing(ImportOperation oper) {
-		if (oper instanceof SaveOrUpdateOperation) {
+		if (oper instanceof SaveOrUpdateOperation || oper instanceof ImportOperationBatch) {
 			m_preprocessingEffort.begin();
 		}
 	}
@@ -102,8 +103,8 @@ public class TimeTrackingMonitor implements ProvisionMonitor {
 	/** {@inheritDoc} */
         @Override
 	public void finishPreprocessing(ImportOperation oper) {
-		if (oper instanceof SaveOrUpdateOperation) {
-			m_preprocessingEffort.end();
+		if (oper instanceof SaveOrUpdateOperation || oper instanceof ImportOperationBatch) {
+			m_preprocessingEffort.end(oper.getNodeCount());
 		}
 	}
 
@@ -117,7 +118,7 @@ public class TimeTrackingMonitor implements ProvisionMonitor {
 	/** {@inheritDoc} */
         @Override
 	public void finishPersisting(ImportOperation oper) {
-		m_processingEffort.end();
+		m_processingEffort.end(oper.getNodeCount());
 	}
 
 	/** {@inheritDoc} */
@@ -28,6 +28,7 @@
 
 package org.opennms.netmgt.provision.service;
 
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * <p>WorkEffort class.</p>
@@ -38,8 +39,8 @@ package org.opennms.netmgt.provision.service;
 public class WorkEffort {
 	
 	private String m_name;
-	private long m_totalTime;
-	private long m_sectionCount;
+	private final AtomicLong m_totalTime = new AtomicLong();
+	private final AtomicLong m_sectionCount = new AtomicLong();
 	private ThreadLocal<WorkDuration> m_pendingSection = new ThreadLocal<>();
 	
 	/**
@@ -64,9 +65,22 @@ public class WorkEffort {
 	 * <p>end</p>
 	 */
 	public void end() {
+		end(1);
+	}
+
+	/**
+	 * Ends a section of work that covered the given number of nodes.
+	 *
+	 * @param nodeCount the number of nodes that were worked on
+	 */
+	public void end(int nodeCount) {
 		WorkDuration pending = m_pendingSection.get();
-		m_sectionCount++;
-		m_totalTime += pending.getLength();
+		if (pending == null) {
+			return;
+		}
+		m_pendingSection.remove();
+		m_sectionCount.addAndGet(nodeCount);
+		m_totalTime.addAndGet(pending.getLength());
 	}
 	
 	/**
@@ -75,7 +89,7 @@ public class WorkEffort {
 	 * @return a long.
 	 */
 	public long getTotalTime() {
-		return m_totalTime;
+		return m_totalTime.get();
 	}
 	
 	/**
@@ -87,10 +101,12 @@ public class WorkEffort {
 	public String toString() {
 		final StringBuilder buf = new StringBuilder();
 		buf.append("Total ").append(m_name).append(": ");
-		buf.append((double)m_totalTime/(double)1000L).append(" thread-seconds");
-		if (m_sectionCount > 0) {
+		final long totalTime = m_totalTime.get();
+		final long sectionCount = m_sectionCount.get();
+		buf.append((double)totalTime/(double)1000L).append(" thread-seconds");
+		if (sectionCount > 0) {
 			buf.append(" Avg ").append(m_name).append(": ");
-			buf.append((double)m_totalTime/(double)m_sectionCount).append(" ms per node");
+			buf.append((double)totalTime/(double)sectionCount).append(" ms per node");
 		}
 		return buf.toString();
 	}
@@ -28,6 +28,9 @@
 
 package org.opennms.netmgt.provision.service.operations;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.opennms.netmgt.provision.service.ProvisionService;
 
 public class DeleteOperation extends ImportOperation {
@@ -71,4 +74,13 @@ public class DeleteOperation extends ImportOperation {
         getProvisionService().deleteNode(m_nodeId);
     }
 
+    @Override
+    protected void doPersist(final List<ImportOperation> batch) {
+        final List<Integer> nodeIds = new ArrayList<>(batch.size());
+        for (final ImportOperation oper : batch) {
+            nodeIds.add(((DeleteOperation)oper).m_nodeId);
+        }
+        getProvisionService().deleteNodes(nodeIds);
+    }
+
 }
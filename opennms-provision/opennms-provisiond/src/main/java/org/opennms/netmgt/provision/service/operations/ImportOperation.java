@@ -28,6 +28,8 @@
 
 package org.opennms.netmgt.provision.service.operations;
 
+import java.util.List;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.opennms.netmgt.provision.service.ProvisionService;
@@ -66,6 +68,35 @@ public abstract class ImportOperation {
      */
     protected abstract void doPersist();
 
+    /**
+     * Persists a batch of operations of the same type as this one. By default
+     * they are persisted one after the other, subclasses write the whole batch
+     * in a single transaction where they can.
+     *
+     * @param batch operations of the same class as this one, including this one
+     */
+    protected void doPersist(final List<ImportOperation> batch) {
+        for (final ImportOperation oper : batch) {
+            oper.doPersist();
+        }
+    }
+
+    /**
+     * Called before an operation whose batch failed to persist is retried on its own.
+     */
+    protected void prepareRetry() {
+        // nothing to reset by default
+    }
+
+    /**
+     * <p>getNodeCount</p>
+     *
+     * @return the number of nodes affected by this operation
+     */
+    public int getNodeCount() {
+        return 1;
+    }
+
 
     /**
      * <p>persist</p>
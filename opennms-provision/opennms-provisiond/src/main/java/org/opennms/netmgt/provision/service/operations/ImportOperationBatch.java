@@ -0,0 +1,103 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.provision.service.operations;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.opennms.netmgt.provision.service.ProvisionService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A group of import operations of the same type that are scanned one after
+ * the other and persisted in a single transaction.
+ *
+ * If the batch fails to persist, e.g. because one of its nodes violates a
+ * constraint, the operations are retried one at a time so that only the
+ * offending node is lost, as it would have been without batching.
+ */
+public class ImportOperationBatch extends ImportOperation {
+    private static final Logger LOG = LoggerFactory.getLogger(ImportOperationBatch.class);
+
+    private final List<ImportOperation> m_operations;
+
+    /**
+     * <p>Constructor for ImportOperationBatch.</p>
+     *
+     * @param operations operations that are all of the same class
+     * @param provisionService a {@link org.opennms.netmgt.provision.service.ProvisionService} object.
+     */
+    public ImportOperationBatch(final List<ImportOperation> operations, final ProvisionService provisionService) {
+        super(provisionService);
+        if (operations.isEmpty()) {
+            throw new IllegalArgumentException("A batch requires at least one operation");
+        }
+        m_operations = Collections.unmodifiableList(operations);
+    }
+
+    public List<ImportOperation> getOperations() {
+        return m_operations;
+    }
+
+    @Override
+    public int getNodeCount() {
+        return m_operations.size();
+    }
+
+    @Override
+    public void scan() {
+        for (final ImportOperation oper : m_operations) {
+            oper.scan();
+        }
+    }
+
+    @Override
+    protected void doPersist() {
+        try {
+            m_operations.get(0).doPersist(m_operations);
+        } catch (final RuntimeException e) {
+            LOG.warn("Failed to persist {}, retrying its operations one at a time", this, e);
+            for (final ImportOperation oper : m_operations) {
+                try {
+                    oper.prepareRetry();
+                    oper.persist();
+                } catch (final RuntimeException retryException) {
+                    LOG.error("Failed to persist {}", oper, retryException);
+                }
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "BATCH: " + m_operations.size() + " operations, starting with " + m_operations.get(0);
+    }
+}
@@ -270,6 +270,32 @@ public class ImportOperationsManager {
     public Collection<ImportOperation> getOperations() {
         return Collections.list(new OperationIterator());
     }
+
+    /**
+     * Returns the operations grouped into batches of at most
+     * <code>batchSize</code> operations of the same type. Deletes still come
+     * before updates, and updates before inserts.
+     *
+     * @param batchSize the maximum number of operations per batch
+     * @return a {@link java.util.Collection} object.
+     */
+    public Collection<ImportOperation> getOperationBatches(final int batchSize) {
+        final List<ImportOperation> batches = new ArrayList<>();
+        List<ImportOperation> batch = new ArrayList<>(batchSize);
+        final Iterator<ImportOperation> it = new OperationIterator();
+        while (it.hasNext()) {
+            final ImportOperation oper = it.next();
+            if (!batch.isEmpty() && (batch.size() >= batchSize || batch.get(0).getClass() != oper.getClass())) {
+                batches.add(new ImportOperationBatch(batch, m_provisionService));
+                batch = new ArrayList<>(batchSize);
+            }
+            batch.add(oper);
+        }
+        if (!batch.isEmpty()) {
+            batches.add(new ImportOperationBatch(batch, m_provisionService));
+        }
+        return batches;
+    }
     
     @SuppressWarnings("unused")
     private Runnable sequence(final Executor pool, final Runnable a, final Runnable b) {
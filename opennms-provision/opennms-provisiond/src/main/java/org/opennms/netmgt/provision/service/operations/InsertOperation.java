@@ -28,6 +28,10 @@
 
 package org.opennms.netmgt.provision.service.operations;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import org.opennms.netmgt.model.OnmsNode;
 import org.opennms.netmgt.provision.service.ProvisionService;
 
 public class InsertOperation extends SaveOrUpdateOperation {
@@ -63,4 +67,19 @@ public class InsertOperation extends SaveOrUpdateOperation {
         getProvisionService().insertNode(getNode());
     }
 
+    @Override
+    protected void doPersist(final List<ImportOperation> batch) {
+        final List<OnmsNode> nodes = new ArrayList<>(batch.size());
+        for (final ImportOperation oper : batch) {
+            nodes.add(((InsertOperation)oper).getNode());
+        }
+        getProvisionService().insertNodes(nodes);
+    }
+
+    @Override
+    protected void prepareRetry() {
+        super.prepareRetry();
+        getNode().setId(null);
+    }
+
 }
@@ -28,6 +28,8 @@
 
 package org.opennms.netmgt.provision.service.operations;
 
+import java.util.List;
+
 import org.opennms.netmgt.provision.service.ProvisionService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -44,4 +46,9 @@ public class NullUpdateOperation extends UpdateOperation {
     protected void doPersist() {
         LOG.debug("Skipping persist for node {}: rescanExisting is false", getNode());
     }
+
+    @Override
+    protected void doPersist(final List<ImportOperation> batch) {
+        LOG.debug("Skipping persist for {} nodes: rescanExisting is false", batch.size());
+    }
 }
\ No newline at end of file
@@ -39,6 +39,7 @@ import org.opennms.netmgt.model.OnmsNode;
 import org.opennms.netmgt.model.OnmsNode.NodeLabelSource;
 import org.opennms.netmgt.model.OnmsNode.NodeType;
 import org.opennms.netmgt.model.OnmsServiceType;
+import org.opennms.netmgt.model.OnmsSnmpInterface;
 import org.opennms.netmgt.model.PrimaryType;
 import org.opennms.netmgt.model.monitoringLocations.OnmsMonitoringLocation;
 import org.opennms.netmgt.provision.service.ProvisionService;
@@ -180,6 +181,25 @@ public abstract class SaveOrUpdateOperation extends ImportOperation {
         return m_node;
     }
 
+    /**
+     * Forgets the ids that Hibernate assigned to the interfaces and services of
+     * the node during a rolled back attempt to persist it, so that they are
+     * inserted again instead of being treated as existing rows.
+     */
+    @Override
+    protected void prepareRetry() {
+        for (final OnmsIpInterface iface : m_node.getIpInterfaces()) {
+            iface.setId(null);
+            for (final OnmsMonitoredService service : iface.getMonitoredServices()) {
+                service.setId(null);
+            }
+        }
+        for (final OnmsSnmpInterface snmpIface : m_node.getSnmpInterfaces()) {
+            snmpIface.setId(null);
+        }
+        m_node.getAssetRecord().setId(null);
+    }
+
     protected String getRescanExisting() {
         return m_rescanExisting;
     }
@@ -28,6 +28,10 @@
 
 package org.opennms.netmgt.provision.service.operations;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import org.opennms.netmgt.model.OnmsNode;
 import org.opennms.netmgt.provision.service.ProvisionService;
 
 public class UpdateOperation extends SaveOrUpdateOperation {
@@ -64,4 +68,13 @@ public class UpdateOperation extends SaveOrUpdateOperation {
     protected void doPersist() {
         getProvisionService().updateNode(getNode(), getRescanExisting());
     }
+
+    @Override
+    protected void doPersist(final List<ImportOperation> batch) {
+        final List<OnmsNode> nodes = new ArrayList<>(batch.size());
+        for (final ImportOperation oper : batch) {
+            nodes.add(((UpdateOperation)oper).getNode());
+        }
+        getProvisionService().updateNodes(nodes, getRescanExisting());
+    }
 }
@@ -29,6 +29,9 @@
 package org.opennms.netmgt.provision.service;
 
 import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import org.junit.Assert;
 
@@ -40,9 +43,15 @@ import org.opennms.core.spring.BeanUtils;
 import org.opennms.core.test.MockLogAppender;
 import org.opennms.core.test.OpenNMSJUnit4ClassRunner;
 import org.opennms.core.utils.url.GenericURLFactory;
+import org.opennms.netmgt.dao.api.NodeDao;
+import org.opennms.netmgt.dao.mock.EventAnticipator;
+import org.opennms.netmgt.dao.mock.MockEventIpcManager;
+import org.opennms.netmgt.events.api.EventConstants;
+import org.opennms.netmgt.model.OnmsNode;
 import org.opennms.netmgt.provision.persist.requisition.Requisition;
 import org.opennms.netmgt.provision.persist.requisition.RequisitionInterface;
 import org.opennms.netmgt.provision.persist.requisition.RequisitionNode;
+import org.opennms.netmgt.xml.event.Event;
 import org.opennms.test.JUnitConfigurationEnvironment;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -74,6 +83,12 @@ public class ProvisionServiceIT implements InitializingBean {
     @Autowired
     ProvisionService m_provService;
 
+    @Autowired
+    MockEventIpcManager m_mockEventIpcManager;
+
+    @Autowired
+    NodeDao m_nodeDao;
+
     /*
     *  A list of use cases/todos for a Provision Service
     * - provide a set of scanners to be called
@@ -269,4 +284,50 @@ public class ProvisionServiceIT implements InitializingBean {
 //            }
 //        }
     }
+
+    @Test
+    public void testInsertUpdateAndDeleteNodes() {
+        final EventAnticipator anticipator = m_mockEventIpcManager.getEventAnticipator();
+        anticipator.reset();
+
+        final OnmsNode node1 = createNode(null, "1", "node1");
+        final OnmsNode node2 = createNode(null, "2", "node2");
+
+        m_provService.insertNodes(Arrays.asList(node1, node2));
+        Assert.assertNotNull(node1.getId());
+        Assert.assertNotNull(node2.getId());
+        Assert.assertEquals("node1", m_nodeDao.get(node1.getId()).getLabel());
+        Assert.assertEquals("node2", m_nodeDao.get(node2.getId()).getLabel());
+        Assert.assertEquals(Arrays.asList(node1.getId(), node2.getId()), getNodeIds(anticipator, EventConstants.NODE_ADDED_EVENT_UEI));
+
+        anticipator.reset();
+        m_provService.updateNodes(Arrays.asList(createNode(node1.getId(), "1", "node1-renamed"), createNode(node2.getId(), "2", "node2-renamed")), Boolean.FALSE.toString());
+        Assert.assertEquals("node1-renamed", m_nodeDao.get(node1.getId()).getLabel());
+        Assert.assertEquals("node2-renamed", m_nodeDao.get(node2.getId()).getLabel());
+        Assert.assertEquals(Arrays.asList(node1.getId(), node2.getId()), getNodeIds(anticipator, EventConstants.NODE_UPDATED_EVENT_UEI));
+
+        anticipator.reset();
+        m_provService.deleteNodes(Arrays.asList(node1.getId(), node2.getId()));
+        Assert.assertNull(m_nodeDao.get(node1.getId()));
+        Assert.assertNull(m_nodeDao.get(node2.getId()));
+        Assert.assertEquals(Arrays.asList(node1.getId(), node2.getId()), getNodeIds(anticipator, EventConstants.NODE_DELETED_EVENT_UEI));
+    }
+
+    private static OnmsNode createNode(final Integer nodeId, final String foreignId, final String label) {
+        final OnmsNode node = new OnmsNode(null, label);
+        node.setId(nodeId);
+        node.setForeignSource("batch");
+        node.setForeignId(foreignId);
+        return node;
+    }
+
+    private static List<Integer> getNodeIds(final EventAnticipator anticipator, final String uei) {
+        final List<Integer> nodeIds = new ArrayList<>();
+        for (final Event e : anticipator.getUnanticipatedEvents()) {
+            if (uei.equals(e.getUei())) {
+                nodeIds.add(e.getNodeid().intValue());
+            }
+        }
+        return nodeIds;
+    }
 }
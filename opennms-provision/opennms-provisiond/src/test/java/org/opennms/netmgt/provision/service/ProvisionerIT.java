@@ -460,6 +460,22 @@ public class ProvisionerIT extends ProvisioningITCase implements InitializingBea
 
     }
 
+    @Test(timeout=300000)
+    public void testImportReportsTimings() throws Exception {
+        final TimeTrackingMonitor monitor = new TimeTrackingMonitor();
+        m_provisioner.importModelFromResource(m_resourceLoader.getResource("classpath:/import_localhost.xml"), Boolean.TRUE.toString(), monitor);
+        waitForImport();
+
+        assertEquals(1, getNodeDao().countAll());
+
+        // every phase of the import lifecycle must have reported to the monitor
+        final String stats = monitor.toString();
+        assertTrue(stats, stats.startsWith("Deletes: 0, Updates: 0, Inserts: 1\n"));
+        assertFalse(stats, stats.contains("has not begun"));
+        assertTrue(stats, stats.contains("Avg Scan Effort: "));
+        assertTrue(stats, stats.contains("Avg Write Effort: "));
+    }
+
     @Test(timeout=300000)
     public void testFindQuery() throws Exception {
         importFromResource("classpath:/tec_dump.xml.smalltest", Boolean.TRUE.toString());
@@ -0,0 +1,93 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.provision.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+public class WorkEffortTest {
+
+    @Test
+    public void countsEveryNodeOfASection() throws Exception {
+        final WorkEffort effort = new WorkEffort("Write Effort");
+
+        effort.begin();
+        Thread.sleep(40);
+        effort.end(4);
+
+        final long totalTime = effort.getTotalTime();
+        assertTrue(totalTime >= 40);
+        assertTrue(effort.toString(), effort.toString().endsWith(" Avg Write Effort: " + (totalTime / 4d) + " ms per node"));
+    }
+
+    @Test
+    public void endWithoutBeginIsIgnored() {
+        final WorkEffort effort = new WorkEffort("Write Effort");
+
+        effort.end(10);
+
+        assertEquals(0, effort.getTotalTime());
+        assertFalse(effort.toString(), effort.toString().contains("Avg"));
+    }
+
+    @Test
+    public void tracksSectionsPerThread() throws Exception {
+        final WorkEffort effort = new WorkEffort("Scan Effort");
+        final CountDownLatch begun = new CountDownLatch(1);
+        final CountDownLatch ended = new CountDownLatch(1);
+
+        effort.begin();
+        final Thread other = new Thread(() -> {
+            effort.begin();
+            begun.countDown();
+            try {
+                ended.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            effort.end(2);
+        });
+        other.start();
+        begun.await();
+
+        // ending this thread's section must not end the other one
+        effort.end(3);
+        effort.end(3);
+        ended.countDown();
+        other.join();
+
+        final long totalTime = effort.getTotalTime();
+        assertTrue(effort.toString(), effort.toString().endsWith(" Avg Scan Effort: " + (totalTime / 5d) + " ms per node"));
+    }
+}
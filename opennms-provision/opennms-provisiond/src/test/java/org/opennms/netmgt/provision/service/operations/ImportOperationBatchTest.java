@@ -0,0 +1,189 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.provision.service.operations;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.getCurrentArguments;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.same;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.netmgt.model.OnmsIpInterface;
+import org.opennms.netmgt.model.OnmsNode;
+import org.opennms.netmgt.provision.service.ProvisionService;
+
+public class ImportOperationBatchTest {
+
+    private ProvisionService m_provisionService;
+
+    @Before
+    public void setUp() {
+        m_provisionService = createMock(ProvisionService.class);
+        m_provisionService.clearCache();
+        expectLastCall().anyTimes();
+    }
+
+    @Test
+    public void persistsTheWholeBatchAtOnce() {
+        final List<ImportOperation> inserts = createInserts(3);
+
+        m_provisionService.insertNodes(anyObject());
+        expectLastCall().andAnswer(() -> {
+            assertSameNodes(nodesOf(inserts), getCurrentArguments()[0]);
+            return null;
+        });
+        replay(m_provisionService);
+
+        new ImportOperationBatch(inserts, m_provisionService).persist();
+
+        verify(m_provisionService);
+    }
+
+    @Test
+    public void persistsOneAtATimeWhenTheBatchFails() {
+        final List<ImportOperation> inserts = createInserts(3);
+        final List<OnmsNode> nodes = nodesOf(inserts);
+
+        // Hibernate assigns ids before the transaction is rolled back
+        m_provisionService.insertNodes(anyObject());
+        expectLastCall().andAnswer(() -> {
+            assertSameNodes(nodes, getCurrentArguments()[0]);
+            int id = 1;
+            for (final OnmsNode node : nodes) {
+                node.setId(id);
+                node.getAssetRecord().setId(id);
+                for (final OnmsIpInterface iface : node.getIpInterfaces()) {
+                    iface.setId(id);
+                }
+                id++;
+            }
+            throw new IllegalStateException("constraint violation");
+        });
+
+        // The retries must look like fresh inserts again
+        for (final OnmsNode node : nodes) {
+            m_provisionService.insertNode(same(node));
+            expectLastCall().andAnswer(() -> {
+                final OnmsNode retried = (OnmsNode)getCurrentArguments()[0];
+                assertNull(retried.getId());
+                assertNull(retried.getAssetRecord().getId());
+                for (final OnmsIpInterface iface : retried.getIpInterfaces()) {
+                    assertNull(iface.getId());
+                }
+                if ("node2".equals(retried.getLabel())) {
+                    throw new IllegalStateException("still a constraint violation");
+                }
+                return null;
+            });
+        }
+        replay(m_provisionService);
+
+        // a node that still fails on its own must not stop the others
+        new ImportOperationBatch(inserts, m_provisionService).persist();
+
+        verify(m_provisionService);
+    }
+
+    @Test
+    public void persistsDeletesByNodeId() {
+        final List<ImportOperation> deletes = Arrays.<ImportOperation>asList(
+                new DeleteOperation(1, "test", "one", m_provisionService),
+                new DeleteOperation(2, "test", "two", m_provisionService));
+
+        m_provisionService.deleteNodes(eq(Arrays.asList(1, 2)));
+        expectLastCall().andThrow(new IllegalStateException("node is locked"));
+        m_provisionService.deleteNode(1);
+        m_provisionService.deleteNode(2);
+        replay(m_provisionService);
+
+        new ImportOperationBatch(deletes, m_provisionService).persist();
+
+        verify(m_provisionService);
+    }
+
+    @Test
+    public void persistsUpdatesWithRescanExisting() {
+        final List<ImportOperation> updates = new ArrayList<>();
+        for (int i = 1; i <= 2; i++) {
+            updates.add(new UpdateOperation(i, "test", "node" + i, "node" + i, null, null, null, m_provisionService, "dbonly"));
+        }
+
+        m_provisionService.updateNodes(anyObject(), eq("dbonly"));
+        replay(m_provisionService);
+
+        final ImportOperationBatch batch = new ImportOperationBatch(updates, m_provisionService);
+        assertEquals(2, batch.getNodeCount());
+        batch.persist();
+
+        verify(m_provisionService);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void rejectsEmptyBatches() {
+        new ImportOperationBatch(new ArrayList<ImportOperation>(), m_provisionService);
+    }
+
+    private List<ImportOperation> createInserts(final int count) {
+        final List<ImportOperation> inserts = new ArrayList<>();
+        for (int i = 1; i <= count; i++) {
+            final InsertOperation insert = new InsertOperation("test", "node" + i, "node" + i, null, null, null, m_provisionService);
+            new OnmsIpInterface("192.0.2." + i, insert.getNode());
+            inserts.add(insert);
+        }
+        return inserts;
+    }
+
+    private static void assertSameNodes(final List<OnmsNode> expected, final Object actual) {
+        final List<?> nodes = (List<?>)actual;
+        assertEquals(expected.size(), nodes.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertSame(expected.get(i), nodes.get(i));
+        }
+    }
+
+    private static List<OnmsNode> nodesOf(final List<ImportOperation> operations) {
+        final List<OnmsNode> nodes = new ArrayList<>();
+        for (final ImportOperation oper : operations) {
+            nodes.add(((SaveOrUpdateOperation)oper).getNode());
+        }
+        return nodes;
+    }
+}
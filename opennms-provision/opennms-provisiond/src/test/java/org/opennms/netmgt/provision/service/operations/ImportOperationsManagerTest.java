@@ -0,0 +1,117 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.provision.service.operations;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class ImportOperationsManagerTest {
+
+    @Test
+    public void batchesDeletesThenUpdatesThenInserts() {
+        final ImportOperationsManager opsMgr = createOperationsManager(Boolean.TRUE.toString());
+
+        final List<ImportOperation> batches = new ArrayList<>(opsMgr.getOperationBatches(2));
+
+        assertEquals(5, batches.size());
+        assertBatch(batches.get(0), DeleteOperation.class, 2);
+        assertBatch(batches.get(1), DeleteOperation.class, 1);
+        assertBatch(batches.get(2), UpdateOperation.class, 2);
+        assertBatch(batches.get(3), InsertOperation.class, 2);
+        assertBatch(batches.get(4), InsertOperation.class, 1);
+    }
+
+    @Test
+    public void batchesContainTheSameOperationsInTheSameOrder() {
+        final List<ImportOperation> operations = new ArrayList<>(createOperationsManager(Boolean.TRUE.toString()).getOperations());
+        final List<ImportOperation> batched = new ArrayList<>();
+        for (final ImportOperation batch : createOperationsManager(Boolean.TRUE.toString()).getOperationBatches(2)) {
+            batched.addAll(((ImportOperationBatch)batch).getOperations());
+        }
+
+        assertEquals(operations.size(), batched.size());
+        for (int i = 0; i < operations.size(); i++) {
+            assertEquals(operations.get(i).toString(), batched.get(i).toString());
+        }
+    }
+
+    @Test
+    public void doesNotMixOperationsOfDifferentTypes() {
+        final ImportOperationsManager opsMgr = createOperationsManager(Boolean.FALSE.toString());
+
+        final List<ImportOperation> batches = new ArrayList<>(opsMgr.getOperationBatches(10));
+
+        assertEquals(3, batches.size());
+        assertBatch(batches.get(0), DeleteOperation.class, 3);
+        assertBatch(batches.get(1), NullUpdateOperation.class, 2);
+        assertBatch(batches.get(2), InsertOperation.class, 3);
+        assertEquals(8, batches.get(0).getNodeCount() + batches.get(1).getNodeCount() + batches.get(2).getNodeCount());
+    }
+
+    @Test
+    public void returnsNoBatchesWithoutOperations() {
+        final ImportOperationsManager opsMgr = new ImportOperationsManager(new LinkedHashMap<String, Integer>(), null, Boolean.TRUE.toString());
+        assertEquals(0, opsMgr.getOperationBatches(10).size());
+    }
+
+    /**
+     * Creates a manager with 3 nodes to delete, 2 to update and 3 to insert.
+     */
+    private static ImportOperationsManager createOperationsManager(final String rescanExisting) {
+        final Map<String, Integer> foreignIdToNodeId = new LinkedHashMap<>();
+        for (int i = 1; i <= 5; i++) {
+            foreignIdToNodeId.put("existing" + i, i);
+        }
+
+        final ImportOperationsManager opsMgr = new ImportOperationsManager(foreignIdToNodeId, null, rescanExisting);
+        opsMgr.setForeignSource("test");
+        opsMgr.foundNode("new1", "new1", null, null, null);
+        opsMgr.foundNode("existing2", "existing2", null, null, null);
+        opsMgr.foundNode("new2", "new2", null, null, null);
+        opsMgr.foundNode("existing4", "existing4", null, null, null);
+        opsMgr.foundNode("new3", "new3", null, null, null);
+        return opsMgr;
+    }
+
+    private static void assertBatch(final ImportOperation batch, final Class<? extends ImportOperation> operationClass, final int size) {
+        final List<ImportOperation> operations = ((ImportOperationBatch)batch).getOperations();
+        assertEquals(size, operations.size());
+        assertEquals(size, batch.getNodeCount());
+        for (final ImportOperation oper : operations) {
+            assertSame(operationClass, oper.getClass());
+        }
+    }
+}
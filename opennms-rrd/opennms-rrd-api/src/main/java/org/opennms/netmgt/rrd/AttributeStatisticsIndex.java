@@ -0,0 +1,598 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.rrd;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.util.Assert;
+
+/**
+ * Keeps hourly and daily rollups (sample count, sum, minimum, maximum and last
+ * value) of every data source written to an RRD file, so that statistics
+ * reports can rank resources without opening and consolidating every file.
+ *
+ * Samples are aggregated in memory for the current hour. Once an hour is over
+ * its rollups are written to one file per data source name and hour, and at
+ * the end of each day the hourly files of that day are merged into a daily
+ * file. Every file stores the relative paths of the RRD files first, followed
+ * by one column per aggregate.
+ *
+ * The hour in which the index was started is incomplete and is never written.
+ * Windows that are not aligned to hours, or that include an hour the index
+ * holds nothing for, are not answered and callers are expected to fall back
+ * to reading the RRD files.
+ */
+public class AttributeStatisticsIndex implements InitializingBean, DisposableBean {
+    private static final Logger LOG = LoggerFactory.getLogger(AttributeStatisticsIndex.class);
+
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+
+    private static final int MAGIC = 0x4f4e4d53;
+    private static final int VERSION = 1;
+    private static final String HOUR_SUFFIX = ".hour";
+    private static final String DAY_SUFFIX = ".day";
+
+    private enum Consolidation {
+        AVERAGE, MIN, MAX, LAST
+    }
+
+    private boolean m_enabled = false;
+    private File m_rrdBaseDirectory;
+    private File m_directory;
+    private long m_gracePeriod = TimeUnit.MINUTES.toMillis(5);
+    private int m_hourlyRetention = 7;
+    private int m_dailyRetention = 400;
+    private ZoneId m_zone = ZoneId.systemDefault();
+
+    private Path m_rrdBasePath;
+    private ScheduledExecutorService m_executor;
+
+    /**
+     * The series by data source name and RRD file path, as passed to record().
+     */
+    private final ConcurrentMap<String, ConcurrentMap<String, Series>> m_series = new ConcurrentHashMap<>();
+    private final AtomicLong m_startHour = new AtomicLong(-1);
+    private volatile long m_lastFlushedHour = -1;
+
+    @Override
+    public void afterPropertiesSet() {
+        if (!m_enabled) {
+            return;
+        }
+        Assert.state(m_rrdBaseDirectory != null, "property rrdBaseDirectory must be set to a non-null value");
+        Assert.state(m_directory != null, "property directory must be set to a non-null value");
+
+        m_rrdBasePath = m_rrdBaseDirectory.toPath().toAbsolutePath().normalize();
+        if (!m_directory.isDirectory() && !m_directory.mkdirs()) {
+            LOG.warn("Could not create the statistics index directory {}, disabling the index.", m_directory);
+            m_enabled = false;
+            return;
+        }
+
+        m_executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread thread = new Thread(r, "AttributeStatisticsIndex-Rollup");
+            thread.setDaemon(true);
+            return thread;
+        });
+        m_executor.scheduleWithFixedDelay(() -> {
+            try {
+                rollup(System.currentTimeMillis());
+            } catch (final Throwable t) {
+                LOG.warn("Failed to roll up attribute statistics.", t);
+            }
+        }, 1, 1, TimeUnit.MINUTES);
+    }
+
+    @Override
+    public void destroy() {
+        if (m_executor != null) {
+            m_executor.shutdownNow();
+        }
+    }
+
+    public boolean isEnabled() {
+        return m_enabled;
+    }
+
+    /**
+     * Records a value that was written to an RRD file. Counter values are
+     * turned into rates per second like RRD does.
+     *
+     * @param rrdFile the RRD file the value was written to
+     * @param attribute the name of the data source
+     * @param type the type of the data source
+     * @param timestamp the time of the sample in milliseconds
+     * @param value the value of the sample
+     */
+    public void record(final File rrdFile, final String attribute, final RrdAttributeType type, final long timestamp, final double value) {
+        if (!m_enabled || !Double.isFinite(value)) {
+            return;
+        }
+
+        final Series series = m_series.computeIfAbsent(attribute, a -> new ConcurrentHashMap<>())
+                .computeIfAbsent(rrdFile.getPath(), p -> new Series(getKey(rrdFile)));
+        if (series.m_key == null) {
+            series.touch(timestamp);
+            return;
+        }
+
+        final long hour = timestamp / HOUR;
+        m_startHour.compareAndSet(-1, hour);
+
+        series.record(hour, timestamp, value, type == RrdAttributeType.COUNTER, hour > m_lastFlushedHour);
+    }
+
+    /**
+     * Returns the key of an RRD file, or null if it is not below the RRD base
+     * directory.
+     */
+    private String getKey(final File rrdFile) {
+        final Path path = rrdFile.toPath().toAbsolutePath().normalize();
+        if (!path.startsWith(m_rrdBasePath)) {
+            LOG.debug("Not recording statistics for {}, it is not below {}", rrdFile, m_rrdBaseDirectory);
+            return null;
+        }
+        return toKey(m_rrdBasePath.relativize(path).toString());
+    }
+
+    /**
+     * Consolidates the values of every RRD file holding the given data source
+     * over the given window.
+     *
+     * @param attribute the name of the data source
+     * @param start the start of the window in milliseconds, inclusive
+     * @param end the end of the window in milliseconds, exclusive
+     * @param consolidationFunction one of AVERAGE, MIN, MAX or LAST
+     * @return the consolidated values by RRD file path relative to the RRD base
+     *         directory (see {@link #toKey(String)}), or null if the index
+     *         cannot answer for this window
+     */
+    public Map<String, Double> getStatistics(final String attribute, final long start, final long end, final String consolidationFunction) {
+        if (!m_enabled || start >= end || start % HOUR != 0 || end % HOUR != 0) {
+            return null;
+        }
+
+        final Consolidation consolidation;
+        try {
+            consolidation = Consolidation.valueOf(consolidationFunction.toUpperCase());
+        } catch (final IllegalArgumentException e) {
+            return null;
+        }
+
+        final File directory = getAttributeDirectory(attribute);
+        final Map<String, Rollup> rollups = new HashMap<>();
+        try {
+            final long endHour = end / HOUR;
+            long hour = start / HOUR;
+            while (hour < endHour) {
+                final LocalDate day = getDay(hour);
+                final long nextDay = getFirstHour(day.plusDays(1));
+                final File dayFile = new File(directory, day + DAY_SUFFIX);
+                if (hour == getFirstHour(day) && nextDay <= endHour && dayFile.canRead()) {
+                    read(dayFile, rollups);
+                    hour = nextDay;
+                    continue;
+                }
+
+                final File hourFile = new File(directory, hour + HOUR_SUFFIX);
+                if (!hourFile.canRead()) {
+                    LOG.debug("No statistics for {} in the hour starting at {}", attribute, Instant.ofEpochMilli(hour * HOUR));
+                    return null;
+                }
+                read(hourFile, rollups);
+                hour++;
+            }
+        } catch (final IOException e) {
+            LOG.warn("Failed to read statistics for {}", attribute, e);
+            return null;
+        }
+
+        final Map<String, Double> statistics = new HashMap<>(rollups.size() * 4 / 3 + 1);
+        rollups.forEach((path, rollup) -> statistics.put(path, rollup.getValue(consolidation)));
+        return statistics;
+    }
+
+    /**
+     * Returns the key used by {@link #getStatistics(String, long, long, String)}
+     * for an RRD file path relative to the RRD base directory.
+     */
+    public static String toKey(final String relativePath) {
+        return relativePath.replace(File.separatorChar, '/');
+    }
+
+    /**
+     * Writes the rollups of every hour that ended more than the grace period
+     * before the given time, merges the hourly files of days that are over
+     * and removes files that are past their retention.
+     */
+    protected synchronized void rollup(final long now) {
+        final long startHour = m_startHour.get();
+        if (!m_enabled || startHour < 0) {
+            return;
+        }
+
+        final long lastCompleteHour = (now - m_gracePeriod) / HOUR - 1;
+        for (long hour = Math.max(m_lastFlushedHour + 1, startHour); hour <= lastCompleteHour; hour++) {
+            m_lastFlushedHour = hour;
+            final long flushedHour = hour;
+            for (final Map.Entry<String, ConcurrentMap<String, Series>> entry : m_series.entrySet()) {
+                final Map<String, Rollup> rollups = new HashMap<>();
+                entry.getValue().values().forEach(series -> {
+                    final Rollup rollup = series.take(flushedHour);
+                    if (rollup != null) {
+                        rollups.merge(series.m_key, rollup, Rollup::merge);
+                    }
+                });
+                if (hour == startHour || rollups.isEmpty()) {
+                    continue;
+                }
+                try {
+                    write(new File(getAttributeDirectory(entry.getKey()), hour + HOUR_SUFFIX), rollups);
+                } catch (final IOException e) {
+                    LOG.warn("Failed to write statistics for {}", entry.getKey(), e);
+                }
+            }
+
+            final LocalDate day = getDay(hour);
+            if (!getDay(hour + 1).equals(day)) {
+                mergeDay(day);
+                purge(day);
+            }
+        }
+
+        // Forget about the series that have not been updated for a day
+        final long idleSince = now - TimeUnit.DAYS.toMillis(1);
+        m_series.values().forEach(series -> series.values().removeIf(s -> s.isIdle(idleSince)));
+    }
+
+    private void mergeDay(final LocalDate day) {
+        final long firstHour = getFirstHour(day);
+        final long nextDay = getFirstHour(day.plusDays(1));
+        for (final File directory : listAttributeDirectories()) {
+            final Map<String, Rollup> rollups = new HashMap<>();
+            try {
+                for (long hour = firstHour; hour < nextDay; hour++) {
+                    final File hourFile = new File(directory, hour + HOUR_SUFFIX);
+                    if (!hourFile.canRead()) {
+                        LOG.debug("Not merging the statistics in {} for {}, the hour starting at {} is missing.", directory, day, Instant.ofEpochMilli(hour * HOUR));
+                        rollups.clear();
+                        break;
+                    }
+                    read(hourFile, rollups);
+                }
+                if (!rollups.isEmpty()) {
+                    write(new File(directory, day + DAY_SUFFIX), rollups);
+                }
+            } catch (final IOException e) {
+                LOG.warn("Failed to merge the statistics in {} for {}", directory, day, e);
+            }
+        }
+    }
+
+    private void purge(final LocalDate day) {
+        final long hourlyBefore = getFirstHour(day.plusDays(1).minusDays(m_hourlyRetention));
+        final LocalDate dailyBefore = day.minusDays(m_dailyRetention);
+        for (final File directory : listAttributeDirectories()) {
+            final File[] files = directory.listFiles();
+            if (files == null) {
+                continue;
+            }
+            for (final File file : files) {
+                final String name = file.getName();
+                try {
+                    if (name.endsWith(HOUR_SUFFIX) && Long.parseLong(name.substring(0, name.length() - HOUR_SUFFIX.length())) < hourlyBefore) {
+                        Files.delete(file.toPath());
+                    } else if (name.endsWith(DAY_SUFFIX) && LocalDate.parse(name.substring(0, name.length() - DAY_SUFFIX.length())).isBefore(dailyBefore)) {
+                        Files.delete(file.toPath());
+                    }
+                } catch (final RuntimeException | IOException e) {
+                    LOG.debug("Not removing {}", file, e);
+                }
+            }
+        }
+    }
+
+    private List<File> listAttributeDirectories() {
+        final List<File> directories = new ArrayList<>();
+        final File[] files = m_directory.listFiles();
+        if (files != null) {
+            for (final File file : files) {
+                if (file.isDirectory()) {
+                    directories.add(file);
+                }
+            }
+        }
+        return directories;
+    }
+
+    private File getAttributeDirectory(final String attribute) {
+        return new File(m_directory, attribute.replaceAll("[^A-Za-z0-9_.-]", "_"));
+    }
+
+    private LocalDate getDay(final long hour) {
+        return Instant.ofEpochMilli(hour * HOUR).atZone(m_zone).toLocalDate();
+    }
+
+    /*
+     * In time zones with an offset that is not a whole number of hours local
+     * days do not start on an hour, such windows are never answered by
+     * getStatistics() anyway.
+     */
+    private long getFirstHour(final LocalDate day) {
+        return day.atStartOfDay(m_zone).toInstant().toEpochMilli() / HOUR;
+    }
+
+    private static void write(final File file, final Map<String, Rollup> rollups) throws IOException {
+        final File directory = file.getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create directory " + directory);
+        }
+
+        final List<Map.Entry<String, Rollup>> entries = new ArrayList<>(rollups.entrySet());
+        final File tmpFile = new File(directory, file.getName() + ".tmp");
+        try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            for (final Map.Entry<String, Rollup> entry : entries) {
+                out.writeUTF(entry.getKey());
+            }
+            for (final Map.Entry<String, Rollup> entry : entries) {
+                out.writeInt(entry.getValue().m_count);
+            }
+            for (final Map.Entry<String, Rollup> entry : entries) {
+                out.writeDouble(entry.getValue().m_sum);
+            }
+            for (final Map.Entry<String, Rollup> entry : entries) {
+                out.writeDouble(entry.getValue().m_min);
+            }
+            for (final Map.Entry<String, Rollup> entry : entries) {
+                out.writeDouble(entry.getValue().m_max);
+            }
+            for (final Map.Entry<String, Rollup> entry : entries) {
+                out.writeDouble(entry.getValue().m_last);
+            }
+        }
+        Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Merges the rollups stored in the given file into the given map. Files
+     * must be read in chronological order for the last values to be right.
+     */
+    private static void read(final File file, final Map<String, Rollup> rollups) throws IOException {
+        try (final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a statistics index file: " + file);
+            }
+            final int size = in.readInt();
+            final String[] paths = new String[size];
+            for (int i = 0; i < size; i++) {
+                paths[i] = in.readUTF();
+            }
+            final int[] counts = new int[size];
+            for (int i = 0; i < size; i++) {
+                counts[i] = in.readInt();
+            }
+            final double[][] columns = new double[4][size];
+            for (final double[] column : columns) {
+                for (int i = 0; i < size; i++) {
+                    column[i] = in.readDouble();
+                }
+            }
+            for (int i = 0; i < size; i++) {
+                rollups.computeIfAbsent(paths[i], p -> new Rollup()).merge(counts[i], columns[0][i], columns[1][i], columns[2][i], columns[3][i]);
+            }
+        }
+    }
+
+    private static class Rollup {
+        private int m_count = 0;
+        private double m_sum = 0;
+        private double m_min = Double.POSITIVE_INFINITY;
+        private double m_max = Double.NEGATIVE_INFINITY;
+        private double m_last = Double.NaN;
+
+        private void add(final double value) {
+            merge(1, value, value, value, value);
+        }
+
+        private void merge(final int count, final double sum, final double min, final double max, final double last) {
+            m_count += count;
+            m_sum += sum;
+            m_min = Math.min(m_min, min);
+            m_max = Math.max(m_max, max);
+            m_last = last;
+        }
+
+        private Rollup merge(final Rollup rollup) {
+            merge(rollup.m_count, rollup.m_sum, rollup.m_min, rollup.m_max, rollup.m_last);
+            return this;
+        }
+
+        private double getValue(final Consolidation consolidation) {
+            switch (consolidation) {
+                case MIN: return m_min;
+                case MAX: return m_max;
+                case LAST: return m_last;
+                default: return m_count != 0 ? m_sum / m_count : Double.NaN;
+            }
+        }
+    }
+
+    /**
+     * The rollup of the current hour of a single data source, along with the
+     * rollups of the previous hours until they are written.
+     */
+    private static class Series {
+        /**
+         * The key of the RRD file, or null if it is not below the RRD base
+         * directory.
+         */
+        private final String m_key;
+        private long m_lastSeen;
+        private double m_counter = Double.NaN;
+        private long m_counterTime;
+        private long m_hour = -1;
+        private Rollup m_rollup;
+        private final NavigableMap<Long, Rollup> m_pending = new TreeMap<>();
+
+        private Series(final String key) {
+            m_key = key;
+        }
+
+        private synchronized void touch(final long timestamp) {
+            m_lastSeen = timestamp;
+        }
+
+        private synchronized void record(final long hour, final long timestamp, final double value, final boolean counter, final boolean aggregate) {
+            m_lastSeen = timestamp;
+
+            double sample = value;
+            if (counter) {
+                final double previousCounter = m_counter;
+                final long previousTime = m_counterTime;
+                m_counter = value;
+                m_counterTime = timestamp;
+                // Skip the first sample and counter resets
+                if (Double.isNaN(previousCounter) || timestamp <= previousTime || value < previousCounter) {
+                    return;
+                }
+                sample = (value - previousCounter) * 1000d / (timestamp - previousTime);
+            }
+
+            if (!aggregate || hour < m_hour) {
+                return;
+            }
+            if (hour > m_hour) {
+                // The rollup may be more than an hour behind, keep every
+                // hour until it is written
+                if (m_rollup != null) {
+                    m_pending.put(m_hour, m_rollup);
+                }
+                m_hour = hour;
+                m_rollup = null;
+            }
+            if (m_rollup == null) {
+                m_rollup = new Rollup();
+            }
+            m_rollup.add(sample);
+        }
+
+        private synchronized Rollup take(final long hour) {
+            // Hours are written in order, older ones can no longer be written
+            m_pending.headMap(hour).clear();
+            Rollup rollup = m_pending.remove(hour);
+            if (rollup == null && m_hour == hour) {
+                rollup = m_rollup;
+                m_rollup = null;
+            }
+            return rollup;
+        }
+
+        private synchronized boolean isIdle(final long since) {
+            return m_lastSeen < since && m_rollup == null && m_pending.isEmpty();
+        }
+    }
+
+    public void setEnabled(final boolean enabled) {
+        m_enabled = enabled;
+    }
+
+    public File getRrdBaseDirectory() {
+        return m_rrdBaseDirectory;
+    }
+
+    public void setRrdBaseDirectory(final File rrdBaseDirectory) {
+        m_rrdBaseDirectory = rrdBaseDirectory;
+    }
+
+    public File getDirectory() {
+        return m_directory;
+    }
+
+    public void setDirectory(final File directory) {
+        m_directory = directory;
+    }
+
+    /**
+     * Sets how long to wait for late samples after the end of an hour before
+     * writing its rollups.
+     */
+    public void setGracePeriod(final long gracePeriod) {
+        m_gracePeriod = gracePeriod;
+    }
+
+    /**
+     * Sets the number of days hourly files are kept after they were merged.
+     */
+    public void setHourlyRetention(final int hourlyRetention) {
+        m_hourlyRetention = hourlyRetention;
+    }
+
+    /**
+     * Sets the number of days daily files are kept.
+     */
+    public void setDailyRetention(final int dailyRetention) {
+        m_dailyRetention = dailyRetention;
+    }
+
+    protected void setZone(final ZoneId zone) {
+        m_zone = zone;
+    }
+}
@@ -31,20 +31,25 @@ package org.opennms.netmgt.rrd;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
-import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.opennms.core.logging.Logging;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.springframework.beans.factory.DisposableBean;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.JmxReporter;
+import com.codahale.metrics.MetricRegistry;
+
 /**
  * Provides queuing implementation of RrdStrategy.
  *
@@ -74,13 +79,20 @@ import org.slf4j.LoggerFactory;
  * updates are put at the lowest priority and are only written when the highest
  * priority updates have been written
  *
+ * Files are partitioned into one shard per write thread by hashing their
+ * names. Each shard has its own queues and is processed by its own thread, so
+ * the write threads do not contend with each other and all the updates for a
+ * given file are written by the same thread. The queue depth, the number of
+ * operations written per file open and the age of the oldest pending file of
+ * every shard are exposed as JMX gauges.
+ *
  * This implementation delegates all the actual writing to another RrdStrategy
  * implementation.
  *
  * System properties effecting the operation:
  *
  * org.opennms.rrd.queuing.writethreads: (default 2) The number of rrd write
- * threads that process the queue
+ * threads, and shards, that process the queue
  *
  * org.opennms.rrd.queuing.queueCreates: (default false) indicates whether rrd
  * file creates should be queued or processed synchronously
@@ -109,7 +121,7 @@ import org.slf4j.LoggerFactory;
  * @author ranger
  * @version $Id: $
  */
-public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.CreateOperation,String>, Runnable {
+public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.CreateOperation,String>, DisposableBean {
 
     private Logger m_log = LoggerFactory.getLogger(QueuingRrdStrategy.class);
 
@@ -357,41 +369,35 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
         m_writeThreadExitDelay = writeThreadExitDelay;
     }
 
-    LinkedList<String> filesWithSignificantWork = new LinkedList<String>();
-
-    LinkedList<String> filesWithInsignificantWork = new LinkedList<String>();
-
-    Map<String, LinkedList<Operation>> pendingFileOperations = new HashMap<String, LinkedList<Operation>>();
-
-    Map<Thread, String> fileAssignments = new HashMap<Thread, String>();
+    private final MetricRegistry m_metrics = new MetricRegistry();
 
-    Set<String> reservedFiles = new HashSet<String>();
+    private JmxReporter m_reporter;
 
-    private long m_totalOperationsPending = 0;
+    private volatile Shard[] m_shards;
 
-    private long m_enqueuedOperations = 0;
+    private final AtomicLong m_totalOperationsPending = new AtomicLong(0);
 
-    private long m_dequeuedOperations = 0;
+    private final AtomicLong m_enqueuedOperations = new AtomicLong(0);
 
-    private long m_significantOpsEnqueued = 0;
+    private final AtomicLong m_dequeuedOperations = new AtomicLong(0);
 
-    private long m_significantOpsDequeued = 0;
+    private final AtomicLong m_significantOpsEnqueued = new AtomicLong(0);
 
-    private long m_significantOpsCompleted = 0;
+    private final AtomicLong m_significantOpsDequeued = new AtomicLong(0);
 
-    private long m_dequeuedItems = 0;
+    private final AtomicLong m_significantOpsCompleted = new AtomicLong(0);
 
-    private long m_createsCompleted = 0;
+    private final AtomicLong m_dequeuedItems = new AtomicLong(0);
 
-    private long m_updatesCompleted = 0;
+    private final AtomicLong m_createsCompleted = new AtomicLong(0);
 
-    private long m_errors = 0;
+    private final AtomicLong m_updatesCompleted = new AtomicLong(0);
 
-    int threadsRunning = 0;
+    private final AtomicLong m_errors = new AtomicLong(0);
 
-    private long m_startTime = 0;
+    private final AtomicLong m_startTime = new AtomicLong(0);
 
-    private long m_promotionCount = 0;
+    private final AtomicLong m_promotionCount = new AtomicLong(0);
 
     long lastLap = System.currentTimeMillis();
 
@@ -477,7 +483,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
             m_delegate.createFile(getData());
 
             // keep stats
-            setCreatesCompleted(getCreatesCompleted() + 1);
+            m_createsCompleted.incrementAndGet();
 
             // return the file
             return rrd;
@@ -516,8 +522,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
             }
 
             // keep stats
-            setUpdatesCompleted(getUpdatesCompleted() + 1);
-            if (getUpdatesCompleted() % m_modulus == 0) {
+            if (m_updatesCompleted.incrementAndGet() % m_modulus == 0) {
                 logStats();
             }
             // return the open rrd for further processing
@@ -563,8 +568,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
                 ts += getInterval();
 
                 // keep stats
-                setUpdatesCompleted(getUpdatesCompleted() + 1);
-                if (getUpdatesCompleted() % m_modulus == 0) {
+                if (m_updatesCompleted.incrementAndGet() % m_modulus == 0) {
                     logStats();
                 }
             }
@@ -673,40 +677,311 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
     //
     // Queue management functions.
     //
-    // TODO: Put this all in a class of its own. This is really ugly.
+    // Every file is assigned to a single shard based on the hash of its name.
+    // Each shard has its own queues, lock and write thread so the write
+    // threads never contend with each other, and the updates for a given
+    // file are always processed by the same thread.
     //
 
     /**
-     * Add an operation to the queue.
-     *
-     * @param op a {@link org.opennms.netmgt.rrd.QueuingRrdStrategy.Operation} object.
+     * The operations pending for a single file along with the time at which
+     * the first of them was enqueued.
      */
-    private void addOperation(final Operation op) {
-        synchronized (this) {
-            if (queueIsFull()) {
-                m_log.error("RRD Data Queue is Full!! Discarding operation for file {}", op.getFileName());
-                return;
+    private static class PendingOperations extends LinkedList<Operation> {
+        private static final long serialVersionUID = 1L;
+
+        private final long enqueuedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * A partition of the files that have work enqueued, and the thread that
+     * processes them.
+     */
+    private class Shard implements Runnable {
+        private final int m_index;
+
+        private final LinkedList<String> m_filesWithSignificantWork = new LinkedList<String>();
+
+        private final LinkedList<String> m_filesWithInsignificantWork = new LinkedList<String>();
+
+        private final Map<String, PendingOperations> m_pendingFileOperations = new HashMap<String, PendingOperations>();
+
+        /**
+         * The thread draining the shard, or null if none is running.
+         */
+        private Thread m_writer = null;
+
+        private long m_operationsPending = 0;
+
+        private long m_opsDequeued = 0;
+
+        private long m_filesDequeued = 0;
+
+        private long m_promotions = 0;
+
+        private Shard(int index) {
+            m_index = index;
+
+            final String prefix = "shard" + index;
+            m_metrics.register(MetricRegistry.name(prefix, "queue-depth"), new Gauge<Long>() {
+                @Override
+                public Long getValue() {
+                    return getOperationsPending();
+                }
+            });
+            m_metrics.register(MetricRegistry.name(prefix, "coalescing-ratio"), new Gauge<Double>() {
+                @Override
+                public Double getValue() {
+                    return getCoalescingRatio();
+                }
+            });
+            m_metrics.register(MetricRegistry.name(prefix, "oldest-pending-age"), new Gauge<Long>() {
+                @Override
+                public Long getValue() {
+                    return getOldestPendingAge();
+                }
+            });
+        }
+
+        private synchronized long getOperationsPending() {
+            return m_operationsPending;
+        }
+
+        /**
+         * The average number of operations written per file open.
+         */
+        private synchronized double getCoalescingRatio() {
+            return m_opsDequeued / Math.max(m_filesDequeued, 1.0);
+        }
+
+        /**
+         * The number of milliseconds since the oldest pending file had its
+         * first operation enqueued.
+         */
+        private synchronized long getOldestPendingAge() {
+            final long oldest = Math.min(getEnqueuedAt(m_filesWithSignificantWork.peekFirst()), getEnqueuedAt(m_filesWithInsignificantWork.peekFirst()));
+            return oldest == Long.MAX_VALUE ? 0 : Math.max(0, System.currentTimeMillis() - oldest);
+        }
+
+        private long getEnqueuedAt(final String fileName) {
+            final PendingOperations pendingOperations = fileName == null ? null : m_pendingFileOperations.get(fileName);
+            return pendingOperations == null ? Long.MAX_VALUE : pendingOperations.enqueuedAt;
+        }
+
+        private synchronized int getFilesWithSignificantWork() {
+            return m_filesWithSignificantWork.size();
+        }
+
+        private synchronized int getFilesWithInsignificantWork() {
+            return m_filesWithInsignificantWork.size();
+        }
+
+        /**
+         * Add an operation to the shard's queues, starting its thread if
+         * necessary.
+         */
+        private synchronized void addOperation(final Operation op) {
+            storeAssignment(op);
+            // count the operation before it is merged with the pending ones
+            m_operationsPending++;
+
+            if (m_writer != null) {
+                notifyAll();
+            } else {
+                m_writer = new Thread(this, QueuingRrdStrategy.this.getClass().getSimpleName() + "-" + (m_index + 1));
+                m_writer.start();
             }
+        }
 
-            if (op.isSignificant() && sigQueueIsFull()) {
-                m_log.error("RRD Data Significant Queue is Full!! Discarding operation for file {}", op.getFileName());
-                return;
+        private synchronized Thread getWriter() {
+            return m_writer;
+        }
+
+        /**
+         * Put the operation on the pending list of its file, and queue the
+         * file for processing if it isn't already.
+         */
+        private void storeAssignment(final Operation op) {
+            // look and see if there a pending ops list for this file
+            PendingOperations pendingOperations = m_pendingFileOperations.get(op.getFileName());
+
+            // if not then we create an ops list for the file and add the file to
+            // the work items list
+            if (pendingOperations == null) {
+                pendingOperations = new PendingOperations();
+                m_pendingFileOperations.put(op.getFileName(), pendingOperations);
+
+                // add the file to the correct list based on what type of work we
+                // are adding.  (if we aren't prioritizing then every file is counted as
+                // signficant
+                if (!m_prioritizeSignificantUpdates || op.isSignificant())
+                    m_filesWithSignificantWork.addLast(op.getFileName());
+                else
+                    m_filesWithInsignificantWork.addLast(op.getFileName());
+            } else if (m_prioritizeSignificantUpdates && op.isSignificant() && hasOnlyInsignificant(pendingOperations)) {
+                // only do this when we are prioritizing as this bumps files from inSig
+                // up to insig
+                // promote the file to the significant list if this is the first
+                // significant
+                m_filesWithSignificantWork.addLast(op.getFileName());
             }
 
-            if (!op.isSignificant() && inSigQueueIsFull()) {
-                m_log.error("RRD Insignificant Data Queue is Full!! Discarding operation for file {}", op.getFileName());
+            promoteAgedFiles();
+
+            op.addToPendingList(pendingOperations);
+        }
+
+        /**
+         * Ensure that files with insignificant changes are getting promoted if
+         * necessary
+         */
+        private void promoteAgedFiles() {
+
+            // no need to do this is we aren't prioritizing
+            if (!m_prioritizeSignificantUpdates) return;
+
+            // the num seconds to update files is 0 then use unfair prioritization
+            if (m_maxInsigUpdateSeconds == 0 || m_filesWithInsignificantWork.isEmpty())
                 return;
+
+            // calculate the elapsed time we first queued updates
+            long now = System.currentTimeMillis();
+            long elapsedMillis = Math.max(now - getStartTime(), 1);
+
+            // calculate the milliseconds between promotions necessary to age
+            // insignificant files into
+            // the significant queue
+            double millisPerPromotion = ((m_maxInsigUpdateSeconds * 1000.0) / m_filesWithInsignificantWork.size());
+
+            // calculate the number of millis since start until the next file needs
+            // to be promotoed
+            long nextPromotionMillis = (long) (millisPerPromotion * m_promotions);
+
+            // if more time has elapsed than the next promotion time then promote a
+            // file
+            if (elapsedMillis > nextPromotionMillis) {
+                String file = m_filesWithInsignificantWork.removeFirst();
+                m_filesWithSignificantWork.addFirst(file);
+                m_promotions++;
+                m_promotionCount.incrementAndGet();
             }
+        }
 
-            storeAssignment(op);
+        private synchronized void promoteEnqueuedFiles(final List<String> rrdFiles) {
+            m_filesWithSignificantWork.addAll(0, rrdFiles);
+        }
+
+        /**
+         * Get the operations for the next file that should be worked on,
+         * waiting for up to the exit delay for one to be enqueued.
+         *
+         * @return a linkedList of operations to be processed all for the same
+         * file, or null if the thread should exit
+         */
+        private synchronized LinkedList<Operation> getNext() {
+            final long waitStart = System.currentTimeMillis();
+            while (true) {
+                final String fileName = selectNewAssignment();
+                if (fileName != null) {
+                    // the file may have been listed more than once
+                    final LinkedList<Operation> ops = m_pendingFileOperations.remove(fileName);
+                    if (ops == null) {
+                        continue;
+                    }
+
+                    // initialize start time for stats
+                    m_startTime.compareAndSet(0, System.currentTimeMillis());
+
+                    // keep stats
+                    for (final Operation op : ops) {
+                        m_operationsPending -= op.getCount();
+                        m_opsDequeued += op.getCount();
+                        m_totalOperationsPending.addAndGet(-op.getCount());
+                        m_dequeuedOperations.addAndGet(op.getCount());
+                        if (op.isSignificant()) {
+                            m_significantOpsDequeued.addAndGet(op.getCount());
+                        }
+                    }
+                    m_filesDequeued++;
+                    m_dequeuedItems.incrementAndGet();
+                    return ops;
+                }
+
+                // wait until there is work to do, or exit once we've been idle for long enough
+                final long remaining = m_writeThreadExitDelay - (System.currentTimeMillis() - waitStart);
+                if (remaining <= 0) {
+                    // a new writer is started as soon as an operation is added
+                    m_writer = null;
+                    return null;
+                }
+                try {
+                    wait(m_writeThreadSleepTime > 0 ? Math.min(m_writeThreadSleepTime, remaining) : remaining);
+                } catch (InterruptedException e) {
+                }
+            }
+        }
+
+        /**
+         * Return the name of the next file with available work
+         */
+        private String selectNewAssignment() {
+            if (!m_filesWithSignificantWork.isEmpty()) {
+                return m_filesWithSignificantWork.removeFirst();
+            }
+            if (!m_filesWithInsignificantWork.isEmpty()) {
+                return m_filesWithInsignificantWork.removeFirst();
+            }
+            return null;
+        }
+
+        @Override
+        public void run() {
+            try {
+                LinkedList<Operation> ops;
+                while ((ops = getNext()) != null) {
+                    processPendingOperations(ops);
+                }
+            } finally {
+                synchronized (this) {
+                    // only clear the writer if we did not exit because we were
+                    // idle, another writer may have been started since then
+                    if (m_writer == Thread.currentThread()) {
+                        m_writer = null;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Add an operation to the queue.
+     *
+     * @param op a {@link org.opennms.netmgt.rrd.QueuingRrdStrategy.Operation} object.
+     */
+    private void addOperation(final Operation op) {
+        if (queueIsFull()) {
+            m_log.error("RRD Data Queue is Full!! Discarding operation for file {}", op.getFileName());
+            return;
+        }
+
+        if (op.isSignificant() && sigQueueIsFull()) {
+            m_log.error("RRD Data Significant Queue is Full!! Discarding operation for file {}", op.getFileName());
+            return;
+        }
 
-            setTotalOperationsPending(getTotalOperationsPending() + 1);
-            setEnqueuedOperations(getEnqueuedOperations() + 1);
-            if (op.isSignificant())
-                setSignificantOpsEnqueued(getSignificantOpsEnqueued() + 1);
-            notifyAll();
-            ensureThreadsStarted();
+        if (!op.isSignificant() && inSigQueueIsFull()) {
+            m_log.error("RRD Insignificant Data Queue is Full!! Discarding operation for file {}", op.getFileName());
+            return;
         }
+
+        // every new operation counts as one, zero updates only merge once
+        // they are added to the pending list of their file
+        m_totalOperationsPending.incrementAndGet();
+        m_enqueuedOperations.incrementAndGet();
+        if (op.isSignificant())
+            m_significantOpsEnqueued.incrementAndGet();
+
+        getShard(op.getFileName()).addOperation(op);
     }
 
 
@@ -732,137 +1007,94 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
     }
 
     /**
-     * Ensure that we have threads started to process the queue.
-     */
-    private synchronized void ensureThreadsStarted() {
-        if (threadsRunning < m_writeThreads) {
-            threadsRunning++;
-            new Thread(this, this.getClass().getSimpleName() + "-" + threadsRunning).start();
-        }
-    }
-
-    /**
-     * Get the operations for the next file that should be worked on.
-     *
-     * @return a linkedList of operations to be processed all for the same file.
+     * Create the shards, one per write thread, the first time they are needed.
      */
-    private LinkedList<Operation> getNext() {
-        LinkedList<Operation> ops = null;
-        synchronized (this) {
-
-            // turn in our previous assignment
-            completeAssignment();
-
-            String newAssignment;
-            // wait until there is work to do
-            while ((newAssignment = selectNewAssignment()) == null) {
-                try {
-                    wait();
-                } catch (InterruptedException e) {
-                }
-            }
-
-            // initialize start time for stats
-            if (getStartTime() == 0)
-                setStartTime(System.currentTimeMillis());
-
-            // reserve the assignment and take work items
-            ops = takeAssignment(newAssignment);
-
-            // keep stats
-            if (ops != null) {
-                for(Operation op : ops) {
-                    setTotalOperationsPending(getTotalOperationsPending()-op.getCount());
-                    setDequeuedOperations(getDequeuedOperations() + op.getCount());
-                    if (op.isSignificant()) {
-                        setSignificantOpsDequeued(getSignificantOpsDequeued() + op.getCount());
+    private Shard[] getShards() {
+        Shard[] shards = m_shards;
+        if (shards == null) {
+            synchronized (this) {
+                shards = m_shards;
+                if (shards == null) {
+                    shards = new Shard[Math.max(m_writeThreads, 1)];
+                    for (int i = 0; i < shards.length; i++) {
+                        shards[i] = new Shard(i);
                     }
+                    m_reporter = JmxReporter.forRegistry(m_metrics).inDomain("org.opennms.netmgt.rrd.queued").build();
+                    m_reporter.start();
+                    m_shards = shards;
                 }
-                setDequeuedItems(getDequeuedItems() + 1);
             }
         }
-
-        return ops;
-
+        return shards;
     }
 
     /**
-     * We need to track which files are being processed by which threads so that
-     * we don't try to process updates for the same file on more than one
-     * thread.
+     * Stops exposing the metrics of the shards over JMX.
      */
-    private synchronized void storeAssignment(Operation op) {
-        // look and see if there a pending ops list for this file
-        LinkedList<Operation> pendingOperations = pendingFileOperations.get(op.getFileName());
-
-        // if not then we create an ops list for the file and add the file to
-        // the work items list
-        if (pendingOperations == null) {
-            pendingOperations = new LinkedList<Operation>();
-            pendingFileOperations.put(op.getFileName(), pendingOperations);
-
-            // add the file to the correct list based on what type of work we
-            // are adding.  (if we aren't prioritizing then every file is counted as
-            // signficant
-            if (!m_prioritizeSignificantUpdates || op.isSignificant())
-                filesWithSignificantWork.addLast(op.getFileName());
-            else
-                filesWithInsignificantWork.addLast(op.getFileName());
-        } else if (m_prioritizeSignificantUpdates && op.isSignificant() && hasOnlyInsignificant(pendingOperations)) {
-            // only do this when we are prioritizing as this bumps files from inSig
-            // up to insig
-            // promote the file to the significant list if this is the first
-            // significant
-            filesWithSignificantWork.addLast(op.getFileName());
+    @Override
+    public synchronized void destroy() {
+        if (m_reporter != null) {
+            m_reporter.stop();
+            m_reporter = null;
         }
-
-        promoteAgedFiles();
-
-        op.addToPendingList(pendingOperations);
     }
 
     /**
-     * Ensure that files with insignificant changes are getting promoted if
-     * necessary
-     *
+     * Return the thread currently writing the files of the shard the given
+     * file belongs to, or null if it is idle.
      */
-    private synchronized void promoteAgedFiles() {
+    Thread getWriter(final String fileName) {
+        return getShard(fileName).getWriter();
+    }
 
-        // no need to do this is we aren't prioritizing
-        if (!m_prioritizeSignificantUpdates) return;
+    private Shard getShard(final String fileName) {
+        final Shard[] shards = getShards();
+        return shards[Math.floorMod(fileName.hashCode(), shards.length)];
+    }
 
-        // the num seconds to update files is 0 then use unfair prioritization
-        if (m_maxInsigUpdateSeconds == 0 || filesWithInsignificantWork.isEmpty())
-            return;
+    /** {@inheritDoc} */
+    @Override
+    public void promoteEnqueuedFiles(Collection<String> rrdFiles) {
+        final Shard[] shards = getShards();
+        final List<List<String>> filesByShard = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            filesByShard.add(new ArrayList<String>());
+        }
+        for (final String rrdFile : rrdFiles) {
+            filesByShard.get(Math.floorMod(rrdFile.hashCode(), shards.length)).add(rrdFile);
+        }
+        for (int i = 0; i < shards.length; i++) {
+            if (!filesByShard.get(i).isEmpty()) {
+                shards[i].promoteEnqueuedFiles(filesByShard.get(i));
+            }
+        }
+        m_delegate.promoteEnqueuedFiles(rrdFiles);
+    }
 
-        // calculate the elapsed time we first queued updates
-        long now = System.currentTimeMillis();
-        long elapsedMillis = Math.max(now - getStartTime(), 1);
-
-        // calculate the milliseconds between promotions necessary to age
-        // insignificant files into
-        // the significant queue
-        double millisPerPromotion = ((m_maxInsigUpdateSeconds * 1000.0) / filesWithInsignificantWork.size());
-
-        // calculate the number of millis since start until the next file needs
-        // to be promotoed
-        long nextPromotionMillis = (long) (millisPerPromotion * getPromotionCount());
-
-        // if more time has elapsed than the next promotion time then promote a
-        // file
-        if (elapsedMillis > nextPromotionMillis) {
-            String file = filesWithInsignificantWork.removeFirst();
-            filesWithSignificantWork.addFirst(file);
-            setPromotionCount(getPromotionCount() + 1);
+    private int getFilesWithSignificantWork() {
+        int files = 0;
+        for (final Shard shard : getShards()) {
+            files += shard.getFilesWithSignificantWork();
         }
+        return files;
+    }
 
+    private int getFilesWithInsignificantWork() {
+        int files = 0;
+        for (final Shard shard : getShards()) {
+            files += shard.getFilesWithInsignificantWork();
+        }
+        return files;
     }
 
-    /** {@inheritDoc} */
-    @Override
-    public synchronized void promoteEnqueuedFiles(Collection<String> rrdFiles) {
-        filesWithSignificantWork.addAll(0, rrdFiles);
-        m_delegate.promoteEnqueuedFiles(rrdFiles);
+    /**
+     * <p>getMetricRegistry</p>
+     *
+     * @return the registry holding the queue depth, coalescing ratio and
+     * oldest pending age gauges of every shard
+     */
+    public MetricRegistry getMetricRegistry() {
+        return m_metrics;
     }
 
     /**
@@ -878,54 +1110,6 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
         return true;
     }
 
-    /**
-     * register the file that the currentThread is be working on. This enables
-     * us to ensure that another thread doesn't try to work on operations for
-     * that file.  Note: this is not synchronized as it is called from getNext which
-     * is thread safe
-     */
-    private LinkedList<Operation> takeAssignment(String newAssignment) {
-
-        // make the file as reserved by the current thread
-        fileAssignments.put(Thread.currentThread(), newAssignment);
-        reservedFiles.add(newAssignment);
-
-        // get the assignments work list and return it
-        return pendingFileOperations.remove(newAssignment);
-    }
-
-    /**
-     * Return the name of the next file with available work
-     */
-    private String selectNewAssignment() {
-        for (Iterator<String> it = filesWithSignificantWork.iterator(); it.hasNext();) {
-            String fn = it.next();
-            if (!reservedFiles.contains(fn)) {
-                it.remove();
-                return fn;
-            }
-        }
-        for (Iterator<String> it = filesWithInsignificantWork.iterator(); it.hasNext();) {
-            String fn = it.next();
-            if (!reservedFiles.contains(fn)) {
-                it.remove();
-                return fn;
-            }
-        }
-        return null;
-    }
-
-    /**
-     * Record that fact that the current thread has finished process operations
-     * for its current assignment
-     */
-    private synchronized void completeAssignment() {
-        // remove any existing reservation of the current thread
-        String previousAssignment = fileAssignments.remove(Thread.currentThread());
-        if (previousAssignment != null)
-            reservedFiles.remove(previousAssignment);
-    }
-
     /**
      * <p>Constructor for QueuingRrdStrategy.</p>
      *
@@ -1053,61 +1237,22 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
     // These methods are run by the write threads the process the queues.
     //
 
-    /**
-     * <p>run</p>
-     */
-    @Override
-    public void run() {
-        try {
-
-            long waitStart = -1L;
-            long delayed = 0;
-            while (delayed < m_writeThreadExitDelay) {
-                if (getTotalOperationsPending() > 0) {
-                    delayed = 0;
-                    waitStart = -1L;
-                    processPendingOperations();
-                } else {
-                    if (waitStart < 0) {
-                        waitStart = System.currentTimeMillis();
-                    }
-                    try {
-                        Thread.sleep(m_writeThreadSleepTime);
-                    } catch (InterruptedException e) {
-                    }
-                    long now = System.currentTimeMillis();
-                    delayed = now - waitStart;
-                }
-
-            }
-        } finally {
-            synchronized (this) {
-                threadsRunning--;
-                completeAssignment();
-            }
-        }
-    }
-
     /**
      * Actually process the operations be calling the underlying delegate
      * strategy
      */
-    private void processPendingOperations() {
+    private void processPendingOperations(final LinkedList<Operation> ops) {
         Logging.withPrefix(m_category, new Runnable() {
             @Override public void run() {
                 Object rrd = null;
                 String fileName = null;
 
                 try {
-                    final LinkedList<Operation> ops = getNext();
-                    if (ops == null) {
-                        return;
-                    }
                     // update stats correctly we update them even if an exception occurs
                     // while we are processing
                     for (final Operation op : ops) {
                         if (op.isSignificant()) {
-                            setSignificantOpsCompleted(getSignificantOpsCompleted() + 1);
+                            m_significantOpsCompleted.incrementAndGet();
                         }
 
                     }
@@ -1117,7 +1262,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
                         rrd = op.process(rrd);
                     }
                 } catch (final Throwable e) {
-                    setErrors(getErrors() + 1);
+                    m_errors.incrementAndGet();
                     logLapTime("Error updating file " + fileName + ": " + e.getMessage());
                     m_log.debug("Error updating file {}: {}", fileName, e.getMessage(), e);
                 } finally {
@@ -1135,7 +1280,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
             try {
                 m_delegate.closeFile(rrd);
             } catch (final Throwable e) {
-                setErrors(getErrors() + 1);
+                m_errors.incrementAndGet();
                 logLapTime("Error closing rrd " + rrd + ": " + e.getMessage());
                 m_log.debug("Error closing rrd {}: {}", rrd, e.getMessage(), e);
             }
@@ -1148,7 +1293,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @return a {@link java.lang.String} object.
      */
     @Override
-    public String getStats() {
+    public synchronized String getStats() {
         long now = System.currentTimeMillis();
 
         long currentElapsedMillis = Math.max(now - lastStatsTime, 1);
@@ -1181,8 +1326,8 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 
         String stats = "\nQS:\t" + "totalOperationsPending=" + getTotalOperationsPending() +
                 ", significantOpsPending=" + (getSignificantOpsEnqueued() - getSignificantOpsCompleted()) +
-                ", filesWithSignificantWork=" + filesWithSignificantWork.size() +
-                ", filesWithInsignificantWork=" + filesWithInsignificantWork.size()
+                ", filesWithSignificantWork=" + getFilesWithSignificantWork() +
+                ", filesWithInsignificantWork=" + getFilesWithInsignificantWork()
 
                 + "\nQS:\t" + ", createsCompleted=" + getCreatesCompleted() +
                 ", updatesCompleted=" + getUpdatesCompleted() +
@@ -1203,6 +1348,15 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
                 ", overallPrcntSignificant=" + (getSignificantOpsEnqueued() * 100.0 / Math.max(getEnqueuedOperations(), 1.0)) + "%" +
                 ", totalElapsedTime=" + ((totalElapsedMillis + 500) / 1000);
 
+        final StringBuilder shardStats = new StringBuilder();
+        for (final Shard shard : getShards()) {
+            shardStats.append("\nQS:\t").append("shard").append(shard.m_index).append(":")
+                .append(" operationsPending=").append(shard.getOperationsPending())
+                .append(", opsPerUpdate=").append(shard.getCoalescingRatio())
+                .append(", oldestPendingAge=").append(shard.getOldestPendingAge());
+        }
+        stats += shardStats;
+
         lastStatsTime = now;
         lastEnqueued = getEnqueuedOperations();
         lastDequeued = getDequeuedOperations();
@@ -1297,7 +1451,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @return a long.
      */
     public long getTotalOperationsPending() {
-        return m_totalOperationsPending;
+        return m_totalOperationsPending.get();
     }
 
     /**
@@ -1306,7 +1460,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @param totalOperationsPending a long.
      */
     public void setTotalOperationsPending(long totalOperationsPending) {
-        m_totalOperationsPending = totalOperationsPending;
+        m_totalOperationsPending.set(totalOperationsPending);
     }
 
     /**
@@ -1315,7 +1469,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @return a long.
      */
     public long getCreatesCompleted() {
-        return m_createsCompleted;
+        return m_createsCompleted.get();
     }
 
     /**
@@ -1324,7 +1478,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @param createsCompleted a long.
      */
     public void setCreatesCompleted(long createsCompleted) {
-        m_createsCompleted = createsCompleted;
+        m_createsCompleted.set(createsCompleted);
     }
 
     /**
@@ -1333,7 +1487,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @return a long.
      */
     public long getUpdatesCompleted() {
-        return m_updatesCompleted;
+        return m_updatesCompleted.get();
     }
 
     /**
@@ -1342,7 +1496,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @param updatesCompleted a long.
      */
     public void setUpdatesCompleted(long updatesCompleted) {
-        m_updatesCompleted = updatesCompleted;
+        m_updatesCompleted.set(updatesCompleted);
     }
 
     /**
@@ -1351,7 +1505,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @return a long.
      */
     public long getErrors() {
-        return m_errors;
+        return m_errors.get();
     }
 
     /**
@@ -1360,7 +1514,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @param errors a long.
      */
     public void setErrors(long errors) {
-        m_errors = errors;
+        m_errors.set(errors);
     }
 
     /**
@@ -1369,7 +1523,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @return a long.
      */
     public long getPromotionCount() {
-        return m_promotionCount;
+        return m_promotionCount.get();
     }
 
     /**
@@ -1378,7 +1532,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @param promotionCount a long.
      */
     public void setPromotionCount(long promotionCount) {
-        m_promotionCount = promotionCount;
+        m_promotionCount.set(promotionCount);
     }
 
     /**
@@ -1387,7 +1541,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @return a long.
      */
     public long getSignificantOpsEnqueued() {
-        return m_significantOpsEnqueued;
+        return m_significantOpsEnqueued.get();
     }
 
     /**
@@ -1396,7 +1550,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @param significantOpsEnqueued a long.
      */
     public void setSignificantOpsEnqueued(long significantOpsEnqueued) {
-        m_significantOpsEnqueued = significantOpsEnqueued;
+        m_significantOpsEnqueued.set(significantOpsEnqueued);
     }
 
     /**
@@ -1405,7 +1559,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @return a long.
      */
     public long getSignificantOpsDequeued() {
-        return m_significantOpsDequeued;
+        return m_significantOpsDequeued.get();
     }
 
     /**
@@ -1414,7 +1568,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @param significantOpsDequeued a long.
      */
     public void setSignificantOpsDequeued(long significantOpsDequeued) {
-        m_significantOpsDequeued = significantOpsDequeued;
+        m_significantOpsDequeued.set(significantOpsDequeued);
     }
 
     /**
@@ -1423,7 +1577,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @return a long.
      */
     public long getEnqueuedOperations() {
-        return m_enqueuedOperations;
+        return m_enqueuedOperations.get();
     }
 
     /**
@@ -1432,7 +1586,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @param enqueuedOperations a long.
      */
     public void setEnqueuedOperations(long enqueuedOperations) {
-        m_enqueuedOperations = enqueuedOperations;
+        m_enqueuedOperations.set(enqueuedOperations);
     }
 
     /**
@@ -1441,7 +1595,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @return a long.
      */
     public long getDequeuedOperations() {
-        return m_dequeuedOperations;
+        return m_dequeuedOperations.get();
     }
 
     /**
@@ -1450,7 +1604,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @param dequeuedOperations a long.
      */
     public void setDequeuedOperations(long dequeuedOperations) {
-        m_dequeuedOperations = dequeuedOperations;
+        m_dequeuedOperations.set(dequeuedOperations);
     }
 
     /**
@@ -1459,7 +1613,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @return a long.
      */
     public long getDequeuedItems() {
-        return m_dequeuedItems;
+        return m_dequeuedItems.get();
     }
 
     /**
@@ -1468,7 +1622,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @param dequeuedItems a long.
      */
     public void setDequeuedItems(long dequeuedItems) {
-        m_dequeuedItems = dequeuedItems;
+        m_dequeuedItems.set(dequeuedItems);
     }
 
     /**
@@ -1477,7 +1631,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @return a long.
      */
     public long getSignificantOpsCompleted() {
-        return m_significantOpsCompleted;
+        return m_significantOpsCompleted.get();
     }
 
     /**
@@ -1486,7 +1640,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @param significantOpsCompleted a long.
      */
     public void setSignificantOpsCompleted(long significantOpsCompleted) {
-        m_significantOpsCompleted = significantOpsCompleted;
+        m_significantOpsCompleted.set(significantOpsCompleted);
     }
 
     /**
@@ -1495,7 +1649,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @return a long.
      */
     public long getStartTime() {
-        return m_startTime;
+        return m_startTime.get();
     }
 
     /**
@@ -1504,7 +1658,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @param updateStart a long.
      */
     public void setStartTime(long updateStart) {
-        m_startTime = updateStart;
+        m_startTime.set(updateStart);
     }
 
 
@@ -0,0 +1,196 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.rrd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AttributeStatisticsIndexTest {
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+    private static final long START = LocalDate.of(2018, 3, 1).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+
+    @Rule
+    public TemporaryFolder m_tempFolder = new TemporaryFolder();
+
+    private File m_rrdDirectory;
+    private File m_ifA;
+    private File m_ifB;
+    private AttributeStatisticsIndex m_index;
+
+    @Before
+    public void setUp() throws IOException {
+        m_rrdDirectory = m_tempFolder.newFolder("rrd");
+        m_ifA = new File(m_rrdDirectory, "snmp/1/eth0/mib2-interfaces.jrb");
+        m_ifB = new File(m_rrdDirectory, "snmp/1/eth1/mib2-interfaces.jrb");
+        m_index = createIndex();
+    }
+
+    @After
+    public void tearDown() {
+        m_index.destroy();
+    }
+
+    private AttributeStatisticsIndex createIndex() {
+        final AttributeStatisticsIndex index = new AttributeStatisticsIndex();
+        index.setEnabled(true);
+        index.setRrdBaseDirectory(m_rrdDirectory);
+        index.setDirectory(new File(m_tempFolder.getRoot(), "statistics"));
+        index.setGracePeriod(0);
+        index.setZone(ZoneOffset.UTC);
+        index.afterPropertiesSet();
+        return index;
+    }
+
+    private void gauge(final File rrdFile, final long timestamp, final double value) {
+        m_index.record(rrdFile, "ifInErrors", RrdAttributeType.GAUGE, timestamp, value);
+    }
+
+    @Test
+    public void canConsolidateHourlyRollups() {
+        // The first hour is incomplete and is never written
+        gauge(m_ifA, START + 1000, 100);
+        gauge(m_ifA, START + HOUR, 1);
+        gauge(m_ifA, START + HOUR + 300000, 2);
+        gauge(m_ifA, START + HOUR + 600000, 3);
+        gauge(m_ifB, START + HOUR, 10);
+        gauge(m_ifA, START + 2 * HOUR, 5);
+        m_index.rollup(START + 3 * HOUR);
+
+        final Map<String, Double> average = m_index.getStatistics("ifInErrors", START + HOUR, START + 3 * HOUR, "AVERAGE");
+        assertEquals(2, average.size());
+        assertEquals(2.75, average.get("snmp/1/eth0/mib2-interfaces.jrb"), 0.0001);
+        assertEquals(10, average.get("snmp/1/eth1/mib2-interfaces.jrb"), 0.0001);
+        assertEquals(1, m_index.getStatistics("ifInErrors", START + HOUR, START + 3 * HOUR, "MIN").get("snmp/1/eth0/mib2-interfaces.jrb"), 0.0001);
+        assertEquals(5, m_index.getStatistics("ifInErrors", START + HOUR, START + 3 * HOUR, "MAX").get("snmp/1/eth0/mib2-interfaces.jrb"), 0.0001);
+        assertEquals(5, m_index.getStatistics("ifInErrors", START + HOUR, START + 3 * HOUR, "LAST").get("snmp/1/eth0/mib2-interfaces.jrb"), 0.0001);
+        assertEquals(3, m_index.getStatistics("ifInErrors", START + HOUR, START + 2 * HOUR, "MAX").get("snmp/1/eth0/mib2-interfaces.jrb"), 0.0001);
+
+        // Windows the index cannot answer for
+        assertNull(m_index.getStatistics("ifInErrors", START, START + 3 * HOUR, "AVERAGE"));
+        assertNull(m_index.getStatistics("ifInErrors", START + HOUR, START + 4 * HOUR, "AVERAGE"));
+        assertNull(m_index.getStatistics("ifInErrors", START + HOUR + 1, START + 3 * HOUR, "AVERAGE"));
+        assertNull(m_index.getStatistics("ifOutErrors", START + HOUR, START + 3 * HOUR, "AVERAGE"));
+        assertNull(m_index.getStatistics("ifInErrors", START + HOUR, START + 3 * HOUR, "PERCENTILE"));
+
+        // The rollups survive a restart
+        m_index.destroy();
+        m_index = createIndex();
+        assertEquals(2.75, m_index.getStatistics("ifInErrors", START + HOUR, START + 3 * HOUR, "AVERAGE").get("snmp/1/eth0/mib2-interfaces.jrb"), 0.0001);
+    }
+
+    @Test
+    public void canConvertCountersToRates() {
+        m_index.record(m_ifA, "ifInOctets", RrdAttributeType.COUNTER, START + HOUR, 1000);
+        m_index.record(m_ifA, "ifInOctets", RrdAttributeType.COUNTER, START + HOUR + 300000, 4000);
+        m_index.record(m_ifA, "ifInOctets", RrdAttributeType.COUNTER, START + HOUR + 600000, 10000);
+        // The counter was reset
+        m_index.record(m_ifA, "ifInOctets", RrdAttributeType.COUNTER, START + HOUR + 900000, 10);
+        m_index.record(m_ifA, "ifInOctets", RrdAttributeType.COUNTER, START + 2 * HOUR, 910);
+        m_index.rollup(START + 3 * HOUR);
+
+        final Map<String, Double> max = m_index.getStatistics("ifInOctets", START + 2 * HOUR, START + 3 * HOUR, "MAX");
+        assertEquals(900d / 2700, max.get("snmp/1/eth0/mib2-interfaces.jrb"), 0.0001);
+    }
+
+    @Test
+    public void keepsEveryHourUntilItIsWritten() {
+        // The rollup falls several hours behind
+        for (int hour = 0; hour < 4; hour++) {
+            gauge(m_ifA, START + hour * HOUR, hour);
+            gauge(m_ifA, START + hour * HOUR + 300000, hour + 10);
+        }
+        m_index.rollup(START + 4 * HOUR);
+
+        for (int hour = 1; hour < 4; hour++) {
+            final Map<String, Double> max = m_index.getStatistics("ifInErrors", START + hour * HOUR, START + (hour + 1) * HOUR, "MAX");
+            assertEquals(hour + 10, max.get("snmp/1/eth0/mib2-interfaces.jrb"), 0.0001);
+        }
+    }
+
+    @Test
+    public void mergesDifferentPathsToTheSameFile() {
+        gauge(m_ifA, START, 1);
+        gauge(m_ifA, START + HOUR, 1);
+        gauge(new File(m_rrdDirectory, "snmp/1/../1/eth0/mib2-interfaces.jrb"), START + HOUR + 300000, 3);
+        m_index.rollup(START + 2 * HOUR);
+
+        final Map<String, Double> average = m_index.getStatistics("ifInErrors", START + HOUR, START + 2 * HOUR, "AVERAGE");
+        assertEquals(1, average.size());
+        assertEquals(2, average.get("snmp/1/eth0/mib2-interfaces.jrb"), 0.0001);
+    }
+
+    @Test
+    public void canMergeDays() {
+        m_index.setHourlyRetention(0);
+        // Starting in the last hour of the previous day
+        for (long time = START - HOUR; time < START + 25 * HOUR; time += 300000) {
+            m_index.rollup(time);
+            gauge(m_ifA, time, (time - START) / HOUR);
+        }
+        m_index.rollup(START + 26 * HOUR);
+
+        // The hourly files of the day were merged and removed
+        final File directory = new File(m_tempFolder.getRoot(), "statistics/ifInErrors");
+        assertTrue(new File(directory, "2018-03-01.day").canRead());
+        assertFalse(new File(directory, (START / HOUR) + ".hour").exists());
+        assertTrue(new File(directory, (START / HOUR + 24) + ".hour").exists());
+
+        final Map<String, Double> day = m_index.getStatistics("ifInErrors", START, START + 24 * HOUR, "AVERAGE");
+        assertEquals(11.5, day.get("snmp/1/eth0/mib2-interfaces.jrb"), 0.0001);
+        final Map<String, Double> dayAndHour = m_index.getStatistics("ifInErrors", START, START + 25 * HOUR, "MAX");
+        assertEquals(24, dayAndHour.get("snmp/1/eth0/mib2-interfaces.jrb"), 0.0001);
+        assertNull(m_index.getStatistics("ifInErrors", START + HOUR, START + 2 * HOUR, "MAX"));
+    }
+
+    @Test
+    public void ignoresFilesOutsideOfTheRrdDirectory() {
+        gauge(m_ifA, START, 1);
+        gauge(new File(m_tempFolder.getRoot(), "elsewhere/mib2-interfaces.jrb"), START + HOUR, 1);
+        gauge(m_ifA, START + HOUR, 1);
+        m_index.rollup(START + 3 * HOUR);
+
+        final Map<String, Double> average = m_index.getStatistics("ifInErrors", START + HOUR, START + 2 * HOUR, "AVERAGE");
+        assertEquals(1, average.size());
+    }
+}
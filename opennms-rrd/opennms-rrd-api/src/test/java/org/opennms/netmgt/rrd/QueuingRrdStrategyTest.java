@@ -0,0 +1,201 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.rrd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.ObjectName;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class QueuingRrdStrategyTest {
+
+    private RecordingRrdStrategy m_delegate;
+    private QueuingRrdStrategy m_strategy;
+
+    @Before
+    public void setUp() {
+        m_delegate = new RecordingRrdStrategy();
+        m_strategy = new QueuingRrdStrategy(m_delegate);
+        m_strategy.setWriteThreads(4);
+        m_strategy.setModulus(10000);
+        m_strategy.setWriteThreadSleepTime(10);
+        m_strategy.setWriteThreadExitDelay(1000);
+    }
+
+    @After
+    public void tearDown() {
+        m_strategy.destroy();
+    }
+
+    @Test
+    public void unregistersMetricsWhenDestroyed() throws Exception {
+        final ObjectName names = new ObjectName("org.opennms.netmgt.rrd.queued:*");
+
+        m_strategy.updateFile("file", "test", "1000:1");
+        waitForUpdates(1);
+        assertFalse(ManagementFactory.getPlatformMBeanServer().queryNames(names, null).isEmpty());
+
+        m_strategy.destroy();
+        assertTrue(ManagementFactory.getPlatformMBeanServer().queryNames(names, null).isEmpty());
+    }
+
+    @Test
+    public void routesFileToSingleShard() throws Exception {
+        for (int i = 0; i < 50; i++) {
+            for (int file = 0; file < 20; file++) {
+                m_strategy.updateFile("file" + file, "test", (1000 + i) + ":1");
+            }
+        }
+        waitForUpdates(1000);
+
+        assertEquals(20, m_delegate.threadsByFile.size());
+        for (final Map.Entry<String, Set<String>> entry : m_delegate.threadsByFile.entrySet()) {
+            assertEquals("file " + entry.getKey() + " was written by more than one thread", 1, entry.getValue().size());
+        }
+        assertEquals(0, m_delegate.concurrentWrites.get());
+        assertEquals(0, m_strategy.getTotalOperationsPending());
+        assertEquals(1000, m_strategy.getDequeuedOperations());
+    }
+
+    @Test
+    public void restartsWriterAfterIdleExit() throws Exception {
+        m_strategy.setWriteThreads(1);
+        m_strategy.setWriteThreadExitDelay(20);
+
+        m_strategy.updateFile("file", "test", "1000:1");
+        waitForUpdates(1);
+        final Thread first = m_strategy.getWriter("file");
+        if (first != null) {
+            first.join(5000);
+        }
+        assertNull(m_strategy.getWriter("file"));
+
+        // Enqueue around the time the writers exit, the file must never be
+        // written by two writers at once
+        for (int i = 1; i < 200; i++) {
+            m_strategy.updateFile("file", "test", (1000 + i) + ":1");
+            if (i % 20 == 0) {
+                Thread.sleep(20);
+            }
+        }
+        waitForUpdates(200);
+
+        assertNotNull(m_delegate.threadsByFile.get("file"));
+        assertEquals(0, m_delegate.concurrentWrites.get());
+        assertEquals(0, m_strategy.getTotalOperationsPending());
+    }
+
+    @Test
+    public void discardsOperationsWhenQueueIsFull() throws Exception {
+        m_strategy.setWriteThreads(1);
+        m_strategy.setQueueHighWaterMark(5);
+        m_delegate.blockOpen = new CountDownLatch(1);
+
+        // Wait for the writer to hold the first operation
+        m_strategy.updateFile("blocked", "test", "1000:1");
+        assertTrue(m_delegate.opened.await(5, TimeUnit.SECONDS));
+        assertEquals(0, m_strategy.getTotalOperationsPending());
+
+        // Zero updates are merged for the same file, but still count as one
+        // operation each towards the high water mark
+        for (int i = 0; i < 10; i++) {
+            m_strategy.updateFile("file", "test", (1000 + i * 300) + ":0");
+        }
+        assertEquals(5, m_strategy.getTotalOperationsPending());
+        assertEquals(6, m_strategy.getEnqueuedOperations());
+
+        m_delegate.blockOpen.countDown();
+        waitForUpdates(6);
+        assertEquals(0, m_strategy.getTotalOperationsPending());
+        assertEquals(6, m_strategy.getDequeuedOperations());
+    }
+
+    private void waitForUpdates(final long updates) throws InterruptedException {
+        final long end = System.currentTimeMillis() + 10000;
+        while (m_delegate.updates.get() < updates && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+        assertEquals(updates, m_delegate.updates.get());
+    }
+
+    private static class RecordingRrdStrategy extends NullRrdStrategy {
+        private final Map<String, Set<String>> threadsByFile = new ConcurrentHashMap<>();
+        private final Map<String, AtomicInteger> writersByFile = new ConcurrentHashMap<>();
+        private final AtomicInteger concurrentWrites = new AtomicInteger(0);
+        private final AtomicInteger updates = new AtomicInteger(0);
+        private final CountDownLatch opened = new CountDownLatch(1);
+        private volatile CountDownLatch blockOpen;
+
+        @Override
+        public Object openFile(final String fileName) {
+            opened.countDown();
+            if (blockOpen != null) {
+                try {
+                    blockOpen.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return fileName;
+        }
+
+        @Override
+        public void updateFile(final Object rrd, final String owner, final String data) {
+            final String fileName = (String) rrd;
+            threadsByFile.computeIfAbsent(fileName, f -> ConcurrentHashMap.newKeySet()).add(Thread.currentThread().getName());
+            final AtomicInteger writers = writersByFile.computeIfAbsent(fileName, f -> new AtomicInteger(0));
+            if (writers.incrementAndGet() > 1) {
+                concurrentWrites.incrementAndGet();
+            }
+            try {
+                Thread.sleep(0, 100000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                writers.decrementAndGet();
+            }
+            updates.incrementAndGet();
+        }
+    }
+}
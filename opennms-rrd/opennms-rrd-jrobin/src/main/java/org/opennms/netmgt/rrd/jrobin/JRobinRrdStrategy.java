@@ -57,6 +57,7 @@ import org.opennms.netmgt.rrd.RrdGraphDetails;
 import org.opennms.netmgt.rrd.RrdStrategy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 
 
 /**
@@ -67,7 +68,7 @@ import org.slf4j.LoggerFactory;
  * @author ranger
  * @version $Id: $
  */
-public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
+public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb>, DisposableBean {
     private static final Logger LOG = LoggerFactory.getLogger(JRobinRrdStrategy.class);
     private static final String BACKEND_FACTORY_PROPERTY = "org.jrobin.core.RrdBackendFactory";
     private static final String DEFAULT_BACKEND_FACTORY = "FILE";
@@ -80,6 +81,8 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
 
     private Properties m_configurationProperties;
 
+    private final RrdDbCache m_cache = RrdDbCache.getInstance();
+
     /**
      * An extremely simple Plottable for holding static datasources that
      * can't be represented with an SDEF -- currently used only for PERCENT
@@ -136,17 +139,22 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
                 LOG.error("Could not set default JRobin RRD factory", e);
             }
         }
+        if (m_configurationProperties != null) {
+            m_cache.setIdleTimeout(Long.parseLong(m_configurationProperties.getProperty(RrdDbCache.IDLE_TIMEOUT_PROPERTY, Long.toString(RrdDbCache.DEFAULT_IDLE_TIMEOUT))));
+            m_cache.setSyncInterval(Long.parseLong(m_configurationProperties.getProperty(RrdDbCache.SYNC_INTERVAL_PROPERTY, Long.toString(RrdDbCache.DEFAULT_SYNC_INTERVAL))));
+            m_cache.setSize(Integer.parseInt(m_configurationProperties.getProperty(RrdDbCache.SIZE_PROPERTY, Integer.toString(RrdDbCache.DEFAULT_SIZE))));
+        }
     }
 
     /**
-     * Closes the JRobin RrdDb.
+     * Returns the JRobin RrdDb to the file cache.
      *
      * @param rrdFile a {@link org.jrobin.core.RrdDb} object.
      * @throws java.lang.Exception if any.
      */
     @Override
     public void closeFile(final RrdDb rrdFile) throws Exception {
-        rrdFile.close();
+        m_cache.release(rrdFile);
     }
 
     /** {@inheritDoc} */
@@ -201,6 +209,7 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
         }
         LOG.info("createRRD: creating RRD file {}", rrdDef.getPath());
 
+        m_cache.invalidate(rrdDef.getPath());
         RrdDb rrd = new RrdDb(rrdDef);
         rrd.close();
     }
@@ -208,11 +217,11 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
     /**
      * {@inheritDoc}
      *
-     * Opens the JRobin RrdDb by name and returns it.
+     * Opens the JRobin RrdDb by name, or takes it from the file cache, and returns it.
      */
     @Override
     public RrdDb openFile(final String fileName) throws Exception {
-        return new RrdDb(fileName);
+        return m_cache.acquire(fileName);
     }
 
     /**
@@ -224,6 +233,7 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
     public void updateFile(final RrdDb rrdFile, final String owner, final String data) throws Exception {
         Sample sample = rrdFile.createSample();
         sample.setAndUpdate(data);
+        m_cache.updated(rrdFile);
     }
 
     /**
@@ -237,6 +247,15 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
         System.setProperty("jrobin.fontdir", home + File.separator + "etc");
     }
 
+    /**
+     * Stops the file cache's maintenance thread and JMX reporter and closes
+     * the idle file handles.
+     */
+    @Override
+    public void destroy() {
+        m_cache.close();
+    }
+
     /**
      * {@inheritDoc}
      *
@@ -255,7 +274,7 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
         try {
             long now = System.currentTimeMillis();
             long collectTime = (now - (now % interval)) / 1000L;
-            rrd = new RrdDb(fileName, true);
+            rrd = m_cache.acquire(fileName);
             FetchData data = rrd.createFetchRequest(consolidationFunction, collectTime, collectTime).fetchData();
             LOG.debug(data.toString());
             double[] vals = data.getValues(ds);
@@ -270,7 +289,7 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
         } finally {
             if (rrd != null) {
                 try {
-                    rrd.close();
+                    m_cache.release(rrd);
                 } catch (IOException e) {
                     LOG.error("Failed to close rrd file: {}", fileName, e);
                 }
@@ -283,7 +302,7 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
     public Double fetchLastValueInRange(final String fileName, final String ds, final int interval, final int range) throws NumberFormatException, org.opennms.netmgt.rrd.RrdException {
         RrdDb rrd = null;
         try {
-        	rrd = new RrdDb(fileName, true);
+            rrd = m_cache.acquire(fileName);
          	long now = System.currentTimeMillis();
             long latestUpdateTime = (now - (now % interval)) / 1000L;
             long earliestUpdateTime = ((now - (now % interval)) - range) / 1000L;
@@ -312,7 +331,7 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
         } finally {
             if (rrd != null) {
                 try {
-                    rrd.close();
+                    m_cache.release(rrd);
                 } catch (IOException e) {
                     LOG.error("Failed to close rrd file: {}", fileName, e);
                 }
@@ -860,13 +879,13 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
     }
 
     /**
-     * This implementation does not track any stats.
+     * Returns the hit, miss and eviction counts of the file cache.
      *
      * @return a {@link java.lang.String} object.
      */
     @Override
     public String getStats() {
-        return "";
+        return m_cache.getStats();
     }
 
     /*
@@ -0,0 +1,462 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.rrd.jrobin;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.jrobin.core.RrdDb;
+import org.jrobin.core.RrdException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.JmxReporter;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Keeps a bounded number of {@link RrdDb} handles open so that the write path
+ * and the fetch paths (thresholding, measurements) do not have to reopen and
+ * re-parse the header of a JRB file on every access.
+ *
+ * Handles are reference counted: {@link #acquire(String)} must be paired with
+ * {@link #release(RrdDb)}. Once more than <code>size</code> files are open the
+ * least recently used handles that are not in use are closed. Handles that are
+ * in use are never closed, so the cache may temporarily exceed its size when
+ * more files than that are being read or written at the same time. A handle is
+ * also closed once it has not been used for <code>idleTimeout</code>
+ * milliseconds.
+ *
+ * JRobin writes through to the file with every update, so the cache does not
+ * hold back any data. When <code>syncInterval</code> is positive, files that
+ * were updated are additionally forced to disk at that interval instead of
+ * leaving this to the operating system.
+ *
+ * {@link RrdDb#fetchData} and {@link RrdDb#store} are synchronized in JRobin,
+ * so a single handle can be shared safely between threads.
+ */
+public class RrdDbCache {
+    private static final Logger LOG = LoggerFactory.getLogger(RrdDbCache.class);
+
+    public static final String SIZE_PROPERTY = "org.opennms.rrd.jrobin.cache.size";
+    public static final String IDLE_TIMEOUT_PROPERTY = "org.opennms.rrd.jrobin.cache.idleTimeout";
+    public static final String SYNC_INTERVAL_PROPERTY = "org.opennms.rrd.jrobin.cache.syncInterval";
+
+    public static final int DEFAULT_SIZE = 1024;
+    public static final long DEFAULT_IDLE_TIMEOUT = TimeUnit.MINUTES.toMillis(15);
+    public static final long DEFAULT_SYNC_INTERVAL = 0;
+
+    private static final RrdDbCache s_instance = new RrdDbCache();
+
+    private static class Entry {
+        private final String m_path;
+        private RrdDb m_db;
+        private int m_refs = 0;
+        private boolean m_dirty = false;
+        private long m_lastUsed = System.currentTimeMillis();
+
+        private Entry(final String path) {
+            m_path = path;
+        }
+
+        private synchronized RrdDb open() throws IOException, RrdException {
+            if (m_db == null) {
+                m_db = new RrdDb(m_path);
+            }
+            return m_db;
+        }
+    }
+
+    private final Object m_lock = new Object();
+    private final LinkedHashMap<String, Entry> m_entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<RrdDb, Entry> m_entriesByDb = new IdentityHashMap<>();
+
+    private volatile int m_size = DEFAULT_SIZE;
+    private volatile long m_idleTimeout = DEFAULT_IDLE_TIMEOUT;
+    private volatile long m_syncInterval = DEFAULT_SYNC_INTERVAL;
+
+    private final MetricRegistry m_metrics = new MetricRegistry();
+    private final Meter m_hits = m_metrics.meter("hits");
+    private final Meter m_misses = m_metrics.meter("misses");
+    private final Meter m_evictions = m_metrics.meter("evictions");
+    private final Meter m_syncs = m_metrics.meter("syncs");
+
+    private long m_lastSync = System.currentTimeMillis();
+    private ScheduledExecutorService m_maintenance;
+    private JmxReporter m_reporter;
+
+    /**
+     * The cache shared by {@link JRobinRrdStrategy} and the measurements API.
+     *
+     * @return the shared cache
+     */
+    public static RrdDbCache getInstance() {
+        return s_instance;
+    }
+
+    public RrdDbCache() {
+        m_metrics.register("open", new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                synchronized (m_lock) {
+                    return m_entries.size();
+                }
+            }
+        });
+        m_metrics.register("in-use", new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                synchronized (m_lock) {
+                    return m_entriesByDb.size();
+                }
+            }
+        });
+    }
+
+    /**
+     * Sets the maximum number of idle handles to keep open. A size of 0
+     * disables the cache: every acquire opens the file and every release
+     * closes it again.
+     */
+    public void setSize(final int size) {
+        m_size = Math.max(size, 0);
+        closeAll(evict());
+    }
+
+    public int getSize() {
+        return m_size;
+    }
+
+    public void setIdleTimeout(final long idleTimeout) {
+        m_idleTimeout = idleTimeout;
+    }
+
+    public long getIdleTimeout() {
+        return m_idleTimeout;
+    }
+
+    public void setSyncInterval(final long syncInterval) {
+        m_syncInterval = syncInterval;
+    }
+
+    public long getSyncInterval() {
+        return m_syncInterval;
+    }
+
+    public MetricRegistry getMetricRegistry() {
+        return m_metrics;
+    }
+
+    /**
+     * Returns an open handle for the given file, opening it if necessary.
+     * The handle must be given back with {@link #release(RrdDb)} and must
+     * not be closed by the caller.
+     */
+    public RrdDb acquire(final String path) throws IOException, RrdException {
+        if (m_size <= 0) {
+            m_misses.mark();
+            return new RrdDb(path);
+        }
+        startMaintenance();
+
+        final Entry entry;
+        List<Entry> evicted = null;
+        synchronized (m_lock) {
+            final Entry existing = m_entries.get(path);
+            if (existing != null) {
+                m_hits.mark();
+                entry = existing;
+                entry.m_refs++;
+            } else {
+                m_misses.mark();
+                entry = new Entry(path);
+                entry.m_refs++;
+                m_entries.put(path, entry);
+                evicted = evict();
+            }
+        }
+        closeAll(evicted);
+
+        RrdDb db = null;
+        try {
+            db = entry.open();
+        } finally {
+            synchronized (m_lock) {
+                if (db != null) {
+                    m_entriesByDb.put(db, entry);
+                } else {
+                    entry.m_refs--;
+                    if (m_entries.get(path) == entry) {
+                        m_entries.remove(path);
+                    }
+                }
+            }
+        }
+        return db;
+    }
+
+    /**
+     * Gives back a handle obtained from {@link #acquire(String)}. Handles
+     * that were not obtained from the cache are closed.
+     */
+    public void release(final RrdDb db) throws IOException {
+        Entry toClose = null;
+        synchronized (m_lock) {
+            final Entry entry = m_entriesByDb.get(db);
+            if (entry == null) {
+                toClose = new Entry(db.getPath());
+                toClose.m_db = db;
+            } else {
+                entry.m_lastUsed = System.currentTimeMillis();
+                if (--entry.m_refs == 0) {
+                    m_entriesByDb.remove(db);
+                    if (m_entries.get(entry.m_path) != entry) {
+                        // invalidated, or its open failed for another thread
+                        toClose = entry;
+                    } else if (m_entries.size() > m_size) {
+                        m_entries.remove(entry.m_path);
+                        m_evictions.mark();
+                        toClose = entry;
+                    }
+                }
+            }
+        }
+        if (toClose != null) {
+            close(toClose);
+        }
+    }
+
+    /**
+     * Marks the file behind the given handle as written to, so that it is
+     * included in the next sync.
+     */
+    public void updated(final RrdDb db) {
+        synchronized (m_lock) {
+            final Entry entry = m_entriesByDb.get(db);
+            if (entry != null) {
+                entry.m_dirty = true;
+            }
+        }
+    }
+
+    /**
+     * Drops any cached handle for the given file, i.e. when the file is being
+     * (re)created. A handle that is still in use is closed once it is released.
+     */
+    public void invalidate(final String path) {
+        Entry toClose = null;
+        synchronized (m_lock) {
+            final Entry entry = m_entries.remove(path);
+            if (entry != null && entry.m_refs == 0) {
+                toClose = entry;
+            }
+        }
+        if (toClose != null) {
+            close(toClose);
+        }
+    }
+
+    /**
+     * Closes all handles that are not in use.
+     */
+    public void clear() {
+        final List<Entry> idle = new ArrayList<>();
+        synchronized (m_lock) {
+            for (final Iterator<Entry> it = m_entries.values().iterator(); it.hasNext(); ) {
+                final Entry entry = it.next();
+                if (entry.m_refs == 0) {
+                    it.remove();
+                    idle.add(entry);
+                }
+            }
+        }
+        closeAll(idle);
+    }
+
+    /**
+     * Stops the maintenance thread and the JMX reporter and closes all handles
+     * that are not in use. Both are started again by the next
+     * {@link #acquire(String)}, so the shared cache stays usable by whoever
+     * still holds on to it.
+     */
+    public void close() {
+        stopMaintenance();
+        clear();
+    }
+
+    public String getStats() {
+        return String.format("JRobin file cache: open=%d hits=%d misses=%d evictions=%d syncs=%d",
+                m_metrics.getGauges().get("open").getValue(), m_hits.getCount(), m_misses.getCount(),
+                m_evictions.getCount(), m_syncs.getCount());
+    }
+
+    private List<Entry> evict() {
+        List<Entry> evicted = null;
+        synchronized (m_lock) {
+            int excess = m_entries.size() - m_size;
+            for (final Iterator<Entry> it = m_entries.values().iterator(); excess > 0 && it.hasNext(); ) {
+                final Entry entry = it.next();
+                if (entry.m_refs == 0) {
+                    it.remove();
+                    excess--;
+                    m_evictions.mark();
+                    if (evicted == null) {
+                        evicted = new ArrayList<>();
+                    }
+                    evicted.add(entry);
+                }
+            }
+        }
+        return evicted;
+    }
+
+    private void closeIdle() {
+        final long cutoff = System.currentTimeMillis() - m_idleTimeout;
+        final List<Entry> idle = new ArrayList<>();
+        synchronized (m_lock) {
+            for (final Iterator<Entry> it = m_entries.values().iterator(); it.hasNext(); ) {
+                final Entry entry = it.next();
+                if (entry.m_refs == 0 && entry.m_lastUsed < cutoff) {
+                    it.remove();
+                    idle.add(entry);
+                }
+            }
+        }
+        LOG.debug("closeIdle: closing {} handles unused for {}ms", idle.size(), m_idleTimeout);
+        closeAll(idle);
+    }
+
+    private void syncDirty() {
+        final List<String> dirty = new ArrayList<>();
+        synchronized (m_lock) {
+            for (final Entry entry : m_entries.values()) {
+                if (entry.m_dirty) {
+                    entry.m_dirty = false;
+                    dirty.add(entry.m_path);
+                }
+            }
+        }
+        LOG.debug("syncDirty: syncing {} files", dirty.size());
+        for (final String path : dirty) {
+            sync(path);
+        }
+    }
+
+    private void sync(final String path) {
+        // fsync() applies to the file rather than to the descriptor, so a
+        // second channel is enough to flush what was written through the
+        // RrdDb's own backend
+        try (final FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.WRITE)) {
+            channel.force(false);
+            m_syncs.mark();
+        } catch (final IOException e) {
+            LOG.warn("Failed to sync rrd file: {}", path, e);
+        }
+    }
+
+    private void closeAll(final List<Entry> entries) {
+        if (entries != null) {
+            for (final Entry entry : entries) {
+                close(entry);
+            }
+        }
+    }
+
+    private void close(final Entry entry) {
+        synchronized (entry) {
+            if (entry.m_db == null) {
+                return;
+            }
+            try {
+                entry.m_db.close();
+            } catch (final IOException e) {
+                LOG.error("Failed to close rrd file: {}", entry.m_path, e);
+            }
+            entry.m_db = null;
+        }
+        if (entry.m_dirty && m_syncInterval > 0) {
+            sync(entry.m_path);
+        }
+    }
+
+    private synchronized void startMaintenance() {
+        if (m_maintenance != null) {
+            return;
+        }
+        m_maintenance = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread thread = new Thread(r, "JRobin-FileCache-Maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        m_maintenance.scheduleWithFixedDelay(() -> {
+            try {
+                closeIdle();
+            } catch (final Throwable t) {
+                LOG.warn("Unexpected exception while closing idle rrd files", t);
+            }
+        }, 1, 1, TimeUnit.MINUTES);
+        m_maintenance.scheduleWithFixedDelay(() -> {
+            try {
+                final long now = System.currentTimeMillis();
+                if (m_syncInterval > 0 && now - m_lastSync >= m_syncInterval) {
+                    m_lastSync = now;
+                    syncDirty();
+                }
+            } catch (final Throwable t) {
+                LOG.warn("Unexpected exception while syncing rrd files", t);
+            }
+        }, 1, 1, TimeUnit.SECONDS);
+
+        m_reporter = JmxReporter.forRegistry(m_metrics).inDomain("org.opennms.netmgt.rrd.jrobin.cache").build();
+        m_reporter.start();
+    }
+
+    private synchronized void stopMaintenance() {
+        if (m_maintenance == null) {
+            return;
+        }
+        m_maintenance.shutdownNow();
+        m_maintenance = null;
+        m_reporter.stop();
+        m_reporter = null;
+    }
+}
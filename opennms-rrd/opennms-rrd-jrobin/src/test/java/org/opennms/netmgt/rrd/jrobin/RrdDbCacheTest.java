@@ -0,0 +1,159 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.rrd.jrobin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.jrobin.core.RrdDb;
+import org.jrobin.core.RrdDef;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.test.FileAnticipator;
+
+public class RrdDbCacheTest {
+
+    private FileAnticipator m_fileAnticipator;
+    private RrdDbCache m_cache;
+
+    @Before
+    public void setUp() throws Exception {
+        m_fileAnticipator = new FileAnticipator();
+        m_cache = new RrdDbCache();
+        m_cache.setSize(2);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        m_cache.clear();
+        m_fileAnticipator.deleteExpected();
+        m_fileAnticipator.tearDown();
+    }
+
+    @Test
+    public void canShareOpenFiles() throws Exception {
+        final String path = createRrdFile("a");
+
+        final RrdDb first = m_cache.acquire(path);
+        final RrdDb second = m_cache.acquire(path);
+        assertSame(first, second);
+        m_cache.release(first);
+        m_cache.release(second);
+        assertFalse(first.isClosed());
+
+        final RrdDb third = m_cache.acquire(path);
+        assertSame(first, third);
+        m_cache.release(third);
+
+        assertEquals(1, m_cache.getMetricRegistry().meter("misses").getCount());
+        assertEquals(2, m_cache.getMetricRegistry().meter("hits").getCount());
+    }
+
+    @Test
+    public void canEvictLeastRecentlyUsed() throws Exception {
+        final String a = createRrdFile("a");
+        final String b = createRrdFile("b");
+        final String c = createRrdFile("c");
+
+        final RrdDb dbA = m_cache.acquire(a);
+        m_cache.release(dbA);
+        final RrdDb dbB = m_cache.acquire(b);
+        m_cache.release(dbB);
+        // touch a so that b becomes the eldest
+        m_cache.release(m_cache.acquire(a));
+
+        final RrdDb dbC = m_cache.acquire(c);
+        m_cache.release(dbC);
+
+        assertFalse(dbA.isClosed());
+        assertTrue(dbB.isClosed());
+        assertFalse(dbC.isClosed());
+        assertEquals(1, m_cache.getMetricRegistry().meter("evictions").getCount());
+    }
+
+    @Test
+    public void doesNotEvictFilesInUse() throws Exception {
+        final RrdDb dbA = m_cache.acquire(createRrdFile("a"));
+        final RrdDb dbB = m_cache.acquire(createRrdFile("b"));
+        final RrdDb dbC = m_cache.acquire(createRrdFile("c"));
+        assertFalse(dbA.isClosed());
+        assertFalse(dbB.isClosed());
+
+        // releasing while over capacity closes the handle straight away
+        m_cache.release(dbA);
+        assertTrue(dbA.isClosed());
+        m_cache.release(dbB);
+        m_cache.release(dbC);
+        assertFalse(dbB.isClosed());
+        assertFalse(dbC.isClosed());
+    }
+
+    @Test
+    public void canInvalidateFilesInUse() throws Exception {
+        final String path = createRrdFile("a");
+
+        final RrdDb db = m_cache.acquire(path);
+        m_cache.invalidate(path);
+        assertFalse(db.isClosed());
+        m_cache.release(db);
+        assertTrue(db.isClosed());
+
+        final RrdDb reopened = m_cache.acquire(path);
+        assertNotSame(db, reopened);
+        m_cache.release(reopened);
+    }
+
+    @Test
+    public void canDisableCache() throws Exception {
+        m_cache.setSize(0);
+        final String path = createRrdFile("a");
+
+        final RrdDb db = m_cache.acquire(path);
+        m_cache.release(db);
+        assertTrue(db.isClosed());
+    }
+
+    private String createRrdFile(final String name) throws Exception {
+        final File file = m_fileAnticipator.expecting(name + ".jrb");
+        final RrdDef def = new RrdDef(file.getAbsolutePath());
+        def.setStartTime(1000);
+        def.setStep(300);
+        def.addDatasource("bar", "GAUGE", 3000, Double.NaN, Double.NaN);
+        def.addArchive("RRA:AVERAGE:0.5:1:100");
+        new RrdDb(def).close();
+        return file.getAbsolutePath();
+    }
+}
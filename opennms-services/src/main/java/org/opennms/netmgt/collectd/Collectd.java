@@ -81,6 +81,7 @@ import org.opennms.netmgt.model.events.EventUtils;
 import org.opennms.netmgt.scheduler.LegacyScheduler;
 import org.opennms.netmgt.scheduler.ReadyRunnable;
 import org.opennms.netmgt.scheduler.Scheduler;
+import org.opennms.netmgt.scheduler.TimingWheelScheduler;
 import org.opennms.netmgt.snmp.InetAddrUtils;
 import org.opennms.netmgt.xml.event.Event;
 import org.opennms.netmgt.xml.event.Parm;
@@ -129,6 +130,12 @@ public class Collectd extends AbstractServiceDaemon implements
      * Log4j category
      */
     static final String LOG4J_CATEGORY = "collectd";
+
+    /**
+     * Selects the scheduler implementation, either <code>legacy</code> (the
+     * default) or <code>timingwheel</code>.
+     */
+    private static final String SCHEDULER_SYS_PROP = "org.opennms.netmgt.collectd.scheduler";
     
     /**
      * Instantiated service collectors specified in config file
@@ -320,7 +327,12 @@ public class Collectd extends AbstractServiceDaemon implements
             // Create a scheduler
             try {
                 LOG.debug("init: Creating collectd scheduler");
-                setScheduler(new LegacyScheduler("Collectd", m_collectdConfigFactory.getCollectdConfig().getThreads()));
+                final int threads = m_collectdConfigFactory.getCollectdConfig().getThreads();
+                if ("timingwheel".equalsIgnoreCase(System.getProperty(SCHEDULER_SYS_PROP, "legacy"))) {
+                    setScheduler(new TimingWheelScheduler("Collectd", threads));
+                } else {
+                    setScheduler(new LegacyScheduler("Collectd", threads));
+                }
             } catch (final RuntimeException e) {
                 LOG.error("init: Failed to create collectd scheduler", e);
                 throw e;
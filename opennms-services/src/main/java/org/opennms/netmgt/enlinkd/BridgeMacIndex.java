@@ -0,0 +1,267 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.enlinkd;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.opennms.netmgt.model.BridgeMacLink;
+import org.opennms.netmgt.model.BridgeMacLink.BridgeDot1qTpFdbStatus;
+
+/**
+ * The learned entries of a bridge forwarding table, with the mac addresses
+ * encoded as longs and kept in a sorted array. Lookups are binary searches
+ * and the common macs of two bridges are found by merging their arrays,
+ * so no maps or sets of strings need to be built for each pair of bridges
+ * that is compared.
+ *
+ * As in a map keyed by mac address, the last entry of the forwarding table
+ * wins if the same mac is learned more than once.
+ *
+ * Indexes and mac arrays can only be compared if they were built with the
+ * same {@link Encoder}.
+ */
+public final class BridgeMacIndex {
+
+    /**
+     * The code of a missing mac address.
+     */
+    public static final long NULL_MAC = Long.MIN_VALUE;
+
+    private final Encoder m_encoder;
+
+    private final Integer m_bridgeId;
+
+    /** The encoded mac of each entry, in forwarding table order. */
+    private final long[] m_macs;
+
+    /** The sorted, distinct macs of the learned entries and their links. */
+    private final long[] m_learnedMacs;
+    private final BridgeMacLink[] m_learnedLinks;
+
+    private BridgeMacIndex(Encoder encoder, Integer bridgeId, long[] macs, long[] learnedMacs, BridgeMacLink[] learnedLinks) {
+        m_encoder = encoder;
+        m_bridgeId = bridgeId;
+        m_macs = macs;
+        m_learnedMacs = learnedMacs;
+        m_learnedLinks = learnedLinks;
+    }
+
+    /**
+     * Indexes the entries of the forwarding table that were learned by the given bridge.
+     */
+    public static BridgeMacIndex build(Encoder encoder, Integer bridgeId, List<BridgeMacLink> bft) {
+        final long[] macs = new long[bft.size()];
+        final long[] learned = new long[bft.size()];
+        int size = 0;
+        for (int i = 0; i < macs.length; i++) {
+            final BridgeMacLink link = bft.get(i);
+            macs[i] = encoder.encode(link.getMacAddress());
+            if (isLearnedBy(bridgeId, link)) {
+                learned[size++] = macs[i];
+            }
+        }
+        final long[] learnedMacs = distinct(Arrays.copyOf(learned, size));
+        final BridgeMacLink[] learnedLinks = new BridgeMacLink[learnedMacs.length];
+        for (int i = 0; i < macs.length; i++) {
+            final BridgeMacLink link = bft.get(i);
+            if (isLearnedBy(bridgeId, link)) {
+                // a later entry for the same mac replaces the earlier one
+                learnedLinks[Arrays.binarySearch(learnedMacs, macs[i])] = link;
+            }
+        }
+        return new BridgeMacIndex(encoder, bridgeId, macs, learnedMacs, learnedLinks);
+    }
+
+    private static boolean isLearnedBy(Integer bridgeId, BridgeMacLink link) {
+        return bridgeId.intValue() == link.getNode().getId().intValue()
+                && link.getBridgeDot1qTpFdbStatus() == BridgeDot1qTpFdbStatus.DOT1D_TP_FDB_STATUS_LEARNED;
+    }
+
+    public Integer getBridgeId() {
+        return m_bridgeId;
+    }
+
+    /**
+     * @return the encoded mac of the entry at the given position of the indexed forwarding table
+     */
+    public long getMac(int position) {
+        return m_macs[position];
+    }
+
+    /**
+     * @return the learned link for the mac, or null if the bridge did not learn it
+     */
+    public BridgeMacLink get(long mac) {
+        final int i = Arrays.binarySearch(m_learnedMacs, mac);
+        return i < 0 ? null : m_learnedLinks[i];
+    }
+
+    public BridgeMacLink get(String mac) {
+        return get(m_encoder.encode(mac));
+    }
+
+    public int size() {
+        return m_learnedMacs.length;
+    }
+
+    /**
+     * @return the sorted macs learned by both bridges
+     */
+    public long[] getCommonLearnedMacs(BridgeMacIndex other) {
+        return intersect(m_learnedMacs, other.m_learnedMacs);
+    }
+
+    private static long[] distinct(long[] macs) {
+        Arrays.sort(macs);
+        int size = 0;
+        for (int i = 0; i < macs.length; i++) {
+            if (size == 0 || macs[size - 1] != macs[i]) {
+                macs[size++] = macs[i];
+            }
+        }
+        return size == macs.length ? macs : Arrays.copyOf(macs, size);
+    }
+
+    /**
+     * @return the values found in both sorted arrays
+     */
+    public static long[] intersect(long[] a, long[] b) {
+        final long[] common = new long[Math.min(a.length, b.length)];
+        int size = 0;
+        for (int i = 0, j = 0; i < a.length && j < b.length;) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                common[size++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(common, size);
+    }
+
+    /**
+     * @return the number of values found in both sorted arrays
+     */
+    public static int countCommon(long[] a, long[] b) {
+        int count = 0;
+        for (int i = 0, j = 0; i < a.length && j < b.length;) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                count++;
+                i++;
+                j++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Encodes mac addresses for the indexes that are compared with each other,
+     * typically those of one topology calculation. Not thread-safe.
+     */
+    public static final class Encoder {
+
+        /**
+         * Addresses that are not made of 12 hex digits are given negative codes,
+         * so they can never collide with a real mac address. They are only
+         * remembered for the lifetime of the encoder.
+         */
+        private final Map<String, Long> m_malformed = new HashMap<>();
+        private long m_nextMalformed = -1;
+
+        /**
+         * Encodes a mac address of 12 lower case hex digits, as stored in the
+         * {@link BridgeMacLink}s, into the lower 48 bits of a long. A null address
+         * is encoded as {@link BridgeMacIndex#NULL_MAC} and any other string is
+         * encoded on its own, so two addresses encode to the same value only if
+         * they are equal.
+         */
+        public long encode(String mac) {
+            if (mac == null) {
+                return NULL_MAC;
+            }
+            if (mac.length() == 12) {
+                long value = 0;
+                for (int i = 0; i < 12; i++) {
+                    final char c = mac.charAt(i);
+                    final int digit;
+                    if (c >= '0' && c <= '9') {
+                        digit = c - '0';
+                    } else if (c >= 'a' && c <= 'f') {
+                        digit = c - 'a' + 10;
+                    } else {
+                        return encodeMalformed(mac);
+                    }
+                    value = (value << 4) | digit;
+                }
+                return value;
+            }
+            return encodeMalformed(mac);
+        }
+
+        private long encodeMalformed(String mac) {
+            return m_malformed.computeIfAbsent(mac, k -> m_nextMalformed--);
+        }
+
+        /**
+         * @return the sorted, distinct encoded macs
+         */
+        public long[] toSortedMacs(Collection<String> macs) {
+            final long[] encoded = new long[macs.size()];
+            int i = 0;
+            for (final String mac : macs) {
+                encoded[i++] = encode(mac);
+            }
+            return distinct(encoded);
+        }
+
+        /**
+         * @return the sorted, distinct encoded macs of the links
+         */
+        public long[] toSortedLinkMacs(Collection<BridgeMacLink> links) {
+            final long[] encoded = new long[links.size()];
+            int i = 0;
+            for (final BridgeMacLink link : links) {
+                encoded[i++] = encode(link.getMacAddress());
+            }
+            return distinct(encoded);
+        }
+    }
+}
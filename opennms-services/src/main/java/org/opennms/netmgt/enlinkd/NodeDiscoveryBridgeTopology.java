@@ -112,9 +112,11 @@ public class NodeDiscoveryBridgeTopology extends NodeDiscovery {
         BridgePort m_yxPort;
 
         public BridgeTopologyHelper(Bridge xBridge, List<BridgeMacLink> xBFT,Bridge yBridge, List<BridgeMacLink> yBFT) {
+            this(xBridge, xBFT, BridgeMacIndex.build(m_macEncoder, xBridge.getId(), xBFT), yBridge, yBFT, BridgeMacIndex.build(m_macEncoder, yBridge.getId(), yBFT));
+        }
+
+        public BridgeTopologyHelper(Bridge xBridge, List<BridgeMacLink> xBFT, BridgeMacIndex xmactoport, Bridge yBridge, List<BridgeMacLink> yBFT, BridgeMacIndex ymactoport) {
             super();
-            Map<String,BridgeMacLink> xmactoport = new HashMap<String, BridgeMacLink>();
-            Map<String,BridgeMacLink> ymactoport = new HashMap<String, BridgeMacLink>();
             Set<String> xmacs = new HashSet<String>();
             Set<String> ymacs = new HashSet<String>();             		
             if (LOG.isDebugEnabled()) {
@@ -125,16 +127,10 @@ public class NodeDiscoveryBridgeTopology extends NodeDiscovery {
                     BroadcastDomain.printTopologyBFT(yBFT));
             }
             for (BridgeMacLink xlink: xBFT) {
-                if (xBridge.getId().intValue() == xlink.getNode().getId().intValue() && xlink.getBridgeDot1qTpFdbStatus() == BridgeDot1qTpFdbStatus.DOT1D_TP_FDB_STATUS_LEARNED) {
-                    xmactoport.put(xlink.getMacAddress(), xlink);
-                }
                 if (xBridge.getId().intValue() == xlink.getNode().getId().intValue() && xlink.getBridgeDot1qTpFdbStatus() == BridgeDot1qTpFdbStatus.DOT1D_TP_FDB_STATUS_SELF) 
                     xmacs.add(xlink.getMacAddress());
             }
             for (BridgeMacLink ylink: yBFT) {
-                if (yBridge.getId().intValue() == ylink.getNode().getId().intValue() && ylink.getBridgeDot1qTpFdbStatus() == BridgeDot1qTpFdbStatus.DOT1D_TP_FDB_STATUS_LEARNED) {
-                    ymactoport.put(ylink.getMacAddress(), ylink);
-                }
                 if (yBridge.getId().intValue() == ylink.getNode().getId().intValue() && ylink.getBridgeDot1qTpFdbStatus() == BridgeDot1qTpFdbStatus.DOT1D_TP_FDB_STATUS_SELF) 
                     ymacs.add(ylink.getMacAddress());
             }
@@ -164,12 +160,13 @@ public class NodeDiscoveryBridgeTopology extends NodeDiscovery {
             }
             	            
             if (m_xy == null || m_yx == null) {
-                Set<String> commonlearnedmacs = new HashSet<String>(xmactoport.keySet()); 
-                commonlearnedmacs.retainAll(new HashSet<String>(ymactoport.keySet()));
-                LOG.debug("simple connection: [{} <--> {}] common (learned mac): {}",
+                long[] commonlearnedmacs = xmactoport.getCommonLearnedMacs(ymactoport);
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("simple connection: [{} <--> {}] common (learned mac): {}",
                 		xBridge.getId(),
                 		yBridge.getId(),
-                		commonlearnedmacs);
+                		getMacAddresses(commonlearnedmacs, xmactoport));
+                }
                 if (m_yx != null && m_xy == null) { 
                     m_xy = condition2(commonlearnedmacs,m_yx,ymactoport,xmactoport);
                 } else if (m_yx == null && m_xy != null) {
@@ -193,10 +190,13 @@ public class NodeDiscoveryBridgeTopology extends NodeDiscovery {
             
             BridgeMacLink xylink = null;
             BridgeMacLink yxlink = null;
+            int xposition = 0;
             for (BridgeMacLink xlink: xBFT) {
+                final long xmac = xmactoport.getMac(xposition++);
                 if (xlink.getBridgePort() == m_xy && xlink.getBridgeDot1qTpFdbStatus() == BridgeDot1qTpFdbStatus.DOT1D_TP_FDB_STATUS_LEARNED) {
-                    if (ymactoport.get(xlink.getMacAddress()) != null 
-                    		&& m_yx == ymactoport.get(xlink.getMacAddress()).getBridgePort()) {
+                    final BridgeMacLink ylearned = ymactoport.get(xmac);
+                    if (ylearned != null 
+                    		&& m_yx == ylearned.getBridgePort()) {
                     	m_macsOnSegment.add(xlink.getMacAddress());
                         LOG.debug("simple connection: [{}, port {}] <--> [{}, port {}], forward set: mac added: [bridge:[{}],port:{},mac:{}].", 
                                   xBridge.getId(), 
@@ -206,7 +206,7 @@ public class NodeDiscoveryBridgeTopology extends NodeDiscovery {
                                   xlink.getNode().getId(),
                     		xlink.getBridgePort(),
                     		xlink.getMacAddress());
-                    } else if (ymactoport.get(xlink.getMacAddress()) == null){
+                    } else if (ylearned == null){
                         m_forwardersX.add(xlink);
                         LOG.debug("simple connection: [{}, port {}] <--> [{}, port {}], through set: mac added: [bridge:[{}],port:{},mac:{}].", 
                                   xBridge.getId(), 
@@ -234,10 +234,13 @@ public class NodeDiscoveryBridgeTopology extends NodeDiscovery {
                 }
             }
             
+            int yposition = 0;
             for (BridgeMacLink ylink: yBFT) {
+                final long ymac = ymactoport.getMac(yposition++);
                 if (ylink.getBridgePort() == m_yx && ylink.getBridgeDot1qTpFdbStatus() == BridgeDot1qTpFdbStatus.DOT1D_TP_FDB_STATUS_LEARNED) {
-                    if ( xmactoport.get(ylink.getMacAddress()) != null &&
-                    		m_xy == xmactoport.get(ylink.getMacAddress()).getBridgePort()) {
+                    final BridgeMacLink xlearned = xmactoport.get(ymac);
+                    if ( xlearned != null &&
+                    		m_xy == xlearned.getBridgePort()) {
                     	m_macsOnSegment.add(ylink.getMacAddress());
                         LOG.debug("simple connection: [{}, port {}] <--> [{}, port {}], forward set: mac added: [bridge:[{}],port:{},mac:{}].", 
                                   xBridge.getId(), 
@@ -247,7 +250,7 @@ public class NodeDiscoveryBridgeTopology extends NodeDiscovery {
                                   ylink.getNode().getId(),
                                 ylink.getBridgePort(),
                                 ylink.getMacAddress());
-                    } else if (xmactoport.get(ylink.getMacAddress()) == null){
+                    } else if (xlearned == null){
                         m_forwardersY.add(ylink);
                         LOG.debug("simple connection: [{}, port {}] <--> [{}, port {}], through set: mac added: [bridge:[{}],port:{},mac:{}].", 
                                   xBridge.getId(), 
@@ -305,7 +308,7 @@ public class NodeDiscoveryBridgeTopology extends NodeDiscovery {
             }
         }
 
-        private List<Integer> condition3(Set<String> commonlearnedmacs,Map<String,BridgeMacLink> xbft,Map<String,BridgeMacLink> ybft) {
+        private List<Integer> condition3(long[] commonlearnedmacs,BridgeMacIndex xbft,BridgeMacIndex ybft) {
         
         //
         // condition 3XY
@@ -324,28 +327,31 @@ public class NodeDiscoveryBridgeTopology extends NodeDiscovery {
             Integer xp1=null;
             Integer xp2=null;
             List<Integer> bbports = new ArrayList<Integer>(2);
-            for (String mac: commonlearnedmacs) {
+            for (long encodedmac: commonlearnedmacs) {
+                final BridgeMacLink ylink = ybft.get(encodedmac);
+                final BridgeMacLink xlink = xbft.get(encodedmac);
+                final String mac = xlink.getMacAddress();
                 LOG.debug("condition3: parsing common BFT mac: {}",mac);
                 if (mac1 == null) {
                     mac1=mac;
-                    yp1=ybft.get(mac).getBridgePort();
-                    xp1=xbft.get(mac).getBridgePort();
+                    yp1=ylink.getBridgePort();
+                    xp1=xlink.getBridgePort();
                     LOG.debug("condition3: mac1: {} xp1: {} yp1: {} ", mac1,xp1,yp1);
                     continue;
                 }
-                if (ybft.get(mac).getBridgePort() == yp1 && xbft.get(mac).getBridgePort() == xp1)
+                if (ylink.getBridgePort() == yp1 && xlink.getBridgePort() == xp1)
                     continue;
                 if (mac2 == null) {
                     mac2=mac;
-                    yp2=ybft.get(mac).getBridgePort();
-                    xp2=xbft.get(mac).getBridgePort();
+                    yp2=ylink.getBridgePort();
+                    xp2=xlink.getBridgePort();
                     LOG.debug("condition3: mac2: {} xp2: {} yp2: {} ", mac2,xp2,yp2);
                     continue;
                 }
-                if (ybft.get(mac).getBridgePort() == yp2 && xbft.get(mac).getBridgePort() == xp2)
+                if (ylink.getBridgePort() == yp2 && xlink.getBridgePort() == xp2)
                     continue;
-                Integer yp3 = ybft.get(mac).getBridgePort();
-                Integer xp3 = xbft.get(mac).getBridgePort();
+                Integer yp3 = ylink.getBridgePort();
+                Integer xp3 = xlink.getBridgePort();
                 LOG.debug("condition3: mac3: {} x3: {} yp3: {} ", mac,xp3,yp3);
 
                 //m_1 belongs to FDB(p1,Y) FDB(xy,X) 
@@ -417,21 +423,24 @@ public class NodeDiscoveryBridgeTopology extends NodeDiscovery {
         // condition 2 yx found                         m_x belongs to FDB(yx,Y)
         // if exists m_1 and m_2, p1 and p2 on Y :      m_1 belongs to FDB(p1,Y) FDB(xy,X)
         //                                              m_2 belongs to FDB(p2,Y) FDB(xy,X)
-        private Integer condition2(Set<String> commonlearnedmacs, Integer yx, Map<String,BridgeMacLink> ybft, Map<String,BridgeMacLink> xbft) {
+        private Integer condition2(long[] commonlearnedmacs, Integer yx, BridgeMacIndex ybft, BridgeMacIndex xbft) {
             String mac1=null;
             String mac2=null;
             Integer p1=null;
             Integer xy1=null;
             Integer p2=null;
             Integer xy2=null;
-            for (String mac: commonlearnedmacs) {
-                if (ybft.get(mac) == null || ybft.get(mac).getBridgePort() == null 
-                        ||xbft.get(mac) == null || xbft.get(mac).getBridgePort() == null )
+            for (long encodedmac: commonlearnedmacs) {
+                final BridgeMacLink ylink = ybft.get(encodedmac);
+                final BridgeMacLink xlink = xbft.get(encodedmac);
+                if (ylink == null || ylink.getBridgePort() == null 
+                        ||xlink == null || xlink.getBridgePort() == null )
                     continue;
+                final String mac = xlink.getMacAddress();
                 if (mac1 == null) {
                     mac1 = mac;
-                    p1 = ybft.get(mac).getBridgePort();
-                    xy1= xbft.get(mac).getBridgePort();
+                    p1 = ylink.getBridgePort();
+                    xy1= xlink.getBridgePort();
                     LOG.debug("condition2: mac1: {} xy1: {} p1: {} ", mac1,xy1,p1);
                     if (p1.intValue() != yx.intValue()) {
                         LOG.debug("condition2: p1 is not yx: so is on the other side. xy bridge port {}",xy1);
@@ -439,11 +448,11 @@ public class NodeDiscoveryBridgeTopology extends NodeDiscovery {
                     }
                     continue;
                 }
-                if (ybft.get(mac).getBridgePort().intValue() == p1.intValue())
+                if (ylink.getBridgePort().intValue() == p1.intValue())
                     continue;
                 mac2 = mac;
-                p2 = ybft.get(mac).getBridgePort();
-                xy2= xbft.get(mac).getBridgePort();
+                p2 = ylink.getBridgePort();
+                xy2= xlink.getBridgePort();
                 LOG.debug("condition2: mac2: {} xy2: {} p2: {} ", mac2,xy2,p2);
                 // p1 and p2 are both different then yx
                 if (xy2.intValue() == xy1.intValue()) {
@@ -464,13 +473,14 @@ public class NodeDiscoveryBridgeTopology extends NodeDiscovery {
             return null;
         }
         
-        private Integer condition1(Set<String> bridgemacaddressess, Map<String,BridgeMacLink> otherbridgebft) {
+        private Integer condition1(Set<String> bridgemacaddressess, BridgeMacIndex otherbridgebft) {
             for (String mac: bridgemacaddressess) {
-                if (otherbridgebft.containsKey(mac)) {
+                final BridgeMacLink link = otherbridgebft.get(mac);
+                if (link != null) {
                     LOG.debug("condition1: base address {} --> port: {} ",
-                    		mac,otherbridgebft.get(mac).getBridgePort());
+                    		mac,link.getBridgePort());
 
-                    return otherbridgebft.get(mac).getBridgePort();
+                    return link.getBridgePort();
                 }
             }
             LOG.debug("condition1: base address: {}. Not found.",
@@ -478,6 +488,14 @@ public class NodeDiscoveryBridgeTopology extends NodeDiscovery {
             return null;
         }
         
+        private List<String> getMacAddresses(long[] macs, BridgeMacIndex bft) {
+            List<String> addresses = new ArrayList<String>(macs.length);
+            for (long mac: macs) {
+                addresses.add(bft.get(mac).getMacAddress());
+            }
+            return addresses;
+        }
+
         public Integer getFirstBridgeConnectionPort() {
             return m_xy;
         }
@@ -526,6 +544,11 @@ public class NodeDiscoveryBridgeTopology extends NodeDiscovery {
 
     Map<Bridge,List<BridgeMacLink>> m_notYetParsedBFTMap;
     BroadcastDomain m_domain;
+    // the root bft is compared with every bridge, so its index is kept
+    private List<BridgeMacLink> m_rootIndexBft;
+    private BridgeMacIndex m_rootIndex;
+    // encodes the macs of the indexes built by a calculation
+    private BridgeMacIndex.Encoder m_macEncoder;
     //List<BridgeStpLink> m_STPLinks = new ArrayList<BridgeStpLink>();
 
     public BroadcastDomain getDomain() {
@@ -550,7 +573,7 @@ public class NodeDiscoveryBridgeTopology extends NodeDiscovery {
         super(linkd, node);
     }
 
-    private Set<Integer> getAllNodesWithUpdatedBFTOnDomain(Set<String>incomingSet, Map<Integer,List<BridgeMacLink>> nodeBftMap) {
+    private Set<Integer> getAllNodesWithUpdatedBFTOnDomain(BridgeMacIndex.Encoder encoder, long[] incomingSet, Map<Integer,List<BridgeMacLink>> nodeBftMap) {
         Set<Integer> nodeswithupdatedbftonbroadcastdomain= new HashSet<Integer>();
         nodeswithupdatedbftonbroadcastdomain.add(getNodeId());
 
@@ -559,19 +582,14 @@ public class NodeDiscoveryBridgeTopology extends NodeDiscovery {
             for (Integer curNodeId: nodeBftMap.keySet()) {
                 if (curNodeId.intValue() == getNodeId())
                     continue;
-                Set<String>retainedSet = new HashSet<String>();
-                for (BridgeMacLink link: nodeBftMap.get(curNodeId)) {
-                    retainedSet.add(link.getMacAddress());
-                }
-                LOG.debug("run: node: [{}], parsing updated bft node: [{}], macs {}", getNodeId(), curNodeId,retainedSet);
-                retainedSet.retainAll(incomingSet);
-                LOG.debug("run: node: [{}], node: [{}] - common mac address set: {}", getNodeId(), curNodeId, retainedSet);
-                if (retainedSet.size() > DOMAIN_MATCH_MIN_SIZE
-                        || retainedSet.size() >= incomingSet.size() * DOMAIN_MATCH_MIN_RATIO) {
+                final int retained = BridgeMacIndex.countCommon(encoder.toSortedLinkMacs(nodeBftMap.get(curNodeId)), incomingSet);
+                LOG.debug("run: node: [{}], node: [{}] - common mac addresses: {}", getNodeId(), curNodeId, retained);
+                if (retained > DOMAIN_MATCH_MIN_SIZE
+                        || retained >= incomingSet.length * DOMAIN_MATCH_MIN_RATIO) {
                     nodeswithupdatedbftonbroadcastdomain.add(curNodeId);
                     LOG.debug("run: node: [{}], node: [{}] - put on same broadcast domain, common macs: {} ", getNodeId(), 
                              curNodeId,
-                             retainedSet);
+                             retained);
                 }
             }            
         }
@@ -597,13 +615,12 @@ public class NodeDiscoveryBridgeTopology extends NodeDiscovery {
     	}
     	Date now = new Date();
                 
-        Set<String> incomingSet = new HashSet<String>();
+        final BridgeMacIndex.Encoder encoder = new BridgeMacIndex.Encoder();
+        final long[] incomingSet;
         synchronized (links) {
-            for (BridgeMacLink link : links) {
-                incomingSet.add(link.getMacAddress());
-            }            
+            incomingSet = encoder.toSortedLinkMacs(links);
         }
-        LOG.debug("run: node: [{}]. macs found: {}", getNodeId(), incomingSet);
+        LOG.debug("run: node: [{}]. macs found: {}", getNodeId(), incomingSet.length);
 
         LOG.info("run: node: [{}], getting broadcast domain. Start", getNodeId());
         for (BroadcastDomain domain : m_linkd.getQueryManager().getAllBroadcastDomains()) {
@@ -611,13 +628,11 @@ public class NodeDiscoveryBridgeTopology extends NodeDiscovery {
                       getNodeId(),
                       domain.getBridgeNodesOnDomain(),
                       domain.getMacsOnDomain());
-            Set<String>retainedSet = new HashSet<String>(
-                                                          domain.getMacsOnDomain());
-            retainedSet.retainAll(incomingSet);
-            LOG.debug("run: node: [{}], retained: {}", getNodeId(), retainedSet);
+            final int retained = BridgeMacIndex.countCommon(encoder.toSortedMacs(domain.getMacsOnDomain()), incomingSet);
+            LOG.debug("run: node: [{}], retained: {}", getNodeId(), retained);
             // should contain at list 5 or 10% of the all size
-            if (retainedSet.size() > DOMAIN_MATCH_MIN_SIZE
-                    || retainedSet.size() >= incomingSet.size() * DOMAIN_MATCH_MIN_RATIO) {
+            if (retained > DOMAIN_MATCH_MIN_SIZE
+                    || retained >= incomingSet.length * DOMAIN_MATCH_MIN_RATIO) {
                 if (LOG.isDebugEnabled()) {
                     LOG.debug("run: node: [{}], domain {} found!",getNodeId(), 
                           domain.getBridgeNodesOnDomain());
@@ -637,7 +652,7 @@ public class NodeDiscoveryBridgeTopology extends NodeDiscovery {
         LOG.info("run: node: [{}], getting broadcast domain. End", getNodeId());
                 
         Map<Integer,List<BridgeMacLink>> nodeBftMap = m_linkd.getQueryManager().getUpdateBftMap();
-        Set<Integer> nodeswithupdatedbftonbroadcastdomain = getAllNodesWithUpdatedBFTOnDomain(incomingSet,nodeBftMap);            
+        Set<Integer> nodeswithupdatedbftonbroadcastdomain = getAllNodesWithUpdatedBFTOnDomain(encoder,incomingSet,nodeBftMap);            
 
         LOG.info("run: node: [{}], clean broadcast domains. Start", getNodeId());
         boolean clean = false;
@@ -788,6 +803,7 @@ public class NodeDiscoveryBridgeTopology extends NodeDiscovery {
             		);
             return;
         }
+        m_macEncoder = new BridgeMacIndex.Encoder();
         
         List<BridgeMacLink> rootBft = m_notYetParsedBFTMap.remove(electedRoot);
         
@@ -839,6 +855,9 @@ public class NodeDiscoveryBridgeTopology extends NodeDiscovery {
             List<BridgeMacLink> xBft = new ArrayList<BridgeMacLink>(m_notYetParsedBFTMap.remove(xBridge));
             calculate(electedRoot, rootBft, xBridge, xBft);            
         }
+        m_rootIndexBft = null;
+        m_rootIndex = null;
+        m_macEncoder = null;
         m_domain.cleanForwarders(m_domain.getMacsOnDomain());
         if (LOG.isDebugEnabled()) {
             LOG.debug("calculate: node: [{}], Print Topology {}",
@@ -853,8 +872,10 @@ public class NodeDiscoveryBridgeTopology extends NodeDiscovery {
     }
      
     private void addForwarding(BroadcastDomain domain, List<BridgeMacLink> bft) {
+        // adding forwarders does not change the segments, compute the macs once
+        final Set<String> macsOnDomain = domain.getMacsOnDomain();
         for (BridgeMacLink maclink: bft) {
-            if (domain.getMacsOnDomain().contains(maclink.getMacAddress())) {
+            if (macsOnDomain.contains(maclink.getMacAddress())) {
                 if (LOG.isDebugEnabled()) {
                     LOG.debug("calculate: node: [{}]. Skipping forwarding: {}",
                           getNodeId(), 
@@ -897,7 +918,12 @@ public class NodeDiscoveryBridgeTopology extends NodeDiscovery {
     
     private void calculate(Bridge root,  List<BridgeMacLink> rootbft, Bridge xBridge, List<BridgeMacLink> xbft) {
         //FIXME        checkStp(root, xBridge);
-        BridgeTopologyHelper rx = new BridgeTopologyHelper(root, rootbft, xBridge,xbft);
+        if (m_rootIndexBft != rootbft || m_rootIndex.getBridgeId().intValue() != root.getId().intValue()) {
+            m_rootIndexBft = rootbft;
+            m_rootIndex = BridgeMacIndex.build(m_macEncoder, root.getId(), rootbft);
+        }
+        BridgeMacIndex xIndex = BridgeMacIndex.build(m_macEncoder, xBridge.getId(), xbft);
+        BridgeTopologyHelper rx = new BridgeTopologyHelper(root, rootbft, m_rootIndex, xBridge, xbft, xIndex);
         Integer rxDesignatedPort = rx.getFirstBridgeConnectionPort();
         if (rxDesignatedPort == null) {
             LOG.warn("calculate: node: [{}], cannot found simple connection for bridges: [{},{}]", 
@@ -933,13 +959,13 @@ public class NodeDiscoveryBridgeTopology extends NodeDiscovery {
             m_domain.clearTopology();
             return;
         }
-        if (!findBridgesTopo(rx,topSegment, xBridge, xbft,0))
+        if (!findBridgesTopo(rx,topSegment, xBridge, xbft, xIndex,0))
             m_domain.clearTopology();
     }
 
     // here we assume that rbridge exists in topology
     // while xBridge is to be added
-    private boolean findBridgesTopo(BridgeTopologyHelper rx,SharedSegment topSegment, Bridge xBridge, List<BridgeMacLink> xBFT, int level) {
+    private boolean findBridgesTopo(BridgeTopologyHelper rx,SharedSegment topSegment, Bridge xBridge, List<BridgeMacLink> xBFT, BridgeMacIndex xIndex, int level) {
         if (topSegment == null) {
             LOG.warn("calculate: node: [{}]: level: {}, bridge: [{}], top segment is null exiting.....",
                      getNodeId(),
@@ -990,7 +1016,8 @@ public class NodeDiscoveryBridgeTopology extends NodeDiscovery {
                      xBridge.getId(),
                      yBridgeId,
                      yrDesignatedPort);
-            BridgeTopologyHelper   yx = new BridgeTopologyHelper(yBridge,bftSets.get(yBridgeId) ,xBridge, xBFT);
+            List<BridgeMacLink> yBFT = bftSets.get(yBridgeId);
+            BridgeTopologyHelper   yx = new BridgeTopologyHelper(yBridge, yBFT, BridgeMacIndex.build(m_macEncoder, yBridgeId, yBFT), xBridge, xBFT, xIndex);
             Integer  xyDesignatedPort = yx.getSecondBridgeConnectionPort();
             Integer  yxDesignatedPort = yx.getFirstBridgeConnectionPort();
             // if X is a leaf of Y then iterate
@@ -998,7 +1025,7 @@ public class NodeDiscoveryBridgeTopology extends NodeDiscovery {
                 LOG.debug("calculate: node: [{}]: level: {}, bridge: [{}] is a leaf of bridge: [{}], going one level down",
                 		getNodeId(),
                 		level,xBridge.getId(),yBridge.getId());
-                if (!findBridgesTopo(yx,m_domain.getSharedSegment(yBridgeId, yxDesignatedPort), xBridge, xBFT,level))
+                if (!findBridgesTopo(yx,m_domain.getSharedSegment(yBridgeId, yxDesignatedPort), xBridge, xBFT, xIndex,level))
                 	return false;
                 return true;
             }
@@ -134,6 +134,9 @@ public final class BroadcastEventProcessor implements EventListener {
 
         // start to listen for events
         getEventManager().addEventListener(this);
+
+        // all the events are received, including the ones that invalidate the cached filter rule results
+        getNotificationManager().setRuleMatchCacheEnabled(true);
     }
 
     private void setupThreadPool() throws IOException {
@@ -230,6 +233,11 @@ public final class BroadcastEventProcessor implements EventListener {
             return;
         }
 
+        if (NotificationManager.RULE_MATCH_CACHE_UEIS.contains(event.getUei())) {
+            LOG.debug("onEvent: flushing the filter rule results cached for event {}", event.getUei());
+            getNotificationManager().flushRuleMatchCache();
+        }
+
         if (event.getLogmsg() != null && event.getLogmsg().getDest().equalsIgnoreCase("donotpersist")) {
             LOG.debug("discarding event {}, the event has been configured as 'doNotPersist'.", event.getUei());
             return;
@@ -334,6 +342,7 @@ public final class BroadcastEventProcessor implements EventListener {
 
                         Collection<Integer> notifIDs = getNotificationManager().acknowledgeNotice(event, curAck.getAcknowledge(), curAck.getMatches().toArray(new String[0]));
                         processed = true;
+                        cancelQueuedTasks(notifIDs);
                         try {
                             // only send resolution notifications if notifications are globally turned on
                             if (curAck.getNotify() && notifsOn) {
@@ -360,6 +369,7 @@ public final class BroadcastEventProcessor implements EventListener {
                 return;
             }
             Collection<Integer> notifIDs = getNotificationManager().acknowledgeNoticeBasedOnAlarms(event);
+            cancelQueuedTasks(notifIDs);
             try {
                 // only send resolution notifications if notifications are globally turned on
                 if (autoAck.getNotify() && !notifIDs.isEmpty() && notifsOn) {
@@ -373,6 +383,26 @@ public final class BroadcastEventProcessor implements EventListener {
         }
     }
 
+    /**
+     * Removes the tasks of the acknowledged notices from the queues, since they would
+     * find their notice acknowledged and do nothing once started.
+     */
+    private void cancelQueuedTasks(Collection<Integer> notifIDs) {
+        if (m_noticeQueues == null || notifIDs.isEmpty()) {
+            return;
+        }
+        synchronized (m_noticeQueues) {
+            for (NoticeQueue noticeQueue : m_noticeQueues.values()) {
+                synchronized (noticeQueue) {
+                    for (int notifId : notifIDs) {
+                        // the ids of the notices that a user had acknowledged first are negative
+                        noticeQueue.cancel(Math.abs(notifId));
+                    }
+                }
+            }
+        }
+    }
+
     private void sendResolvedNotifications(Collection<Integer> notifIDs, Event event,
             String resolutionPrefix, boolean skipNumericPrefix) throws Exception {
         for (int notifId : notifIDs) {
@@ -29,6 +29,10 @@
 package org.opennms.netmgt.notifd;
 
 
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -36,6 +40,9 @@ import org.slf4j.LoggerFactory;
  * This is a data class designed to hold NotificationTasks in an ordered map
  * that can handle collisions.
  *
+ * A queue handler can take over the tasks with {@link #setTaskScheduler(TaskScheduler)},
+ * in which case they are handed to it as they are queued instead of being kept in the map.
+ *
  * @author <A HREF="mailto:jason@opennms.org">Jason Johns </A>
  * @author <A HREF="http://www.opennms.org/">OpenNMS </A>
  * @author <A HREF="mailto:jason@opennms.org">Jason Johns </A>
@@ -49,10 +56,52 @@ public class NoticeQueue extends DuplicateTreeMap<Long, NotificationTask> {
      */
     private static final long serialVersionUID = 7463770974135218140L;
 
+    /**
+     * Schedules the tasks of a queue on behalf of its handler.
+     */
+    public interface TaskScheduler {
+        /**
+         * @param sendTime the time at which to start the task, in milliseconds since the epoch
+         * @param task the task to start
+         */
+        void schedule(long sendTime, NotificationTask task);
+
+        /**
+         * Cancels the tasks of a notice that have not been started yet.
+         *
+         * @param noticeId the id of the notice
+         * @return the number of tasks cancelled
+         */
+        int cancel(int noticeId);
+    }
+
+    private transient TaskScheduler m_taskScheduler;
+
+    /**
+     * Hands the queued tasks, and the ones queued from now on, to the given scheduler.
+     *
+     * @param taskScheduler a {@link org.opennms.netmgt.notifd.NoticeQueue.TaskScheduler} object.
+     */
+    public synchronized void setTaskScheduler(final TaskScheduler taskScheduler) {
+        m_taskScheduler = taskScheduler;
+        for (final Map.Entry<Long, List<NotificationTask>> entry : entrySet()) {
+            for (final NotificationTask task : entry.getValue()) {
+                taskScheduler.schedule(entry.getKey(), task);
+            }
+        }
+        clear();
+    }
+
     /** {@inheritDoc} */
     @Override
     public NotificationTask putItem(Long key, NotificationTask value) {
-        NotificationTask ret = super.putItem(key, value);
+        final TaskScheduler taskScheduler = m_taskScheduler;
+        NotificationTask ret = null;
+        if (taskScheduler != null) {
+            taskScheduler.schedule(key, value);
+        } else {
+            ret = super.putItem(key, value);
+        }
 
         
         if (LOG.isDebugEnabled()) {
@@ -65,4 +114,34 @@ public class NoticeQueue extends DuplicateTreeMap<Long, NotificationTask> {
         
         return ret;
     }
+
+    /**
+     * Removes the tasks of a notice that have not been started yet, since they would
+     * find the notice acknowledged and do nothing once started.
+     *
+     * @param noticeId the id of the notice
+     * @return the number of tasks removed
+     */
+    public int cancel(final int noticeId) {
+        final TaskScheduler taskScheduler = m_taskScheduler;
+        if (taskScheduler != null) {
+            return taskScheduler.cancel(noticeId);
+        }
+
+        int cancelled = 0;
+        for (final Iterator<List<NotificationTask>> lists = values().iterator(); lists.hasNext();) {
+            final List<NotificationTask> list = lists.next();
+            for (final Iterator<NotificationTask> tasks = list.iterator(); tasks.hasNext();) {
+                final NotificationTask task = tasks.next();
+                if (task.getNotifyId() == noticeId && !task.isStarted()) {
+                    tasks.remove();
+                    cancelled++;
+                }
+            }
+            if (list.isEmpty()) {
+                lists.remove();
+            }
+        }
+        return cancelled;
+    }
 }
@@ -0,0 +1,388 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.notifd;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import org.opennms.core.utils.TimeConverter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.JmxReporter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+/**
+ * A queue handler that keeps the tasks of its queue ordered by send time and
+ * sleeps until the next one is due, instead of polling the queue at a fixed
+ * interval like {@link DefaultQueueHandler} does.
+ *
+ * The tasks of a notice are indexed by notice id, so that they are cancelled
+ * when the notice is acknowledged instead of staying queued until they are due.
+ *
+ * The number of tasks queued, how late the tasks are started and how long
+ * cancelling the tasks of a notice takes are exposed over JMX in the
+ * org.opennms.netmgt.notifd domain.
+ */
+public class TimerQueueHandler implements NotifdQueueHandler, NoticeQueue.TaskScheduler {
+    private static final Logger LOG = LoggerFactory.getLogger(TimerQueueHandler.class);
+
+    /**
+     * The cancelled tasks are removed from the heap once they are due, or all at once
+     * when there are more than this many of them and they make up for half of the heap.
+     */
+    private static final int MIN_CANCELLED_TO_PURGE = 1024;
+
+    private static final class ScheduledTask implements Comparable<ScheduledTask> {
+        private final long m_sendTime;
+        private final long m_sequence;
+        private final NotificationTask m_task;
+        private boolean m_cancelled = false;
+
+        private ScheduledTask(final long sendTime, final long sequence, final NotificationTask task) {
+            m_sendTime = sendTime;
+            m_sequence = sequence;
+            m_task = task;
+        }
+
+        @Override
+        public int compareTo(final ScheduledTask other) {
+            final int cmp = Long.compare(m_sendTime, other.m_sendTime);
+            // tasks with the same send time are started in the order they were queued
+            return cmp != 0 ? cmp : Long.compare(m_sequence, other.m_sequence);
+        }
+    }
+
+    private final PriorityQueue<ScheduledTask> m_tasks = new PriorityQueue<>();
+    private final Map<Integer, List<ScheduledTask>> m_tasksByNoticeId = new HashMap<>();
+    private long m_sequence = 0;
+    private int m_cancelled = 0;
+
+    private final MetricRegistry m_metrics = new MetricRegistry();
+    private Histogram m_lateness;
+    private Timer m_cancelTimer;
+    private JmxReporter m_reporter;
+
+    private String m_queueID;
+
+    /**
+     * The status of this fiber.
+     */
+    private int m_status;
+
+    /**
+     * <p>Constructor for TimerQueueHandler.</p>
+     */
+    public TimerQueueHandler() {
+        m_status = START_PENDING;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setQueueID(final String queueID) {
+        m_queueID = queueID;
+        m_metrics.register(MetricRegistry.name(queueID, "size"), new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return getQueued();
+            }
+        });
+        m_lateness = m_metrics.histogram(MetricRegistry.name(queueID, "lateness"));
+        m_cancelTimer = m_metrics.timer(MetricRegistry.name(queueID, "cancel"));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setNoticeQueue(final NoticeQueue noticeQueue) {
+        synchronized (noticeQueue) {
+            noticeQueue.setTaskScheduler(this);
+        }
+    }
+
+    /**
+     * The tasks are started when they are due, so the interval is only logged.
+     */
+    @Override
+    public void setInterval(final String interval) {
+        LOG.debug("setInterval: ignoring interval {}ms of queue {}, tasks are started when they are due.", TimeConverter.convertToMillis(interval), m_queueID);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void schedule(final long sendTime, final NotificationTask task) {
+        final ScheduledTask scheduledTask = new ScheduledTask(sendTime, m_sequence++, task);
+        m_tasks.add(scheduledTask);
+        if (task.getNotifyId() > 0) {
+            m_tasksByNoticeId.computeIfAbsent(task.getNotifyId(), k -> new ArrayList<>(1)).add(scheduledTask);
+        }
+
+        // wake up the worker if the task is due before the one it is waiting for
+        if (m_tasks.peek() == scheduledTask) {
+            notifyAll();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int cancel(final int noticeId) {
+        try (Timer.Context ctx = m_cancelTimer.time()) {
+            synchronized (this) {
+                final List<ScheduledTask> tasks = m_tasksByNoticeId.remove(noticeId);
+                if (tasks == null) {
+                    return 0;
+                }
+                for (final ScheduledTask task : tasks) {
+                    task.m_cancelled = true;
+                }
+                m_cancelled += tasks.size();
+                if (m_cancelled >= MIN_CANCELLED_TO_PURGE && m_cancelled * 2 >= m_tasks.size()) {
+                    m_tasks.removeIf(t -> t.m_cancelled);
+                    m_cancelled = 0;
+                }
+                LOG.debug("cancel: cancelled {} tasks for notice {}", tasks.size(), noticeId);
+                return tasks.size();
+            }
+        }
+    }
+
+    /**
+     * @return the number of tasks waiting to be started
+     */
+    public synchronized int getQueued() {
+        return m_tasks.size() - m_cancelled;
+    }
+
+    /**
+     * @return the metrics of this handler
+     */
+    public MetricRegistry getMetricRegistry() {
+        return m_metrics;
+    }
+
+    /**
+     * Removes the tasks that are due from the heap.
+     */
+    private synchronized List<ScheduledTask> pollDueTasks(final long now) {
+        List<ScheduledTask> dueTasks = null;
+        while (!m_tasks.isEmpty() && m_tasks.peek().m_sendTime <= now) {
+            final ScheduledTask task = m_tasks.poll();
+            if (task.m_cancelled) {
+                m_cancelled--;
+                continue;
+            }
+            final List<ScheduledTask> siblings = m_tasksByNoticeId.get(task.m_task.getNotifyId());
+            if (siblings != null) {
+                siblings.remove(task);
+                if (siblings.isEmpty()) {
+                    m_tasksByNoticeId.remove(task.m_task.getNotifyId());
+                }
+            }
+            if (dueTasks == null) {
+                dueTasks = new ArrayList<>();
+            }
+            dueTasks.add(task);
+        }
+        return dueTasks;
+    }
+
+    /**
+     * Waits until the next task is due, or until a task due earlier is scheduled.
+     */
+    private synchronized void waitForNextTask() throws InterruptedException {
+        while (!m_tasks.isEmpty() && m_tasks.peek().m_cancelled) {
+            m_tasks.poll();
+            m_cancelled--;
+        }
+        if (m_status != RUNNING) {
+            return;
+        } else if (m_tasks.isEmpty()) {
+            wait();
+        } else {
+            final long delay = m_tasks.peek().m_sendTime - System.currentTimeMillis();
+            if (delay > 0) {
+                wait(delay);
+            }
+        }
+    }
+
+    /**
+     * The main worker of the fiber. This method is executed by the encapsulated
+     * thread to start the tasks as they become due. If the thread is interrupted
+     * or the status changes to <code>STOP_PENDING</code> then the method will
+     * return as quickly as possible.
+     */
+    @Override
+    public void run() {
+        synchronized (this) {
+            m_status = RUNNING;
+        }
+
+        for (;;) {
+            synchronized (this) {
+                // if stopped or stop pending then break out
+                if (m_status == STOP_PENDING || m_status == STOPPED) {
+                    break;
+                }
+
+                // if paused or pause pending then block
+                while (m_status == PAUSE_PENDING || m_status == PAUSED) {
+                    m_status = PAUSED;
+                    try {
+                        wait();
+                    } catch (final InterruptedException ex) {
+                        // exit
+                        break;
+                    }
+                }
+
+                // if resume pending then change to running
+                if (m_status == RESUME_PENDING) {
+                    m_status = RUNNING;
+                }
+            }
+
+            processQueue();
+
+            try {
+                waitForNextTask();
+            } catch (final InterruptedException ex) {
+                // exit
+                break;
+            }
+        }
+
+        synchronized (this) {
+            m_status = STOPPED;
+        }
+        if (m_reporter != null) {
+            m_reporter.stop();
+        }
+    }
+
+    /**
+     * Starts the tasks that are due.
+     */
+    @Override
+    public void processQueue() {
+        final long now = System.currentTimeMillis();
+        final List<ScheduledTask> dueTasks = pollDueTasks(now);
+        if (dueTasks == null) {
+            return;
+        }
+        for (final ScheduledTask task : dueTasks) {
+            m_lateness.update(now - task.m_sendTime);
+            try {
+                if (!task.m_task.isStarted()) {
+                    task.m_task.start();
+                }
+            } catch (final Throwable e) {
+                LOG.error("failed to start notification task", e);
+            }
+        }
+    }
+
+    /**
+     * Starts the fiber. The status of the fiber is updated to <code>STARTING</code>
+     * and will transition to <code>RUNNING</code> when the fiber begins processing
+     * the encapsulated queue.
+     */
+    @Override
+    public synchronized void start() {
+        m_status = STARTING;
+
+        m_reporter = JmxReporter.forRegistry(m_metrics).inDomain("org.opennms.netmgt.notifd").build();
+        m_reporter.start();
+
+        final Thread thread = new Thread(this, this.getClass().getSimpleName() + "-" + m_queueID);
+        thread.start();
+    }
+
+    /**
+     * Stops a currently running fiber. If the fiber has already been stopped
+     * then the command is silently ignored.
+     */
+    @Override
+    public synchronized void stop() {
+        if (m_status != STOPPED)
+            m_status = STOP_PENDING;
+
+        notifyAll();
+    }
+
+    /**
+     * Pauses a currently running fiber. If the fiber was not in a running or
+     * resuming state then the command is silently discarded.
+     */
+    @Override
+    public synchronized void pause() {
+        if (m_status == RUNNING || m_status == RESUME_PENDING) {
+            m_status = PAUSE_PENDING;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Resumes the fiber if it is paused. If the fiber was not in a paused or
+     * pause pending state then the request is discarded.
+     */
+    @Override
+    public synchronized void resume() {
+        if (m_status == PAUSED || m_status == PAUSE_PENDING) {
+            m_status = RESUME_PENDING;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Returns the name of this fiber.
+     *
+     * @return The name of the fiber.
+     */
+    @Override
+    public String getName() {
+        return m_queueID;
+    }
+
+    /**
+     * Returns the current status of the pausable fiber.
+     *
+     * @return The current status of the fiber.
+     */
+    @Override
+    public synchronized int getStatus() {
+        return m_status;
+    }
+}
@@ -38,8 +38,6 @@ import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.LinkedList;
-import java.util.List;
-import java.util.ListIterator;
 import java.util.Map;
 import java.util.Set;
 
@@ -50,6 +48,7 @@ import org.opennms.netmgt.events.api.EventConstants;
 import org.opennms.netmgt.filter.api.FilterDao;
 import org.opennms.netmgt.filter.api.FilterParseException;
 import org.opennms.netmgt.rtc.datablock.RTCCategory;
+import org.opennms.netmgt.rtc.datablock.RTCDownTimeWindow;
 import org.opennms.netmgt.rtc.datablock.RTCHashMap;
 import org.opennms.netmgt.rtc.datablock.RTCNode;
 import org.opennms.netmgt.rtc.datablock.RTCNodeKey;
@@ -80,6 +79,11 @@ import org.springframework.transaction.support.TransactionTemplate;
  * 'nodeGainedService' event would result in the 'nodeGainedService()' method
  * being called by the DataUpdater(s).
  *
+ * Updates are serialized on the DataManager, but the values are read without
+ * taking that lock: the datablocks are safe to read while being updated and
+ * each 'RTCCategory' keeps a running sum of the down time of its services so
+ * that its value does not need to be recalculated from every outage.
+ *
  * @author <A HREF="mailto:sowmya@opennms.org">Sowmya Nataraj </A>
  * @author <A HREF="http://www.opennms.org">OpenNMS.org </A>
  */
@@ -183,12 +187,12 @@ public class DataManager implements AvailabilityService, InitializingBean {
     /**
      * The RTC categories
      */
-    private Map<String, RTCCategory> m_categories;
+    private volatile Map<String, RTCCategory> m_categories;
 
     /**
      * map keyed using the RTCNodeKey or node ID or node ID/IP address
      */
-    private RTCHashMap m_map;
+    private volatile RTCHashMap m_map;
 
 	private static void addOutageToRTCNode(RTCNode rtcN, Timestamp lostTimeTS, Timestamp regainedTimeTS) {
 		if (lostTimeTS == null) return;
@@ -211,7 +215,7 @@ public class DataManager implements AvailabilityService, InitializingBean {
 	private static void addNodeToCategory(RTCCategory cat, RTCNode rtcN) {
 
 		// add the category info to the node
-        rtcN.addCategory(cat.getLabel());
+        rtcN.addCategory(cat);
 
 		// Add node to category
 		cat.addNode(rtcN);
@@ -480,30 +484,22 @@ public class DataManager implements AvailabilityService, InitializingBean {
         // Go through from all the categories this node belongs to
         // and delete the service
         //
-        List<String> categories = rtcN.getCategories();
-        ListIterator<String> catIter = categories.listIterator();
-        while (catIter.hasNext()) {
-            String catlabel = (String) catIter.next();
-
-            RTCCategory cat = (RTCCategory) m_categories.get(catlabel);
-
-            // get nodes in this category
-            List<Integer> catNodes = cat.getNodes();
+        for (String catlabel : rtcN.getCategories()) {
+            RTCCategory cat = m_categories.get(catlabel);
 
             // check if the category contains this node
-            int nIndex = catNodes.indexOf(rtcN.getNodeID());
-            if (nIndex != -1) {
+            if (cat.getNodes().contains(rtcN.getNodeID())) {
                 // remove from the category if it is the only service left.
                 if (m_map.getServiceCount(nodeid, catlabel) == 1) {
-                    catNodes.remove(nIndex);
+                    cat.deleteNode(nodeid);
                     LOG.info("Removing node from category: {}", catlabel);
                 }
-
-                // let the node know that this category is out
-                catIter.remove();
             }
         }
 
+        // let the node know that its categories are out
+        rtcN.removeCategories();
+
         // finally remove from map
         
         m_map.delete(rtcN);
@@ -572,6 +568,10 @@ public class DataManager implements AvailabilityService, InitializingBean {
     	for (RTCCategory cat : m_categories.values()) {
 			cat.deleteNode(nodeid);
 		}
+
+    	for (RTCNode rtcN : m_map.getRTCNodes(nodeid)) {
+    		rtcN.removeCategories();
+    	}
     	
     	m_map.deleteNode(nodeid);
     	
@@ -636,7 +636,16 @@ public class DataManager implements AvailabilityService, InitializingBean {
      * @return the value(uptime) for the category in the last 'rollingWindow'
      *         starting at current time
      */
-    public synchronized double getValue(RTCCategory category, long curTime, long rollingWindow) {
+    public double getValue(RTCCategory category, long curTime, long rollingWindow) {
+        final RTCDownTimeWindow window = category.getDownTimeWindow();
+        if (window != null) {
+            final double value = window.getValue(curTime, rollingWindow);
+            if (!Double.isNaN(value)) {
+                return value;
+            }
+        }
+
+        // the running sum has already moved past the requested window
         return m_map.getValue(category.getLabel(), curTime, rollingWindow);
     }
 
@@ -655,7 +664,7 @@ public class DataManager implements AvailabilityService, InitializingBean {
      * @return the value(uptime) for the node in the last 'rollingWindow'
      *         starting at current time in the context of the passed category
      */
-    public synchronized double getValue(int nodeid, RTCCategory category, long curTime, long rollingWindow) {
+    public double getValue(int nodeid, RTCCategory category, long curTime, long rollingWindow) {
         return m_map.getValue(nodeid, category.getLabel(), curTime, rollingWindow);
     }
 
@@ -670,7 +679,7 @@ public class DataManager implements AvailabilityService, InitializingBean {
      * @return the service count for the nodeid in the context of the passed
      *         category
      */
-    public synchronized int getServiceCount(int nodeid, RTCCategory category) {
+    public int getServiceCount(int nodeid, RTCCategory category) {
         return m_map.getServiceCount(nodeid, category.getLabel());
     }
 
@@ -685,7 +694,7 @@ public class DataManager implements AvailabilityService, InitializingBean {
      * @return the service down count for the nodeid in the context of the
      *         passed category
      */
-    public synchronized int getServiceDownCount(int nodeid, RTCCategory category) {
+    public int getServiceDownCount(int nodeid, RTCCategory category) {
         return m_map.getServiceDownCount(nodeid, category.getLabel());
     }
 
@@ -695,7 +704,7 @@ public class DataManager implements AvailabilityService, InitializingBean {
      * @return the categories
      */
     @Override
-    public synchronized Map<String, RTCCategory> getCategories() {
+    public Map<String, RTCCategory> getCategories() {
         return m_categories;
     }
 
@@ -28,10 +28,9 @@
 
 package org.opennms.netmgt.rtc.datablock;
 
-import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.opennms.netmgt.config.categories.Category;
 
@@ -53,7 +52,12 @@ public class RTCCategory extends Category {
     /**
      * The nodes list - list of node IDs
      */
-    private final List<Integer> m_nodes = Collections.synchronizedList(new ArrayList<Integer>());
+    private final CopyOnWriteArrayList<Integer> m_nodes = new CopyOnWriteArrayList<>();
+
+    /**
+     * The running sum of the down time of the services in this category
+     */
+    private final transient RTCDownTimeWindow m_downTimeWindow = new RTCDownTimeWindow();
 
     /**
      * The default constructor - initializes the values
@@ -79,10 +83,7 @@ public class RTCCategory extends Category {
      *            the node to add
      */
     public void addNode(RTCNode node) {
-        Integer longnodeid = node.getNodeID();
-
-        if (!m_nodes.contains(longnodeid))
-            m_nodes.add(longnodeid);
+        m_nodes.addIfAbsent(node.getNodeID());
     }
 
     /**
@@ -92,9 +93,7 @@ public class RTCCategory extends Category {
      *            the node ID to add
      */
     public void addNode(int nodeid) {
-        if (!m_nodes.contains(nodeid)) {
-            m_nodes.add(nodeid);
-        }
+        m_nodes.addIfAbsent(nodeid);
     }
 
     /**
@@ -156,4 +155,13 @@ public class RTCCategory extends Category {
     public List<Integer> getNodes() {
         return m_nodes;
     }
+
+    /**
+     * Get the running sum of the down time of the services in this category
+     *
+     * @return the down time window of this category
+     */
+    public RTCDownTimeWindow getDownTimeWindow() {
+        return m_downTimeWindow;
+    }
 }
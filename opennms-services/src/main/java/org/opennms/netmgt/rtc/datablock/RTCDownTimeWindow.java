@@ -0,0 +1,244 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.rtc.datablock;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import org.opennms.netmgt.rtc.RTCUtils;
+
+/**
+ * Running sum of the down time of all of the services in a category.
+ *
+ * <p>
+ * Rather than keeping the outages themselves, this keeps the points in time at
+ * which the number of services that are down changes. The down time in a window
+ * is the area under that step function, which can be derived from the total
+ * and time-weighted sum of the changes without visiting the individual outages.
+ * Changes that fall behind the rolling window are folded into a base count so
+ * that the structure stays bounded by the number of outage transitions in the
+ * last window.
+ * </p>
+ *
+ * <p>
+ * Queries whose window starts before the folded base, which only happens if the
+ * current time moves backwards, cannot be answered and return {@link Double#NaN}
+ * so that the caller can fall back to walking the {@link RTCNodeSvcTimesList}s.
+ * </p>
+ *
+ * @see org.opennms.netmgt.rtc.datablock.RTCNodeSvcTimesList
+ */
+public class RTCDownTimeWindow {
+    /**
+     * How far behind the start of the most recent window changes are kept before
+     * being folded, so that slightly older concurrent queries can still be served
+     */
+    private static final long FOLD_LAG = 5L * 60L * 1000L;
+
+    /**
+     * Changes in the number of services that are down, keyed by time
+     */
+    private final NavigableMap<Long, Integer> m_changes = new TreeMap<>();
+
+    /**
+     * Sum of all of the changes in m_changes
+     */
+    private long m_changeSum = 0;
+
+    /**
+     * Sum of all of the changes in m_changes weighted by their time
+     */
+    private long m_weightedChangeSum = 0;
+
+    /**
+     * The time up to which changes have been folded into m_baseDown
+     */
+    private long m_baseTime = Long.MIN_VALUE;
+
+    /**
+     * Number of services that were down at m_baseTime
+     */
+    private long m_baseDown = 0;
+
+    /**
+     * Number of services in the category
+     */
+    private int m_serviceCount = 0;
+
+    /**
+     * Add a service and its outages to the window.
+     *
+     * @param svcTimes
+     *            the lost/regained service times of the service
+     */
+    public synchronized void addService(Iterable<RTCNodeSvcTime> svcTimes) {
+        m_serviceCount++;
+        for (RTCNodeSvcTime svcTime : svcTimes) {
+            addChanges(svcTime.getLostTime(), svcTime.getRegainedTime(), 1);
+        }
+    }
+
+    /**
+     * Remove a service and its outages from the window.
+     *
+     * @param svcTimes
+     *            the lost/regained service times of the service
+     */
+    public synchronized void removeService(Iterable<RTCNodeSvcTime> svcTimes) {
+        m_serviceCount--;
+        for (RTCNodeSvcTime svcTime : svcTimes) {
+            addChanges(svcTime.getLostTime(), svcTime.getRegainedTime(), -1);
+        }
+    }
+
+    /**
+     * Add an outage of one of the services in the window.
+     *
+     * @param losttime
+     *            time at which service was lost
+     * @param regainedtime
+     *            time at which service was regained, or -1 if the outage is
+     *            still open
+     */
+    public synchronized void addOutage(long losttime, long regainedtime) {
+        addChanges(losttime, regainedtime, 1);
+    }
+
+    /**
+     * Close an open outage of one of the services in the window.
+     *
+     * @param regainedtime
+     *            time at which service was regained
+     */
+    public synchronized void closeOutage(long regainedtime) {
+        addChange(regainedtime, -1);
+    }
+
+    /**
+     * Return the number of services in the window.
+     *
+     * @return the number of services
+     */
+    public synchronized int getServiceCount() {
+        return m_serviceCount;
+    }
+
+    /**
+     * Calculate the total down time of all services for the last
+     * 'rollingWindow' time starting at 'curTime'.
+     *
+     * @param curTime
+     *            the current time from which the down time is to be calculated
+     * @param rollingWindow
+     *            the last window for which the downtime is to be calculated
+     * @return total down time for all services, or -1 if the window has already
+     *         been folded past the start of the requested window
+     */
+    public synchronized long getDownTime(long curTime, long rollingWindow) {
+        final long startTime = curTime - rollingWindow;
+        fold(startTime - FOLD_LAG);
+        if (startTime < m_baseTime) {
+            return -1;
+        }
+
+        // services that were already down at the base stay down for the whole window
+        long downTime = m_baseDown * rollingWindow;
+
+        // the area added by every change up to curTime, assuming that none of them are in the future
+        downTime += curTime * m_changeSum - m_weightedChangeSum;
+        for (Map.Entry<Long, Integer> change : m_changes.tailMap(curTime, false).entrySet()) {
+            downTime -= change.getValue() * (curTime - change.getKey());
+        }
+
+        // less the area those changes added before the start of the window
+        for (Map.Entry<Long, Integer> change : m_changes.headMap(startTime, true).entrySet()) {
+            downTime -= change.getValue() * (startTime - change.getKey());
+        }
+
+        return downTime;
+    }
+
+    /**
+     * Get the value (uptime) for the services in the window in the last
+     * 'rollingWindow' starting at current time.
+     *
+     * @param curTime
+     *            the current time
+     * @param rollingWindow
+     *            the window for which value is to be calculated
+     * @return the value (uptime), or {@link Double#NaN} if it cannot be
+     *         calculated from the running sum
+     */
+    public synchronized double getValue(long curTime, long rollingWindow) {
+        final long downTime = getDownTime(curTime, rollingWindow);
+        if (downTime < 0) {
+            return Double.NaN;
+        }
+        return RTCUtils.getOutagePercentage(downTime, rollingWindow, m_serviceCount);
+    }
+
+    private void addChanges(long losttime, long regainedtime, int sign) {
+        addChange(losttime, sign);
+        if (regainedtime > 0) {
+            addChange(regainedtime, -sign);
+        }
+    }
+
+    private void addChange(long time, int delta) {
+        if (time <= m_baseTime) {
+            m_baseDown += delta;
+            return;
+        }
+
+        m_changes.merge(time, delta, (a, b) -> a + b == 0 ? null : a + b);
+        m_changeSum += delta;
+        m_weightedChangeSum += delta * time;
+    }
+
+    /**
+     * Fold all changes up to and including 'time' into the base count.
+     */
+    private void fold(long time) {
+        if (time <= m_baseTime) {
+            return;
+        }
+
+        for (Iterator<Map.Entry<Long, Integer>> it = m_changes.headMap(time, true).entrySet().iterator(); it.hasNext();) {
+            Map.Entry<Long, Integer> change = it.next();
+            m_baseDown += change.getValue();
+            m_changeSum -= change.getValue();
+            m_weightedChangeSum -= change.getValue() * change.getKey();
+            it.remove();
+        }
+        m_baseTime = time;
+    }
+}
@@ -31,6 +31,7 @@ package org.opennms.netmgt.rtc.datablock;
 import java.net.InetAddress;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.apache.commons.lang.builder.HashCodeBuilder;
 import org.opennms.netmgt.rtc.NodeNotInCategoryException;
@@ -46,7 +47,13 @@ import org.opennms.netmgt.rtc.NodeNotInCategoryException;
  *
  * <p>
  * Also, each node knows and maintains a list of categories that this tuple
- * belongs to
+ * belongs to, and forwards changes to its service times to the down time
+ * windows of those categories
+ * </p>
+ *
+ * <p>
+ * Changes to the service times are made while holding the node's lock, so
+ * updates to different nodes can proceed in parallel.
  * </p>
  *
  * @author <A HREF="mailto:sowmya@opennms.org">Sowmya Kumaraswamy </A>
@@ -79,7 +86,13 @@ public class RTCNode {
     /**
      * List of the categories this node belongs to
      */
-    private final List<String> m_categories = new ArrayList<>();
+    private final List<String> m_categories = new CopyOnWriteArrayList<>();
+
+    /**
+     * The down time windows of the categories this node has been added to,
+     * which are kept up to date with the changes to the service times list
+     */
+    private final List<RTCDownTimeWindow> m_downTimeWindows = new ArrayList<>();
 
     /**
      * <p>Constructor for RTCNode.</p>
@@ -128,8 +141,12 @@ public class RTCNode {
      * @param regainedtime
      *            time at which service was regained
      */
-    public void addSvcTime(long losttime, long regainedtime) {
-        m_svcTimesList.addSvcTime(losttime, regainedtime);
+    public synchronized void addSvcTime(long losttime, long regainedtime) {
+        if (m_svcTimesList.addSvcTime(losttime, regainedtime)) {
+            for (RTCDownTimeWindow window : m_downTimeWindows) {
+                window.addOutage(losttime, regainedtime);
+            }
+        }
     }
 
     /**
@@ -145,6 +162,23 @@ public class RTCNode {
         }
     }
 
+    /**
+     * Add to the category list for this node and start accounting the down
+     * time of this node in the category.
+     *
+     * @param cat
+     *            the category this node has been added to
+     */
+    public synchronized void addCategory(RTCCategory cat) {
+        addCategory(cat.getLabel());
+
+        RTCDownTimeWindow window = cat.getDownTimeWindow();
+        if (window != null && !m_downTimeWindows.contains(window)) {
+            window.addService(m_svcTimesList);
+            m_downTimeWindows.add(window);
+        }
+    }
+
     /**
      * Remove a category from the node's context.
      *
@@ -159,6 +193,35 @@ public class RTCNode {
         }
     }
 
+    /**
+     * Remove a category from the node's context and stop accounting the down
+     * time of this node in the category.
+     *
+     * @param cat
+     *            the category this node has been added to
+     */
+    public synchronized void removeCategory(RTCCategory cat) {
+        removeCategory(cat.getLabel());
+
+        RTCDownTimeWindow window = cat.getDownTimeWindow();
+        if (window != null && m_downTimeWindows.remove(window)) {
+            window.removeService(m_svcTimesList);
+        }
+    }
+
+    /**
+     * Remove all categories from the node's context and stop accounting the
+     * down time of this node in any of them.
+     */
+    public synchronized void removeCategories() {
+        m_categories.clear();
+
+        for (RTCDownTimeWindow window : m_downTimeWindows) {
+            window.removeService(m_svcTimesList);
+        }
+        m_downTimeWindows.clear();
+    }
+
     /**
      * Add a node lost service time. Add a losttime entry to the service times
      * list - create a new service time entry in the list
@@ -185,6 +248,10 @@ public class RTCNode {
         // create a new entry
         RTCNodeSvcTime newStime = new RTCNodeSvcTime(t);
         m_svcTimesList.add(newStime);
+
+        for (RTCDownTimeWindow window : m_downTimeWindows) {
+            window.addOutage(t, -1);
+        }
     }
 
     /**
@@ -207,6 +274,12 @@ public class RTCNode {
             }
 
             stime.setRegainedTime(t);
+
+            if (stime.getRegainedTime() != -1) {
+                for (RTCDownTimeWindow window : m_downTimeWindows) {
+                    window.closeOutage(t);
+                }
+            }
         }
     }
 
@@ -275,7 +348,7 @@ public class RTCNode {
      * @return the total outage time for this node
      * @throws NodeNotInCategoryException 
      */
-    public long getDownTime(String cat, long curTime, long rollingWindow) throws NodeNotInCategoryException {
+    public synchronized long getDownTime(String cat, long curTime, long rollingWindow) throws NodeNotInCategoryException {
         // get the down time for this node in the context of the
         // category.
         // if the service is not in 'context', throw an exception
@@ -291,7 +364,7 @@ public class RTCNode {
      *
      * @return true if the service is currently down
      */
-    public boolean isServiceCurrentlyDown() {
+    public synchronized boolean isServiceCurrentlyDown() {
         int size = m_svcTimesList.size();
         if (size == 0) {
             return false;
@@ -0,0 +1,590 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.scheduler;
+
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.opennms.core.concurrent.LogPreservingThreadFactory;
+import org.opennms.core.fiber.PausableFiber;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.JmxReporter;
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * A {@link Scheduler} backed by a hashed timing wheel.
+ *
+ * Scheduled runnables are handed to the worker thread through a lock-free
+ * queue and are placed into the wheel bucket matching their deadline, so
+ * both insertion and expiry are O(1) regardless of how many runnables are
+ * scheduled. Runnables that are due but not yet {@link ReadyRunnable#isReady() ready}
+ * are re-inserted and checked again later, mirroring the behavior of the
+ * {@link LegacyScheduler}.
+ *
+ * The lateness of every expiry is tracked in a histogram per requested
+ * interval, and runnables scheduled without a delay can optionally be spread
+ * over a random start offset in order to avoid a thundering herd when a
+ * daemon schedules all of its services at once.
+ *
+ * @author <a href="http://www.opennms.org/">OpenNMS </a>
+ */
+public class TimingWheelScheduler implements Runnable, PausableFiber, Scheduler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TimingWheelScheduler.class);
+
+    /** Constant <code>TICK_DURATION_SYS_PROP="org.opennms.netmgt.scheduler.TimingWheelScheduler.tickDuration"</code> */
+    public static final String TICK_DURATION_SYS_PROP = "org.opennms.netmgt.scheduler.TimingWheelScheduler.tickDuration";
+
+    /** Constant <code>WHEEL_SIZE_SYS_PROP="org.opennms.netmgt.scheduler.TimingWheelScheduler.wheelSize"</code> */
+    public static final String WHEEL_SIZE_SYS_PROP = "org.opennms.netmgt.scheduler.TimingWheelScheduler.wheelSize";
+
+    /** Constant <code>MAX_START_JITTER_SYS_PROP="org.opennms.netmgt.scheduler.TimingWheelScheduler.maxStartJitter"</code> */
+    public static final String MAX_START_JITTER_SYS_PROP = "org.opennms.netmgt.scheduler.TimingWheelScheduler.maxStartJitter";
+
+    /** Constant <code>DEFAULT_TICK_DURATION=100</code> (milliseconds) */
+    public static final long DEFAULT_TICK_DURATION = 100;
+
+    /** Constant <code>DEFAULT_WHEEL_SIZE=512</code> */
+    public static final int DEFAULT_WHEEL_SIZE = 512;
+
+    /** Constant <code>DEFAULT_MAX_START_JITTER=0</code> (milliseconds) */
+    public static final long DEFAULT_MAX_START_JITTER = 0;
+
+    /**
+     * The delay after which a due runnable that was not ready is checked
+     * again. This matches the wait of the {@link LegacyScheduler} when none
+     * of its queues had a ready runnable.
+     */
+    static final long NOT_READY_RETRY_DELAY = 1000;
+
+    /**
+     * The maximum number of distinct intervals for which a lateness histogram
+     * is kept. Lateness of any further interval is recorded under
+     * <code>lateness.other</code>.
+     */
+    static final int MAX_LATENESS_HISTOGRAMS = 64;
+
+    /**
+     * The maximum number of newly scheduled runnables moved into the wheel on
+     * a single tick, so that a burst of schedules can not starve expiry.
+     */
+    private static final int MAX_TRANSFERS_PER_TICK = 100000;
+
+    /**
+     * A runnable waiting in the wheel.
+     */
+    private static final class Timeout {
+        private final ReadyRunnable m_runnable;
+        private final long m_interval;
+        private long m_deadline;
+        private long m_remainingRounds;
+        private boolean m_expiredBefore = false;
+        private Timeout m_next;
+
+        private Timeout(final ReadyRunnable runnable, final long interval, final long deadline) {
+            m_runnable = runnable;
+            m_interval = interval;
+            m_deadline = deadline;
+        }
+    }
+
+    /**
+     * A single slot of the wheel. Only ever accessed by the worker thread.
+     */
+    private static final class Bucket {
+        private Timeout m_head;
+        private Timeout m_tail;
+
+        private void add(final Timeout timeout) {
+            timeout.m_next = null;
+            if (m_tail == null) {
+                m_head = m_tail = timeout;
+            } else {
+                m_tail.m_next = timeout;
+                m_tail = timeout;
+            }
+        }
+
+        /**
+         * Unlinks all the timeouts that are due on this revolution and counts
+         * down the remaining rounds of all others.
+         */
+        private void expire(final List<Timeout> expired) {
+            Timeout prev = null;
+            Timeout timeout = m_head;
+            while (timeout != null) {
+                final Timeout next = timeout.m_next;
+                if (timeout.m_remainingRounds <= 0) {
+                    if (prev == null) {
+                        m_head = next;
+                    } else {
+                        prev.m_next = next;
+                    }
+                    if (timeout == m_tail) {
+                        m_tail = prev;
+                    }
+                    timeout.m_next = null;
+                    expired.add(timeout);
+                } else {
+                    timeout.m_remainingRounds--;
+                    prev = timeout;
+                }
+                timeout = next;
+            }
+        }
+    }
+
+    private final String m_name;
+
+    /**
+     * The pool of threads that are used to executed the runnable instances
+     * scheduled by the class' instance.
+     */
+    private final ExecutorService m_runner;
+
+    private final long m_tickDuration;
+
+    private final long m_maxStartJitter;
+
+    private final Bucket[] m_wheel;
+
+    private final int m_mask;
+
+    /**
+     * Runnables that have been scheduled but not yet placed into the wheel.
+     */
+    private final Queue<Timeout> m_pending = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The total number of runnables currently scheduled.
+     */
+    private final AtomicInteger m_scheduled = new AtomicInteger(0);
+
+    private final MetricRegistry m_metrics = new MetricRegistry();
+
+    /**
+     * Lateness histograms keyed by the requested interval. Only accessed by
+     * the worker thread.
+     */
+    private final Map<Long, Histogram> m_lateness = new HashMap<>();
+
+    private JmxReporter m_reporter;
+
+    /**
+     * The status for this fiber.
+     */
+    private volatile int m_status;
+
+    /**
+     * The worker thread that executes this instance.
+     */
+    private volatile Thread m_worker;
+
+    /**
+     * Used to keep track of the number of tasks that have been executed.
+     */
+    private volatile long m_numTasksExecuted = 0;
+
+    /**
+     * The {@link System#nanoTime()} at which the wheel started turning. Only
+     * accessed by the worker thread.
+     */
+    private long m_startTime;
+
+    /**
+     * The number of ticks the wheel has turned. Only accessed by the worker
+     * thread.
+     */
+    private long m_tick = 0;
+
+    /**
+     * Constructs a new instance of the scheduler, reading the tick duration,
+     * wheel size and maximum start jitter from the system properties.
+     *
+     * @param parent
+     *            String prepended to "Scheduler" to create fiber name
+     * @param maxSize
+     *            The maximum size of the thread pool.
+     */
+    public TimingWheelScheduler(final String parent, final int maxSize) {
+        this(parent, maxSize,
+             Long.getLong(TICK_DURATION_SYS_PROP, DEFAULT_TICK_DURATION),
+             Integer.getInteger(WHEEL_SIZE_SYS_PROP, DEFAULT_WHEEL_SIZE),
+             Long.getLong(MAX_START_JITTER_SYS_PROP, DEFAULT_MAX_START_JITTER));
+    }
+
+    /**
+     * Constructs a new instance of the scheduler.
+     *
+     * @param parent
+     *            String prepended to "Scheduler" to create fiber name
+     * @param maxSize
+     *            The maximum size of the thread pool.
+     * @param tickDuration
+     *            The duration of a single tick of the wheel in milliseconds.
+     * @param wheelSize
+     *            The number of buckets in the wheel, rounded up to the next
+     *            power of two.
+     * @param maxStartJitter
+     *            The upper bound in milliseconds of the random delay added to
+     *            runnables scheduled with an interval of 0, or 0 to disable.
+     */
+    public TimingWheelScheduler(final String parent, final int maxSize, final long tickDuration, final int wheelSize, final long maxStartJitter) {
+        Assert.isTrue(tickDuration > 0, "tickDuration must be positive");
+        Assert.isTrue(wheelSize > 0 && wheelSize <= (1 << 30), "wheelSize must be between 1 and 2^30");
+        Assert.isTrue(maxStartJitter >= 0, "maxStartJitter must not be negative");
+
+        m_name = parent + "Scheduler";
+        m_status = START_PENDING;
+        m_runner = Executors.newFixedThreadPool(maxSize, new LogPreservingThreadFactory(parent, maxSize));
+        m_tickDuration = tickDuration;
+        m_maxStartJitter = maxStartJitter;
+
+        int size = 1;
+        while (size < wheelSize) {
+            size <<= 1;
+        }
+        m_wheel = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            m_wheel[i] = new Bucket();
+        }
+        m_mask = size - 1;
+
+        m_metrics.register(MetricRegistry.name(m_name, "scheduled"), new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return m_scheduled.get();
+            }
+        });
+        m_metrics.register(MetricRegistry.name(m_name, "executed"), new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return m_numTasksExecuted;
+            }
+        });
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void schedule(long interval, final ReadyRunnable runnable) {
+        long delay = interval;
+        if (delay == 0 && m_maxStartJitter > 0) {
+            delay = ThreadLocalRandom.current().nextLong(m_maxStartJitter);
+        }
+        LOG.debug("schedule: Adding ready runnable {} at interval {} (delay {})", runnable, interval, delay);
+
+        m_scheduled.incrementAndGet();
+        m_pending.add(new Timeout(runnable, interval, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delay))));
+    }
+
+    /**
+     * <p>getCurrentTime</p>
+     *
+     * @return a long.
+     */
+    @Override
+    public long getCurrentTime() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * <p>start</p>
+     */
+    @Override
+    public synchronized void start() {
+        Assert.state(m_worker == null, "The fiber has already run or is running");
+
+        m_reporter = JmxReporter.forRegistry(m_metrics).inDomain("org.opennms.netmgt.scheduler").build();
+        m_reporter.start();
+
+        m_worker = new Thread(this, getName());
+        m_worker.start();
+        m_status = STARTING;
+
+        LOG.info("start: scheduler started");
+    }
+
+    /**
+     * <p>stop</p>
+     */
+    @Override
+    public synchronized void stop() {
+        Assert.state(m_worker != null, "The fiber has never been started");
+
+        m_status = STOP_PENDING;
+        m_worker.interrupt();
+        m_runner.shutdown();
+        m_reporter.stop();
+
+        LOG.info("stop: scheduler stopped");
+    }
+
+    /**
+     * <p>pause</p>
+     */
+    @Override
+    public synchronized void pause() {
+        Assert.state(m_worker != null, "The fiber has never been started");
+        Assert.state(m_status != STOPPED && m_status != STOP_PENDING, "The fiber is not running or a stop is pending");
+
+        if (m_status == PAUSED) {
+            return;
+        }
+
+        m_status = PAUSE_PENDING;
+        notifyAll();
+    }
+
+    /**
+     * <p>resume</p>
+     */
+    @Override
+    public synchronized void resume() {
+        Assert.state(m_worker != null, "The fiber has never been started");
+        Assert.state(m_status != STOPPED && m_status != STOP_PENDING, "The fiber is not running or a stop is pending");
+
+        if (m_status == RUNNING) {
+            return;
+        }
+
+        m_status = RESUME_PENDING;
+        notifyAll();
+    }
+
+    /**
+     * <p>getStatus</p>
+     *
+     * @return a int.
+     */
+    @Override
+    public synchronized int getStatus() {
+        if (m_worker != null && m_worker.isAlive() == false) {
+            m_status = STOPPED;
+        }
+        return m_status;
+    }
+
+    /**
+     * Returns the name of this fiber.
+     *
+     * @return a {@link java.lang.String} object.
+     */
+    @Override
+    public String getName() {
+        return m_name;
+    }
+
+    /**
+     * Returns total number of elements currently scheduled.
+     *
+     * @return the number of runnables waiting in the wheel
+     */
+    public int getScheduled() {
+        return m_scheduled.get();
+    }
+
+    /**
+     * Returns the pool of threads that are used to executed the runnable
+     * instances scheduled by the class' instance.
+     *
+     * @return thread pool
+     */
+    public ExecutorService getRunner() {
+        return m_runner;
+    }
+
+    /**
+     * Returns the registry holding the scheduled count, executed count and
+     * per-interval lateness histograms of this scheduler.
+     *
+     * @return a {@link com.codahale.metrics.MetricRegistry} object.
+     */
+    public MetricRegistry getMetricRegistry() {
+        return m_metrics;
+    }
+
+    /**
+     * The main method of the scheduler. Each tick moves newly scheduled
+     * runnables into the wheel and hands the ready runnables of the current
+     * bucket to the thread pool.
+     */
+    @Override
+    public void run() {
+        synchronized (this) {
+            m_status = RUNNING;
+        }
+
+        LOG.debug("run: scheduler running");
+
+        m_startTime = System.nanoTime();
+        final List<Timeout> expired = new ArrayList<>();
+
+        for (;;) {
+            synchronized (this) {
+                if (m_status != RUNNING && m_status != PAUSED && m_status != PAUSE_PENDING && m_status != RESUME_PENDING) {
+                    LOG.debug("run: status = {}, time to exit", m_status);
+                    break;
+                }
+
+                try {
+                    while (m_status == PAUSE_PENDING || m_status == PAUSED) {
+                        if (m_status == PAUSE_PENDING) {
+                            LOG.debug("run: pausing.");
+                        }
+                        m_status = PAUSED;
+                        wait();
+                    }
+                } catch (InterruptedException ex) {
+                    break;
+                }
+
+                if (m_status == RESUME_PENDING) {
+                    LOG.debug("run: resuming.");
+                    m_status = RUNNING;
+                }
+            }
+
+            if (!waitForNextTick()) {
+                break;
+            }
+
+            transferPending();
+
+            m_wheel[(int)(m_tick & m_mask)].expire(expired);
+            final long now = System.nanoTime();
+            for (final Timeout timeout : expired) {
+                dispatch(timeout, now);
+            }
+            expired.clear();
+
+            m_tick++;
+        }
+
+        LOG.debug("run: scheduler exiting, state = STOPPED");
+        synchronized (this) {
+            m_status = STOPPED;
+        }
+    }
+
+    /**
+     * Sleeps until the end of the current tick.
+     *
+     * @return false if the worker was interrupted
+     */
+    private boolean waitForNextTick() {
+        final long deadline = m_startTime + TimeUnit.MILLISECONDS.toNanos(m_tickDuration * (m_tick + 1));
+        for (;;) {
+            final long sleep = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime() + 999999);
+            if (sleep <= 0) {
+                return true;
+            }
+            try {
+                Thread.sleep(sleep);
+            } catch (InterruptedException e) {
+                return false;
+            }
+        }
+    }
+
+    private void transferPending() {
+        for (int i = 0; i < MAX_TRANSFERS_PER_TICK; i++) {
+            final Timeout timeout = m_pending.poll();
+            if (timeout == null) {
+                break;
+            }
+            final long calculated = (timeout.m_deadline - m_startTime) / TimeUnit.MILLISECONDS.toNanos(m_tickDuration);
+            timeout.m_remainingRounds = (calculated - m_tick) / m_wheel.length;
+            m_wheel[(int)(Math.max(calculated, m_tick) & m_mask)].add(timeout);
+        }
+    }
+
+    private void dispatch(final Timeout timeout, final long now) {
+        if (!timeout.m_expiredBefore) {
+            timeout.m_expiredBefore = true;
+            getLatenessHistogram(timeout.m_interval).update(TimeUnit.NANOSECONDS.toMillis(now - timeout.m_deadline));
+        }
+
+        boolean ready;
+        try {
+            ready = timeout.m_runnable.isReady();
+        } catch (RuntimeException e) {
+            LOG.error("run: failed to determine if {} is ready, checking again later", timeout.m_runnable, e);
+            ready = false;
+        }
+
+        if (!ready) {
+            timeout.m_deadline = now + TimeUnit.MILLISECONDS.toNanos(NOT_READY_RETRY_DELAY);
+            m_pending.add(timeout);
+            return;
+        }
+
+        LOG.debug("run: found ready runnable {}", timeout.m_runnable);
+        try {
+            m_scheduled.decrementAndGet();
+            m_runner.execute(timeout.m_runnable);
+            ++m_numTasksExecuted;
+        } catch (RejectedExecutionException e) {
+            throw new UndeclaredThrowableException(e);
+        }
+    }
+
+    private Histogram getLatenessHistogram(final long interval) {
+        Histogram histogram = m_lateness.get(interval);
+        if (histogram == null) {
+            if (m_lateness.size() >= MAX_LATENESS_HISTOGRAMS) {
+                return m_metrics.histogram(MetricRegistry.name(m_name, "lateness", "other"));
+            }
+            histogram = m_metrics.histogram(MetricRegistry.name(m_name, "lateness", Long.toString(interval)));
+            m_lateness.put(interval, histogram);
+        }
+        return histogram;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getNumTasksExecuted() {
+        return m_numTasksExecuted;
+    }
+}
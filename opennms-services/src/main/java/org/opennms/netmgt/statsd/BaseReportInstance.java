@@ -40,6 +40,7 @@ import org.opennms.netmgt.dao.support.RrdStatisticAttributeVisitor;
 import org.opennms.netmgt.measurements.api.MeasurementFetchStrategy;
 import org.opennms.netmgt.model.AttributeStatistic;
 import org.opennms.netmgt.model.AttributeStatisticVisitorWithResults;
+import org.opennms.netmgt.rrd.AttributeStatisticsIndex;
 import org.springframework.beans.factory.InitializingBean;
 
 /**
@@ -82,6 +83,10 @@ public abstract class BaseReportInstance extends AbstractReportInstance implemen
         m_rrdVisitor.setFetchStrategy(fetchStrategy);
     }
 
+    public void setStatisticsIndex(AttributeStatisticsIndex statisticsIndex) {
+        m_rrdVisitor.setStatisticsIndex(statisticsIndex);
+    }
+
     /**
      * <p>walk</p>
      */
@@ -34,6 +34,7 @@ import org.opennms.netmgt.dao.api.ResourceDao;
 import org.opennms.netmgt.filter.api.FilterDao;
 import org.opennms.netmgt.measurements.api.MeasurementFetchStrategy;
 import org.opennms.netmgt.model.AttributeStatisticVisitorWithResults;
+import org.opennms.netmgt.rrd.AttributeStatisticsIndex;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.dao.DataAccessResourceFailureException;
 import org.springframework.util.Assert;
@@ -252,6 +253,20 @@ public class ReportDefinition implements InitializingBean {
      * @throws java.lang.Exception if any.
      */
     public ReportInstance createReport(NodeDao nodeDao, ResourceDao resourceDao, MeasurementFetchStrategy fetchStrategy, FilterDao filterDao) throws Exception {
+        return createReport(nodeDao, resourceDao, fetchStrategy, null, filterDao);
+    }
+
+    /**
+     * <p>createReport</p>
+     *
+     * @param resourceDao a {@link org.opennms.netmgt.dao.api.ResourceDao} object.
+     * @param fetchStrategy an object.
+     * @param statisticsIndex the index to answer from when it covers the report window, may be null.
+     * @param filterDao a {@link org.opennms.netmgt.filter.api.FilterDao} object.
+     * @return a {@link org.opennms.netmgt.statsd.ReportInstance} object.
+     * @throws java.lang.Exception if any.
+     */
+    public ReportInstance createReport(NodeDao nodeDao, ResourceDao resourceDao, MeasurementFetchStrategy fetchStrategy, AttributeStatisticsIndex statisticsIndex, FilterDao filterDao) throws Exception {
         Assert.notNull(resourceDao, "resourceDao argument must not be null");
         Assert.notNull(fetchStrategy, "fetchStrategy argument must not be null");
         Assert.notNull(filterDao, "filterDao argument must not be null");
@@ -269,6 +284,7 @@ public class ReportDefinition implements InitializingBean {
             thisReport.setNodeDao(nodeDao);
             thisReport.setResourceDao(resourceDao);
             thisReport.setFetchStrategy(fetchStrategy);
+            thisReport.setStatisticsIndex(statisticsIndex);
             thisReport.setFilterDao(filterDao);
             thisReport.setFilter(getReport().getPackage().getFilter());
             
@@ -277,6 +293,7 @@ public class ReportDefinition implements InitializingBean {
             UnfilteredReportInstance thisReport = new UnfilteredReportInstance(visitor); 
             thisReport.setResourceDao(resourceDao);
             thisReport.setFetchStrategy(fetchStrategy);
+            thisReport.setStatisticsIndex(statisticsIndex);
             
             report = thisReport;
         }
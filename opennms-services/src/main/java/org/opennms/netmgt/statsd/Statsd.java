@@ -41,6 +41,7 @@ import org.opennms.netmgt.filter.api.FilterDao;
 import org.opennms.netmgt.measurements.api.MeasurementFetchStrategy;
 import org.opennms.netmgt.model.events.EventBuilder;
 import org.opennms.netmgt.model.events.EventUtils;
+import org.opennms.netmgt.rrd.AttributeStatisticsIndex;
 import org.opennms.netmgt.xml.event.Event;
 import org.quartz.JobDetail;
 import org.quartz.JobKey;
@@ -78,6 +79,9 @@ public class Statsd implements SpringServiceDaemon {
 
     private MeasurementFetchStrategy m_fetchStrategy;
 
+    @Autowired(required=false)
+    private AttributeStatisticsIndex m_statisticsIndex;
+
     @Autowired
     private FilterDao m_filterDao;
 
@@ -227,7 +231,7 @@ public class Statsd implements SpringServiceDaemon {
     public void runReport(ReportDefinition reportDef) throws Throwable {
         final ReportInstance report;
         try {
-            report = reportDef.createReport(m_nodeDao, m_resourceDao, m_fetchStrategy, m_filterDao);
+            report = reportDef.createReport(m_nodeDao, m_resourceDao, m_fetchStrategy, m_statisticsIndex, m_filterDao);
         } catch (Throwable t) {
             LOG.error("Could not create a report instance for report definition {}", reportDef, t);
             throw t;
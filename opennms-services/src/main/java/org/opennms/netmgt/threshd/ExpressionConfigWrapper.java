@@ -35,8 +35,8 @@ import java.util.List;
 import java.util.Map;
 
 import org.apache.commons.jexl2.ExpressionImpl;
+import org.apache.commons.jexl2.JexlContext;
 import org.apache.commons.jexl2.JexlEngine;
-import org.apache.commons.jexl2.MapContext;
 import org.opennms.netmgt.config.threshd.Expression;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -50,16 +50,33 @@ import org.slf4j.LoggerFactory;
 public class ExpressionConfigWrapper extends BaseThresholdDefConfigWrapper {
     private static final Logger LOG = LoggerFactory.getLogger(ExpressionConfigWrapper.class);
 
+    /**
+     * The engine is thread-safe once it is configured and is shared by all of
+     * the expressions. Each expression is parsed once when the threshold
+     * definition is loaded.
+     */
+    private static final JexlEngine JEXL_ENGINE = new JexlEngine();
+
+    private static final MathBinding MATH = new MathBinding();
+
+    private static final ThreadLocal<ValuesContext> CONTEXT = new ThreadLocal<ValuesContext>() {
+        @Override
+        protected ValuesContext initialValue() {
+            return new ValuesContext();
+        }
+    };
+
     private final Expression m_expression;
+    private final org.apache.commons.jexl2.Expression m_jexlExpression;
     private final Collection<String> m_datasources;
     public ExpressionConfigWrapper(Expression expression) throws ThresholdExpressionException {
         super(expression);
         m_expression = expression;
 
-        JexlEngine expressionParser = new JexlEngine();
         m_datasources = new ArrayList<>();
         try {
-            ExpressionImpl e = (ExpressionImpl) expressionParser.createExpression(m_expression.getExpression());
+            ExpressionImpl e = (ExpressionImpl) JEXL_ENGINE.createExpression(m_expression.getExpression());
+            m_jexlExpression = e;
             LOG.trace("List of Variables on the Expression: {}", e.getVariables());
             for (List<String> list : e.getVariables()) { // Requires JEXL 2.1.x
                 if (list.get(0).equalsIgnoreCase("math")) {
@@ -140,20 +157,80 @@ public class ExpressionConfigWrapper extends BaseThresholdDefConfigWrapper {
         public float ulp(float a) { return Math.ulp(a); }
     }
 
+    /**
+     * Exposes the values of a single evaluation to the expression without copying them.
+     * The values are also available through the <code>datasources</code> variable to
+     * work around NMS-5019, as a copy that is only made if the expression uses it.
+     * Variables that are assigned by the expression are kept apart so that the values
+     * of the caller are never modified.
+     */
+    private static class ValuesContext implements JexlContext {
+        private Map<String, Double> m_values;
+        private Map<String, Double> m_datasources;
+        private Map<String, Object> m_locals;
+
+        private void setValues(Map<String, Double> values) {
+            m_values = values;
+        }
+
+        private void clear() {
+            m_values = null;
+            m_datasources = null;
+            if (m_locals != null) {
+                m_locals.clear();
+            }
+        }
+
+        @Override
+        public Object get(String name) {
+            if (m_locals != null && m_locals.containsKey(name)) {
+                return m_locals.get(name);
+            }
+            if ("datasources".equals(name)) {
+                if (m_datasources == null) {
+                    m_datasources = new HashMap<String, Double>(m_values);
+                }
+                return m_datasources;
+            }
+            if ("math".equals(name)) {
+                return MATH;
+            }
+            return m_values.get(name);
+        }
+
+        @Override
+        public void set(String name, Object value) {
+            if (m_locals == null) {
+                m_locals = new HashMap<>();
+            }
+            m_locals.put(name, value);
+        }
+
+        @Override
+        public boolean has(String name) {
+            return (m_locals != null && m_locals.containsKey(name))
+                    || "datasources".equals(name)
+                    || "math".equals(name)
+                    || m_values.containsKey(name);
+        }
+    }
+
     @Override
     public double evaluate(Map<String, Double> values) throws ThresholdExpressionException {
-        // Add all of the variable values to the script context
-        Map<String,Object> context = new HashMap<String,Object>();
-        context.putAll(values);
-        context.put("datasources", new HashMap<String, Double>(values)); // To workaround NMS-5019
-        context.put("math", new MathBinding());
+        final ValuesContext context = CONTEXT.get();
+        context.setValues(values);
         double result = Double.NaN;
         try {
-            // Fetch an instance of the JEXL script engine to evaluate the script expression
-            Object resultObject = new JexlEngine().createExpression(m_expression.getExpression()).evaluate(new MapContext(context));
-            result = Double.parseDouble(resultObject.toString());
+            Object resultObject = m_jexlExpression.evaluate(context);
+            if (resultObject instanceof Number) {
+                result = ((Number)resultObject).doubleValue();
+            } else {
+                result = Double.parseDouble(resultObject.toString());
+            }
         } catch (Throwable e) {
             throw new ThresholdExpressionException("Error while evaluating expression " + m_expression.getExpression() + ": " + e.getMessage(), e);
+        } finally {
+            context.clear();
         }
         return result;
     }
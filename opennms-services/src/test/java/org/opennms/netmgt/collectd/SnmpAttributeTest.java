@@ -161,6 +161,8 @@ public class SnmpAttributeTest {
         m_rrdStrategy.updateFile(isA(Object.class), isA(String.class), matches(".*:" + matchValue));
         m_rrdStrategy.closeFile(isA(Object.class));
 
+        expect(m_resourceStorageDao.isIndexed()).andReturn(false).anyTimes();
+
         m_mocks.replayAll();
 
         SnmpCollectionAgent agent = DefaultSnmpCollectionAgent.create(ipInterface.getId(), m_ipInterfaceDao, new MockPlatformTransactionManager());
@@ -0,0 +1,116 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.enlinkd;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.opennms.netmgt.model.BridgeMacLink;
+import org.opennms.netmgt.model.OnmsNode;
+
+public class BridgeMacIndexTest extends EnLinkdTestHelper {
+
+    private static OnmsNode node(int id) {
+        final OnmsNode node = new OnmsNode();
+        node.setId(id);
+        return node;
+    }
+
+    @Test
+    public void testEncode() {
+        final BridgeMacIndex.Encoder encoder = new BridgeMacIndex.Encoder();
+        assertEquals(0L, encoder.encode("000000000000"));
+        assertEquals(0x0a1b2c3d4e5fL, encoder.encode("0a1b2c3d4e5f"));
+        assertEquals(0xffffffffffffL, encoder.encode("ffffffffffff"));
+
+        // malformed addresses are never equal to a valid one, nor to each other
+        final long upper = encoder.encode("0A1B2C3D4E5F");
+        final long shorter = encoder.encode("0a1b2c");
+        assertTrue(upper < 0);
+        assertTrue(shorter < 0);
+        assertNotEquals(upper, shorter);
+        assertEquals(upper, encoder.encode("0A1B2C3D4E5F"));
+        assertEquals(BridgeMacIndex.NULL_MAC, encoder.encode(null));
+        assertNotEquals(encoder.encode(null), encoder.encode("null"));
+
+        // malformed addresses are only remembered by their encoder
+        assertEquals(-1L, new BridgeMacIndex.Encoder().encode("0a1b2c"));
+    }
+
+    @Test
+    public void testBuild() {
+        final OnmsNode bridge = node(10);
+        final List<BridgeMacLink> bft = new ArrayList<>();
+        bft.add(addBridgeForwardingTableEntry(bridge, 1, "000000000003"));
+        bft.add(addBridgeForwardingTableEntry(bridge, 2, "000000000001"));
+        bft.add(addBridgeForwardingTableEntry(node(20), 3, "000000000002"));
+        final BridgeMacLink last = addBridgeForwardingTableEntry(bridge, 4, "000000000003");
+        bft.add(last);
+
+        final BridgeMacIndex index = BridgeMacIndex.build(new BridgeMacIndex.Encoder(), 10, bft);
+        assertEquals(Integer.valueOf(10), index.getBridgeId());
+        assertEquals(2, index.size());
+        assertEquals(3L, index.getMac(0));
+        assertEquals(2L, index.getMac(2));
+        assertSame(last, index.get("000000000003"));
+        assertSame(bft.get(1), index.get(1L));
+        // learned by another bridge
+        assertNull(index.get("000000000002"));
+        assertNull(index.get("000000000004"));
+    }
+
+    @Test
+    public void testCommonMacs() {
+        final BridgeMacIndex.Encoder encoder = new BridgeMacIndex.Encoder();
+        final long[] a = encoder.toSortedMacs(Arrays.asList("000000000005", "000000000001", "000000000003", "000000000001"));
+        final long[] b = encoder.toSortedMacs(Arrays.asList("000000000003", "000000000004", "000000000005"));
+        assertArrayEquals(new long[] {1L, 3L, 5L}, a);
+        assertArrayEquals(new long[] {3L, 5L}, BridgeMacIndex.intersect(a, b));
+        assertEquals(2, BridgeMacIndex.countCommon(a, b));
+        assertEquals(0, BridgeMacIndex.countCommon(a, new long[0]));
+
+        final BridgeMacIndex x = BridgeMacIndex.build(encoder, 1, Arrays.asList(
+                addBridgeForwardingTableEntry(node(1), 1, "000000000001"),
+                addBridgeForwardingTableEntry(node(1), 1, "000000000002")));
+        final BridgeMacIndex y = BridgeMacIndex.build(encoder, 2, Arrays.asList(
+                addBridgeForwardingTableEntry(node(2), 1, "000000000002"),
+                addBridgeForwardingTableEntry(node(2), 1, "000000000003")));
+        assertArrayEquals(new long[] {2L}, x.getCommonLearnedMacs(y));
+    }
+}
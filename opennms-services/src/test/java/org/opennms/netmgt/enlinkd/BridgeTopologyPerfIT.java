@@ -0,0 +1,243 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.enlinkd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.core.test.MockLogAppender;
+import org.opennms.core.test.MockLogger;
+import org.opennms.netmgt.config.EnhancedLinkdConfig;
+import org.opennms.netmgt.config.EnhancedLinkdConfigManager;
+import org.opennms.netmgt.config.enlinkd.EnlinkdConfiguration;
+import org.opennms.netmgt.model.BridgeElement;
+import org.opennms.netmgt.model.BridgeMacLink;
+import org.opennms.netmgt.model.OnmsNode;
+import org.opennms.netmgt.model.topology.Bridge;
+import org.opennms.netmgt.model.topology.BroadcastDomain;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Measures the bridge topology calculation of a synthetic campus network: a
+ * core bridge, a layer of distribution bridges and a layer of access bridges
+ * with the hosts attached to them. The core learns every host, the other
+ * bridges learn their own hosts and a random share of the remote ones.
+ */
+public class BridgeTopologyPerfIT extends EnLinkdTestHelper {
+    private static final Logger LOG = LoggerFactory.getLogger(BridgeTopologyPerfIT.class);
+
+    private static final int NUM_DISTRIBUTION = Integer.getInteger("distribution", 10);
+    private static final int NUM_ACCESS_PER_DISTRIBUTION = Integer.getInteger("accessPerDistribution", 20);
+    private static final int NUM_HOST_PORTS = 24;
+    private static final int NUM_HOSTS_PER_PORT = Integer.getInteger("hostsPerPort", 2);
+    private static final double DISTRIBUTION_REMOTE_SHARE = 0.2;
+    private static final double ACCESS_REMOTE_SHARE = 0.05;
+
+    private static final int CORE_ID = 1;
+    private static final long BRIDGE_MAC_BASE = 0x0a0000000000L;
+    private static final long HOST_MAC_BASE = 0x020000000000L;
+
+    private EnhancedLinkd m_linkd;
+
+    /**
+     * A synthetic campus: bridge ids are 1 for the core, 1000 + d for the distribution
+     * bridges and 100000 + 1000 * d + a for the access bridges. Uplinks are always port 1,
+     * the core reaches distribution d on port d + 2, a distribution bridge reaches its
+     * access bridge a on port a + 2.
+     */
+    private static class CampusTopology {
+        private final List<BridgeElement> m_elements = new ArrayList<>();
+        private final List<Integer> m_bridgeIds = new ArrayList<>();
+        private final List<List<BridgeMacLink>> m_bfts = new ArrayList<>();
+        private int m_bftEntries;
+    }
+
+    private static int distributionId(int d) {
+        return 1000 + d;
+    }
+
+    private static int accessId(int d, int a) {
+        return 100000 + 1000 * d + a;
+    }
+
+    private static String mac(long mac) {
+        return String.format("%012x", mac);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        final Properties props = new Properties();
+        props.put(MockLogger.LOG_KEY_PREFIX + "org.opennms", "WARN");
+        props.put(MockLogger.LOG_KEY_PREFIX + BridgeTopologyPerfIT.class.getName(), "INFO");
+        MockLogAppender.setupLogging(true, "WARN", props);
+
+        m_linkd = new EnhancedLinkd();
+        final EnhancedLinkdConfig config = new EnhancedLinkdConfigManager() {
+            @Override
+            public void save() throws IOException {
+            }
+
+            @Override
+            public void reload() throws IOException {
+                m_config = new EnlinkdConfiguration();
+                m_config.setInitialSleepTime(1000L);
+                m_config.setRescanInterval(10000L);
+            }
+
+            @Override
+            protected void saveXml(String xml) throws IOException {
+            }
+        };
+        config.reload();
+        m_linkd.setLinkdConfig(config);
+    }
+
+    private CampusTopology createCampus() {
+        final CampusTopology campus = new CampusTopology();
+        final Random random = new Random(42);
+
+        addBridge(campus, random, CORE_ID, -1, -1);
+        for (int d = 0; d < NUM_DISTRIBUTION; d++) {
+            addBridge(campus, random, distributionId(d), d, -1);
+            for (int a = 0; a < NUM_ACCESS_PER_DISTRIBUTION; a++) {
+                addBridge(campus, random, accessId(d, a), d, a);
+            }
+        }
+        return campus;
+    }
+
+    private void addBridge(CampusTopology campus, Random random, int bridgeId, int d, int a) {
+        final OnmsNode node = new OnmsNode();
+        node.setId(bridgeId);
+        final BridgeElement element = new BridgeElement();
+        element.setNode(node);
+        element.setBaseBridgeAddress(mac(BRIDGE_MAC_BASE + bridgeId));
+        campus.m_elements.add(element);
+
+        final List<BridgeMacLink> bft = new ArrayList<>();
+        // the other bridges
+        if (bridgeId != CORE_ID) {
+            bft.add(addBridgeForwardingTableEntry(node, portTowards(d, a, -1, -1), mac(BRIDGE_MAC_BASE + CORE_ID)));
+        }
+        for (int td = 0; td < NUM_DISTRIBUTION; td++) {
+            if (distributionId(td) != bridgeId) {
+                bft.add(addBridgeForwardingTableEntry(node, portTowards(d, a, td, -1), mac(BRIDGE_MAC_BASE + distributionId(td))));
+            }
+            for (int ta = 0; ta < NUM_ACCESS_PER_DISTRIBUTION; ta++) {
+                if (accessId(td, ta) != bridgeId) {
+                    bft.add(addBridgeForwardingTableEntry(node, portTowards(d, a, td, ta), mac(BRIDGE_MAC_BASE + accessId(td, ta))));
+                }
+            }
+        }
+        // the hosts
+        long host = HOST_MAC_BASE;
+        for (int td = 0; td < NUM_DISTRIBUTION; td++) {
+            for (int ta = 0; ta < NUM_ACCESS_PER_DISTRIBUTION; ta++) {
+                for (int port = 0; port < NUM_HOST_PORTS; port++) {
+                    for (int h = 0; h < NUM_HOSTS_PER_PORT; h++, host++) {
+                        final boolean learned;
+                        if (d < 0 || (td == d && (a < 0 || ta == a))) {
+                            learned = true;
+                        } else {
+                            learned = random.nextDouble() < (a < 0 ? DISTRIBUTION_REMOTE_SHARE : ACCESS_REMOTE_SHARE);
+                        }
+                        if (learned) {
+                            final int bridgePort = (td == d && ta == a) ? port + 2 : portTowards(d, a, td, ta);
+                            bft.add(addBridgeForwardingTableEntry(node, bridgePort, mac(host)));
+                        }
+                    }
+                }
+            }
+        }
+        campus.m_bridgeIds.add(bridgeId);
+        campus.m_bfts.add(bft);
+        campus.m_bftEntries += bft.size();
+    }
+
+    /**
+     * The port of the bridge at (d, a) that leads to the bridge at (td, ta), where
+     * -1 stands for the core and distribution layers respectively.
+     */
+    private static int portTowards(int d, int a, int td, int ta) {
+        if (d < 0) {
+            return td + 2;
+        } else if (a < 0) {
+            return (td == d && ta >= 0) ? ta + 2 : 1;
+        } else {
+            return 1;
+        }
+    }
+
+    @Test
+    public void calculateCampusTopology() {
+        final CampusTopology campus = createCampus();
+        LOG.info("Campus of {} bridges with {} hosts and {} forwarding table entries.",
+                campus.m_bridgeIds.size(),
+                NUM_DISTRIBUTION * NUM_ACCESS_PER_DISTRIBUTION * NUM_HOST_PORTS * NUM_HOSTS_PER_PORT,
+                campus.m_bftEntries);
+
+        final BroadcastDomain domain = new BroadcastDomain();
+        for (final Integer bridgeId : campus.m_bridgeIds) {
+            domain.addBridge(new Bridge(bridgeId));
+        }
+        domain.setBridgeElements(campus.m_elements);
+
+        final NodeDiscoveryBridgeTopology ndbt = new NodeDiscoveryBridgeTopology(m_linkd, new Node(CORE_ID, null, null, null, "default"));
+        ndbt.setDomain(domain);
+        for (int i = 0; i < campus.m_bridgeIds.size(); i++) {
+            ndbt.addUpdatedBFT(domain.getBridge(campus.m_bridgeIds.get(i)), campus.m_bfts.get(i));
+        }
+
+        final long start = System.nanoTime();
+        ndbt.calculate();
+        final long elapsed = System.nanoTime() - start;
+        LOG.info("Calculated the topology of {} bridges in {}ms.", campus.m_bridgeIds.size(), TimeUnit.NANOSECONDS.toMillis(elapsed));
+
+        assertFalse(domain.getTopology().isEmpty());
+        assertEquals(CORE_ID, domain.getRootBridgeId().intValue());
+        for (final Integer bridgeId : campus.m_bridgeIds) {
+            if (bridgeId != CORE_ID) {
+                assertEquals("root port of bridge " + bridgeId, 1, domain.getBridge(bridgeId).getRootPort().intValue());
+            }
+        }
+        assertTrue(domain.getBridge(CORE_ID).isRootBridge());
+    }
+}
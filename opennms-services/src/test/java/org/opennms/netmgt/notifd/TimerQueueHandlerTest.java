@@ -0,0 +1,162 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.notifd;
+
+import static com.jayway.awaitility.Awaitility.await;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TimerQueueHandlerTest {
+
+    private final List<Runnable> m_started = new CopyOnWriteArrayList<>();
+    private NoticeQueue m_noticeQueue;
+    private TimerQueueHandler m_handler;
+
+    @Before
+    public void setUp() {
+        m_noticeQueue = new NoticeQueue();
+        m_handler = new TimerQueueHandler();
+        m_handler.setQueueID("test");
+        m_handler.setInterval("20s");
+    }
+
+    @After
+    public void tearDown() {
+        m_handler.stop();
+    }
+
+    @Test
+    public void canStartTasksWhenDue() {
+        m_handler.setNoticeQueue(m_noticeQueue);
+        m_handler.start();
+
+        final long now = System.currentTimeMillis();
+        final NotificationTask later = createTask(now + 300, 1);
+        final NotificationTask sooner = createTask(now + 100, 2);
+        m_noticeQueue.putItem(later.getSendTime(), later);
+        m_noticeQueue.putItem(sooner.getSendTime(), sooner);
+        assertEquals(2, m_handler.getQueued());
+        // the tasks are handed to the handler instead of being kept in the map
+        assertEquals(0, m_noticeQueue.size());
+
+        // well before the 20s polling interval
+        await().atMost(2, TimeUnit.SECONDS).until(m_started::size, equalTo(2));
+        assertEquals(sooner, m_started.get(0));
+        assertEquals(later, m_started.get(1));
+        assertTrue(System.currentTimeMillis() >= later.getSendTime());
+        assertEquals(0, m_handler.getQueued());
+        assertEquals(2, m_handler.getMetricRegistry().getHistograms().get("test.lateness").getCount());
+    }
+
+    @Test
+    public void canTakeOverQueuedTasks() {
+        final NotificationTask task = createTask(System.currentTimeMillis(), 1);
+        m_noticeQueue.putItem(task.getSendTime(), task);
+        assertEquals(1, m_noticeQueue.size());
+
+        m_handler.setNoticeQueue(m_noticeQueue);
+        assertEquals(0, m_noticeQueue.size());
+        assertEquals(1, m_handler.getQueued());
+
+        m_handler.start();
+        await().atMost(2, TimeUnit.SECONDS).until(m_started::size, equalTo(1));
+    }
+
+    @Test
+    public void canCancelTasksByNoticeId() throws InterruptedException {
+        m_handler.setNoticeQueue(m_noticeQueue);
+        m_handler.start();
+
+        final long sendTime = System.currentTimeMillis() + 200;
+        final NotificationTask first = createTask(sendTime, 1);
+        final NotificationTask escalation = createTask(sendTime + 100, 1);
+        final NotificationTask other = createTask(sendTime, 2);
+        final NotificationTask resolution = createTask(sendTime, -1);
+        m_noticeQueue.putItem(first.getSendTime(), first);
+        m_noticeQueue.putItem(escalation.getSendTime(), escalation);
+        m_noticeQueue.putItem(other.getSendTime(), other);
+        m_noticeQueue.putItem(resolution.getSendTime(), resolution);
+
+        assertEquals(2, m_noticeQueue.cancel(1));
+        assertEquals(0, m_noticeQueue.cancel(1));
+        assertEquals(2, m_handler.getQueued());
+        assertEquals(2, m_handler.getMetricRegistry().getTimers().get("test.cancel").getCount());
+
+        await().atMost(2, TimeUnit.SECONDS).until(m_started::size, equalTo(2));
+        Thread.sleep(300);
+        assertEquals(2, m_started.size());
+        assertTrue(m_started.contains(other));
+        assertTrue(m_started.contains(resolution));
+    }
+
+    @Test
+    public void canCancelTasksWithoutHandler() {
+        final long now = System.currentTimeMillis();
+        m_noticeQueue.putItem(now, createTask(now, 1));
+        m_noticeQueue.putItem(now, createTask(now, 2));
+        m_noticeQueue.putItem(now + 1000, createTask(now + 1000, 1));
+
+        assertEquals(2, m_noticeQueue.cancel(1));
+        assertEquals(1, m_noticeQueue.size());
+        assertEquals(2, m_noticeQueue.get(now).get(0).getNotifyId());
+    }
+
+    @Test
+    public void canPauseAndResume() throws InterruptedException {
+        m_handler.setNoticeQueue(m_noticeQueue);
+        m_handler.start();
+        await().atMost(2, TimeUnit.SECONDS).until(m_handler::getStatus, equalTo(TimerQueueHandler.RUNNING));
+
+        m_handler.pause();
+        final NotificationTask task = createTask(System.currentTimeMillis(), 1);
+        m_noticeQueue.putItem(task.getSendTime(), task);
+        Thread.sleep(200);
+        assertEquals(0, m_started.size());
+
+        m_handler.resume();
+        await().atMost(2, TimeUnit.SECONDS).until(m_started::size, equalTo(1));
+    }
+
+    private NotificationTask createTask(long sendTime, int noticeId) {
+        final NotificationTask task = new NotificationTask(null, null, sendTime, Collections.emptyMap(), null, null, m_started::add);
+        task.setNoticeId(noticeId);
+        return task;
+    }
+}
@@ -0,0 +1,134 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.rtc.datablock;
+
+import static org.junit.Assert.assertEquals;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.netmgt.config.categories.Category;
+import org.opennms.netmgt.rtc.NodeNotInCategoryException;
+
+public class RTCDownTimeWindowTest {
+
+    private static final long ROLLING_WINDOW = 24L * 60L * 60L * 1000L;
+
+    @Test
+    public void canSumOpenAndClosedOutages() {
+        final RTCCategory cat = createCategory();
+        final RTCNode first = createNode(1, "ICMP");
+        final RTCNode second = createNode(1, "HTTP");
+        first.addCategory(cat);
+        second.addCategory(cat);
+
+        final long now = 10 * ROLLING_WINDOW;
+        // clipped to the start of the window
+        first.addSvcTime(now - ROLLING_WINDOW - 1000, now - ROLLING_WINDOW + 1000);
+        // fully inside of the window
+        first.addSvcTime(now - 5000, now - 2000);
+        // still open
+        second.nodeLostService(now - 500);
+
+        assertEquals(1000 + 3000 + 500, cat.getDownTimeWindow().getDownTime(now, ROLLING_WINDOW));
+        assertEquals(2, cat.getDownTimeWindow().getServiceCount());
+
+        second.nodeRegainedService(now - 100);
+        assertEquals(1000 + 3000 + 400, cat.getDownTimeWindow().getDownTime(now, ROLLING_WINDOW));
+
+        // the clipped outage slides out of the window
+        assertEquals(3000 + 400, cat.getDownTimeWindow().getDownTime(now + 2000, ROLLING_WINDOW));
+
+        second.removeCategory(cat);
+        assertEquals(3000, cat.getDownTimeWindow().getDownTime(now + 2000, ROLLING_WINDOW));
+        assertEquals(1, cat.getDownTimeWindow().getServiceCount());
+    }
+
+    @Test
+    public void cannotAnswerWindowsBehindTheFoldedBase() {
+        final RTCCategory cat = createCategory();
+        final RTCNode node = createNode(1, "ICMP");
+        node.addCategory(cat);
+        node.addSvcTime(5000, 6000);
+
+        final long now = 10 * ROLLING_WINDOW;
+        assertEquals(100.0, cat.getDownTimeWindow().getValue(now, ROLLING_WINDOW), 0.0);
+        assertEquals(Double.NaN, cat.getDownTimeWindow().getValue(now - ROLLING_WINDOW, ROLLING_WINDOW), 0.0);
+    }
+
+    @Test
+    public void matchesTheServiceTimesLists() throws NodeNotInCategoryException {
+        final Random random = new Random(42);
+        final RTCCategory cat = createCategory();
+        final List<RTCNode> nodes = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            final RTCNode node = createNode(i, "ICMP");
+            node.addCategory(cat);
+            nodes.add(node);
+        }
+
+        long now = 2 * ROLLING_WINDOW;
+        for (int i = 0; i < 5000; i++) {
+            now += random.nextInt(60000);
+            final RTCNode node = nodes.get(random.nextInt(nodes.size()));
+            if (node.isServiceCurrentlyDown()) {
+                node.nodeRegainedService(now);
+            } else {
+                node.nodeLostService(now);
+            }
+
+            if (i % 100 == 0) {
+                long expected = 0;
+                for (RTCNode n : nodes) {
+                    expected += n.getDownTime(cat.getLabel(), now, ROLLING_WINDOW);
+                }
+                assertEquals(expected, cat.getDownTimeWindow().getDownTime(now, ROLLING_WINDOW));
+            }
+        }
+    }
+
+    private static RTCCategory createCategory() {
+        final Category category = new Category();
+        category.setLabel("Servers");
+        category.setRule("IPADDR != '0.0.0.0'");
+        category.setNormalThreshold(99.0);
+        category.setWarningThreshold(97.0);
+        return new RTCCategory(category, "IPADDR != '0.0.0.0'");
+    }
+
+    private static RTCNode createNode(int nodeid, String svcName) {
+        final InetAddress addr = InetAddressUtils.addr("192.168.1." + (nodeid + 1));
+        return new RTCNode(nodeid, addr, svcName, ROLLING_WINDOW);
+    }
+}
@@ -0,0 +1,175 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.scheduler;
+
+import static com.jayway.awaitility.Awaitility.await;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.codahale.metrics.Histogram;
+
+public class TimingWheelSchedulerTest {
+
+    private TimingWheelScheduler m_scheduler;
+
+    private static class CountingRunnable implements ReadyRunnable {
+        private final AtomicInteger m_runs = new AtomicInteger(0);
+        private final AtomicLong m_lastRun = new AtomicLong(0);
+        private volatile boolean m_ready = true;
+
+        @Override
+        public boolean isReady() {
+            return m_ready;
+        }
+
+        @Override
+        public void run() {
+            m_lastRun.set(System.currentTimeMillis());
+            m_runs.incrementAndGet();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        if (m_scheduler != null && m_scheduler.getStatus() != TimingWheelScheduler.START_PENDING) {
+            m_scheduler.stop();
+        }
+    }
+
+    @Test
+    public void canRunAfterInterval() {
+        m_scheduler = new TimingWheelScheduler("Test", 2, 10, 8, 0);
+        m_scheduler.start();
+
+        final CountingRunnable runnable = new CountingRunnable();
+        final long scheduledAt = System.currentTimeMillis();
+        m_scheduler.schedule(250, runnable);
+        assertEquals(1, m_scheduler.getScheduled());
+
+        await().atMost(5, TimeUnit.SECONDS).until(m_scheduler::getNumTasksExecuted, equalTo(1L));
+        await().atMost(5, TimeUnit.SECONDS).until(runnable.m_runs::get, equalTo(1));
+        // 250ms spans more than 3 revolutions of an 80ms wheel
+        assertTrue(runnable.m_lastRun.get() - scheduledAt >= 250);
+        assertEquals(0, m_scheduler.getScheduled());
+    }
+
+    @Test
+    public void canScheduleBeforeStart() {
+        m_scheduler = new TimingWheelScheduler("Test", 2, 10, 8, 0);
+
+        final CountingRunnable runnable = new CountingRunnable();
+        m_scheduler.schedule(0, runnable);
+        m_scheduler.start();
+
+        await().atMost(5, TimeUnit.SECONDS).until(runnable.m_runs::get, equalTo(1));
+    }
+
+    @Test
+    public void canRetryRunnablesThatAreNotReady() throws InterruptedException {
+        m_scheduler = new TimingWheelScheduler("Test", 2, 10, 8, 0);
+        m_scheduler.start();
+
+        final CountingRunnable runnable = new CountingRunnable();
+        runnable.m_ready = false;
+        m_scheduler.schedule(10, runnable);
+
+        Thread.sleep(200);
+        assertEquals(0, runnable.m_runs.get());
+        assertEquals(1, m_scheduler.getScheduled());
+
+        runnable.m_ready = true;
+        await().atMost(5, TimeUnit.SECONDS).until(runnable.m_runs::get, equalTo(1));
+        assertEquals(0, m_scheduler.getScheduled());
+    }
+
+    @Test
+    public void canPauseAndResume() throws InterruptedException {
+        m_scheduler = new TimingWheelScheduler("Test", 2, 10, 8, 0);
+        m_scheduler.start();
+        await().atMost(5, TimeUnit.SECONDS).until(m_scheduler::getStatus, equalTo(TimingWheelScheduler.RUNNING));
+
+        final CountingRunnable runnable = new CountingRunnable();
+        m_scheduler.schedule(1000, runnable);
+        m_scheduler.pause();
+        await().atMost(5, TimeUnit.SECONDS).until(m_scheduler::getStatus, equalTo(TimingWheelScheduler.PAUSED));
+
+        Thread.sleep(1200);
+        assertEquals(0, runnable.m_runs.get());
+
+        m_scheduler.resume();
+        await().atMost(5, TimeUnit.SECONDS).until(runnable.m_runs::get, equalTo(1));
+    }
+
+    @Test
+    public void canSpreadImmediateRunnablesWithJitter() throws InterruptedException {
+        m_scheduler = new TimingWheelScheduler("Test", 4, 10, 64, 2000);
+
+        final CountingRunnable[] runnables = new CountingRunnable[100];
+        for (int i = 0; i < runnables.length; i++) {
+            runnables[i] = new CountingRunnable();
+            m_scheduler.schedule(0, runnables[i]);
+        }
+        m_scheduler.start();
+
+        // with a 2 second jitter it is all but impossible for all of them to have run already
+        Thread.sleep(200);
+        assertTrue(m_scheduler.getNumTasksExecuted() < runnables.length);
+
+        await().atMost(5, TimeUnit.SECONDS).until(m_scheduler::getNumTasksExecuted, equalTo((long)runnables.length));
+    }
+
+    @Test
+    public void canTrackLatenessPerInterval() {
+        m_scheduler = new TimingWheelScheduler("Test", 2, 10, 8, 0);
+        m_scheduler.start();
+
+        final CountingRunnable first = new CountingRunnable();
+        final CountingRunnable second = new CountingRunnable();
+        final CountingRunnable third = new CountingRunnable();
+        m_scheduler.schedule(20, first);
+        m_scheduler.schedule(20, second);
+        m_scheduler.schedule(50, third);
+
+        await().atMost(5, TimeUnit.SECONDS).until(m_scheduler::getNumTasksExecuted, equalTo(3L));
+
+        final Histogram twenty = m_scheduler.getMetricRegistry().getHistograms().get("TestScheduler.lateness.20");
+        final Histogram fifty = m_scheduler.getMetricRegistry().getHistograms().get("TestScheduler.lateness.50");
+        assertEquals(2, twenty.getCount());
+        assertEquals(1, fifty.getCount());
+        assertTrue(twenty.getSnapshot().getMin() >= 0);
+    }
+}
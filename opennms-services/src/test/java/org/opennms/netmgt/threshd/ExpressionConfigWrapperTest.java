@@ -28,8 +28,13 @@
 
 package org.opennms.netmgt.threshd;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.Assert;
 
@@ -171,4 +176,49 @@ public class ExpressionConfigWrapperTest {
         values.put("ifSpeed", 10.0);
         Assert.assertEquals(160.0, wrapper.evaluate(values), 0.0);
     }
+
+    @Test
+    public void testAssignmentsDoNotModifyValues() throws Exception {
+        Expression exp = new Expression();
+        exp.setExpression("ifInOctets = ifInOctets * 2");
+        ExpressionConfigWrapper wrapper = new ExpressionConfigWrapper(exp);
+        Map<String, Double> values = new HashMap<String,Double>();
+        values.put("ifInOctets", 100.0);
+        Assert.assertEquals(200.0, wrapper.evaluate(values), 0.0);
+        Assert.assertEquals(200.0, wrapper.evaluate(values), 0.0);
+        Assert.assertEquals(Double.valueOf(100.0), values.get("ifInOctets"));
+    }
+
+    @Test
+    public void testDatasourcesDoNotModifyValues() throws Exception {
+        Expression exp = new Expression();
+        exp.setExpression("datasources['ifInOctets'] = 0");
+        ExpressionConfigWrapper wrapper = new ExpressionConfigWrapper(exp);
+        Map<String, Double> values = new HashMap<String,Double>();
+        values.put("ifInOctets", 100.0);
+        Assert.assertEquals(0.0, wrapper.evaluate(values), 0.0);
+        Assert.assertEquals(Double.valueOf(100.0), values.get("ifInOctets"));
+    }
+
+    @Test
+    public void testConcurrentEvaluation() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<Boolean>> futures = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                final double speed = 100000.0 * (i + 1);
+                futures.add(executor.submit(() -> {
+                    final Map<String, Double> values = new HashMap<String,Double>();
+                    values.put("ifInOctets", speed / 8);
+                    values.put("ifSpeed", speed);
+                    return wrapper.evaluate(values) == 100.0;
+                }));
+            }
+            for (Future<Boolean> future : futures) {
+                Assert.assertTrue(future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
 }
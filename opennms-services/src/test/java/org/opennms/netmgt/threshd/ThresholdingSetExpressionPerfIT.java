@@ -0,0 +1,198 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.threshd;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.jexl2.JexlEngine;
+import org.apache.commons.jexl2.MapContext;
+import org.easymock.EasyMock;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.core.test.MockLogAppender;
+import org.opennms.core.test.MockLogger;
+import org.opennms.netmgt.collection.api.CollectionAttribute;
+import org.opennms.netmgt.config.ThreshdConfigFactory;
+import org.opennms.netmgt.config.ThresholdingConfigFactory;
+import org.opennms.netmgt.filter.FilterDaoFactory;
+import org.opennms.netmgt.filter.api.FilterDao;
+import org.opennms.netmgt.rrd.RrdRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Measures {@link ThresholdingSet#applyThresholds} on resources with
+ * expression based thresholds, and compares the time spent evaluating the
+ * expressions with the former approach of parsing them with a new
+ * {@link JexlEngine} on every evaluation.
+ */
+public class ThresholdingSetExpressionPerfIT {
+    private static final Logger LOG = LoggerFactory.getLogger(ThresholdingSetExpressionPerfIT.class);
+
+    private static final int NUM_RESOURCES = 20000;
+    private static final int NUM_ROUNDS = 5;
+
+    private static final String[] EXPRESSIONS = new String[] {
+        "ifSpeed > 0 and ifSpeed < 100000000 ? ((ifInOctets * 8 / ifSpeed) * 100) : (ifHighSpeed > 0 ? (((ifHCInOctets * 8) / (ifHighSpeed * 1000000)) * 100) : 0)",
+        "math.max((ifInOctets * 8 / ifSpeed), (ifOutOctets * 8 / ifSpeed)) * 100",
+        "ifInErrors + ifOutErrors",
+        "datasources['ifInDiscards'] + datasources['ifOutDiscards']"
+    };
+
+    private FilterDao m_filterDao;
+    private ThresholdingSet m_thresholdingSet;
+    private List<ValuesResourceWrapper> m_resources;
+    private Map<String, CollectionAttribute> m_attributes;
+
+    /**
+     * Serves the attribute values from a map, so that no collection is needed.
+     */
+    private static class ValuesResourceWrapper extends MockCollectionResourceWrapper {
+        private final Map<String, Double> m_values;
+
+        public ValuesResourceWrapper(String instance, Map<String, Double> values) {
+            super(instance);
+            m_values = values;
+        }
+
+        @Override
+        public Double getAttributeValue(String ds) {
+            return m_values.get(ds);
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        // applyThresholds logs every threshold at INFO, which would drown the measurements
+        final Properties props = new Properties();
+        props.put(MockLogger.LOG_KEY_PREFIX + "org.opennms", "WARN");
+        props.put(MockLogger.LOG_KEY_PREFIX + ThresholdingSetExpressionPerfIT.class.getName(), "INFO");
+        MockLogAppender.setupLogging(true, "INFO", props);
+
+        m_filterDao = EasyMock.createMock(FilterDao.class);
+        EasyMock.expect(m_filterDao.getActiveIPAddressList((String)EasyMock.anyObject())).andReturn(Collections.singletonList(InetAddress.getByName("127.0.0.1"))).anyTimes();
+        m_filterDao.flushActiveIpAddressListCache();
+        EasyMock.expectLastCall().anyTimes();
+        FilterDaoFactory.setInstance(m_filterDao);
+        EasyMock.replay(m_filterDao);
+
+        final StringBuilder thresholds = new StringBuilder("<?xml version=\"1.0\"?>");
+        thresholds.append("<thresholding-config><group name=\"perf\" rrdRepository=\"target/rrd\">");
+        for (final String expression : EXPRESSIONS) {
+            // high enough to never trigger, so that no events get built
+            thresholds.append("<expression type=\"high\" ds-type=\"test\" value=\"1.0E15\" rearm=\"1.0E14\" trigger=\"1\" expression=\"")
+                .append(expression.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("'", "&apos;"))
+                .append("\"/>");
+        }
+        thresholds.append("</group></thresholding-config>");
+        ThresholdingConfigFactory.setInstance(new ThresholdingConfigFactory(new ByteArrayInputStream(thresholds.toString().getBytes(StandardCharsets.UTF_8))));
+
+        final String threshd = "<?xml version=\"1.0\"?>"
+                + "<threshd-configuration threads=\"5\">"
+                + "<package name=\"perf\">"
+                + "<filter>IPADDR != '0.0.0.0'</filter>"
+                + "<include-range begin=\"1.1.1.1\" end=\"254.254.254.254\"/>"
+                + "<service name=\"SNMP\" interval=\"300000\" user-defined=\"false\" status=\"on\">"
+                + "<parameter key=\"thresholding-group\" value=\"perf\"/>"
+                + "</service>"
+                + "</package>"
+                + "</threshd-configuration>";
+        ThreshdConfigFactory.setInstance(new ThreshdConfigFactory(new ByteArrayInputStream(threshd.getBytes(StandardCharsets.UTF_8)), "127.0.0.1", false));
+
+        m_thresholdingSet = new ThresholdingSet(1, "127.0.0.1", "SNMP", new RrdRepository());
+        assertTrue(m_thresholdingSet.hasThresholds());
+
+        m_resources = new ArrayList<>(NUM_RESOURCES);
+        for (int i = 0; i < NUM_RESOURCES; i++) {
+            final Map<String, Double> values = new HashMap<>();
+            values.put("ifSpeed", 10000000.0 * (i % 20));
+            values.put("ifHighSpeed", 10.0 * (i % 20));
+            values.put("ifInOctets", 1000.0 * i);
+            values.put("ifOutOctets", 2000.0 * i);
+            values.put("ifHCInOctets", 1000.0 * i);
+            values.put("ifInErrors", (double)(i % 7));
+            values.put("ifOutErrors", (double)(i % 3));
+            values.put("ifInDiscards", (double)(i % 5));
+            values.put("ifOutDiscards", (double)(i % 11));
+            m_resources.add(new ValuesResourceWrapper(Integer.toString(i), values));
+        }
+
+        // applyThresholds only needs a non-empty attribute map, the values come from the wrappers
+        m_attributes = Collections.singletonMap("ifInOctets", null);
+    }
+
+    @After
+    public void tearDown() {
+        EasyMock.verify(m_filterDao);
+    }
+
+    @Test
+    public void applyExpressionThresholds() {
+        for (int round = 1; round <= NUM_ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (final ValuesResourceWrapper resource : m_resources) {
+                m_thresholdingSet.applyThresholds(resource, m_attributes);
+            }
+            final long applyNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (final ValuesResourceWrapper resource : m_resources) {
+                for (final String expression : EXPRESSIONS) {
+                    evaluateWithNewEngine(expression, resource.m_values);
+                }
+            }
+            final long legacyNanos = System.nanoTime() - start;
+
+            LOG.info("Round {}: applied {} expression thresholds to {} resources in {}ms, parsing every expression on each evaluation takes {}ms on its own.",
+                    round, EXPRESSIONS.length, m_resources.size(), TimeUnit.NANOSECONDS.toMillis(applyNanos), TimeUnit.NANOSECONDS.toMillis(legacyNanos));
+        }
+    }
+
+    private static double evaluateWithNewEngine(String expression, Map<String, Double> values) {
+        final Map<String,Object> context = new HashMap<String,Object>();
+        context.putAll(values);
+        context.put("datasources", new HashMap<String, Double>(values));
+        context.put("math", new ExpressionConfigWrapper.MathBinding());
+        final Object result = new JexlEngine().createExpression(expression).evaluate(new MapContext(context));
+        return Double.parseDouble(result.toString());
+    }
+}